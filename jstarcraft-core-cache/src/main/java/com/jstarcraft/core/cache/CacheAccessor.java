@@ -0,0 +1,375 @@
+package com.jstarcraft.core.cache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.reflection.ReflectionUtility;
+import com.jstarcraft.core.utility.ClassUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+/**
+ * 缓存访问器
+ * 
+ * <pre>
+ * 由{@link CacheInformation}在初始化时通过Javassist为每个缓存类型生成,代替热点路径上的反射.
+ * 生成的类与缓存类型位于相同的包与类加载器,非private字段直接访问;
+ * private字段通过static final的MethodHandle访问(常量句柄可以被JIT内联),兼容Java 8.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+public abstract class CacheAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheAccessor.class);
+
+    /** 类:访问器后缀 */
+    private final static String CLASS_SUFFIX = "_ACCESSOR";
+
+    /** 字段:读取句柄前缀 */
+    private final static String GETTER_PREFIX = "GETTER_";
+
+    /** 字段:写入句柄前缀 */
+    private final static String SETTER_PREFIX = "SETTER_";
+
+    private static final ClassPool classPool = ClassPool.getDefault();
+
+    private static final ConcurrentHashMap<Class<?>, CacheAccessor> accessors = new ConcurrentHashMap<>();
+
+    /** 正在生成的访问器的句柄(key:访问器类名,在访问器类初始化时读取) */
+    private static final ConcurrentHashMap<String, MethodHandle[]> handles = new ConcurrentHashMap<>();
+
+    /**
+     * 获取指定序号的索引值
+     * 
+     * @param instance
+     * @param index
+     * @return
+     */
+    public abstract Comparable getIndexValue(IdentityObject instance, int index);
+
+    /**
+     * 获取全部索引值
+     * 
+     * <pre>
+     * 按序号写入到调用方提供(可复用)的数组,不分配额外的对象(基本类型的装箱除外).
+     * </pre>
+     * 
+     * @param instance
+     * @param values
+     */
+    public abstract void getIndexValues(IdentityObject instance, Comparable[] values);
+
+    /**
+     * 获取指定序号的有序索引值
+     * 
+     * @param instance
+     * @param index
+     * @return
+     */
+    public abstract Comparable getOrderValue(IdentityObject instance, int index);
+
+    /**
+     * 逐个字段复制实例(浅复制)
+     * 
+     * @param from
+     * @param to
+     */
+    public abstract void copyInstance(IdentityObject from, IdentityObject to);
+
+    /**
+     * 通过句柄读取字段(基本类型装箱)
+     * 
+     * @param getter
+     * @param instance
+     * @return
+     */
+    protected static Object getValue(MethodHandle getter, Object instance) {
+        try {
+            return (Object) getter.invokeExact(instance);
+        } catch (Throwable throwable) {
+            throw new CacheException(throwable);
+        }
+    }
+
+    /**
+     * 通过句柄写入字段(基本类型拆箱)
+     * 
+     * @param setter
+     * @param instance
+     * @param value
+     */
+    protected static void setValue(MethodHandle setter, Object instance, Object value) {
+        try {
+            setter.invokeExact(instance, value);
+        } catch (Throwable throwable) {
+            throw new CacheException(throwable);
+        }
+    }
+
+    /**
+     * 获取正在生成的访问器的句柄(由访问器类的静态初始化调用)
+     * 
+     * @param name
+     * @param position
+     * @return
+     */
+    public static MethodHandle getHandle(String name, int position) {
+        return handles.get(name)[position];
+    }
+
+    /**
+     * 字段是否可以被生成的类直接访问
+     * 
+     * <pre>
+     * 非private并且与缓存类型位于相同的运行时包(包名与类加载器都相同).
+     * </pre>
+     * 
+     * @param clazz
+     * @param field
+     * @return
+     */
+    private static boolean isDirect(Class<?> clazz, Field field) {
+        Class<?> declaringClass = field.getDeclaringClass();
+        if (Modifier.isPrivate(field.getModifiers()) || declaringClass.getClassLoader() != clazz.getClassLoader()) {
+            return false;
+        }
+        return ClassUtility.getPackageName(declaringClass).equals(ClassUtility.getPackageName(clazz));
+    }
+
+    /**
+     * 读取字段的表达式
+     * 
+     * @param field
+     * @param instance
+     * @param positions 字段的句柄序号
+     * @return
+     */
+    private static String getField(Field field, String instance, Map<Field, Integer> positions) {
+        Integer position = positions.get(field);
+        if (position == null) {
+            // 转换为声明字段的类型,避免被子类的同名字段遮蔽
+            return StringUtility.format("(({}) {}).{}", field.getDeclaringClass().getName(), instance, field.getName());
+        }
+        return StringUtility.format("getValue({}{}, {})", GETTER_PREFIX, position, instance);
+    }
+
+    /**
+     * 读取索引的表达式(基本类型装箱)
+     * 
+     * @param field
+     * @param instance
+     * @param positions 字段的句柄序号
+     * @return
+     */
+    private static String getIndex(Field field, String instance, Map<Field, Integer> positions) {
+        Class<?> type = field.getType();
+        if (type.isPrimitive() && !positions.containsKey(field)) {
+            return StringUtility.format("{}.valueOf({})", ClassUtility.primitiveToWrapper(type).getName(), getField(field, instance, positions));
+        } else {
+            return StringUtility.format("({}) {}", Comparable.class.getName(), getField(field, instance, positions));
+        }
+    }
+
+    /**
+     * 复制字段的语句
+     * 
+     * @param field
+     * @param positions 字段的句柄序号
+     * @return
+     */
+    private static String setField(Field field, Map<Field, Integer> positions) {
+        Integer position = positions.get(field);
+        if (position == null) {
+            return StringUtility.format("{} = {};", getField(field, "to", positions), getField(field, "from", positions));
+        }
+        return StringUtility.format("setValue({}{}, to, {});", SETTER_PREFIX, position, getField(field, "from", positions));
+    }
+
+    /**
+     * 获取缓存类型的访问器
+     * 
+     * @param clazz
+     * @param indexFields
+     *            索引字段(按序号)
+     * @param orderFields
+     *            有序索引字段(按序号)
+     * @return
+     */
+    static CacheAccessor instanceOf(Class<?> clazz, List<Field> indexFields, List<Field> orderFields) {
+        CacheAccessor accessor = accessors.get(clazz);
+        if (accessor != null) {
+            return accessor;
+        }
+        synchronized (accessors) {
+            accessor = accessors.get(clazz);
+            if (accessor != null) {
+                return accessor;
+            }
+            try {
+                accessor = (CacheAccessor) transformClass(clazz, indexFields, orderFields).newInstance();
+            } catch (Exception exception) {
+                String message = StringUtility.format("缓存类型[{}]的访问器生成异常", clazz.getName());
+                LOGGER.error(message, exception);
+                throw new CacheConfigurationException(message, exception);
+            }
+            accessors.put(clazz, accessor);
+            return accessor;
+        }
+    }
+
+    /**
+     * 生成访问器类
+     * 
+     * <pre>
+     * public class [clazz.name]_ACCESSOR extends CacheAccessor {
+     *     private static final MethodHandle GETTER_0 = CacheAccessor.getHandle("[clazz.name]_ACCESSOR", 0);
+     *     private static final MethodHandle SETTER_0 = CacheAccessor.getHandle("[clazz.name]_ACCESSOR", 1);
+     *     ...
+     *     public Comparable getIndexValue(IdentityObject instance, int index) {
+     *         if (index == 0) {
+     *             return (Comparable) getValue(GETTER_0, instance);
+     *         }
+     *         ...
+     *     }
+     *     public void getIndexValues(IdentityObject instance, Comparable[] values) {
+     *         values[0] = (Comparable) getValue(GETTER_0, instance);
+     *         values[1] = Integer.valueOf(((Clazz) instance).field);
+     *         ...
+     *     }
+     *     public Comparable getOrderValue(IdentityObject instance, int index) {
+     *         if (index == 0) {
+     *             return Long.valueOf(((Clazz) instance).field);
+     *         }
+     *         ...
+     *     }
+     *     public void copyInstance(IdentityObject from, IdentityObject to) {
+     *         setValue(SETTER_0, to, getValue(GETTER_0, from));
+     *         ((Clazz) to).field = ((Clazz) from).field;
+     *         ...
+     *     }
+     * }
+     * </pre>
+     * 
+     * @param clazz
+     * @param indexFields
+     * @param orderFields
+     * @return
+     * @throws Exception
+     */
+    private static Class<?> transformClass(Class<?> clazz, List<Field> indexFields, List<Field> orderFields) throws Exception {
+        classPool.insertClassPath(new ClassClassPath(clazz));
+        String accessorName = clazz.getName() + CLASS_SUFFIX;
+        CtClass accessorClass = classPool.makeClass(accessorName);
+        accessorClass.setSuperclass(classPool.get(CacheAccessor.class.getName()));
+
+        String identityType = IdentityObject.class.getName();
+        String comparableType = Comparable.class.getName();
+
+        // 与ReflectionUtility.copyInstance相同,忽略静态与final字段
+        List<Field> copyFields = new ArrayList<>();
+        ReflectionUtility.doWithFields(clazz, (field) -> {
+            int modifiers = field.getModifiers();
+            if (Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers)) {
+                return;
+            }
+            copyFields.add(field);
+        });
+
+        // 无法直接访问的字段使用句柄(读取:Object(Object),写入:void(Object,Object))
+        Map<Field, Integer> positions = new HashMap<>();
+        List<MethodHandle> fieldHandles = new ArrayList<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType getterType = MethodType.methodType(Object.class, Object.class);
+        MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+        List<Field> handleFields = new ArrayList<>(indexFields);
+        handleFields.addAll(orderFields);
+        handleFields.addAll(copyFields);
+        for (Field field : handleFields) {
+            if (positions.containsKey(field) || isDirect(clazz, field)) {
+                continue;
+            }
+            int position = positions.size();
+            positions.put(field, position);
+            ReflectionUtility.makeAccessible(field);
+            fieldHandles.add(lookup.unreflectGetter(field).asType(getterType));
+            boolean writable = !Modifier.isFinal(field.getModifiers());
+            fieldHandles.add(writable ? lookup.unreflectSetter(field).asType(setterType) : null);
+            CtClass handleType = classPool.get(MethodHandle.class.getName());
+            String initializer = StringUtility.format("{}.getHandle(\"{}\", {})", CacheAccessor.class.getName(), accessorName, position * 2);
+            CtField getter = new CtField(handleType, GETTER_PREFIX + position, accessorClass);
+            getter.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+            accessorClass.addField(getter, CtField.Initializer.byExpr(initializer));
+            if (writable) {
+                initializer = StringUtility.format("{}.getHandle(\"{}\", {})", CacheAccessor.class.getName(), accessorName, position * 2 + 1);
+                CtField setter = new CtField(handleType, SETTER_PREFIX + position, accessorClass);
+                setter.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+                accessorClass.addField(setter, CtField.Initializer.byExpr(initializer));
+            }
+        }
+
+        StringBuilder methodBuffer = new StringBuilder();
+        methodBuffer.append(StringUtility.format("public {} getIndexValue({} instance, int index) {", comparableType, identityType));
+        for (int index = 0; index < indexFields.size(); index++) {
+            methodBuffer.append(StringUtility.format("if (index == {}) { return {}; }", index, getIndex(indexFields.get(index), "instance", positions)));
+        }
+        methodBuffer.append(StringUtility.format("throw new {}(String.valueOf(index));", IndexOutOfBoundsException.class.getName()));
+        methodBuffer.append("}");
+        accessorClass.addMethod(CtNewMethod.make(methodBuffer.toString(), accessorClass));
+
+        methodBuffer = new StringBuilder();
+        methodBuffer.append(StringUtility.format("public void getIndexValues({} instance, {}[] values) {", identityType, comparableType));
+        for (int index = 0; index < indexFields.size(); index++) {
+            methodBuffer.append(StringUtility.format("values[{}] = {};", index, getIndex(indexFields.get(index), "instance", positions)));
+        }
+        methodBuffer.append("}");
+        accessorClass.addMethod(CtNewMethod.make(methodBuffer.toString(), accessorClass));
+
+        methodBuffer = new StringBuilder();
+        methodBuffer.append(StringUtility.format("public {} getOrderValue({} instance, int index) {", comparableType, identityType));
+        for (int index = 0; index < orderFields.size(); index++) {
+            methodBuffer.append(StringUtility.format("if (index == {}) { return {}; }", index, getIndex(orderFields.get(index), "instance", positions)));
+        }
+        methodBuffer.append(StringUtility.format("throw new {}(String.valueOf(index));", IndexOutOfBoundsException.class.getName()));
+        methodBuffer.append("}");
+        accessorClass.addMethod(CtNewMethod.make(methodBuffer.toString(), accessorClass));
+
+        methodBuffer = new StringBuilder();
+        methodBuffer.append(StringUtility.format("public void copyInstance({} from, {} to) {", identityType, identityType));
+        for (Field field : copyFields) {
+            methodBuffer.append(setField(field, positions));
+        }
+        methodBuffer.append("}");
+        accessorClass.addMethod(CtNewMethod.make(methodBuffer.toString(), accessorClass));
+
+        // 在缓存类型的运行时包定义,句柄在访问器类初始化时读取
+        handles.put(accessorName, fieldHandles.toArray(new MethodHandle[fieldHandles.size()]));
+        try {
+            Class<?> accessorType = accessorClass.toClass(clazz);
+            Class.forName(accessorName, true, accessorType.getClassLoader());
+            return accessorType;
+        } finally {
+            handles.remove(accessorName);
+        }
+    }
+
+}
@@ -4,15 +4,19 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
+import org.apache.commons.lang3.reflect.TypeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +31,11 @@ import com.jstarcraft.core.common.reflection.ReflectionUtility;
 import com.jstarcraft.core.utility.ClassUtility;
 import com.jstarcraft.core.utility.StringUtility;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
 /**
  * 缓存信息
  * 
@@ -48,15 +57,38 @@ public class CacheInformation {
     private Class<? extends IdentityObject> cacheClass;
     /** 缓存构造器 */
     private Constructor<? extends IdentityObject> cacheConstructor;
+    /** 标识类型 */
+    private Class<?> identityClass;
     /** 缓存配置 */
     private CacheConfiguration cacheConfiguration;
     /** 索引信息 */
     private Map<String, Field> indexInformations;
+    /** 索引名称(按序号) */
+    private String[] indexNames;
+    /** 索引序号 */
+    private Map<String, Integer> indexPositions;
+    /** 有序索引信息 */
+    private Map<String, Field> orderInformations;
+    /** 有序索引名称(按序号) */
+    private String[] orderNames;
+    /** 有序索引序号 */
+    private Map<String, Integer> orderPositions;
+    /** 访问器 */
+    private CacheAccessor cacheAccessor;
     /** 变更信息 */
     private Map<Method, Integer> methodIds;
 
     private List<HashSet<Object>> methodChanges;
 
+    /** 变更字段(位序号对应{@link CacheChange#fields()}的字段) */
+    private List<Field> changeFields;
+
+    /** 方法变更的字段(null表示全部字段) */
+    private List<BitSet> methodFields;
+
+    /** 有序索引对应的变更字段 */
+    private BitSet orderFields;
+
     private CacheInformation() {
     }
 
@@ -85,6 +117,111 @@ public class CacheInformation {
         return result;
     }
 
+    /**
+     * 获取字段变更影响的索引名称
+     * 
+     * @param fields 变更的字段位图(null表示全部字段)
+     * @return
+     */
+    public Collection<String> getIndexNames(BitSet fields) {
+        if (fields == null) {
+            return getIndexNames();
+        }
+        HashSet<String> result = new HashSet<String>();
+        for (int index = fields.nextSetBit(0); index >= 0; index = fields.nextSetBit(index + 1)) {
+            Field field = changeFields.get(index);
+            if (indexInformations.get(field.getName()) == field) {
+                result.add(field.getName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取索引的类型(基本类型转换为包装类型)
+     * 
+     * @param name
+     * @return
+     */
+    public Class<?> getIndexClass(String name) {
+        Field field = indexInformations.get(name);
+        if (field == null) {
+            String message = StringUtility.format("获取缓存[{}]的索引[{}]异常", cacheClass.getName(), name);
+            LOGGER.error(message);
+            throw new CacheException(message);
+        }
+        return ClassUtility.primitiveToWrapper(field.getType());
+    }
+
+    /**
+     * 获取有序索引的名称集合
+     * 
+     * @return
+     */
+    public Collection<String> getOrderNames() {
+        return new ArrayList<>(orderInformations.keySet());
+    }
+
+    /**
+     * 获取实体的有序索引值
+     * 
+     * @param entity
+     * @param name
+     * @return
+     */
+    public Comparable getOrderValue(IdentityObject entity, String name) {
+        Integer position = orderPositions.get(name);
+        if (position == null) {
+            String message = StringUtility.format("获取缓存[{}]的有序索引[{}]异常", cacheClass.getName(), name);
+            LOGGER.error(message);
+            throw new CacheException(message);
+        }
+        return cacheAccessor.getOrderValue(entity, position);
+    }
+
+    /**
+     * 获取实体指定序号的有序索引值(与{@link #getOrderName(int)}对应)
+     * 
+     * @param entity
+     * @param position
+     * @return
+     */
+    public Comparable getOrderValue(IdentityObject entity, int position) {
+        return cacheAccessor.getOrderValue(entity, position);
+    }
+
+    /**
+     * 获取有序索引的数量
+     * 
+     * @return
+     */
+    public int getOrderSize() {
+        return orderNames.length;
+    }
+
+    /**
+     * 获取指定序号的有序索引名称
+     * 
+     * @param position
+     * @return
+     */
+    public String getOrderName(int position) {
+        return orderNames[position];
+    }
+
+    /**
+     * 字段变更是否影响有序索引
+     * 
+     * @param fields 变更的字段位图(null表示全部字段)
+     * @return
+     */
+    public boolean hasOrders(BitSet fields) {
+        if (fields == null) {
+            return orderNames.length > 0;
+        }
+        return fields.intersects(orderFields);
+    }
+
     /**
      * 获取实体的索引键=值
      * 
@@ -92,15 +229,13 @@ public class CacheInformation {
      * @return
      */
     public Comparable getIndexValue(IdentityObject entity, String name) {
-        Field information = indexInformations.get(name);
-        try {
-            Object value = information.get(entity);
-            return (Comparable) value;
-        } catch (Exception exception) {
+        Integer position = indexPositions.get(name);
+        if (position == null) {
             String message = StringUtility.format("获取缓存[{}]的索引[{}]异常", cacheClass.getName(), name);
-            LOGGER.error(message, exception);
-            throw new CacheException(message, exception);
+            LOGGER.error(message);
+            throw new CacheException(message);
         }
+        return cacheAccessor.getIndexValue(entity, position);
     }
 
     /**
@@ -110,20 +245,70 @@ public class CacheInformation {
      * @return
      */
     public Map<String, Comparable> getIndexValues(IdentityObject entity) {
-        Map<String, Comparable> values = new HashMap<>();
-        for (Entry<String, Field> keyValue : indexInformations.entrySet()) {
-            try {
-                Object value = keyValue.getValue().get(entity);
-                values.put(keyValue.getKey(), (Comparable) value);
-            } catch (Exception exception) {
-                String message = StringUtility.format("获取缓存[{}]的索引[{}]异常", cacheClass.getName(), keyValue.getKey());
-                LOGGER.error(message, exception);
-                throw new CacheException(message, exception);
-            }
+        Comparable[] values = getIndexValues(entity, null);
+        Map<String, Comparable> indexValues = new HashMap<>();
+        for (int position = 0; position < values.length; position++) {
+            indexValues.put(indexNames[position], values[position]);
         }
+        return indexValues;
+    }
+
+    /**
+     * 获取实体的索引值(按序号,与{@link #getIndexName(int)}对应)
+     * 
+     * @param entity
+     * @param values
+     *            可复用的数组(null或者长度不足时分配新数组)
+     * @return
+     */
+    public Comparable[] getIndexValues(IdentityObject entity, Comparable[] values) {
+        if (values == null || values.length < indexNames.length) {
+            values = new Comparable[indexNames.length];
+        }
+        cacheAccessor.getIndexValues(entity, values);
         return values;
     }
 
+    /**
+     * 获取索引的数量
+     * 
+     * @return
+     */
+    public int getIndexSize() {
+        return indexNames.length;
+    }
+
+    /**
+     * 获取指定序号的索引名称
+     * 
+     * @param position
+     * @return
+     */
+    public String getIndexName(int position) {
+        return indexNames[position];
+    }
+
+    /**
+     * 获取指定名称的索引序号
+     * 
+     * @param name
+     * @return 索引不存在时为-1
+     */
+    public int getIndexPosition(String name) {
+        Integer position = indexPositions.get(name);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * 复制实例
+     * 
+     * @param from
+     * @param to
+     */
+    public void copyInstance(IdentityObject from, IdentityObject to) {
+        cacheAccessor.copyInstance(from, to);
+    }
+
     /**
      * 是否存在指定名称的索引
      * 
@@ -149,6 +334,55 @@ public class CacheInformation {
         return cacheClass;
     }
 
+    /**
+     * 获取标识类型
+     * 
+     * @return 无法确定时为Comparable
+     */
+    public Class<?> getIdentityClass() {
+        return identityClass;
+    }
+
+    /**
+     * 创建标识集合
+     * 
+     * <pre>
+     * Integer/Long标识使用fastutil的原始类型集合,避免装箱对象与HashMap.Node的开销.
+     * </pre>
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <K> Set<K> createIdentitySet() {
+        if (identityClass == Integer.class) {
+            return (Set<K>) new IntOpenHashSet();
+        }
+        if (identityClass == Long.class) {
+            return (Set<K>) new LongOpenHashSet();
+        }
+        return new HashSet<>();
+    }
+
+    /**
+     * 创建标识映射
+     * 
+     * <pre>
+     * Integer/Long标识使用fastutil的原始类型映射,避免装箱对象与HashMap.Node的开销.
+     * </pre>
+     * 
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> createIdentityMap() {
+        if (identityClass == Integer.class) {
+            return (Map<K, V>) new Int2ObjectOpenHashMap<V>();
+        }
+        if (identityClass == Long.class) {
+            return (Map<K, V>) new Long2ObjectOpenHashMap<V>();
+        }
+        return new HashMap<>();
+    }
+
     /**
      * 获取缓存实例
      * 
@@ -182,6 +416,24 @@ public class CacheInformation {
         return cacheConfiguration;
     }
 
+    /**
+     * 获取实例到期时间(秒)
+     * 
+     * @return
+     */
+    public int getExpire() {
+        return cacheConfiguration.expire();
+    }
+
+    /**
+     * 获取实例刷新时间(秒)
+     * 
+     * @return
+     */
+    public int getRefresh() {
+        return cacheConfiguration.refresh();
+    }
+
     public int getMethodId(Method method) {
         return methodIds.get(method);
     }
@@ -190,6 +442,38 @@ public class CacheInformation {
         return methodChanges.get(methodId);
     }
 
+    /**
+     * 获取方法变更的字段
+     * 
+     * @param methodId
+     * @return 字段位图(null表示全部字段,不能修改)
+     */
+    public BitSet getMethodFields(Integer methodId) {
+        return methodFields.get(methodId);
+    }
+
+    /**
+     * 获取实体的变更字段名称=值
+     * 
+     * @param entity
+     * @param fields
+     * @return
+     */
+    public Map<String, Object> getFieldValues(IdentityObject entity, BitSet fields) {
+        Map<String, Object> values = new HashMap<>();
+        for (int index = fields.nextSetBit(0); index >= 0; index = fields.nextSetBit(index + 1)) {
+            Field field = changeFields.get(index);
+            try {
+                values.put(field.getName(), field.get(entity));
+            } catch (Exception exception) {
+                String message = StringUtility.format("获取缓存[{}]的字段[{}]异常", cacheClass.getName(), field.getName());
+                LOGGER.error(message, exception);
+                throw new CacheException(message, exception);
+            }
+        }
+        return values;
+    }
+
     /**
      * 检查指定类型是否为缓存类型
      * 
@@ -230,8 +514,11 @@ public class CacheInformation {
             throw new CacheConfigurationException(message);
         }
         instance.cacheConfiguration = clazz.getAnnotation(CacheConfiguration.class);
+        // 标识信息
+        Type identityType = TypeUtils.getTypeArguments(clazz, IdentityObject.class).get(IdentityObject.class.getTypeParameters()[0]);
+        instance.identityClass = identityType instanceof Class ? ClassUtility.primitiveToWrapper((Class<?>) identityType) : Comparable.class;
         // 索引信息
-        HashMap<String, Field> indexInformations = new HashMap<>();
+        LinkedHashMap<String, Field> indexInformations = new LinkedHashMap<>();
         if (instance.cacheConfiguration.unit().equals(Unit.REGION) && instance.cacheConfiguration.indexes().length != 1) {
             String message = StringUtility.format("类型[{}]的缓存配置必须有且只有一个索引", clazz.getName());
             LOGGER.error(message);
@@ -255,9 +542,54 @@ public class CacheInformation {
             indexInformations.put(field.getName(), field);
         }
         instance.indexInformations = indexInformations;
+        instance.indexNames = indexInformations.keySet().toArray(new String[indexInformations.size()]);
+        HashMap<String, Integer> indexPositions = new HashMap<>();
+        for (int position = 0; position < instance.indexNames.length; position++) {
+            indexPositions.put(instance.indexNames[position], position);
+        }
+        instance.indexPositions = indexPositions;
+        // 有序索引信息
+        LinkedHashMap<String, Field> orderInformations = new LinkedHashMap<>();
+        if (instance.cacheConfiguration.unit().equals(Unit.REGION) && instance.cacheConfiguration.orders().length != 0) {
+            String message = StringUtility.format("类型[{}]的缓存配置不支持有序索引", clazz.getName());
+            LOGGER.error(message);
+            throw new CacheConfigurationException(message);
+        }
+        for (String order : instance.cacheConfiguration.orders()) {
+            Field field = null;
+            try {
+                field = ReflectionUtility.getField(clazz, order);
+            } catch (Exception exception) {
+                String message = StringUtility.format("类型[{}]的缓存配置指定的有序索引[{}]不存在", clazz.getName(), order);
+                LOGGER.error(message, exception);
+                throw new CacheConfigurationException(message);
+            }
+            if (field == null) {
+                String message = StringUtility.format("类型[{}]的缓存配置指定的有序索引[{}]不存在", clazz.getName(), order);
+                LOGGER.error(message);
+                throw new CacheConfigurationException(message);
+            }
+            if (!Comparable.class.isAssignableFrom(ClassUtility.primitiveToWrapper(field.getType()))) {
+                String message = StringUtility.format("类型[{}]的有序索引[{}]必须为Comparable类型", clazz.getName(), field.getName());
+                LOGGER.error(message);
+                throw new CacheConfigurationException(message);
+            }
+            ReflectionUtility.makeAccessible(field);
+            orderInformations.put(field.getName(), field);
+        }
+        instance.orderInformations = orderInformations;
+        instance.orderNames = orderInformations.keySet().toArray(new String[orderInformations.size()]);
+        HashMap<String, Integer> orderPositions = new HashMap<>();
+        for (int position = 0; position < instance.orderNames.length; position++) {
+            orderPositions.put(instance.orderNames[position], position);
+        }
+        instance.orderPositions = orderPositions;
+        instance.cacheAccessor = CacheAccessor.instanceOf(clazz, new ArrayList<>(indexInformations.values()), new ArrayList<>(orderInformations.values()));
         // 方法信息
         HashMap<Method, Integer> methodIds = new HashMap<>();
         List<HashSet<Object>> methodChanges = new LinkedList<>();
+        List<Field> changeFields = new ArrayList<>();
+        List<BitSet> methodFields = new LinkedList<>();
         ReflectionUtility.doWithMethods(clazz, (method) -> {
             Integer methodId = methodIds.get(method);
             if (methodId == null) {
@@ -272,6 +604,26 @@ public class CacheInformation {
                 }
             }
             methodChanges.add(cacheValues);
+            BitSet fields = null;
+            if (cacheChange != null && cacheChange.fields().length > 0) {
+                fields = new BitSet();
+                for (String name : cacheChange.fields()) {
+                    Field field = ReflectionUtility.getField(clazz, name);
+                    if (field == null) {
+                        String message = StringUtility.format("类型[{}]的方法[{}]指定的变更字段[{}]不存在", clazz.getName(), method.getName(), name);
+                        LOGGER.error(message);
+                        throw new CacheConfigurationException(message);
+                    }
+                    int index = changeFields.indexOf(field);
+                    if (index < 0) {
+                        index = changeFields.size();
+                        ReflectionUtility.makeAccessible(field);
+                        changeFields.add(field);
+                    }
+                    fields.set(index);
+                }
+            }
+            methodFields.add(fields);
         }, (method) -> {
             if (OBJECT_METHODS.contains(method)) {
                 return false;
@@ -283,6 +635,16 @@ public class CacheInformation {
         });
         instance.methodIds = methodIds;
         instance.methodChanges = new ArrayList<>(methodChanges);
+        instance.changeFields = changeFields;
+        instance.methodFields = new ArrayList<>(methodFields);
+        BitSet orderFields = new BitSet();
+        for (int index = 0; index < changeFields.size(); index++) {
+            Field field = changeFields.get(index);
+            if (orderInformations.get(field.getName()) == field) {
+                orderFields.set(index);
+            }
+        }
+        instance.orderFields = orderFields;
         return instance;
     }
 
@@ -0,0 +1,66 @@
+package com.jstarcraft.core.cache;
+
+/**
+ * 缓存失效事件
+ * 
+ * <pre>
+ * 由{@link CacheInvalidator}批量发布,一个事件只包含一个缓存类型的标识.
+ * 通过编解码器传输的通道需要把此类型与标识类型加入编解码定义.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class CacheInvalidation {
+
+    /** 发布节点 */
+    private String node;
+
+    /** 缓存类型(类名) */
+    private String clazz;
+
+    /** 版本(同一节点同一缓存类型连续递增) */
+    private long version;
+
+    /** 失效的标识(为null表示整个缓存失效) */
+    private Object[] identities;
+
+    /** 可能变更的索引名称(为null表示未知,所有索引都可能变更) */
+    private String[] indexes;
+
+    CacheInvalidation() {
+    }
+
+    public CacheInvalidation(String node, String clazz, long version, Object[] identities) {
+        this(node, clazz, version, identities, null);
+    }
+
+    public CacheInvalidation(String node, String clazz, long version, Object[] identities, String[] indexes) {
+        this.node = node;
+        this.clazz = clazz;
+        this.version = version;
+        this.identities = identities;
+        this.indexes = indexes;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public String getClazz() {
+        return clazz;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Object[] getIdentities() {
+        return identities;
+    }
+
+    public String[] getIndexes() {
+        return indexes;
+    }
+
+}
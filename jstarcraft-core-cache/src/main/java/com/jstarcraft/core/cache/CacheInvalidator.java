@@ -0,0 +1,507 @@
+package com.jstarcraft.core.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.persistence.PersistenceManager;
+import com.jstarcraft.core.cache.persistence.PersistenceMonitor;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.event.EventChannel;
+import com.jstarcraft.core.event.EventMode;
+import com.jstarcraft.core.event.EventMonitor;
+import com.jstarcraft.core.utility.NameThreadFactory;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 缓存失效器
+ * 
+ * <pre>
+ * 多个节点缓存相同的实体时,通过主题模式的{@link EventChannel}传播实体的变更,使其它节点的缓存失效.
+ * 发布:
+ * 本地的创建/修改/删除在持久层完成以后记录(其它节点重新装载时能读到新值),相同缓存类型的相同标识合并;
+ * 同时记录可能变更的索引名称(部分修改只包括变更字段的索引);
+ * 其它节点批量重新读取失效的实例并原地刷新正在使用的实例,无法定位旧索引值时只清理这些索引;
+ * 每隔interval毫秒批量发布{@link CacheInvalidation},每条最多size个标识,每秒最多rate条;
+ * 积压的标识超过一秒的发布量(size*rate)时合并为整个缓存失效,避免失效风暴压垮其它节点.
+ * 接收:
+ * 忽略本节点发布的事件;同一节点同一缓存类型的版本不连续时先缓存超前的版本等待乱序的事件,
+ * 超前的版本超过{@link #REORDER_SIZE}个或者等待超过{@link #REORDER_TIME}毫秒仍然不连续(事件丢失)时使整个缓存失效.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class CacheInvalidator implements EventMonitor<CacheInvalidation> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidator.class);
+
+    /** 乱序窗口:最多缓存的超前版本数量 */
+    static final int REORDER_SIZE = 16;
+
+    /** 乱序窗口:超前版本的最长等待时间(毫秒) */
+    static final long REORDER_TIME = 1000L;
+
+    /**
+     * 持久监听器
+     * 
+     * <pre>
+     * 记录持久成功的变更,同时转发给原来的监听器.
+     * </pre>
+     */
+    private class InvalidationMonitor implements PersistenceMonitor {
+
+        private final String clazz;
+
+        private final CacheInformation information;
+
+        private final PersistenceMonitor monitor;
+
+        private InvalidationMonitor(String clazz, CacheInformation information, PersistenceMonitor monitor) {
+            this.clazz = clazz;
+            this.information = information;
+            this.monitor = monitor;
+        }
+
+        @Override
+        public void notifyOperate(PersistenceOperation operation, Object id, IdentityObject<?> object, Exception exception) {
+            notifyOperate(operation, id, object, null, exception);
+        }
+
+        @Override
+        public void notifyOperate(PersistenceOperation operation, Object id, IdentityObject<?> object, BitSet fields, Exception exception) {
+            if (exception == null) {
+                // 创建与删除影响所有索引
+                Collection<String> names = operation == PersistenceOperation.UPDATE ? information.getIndexNames(fields) : information.getIndexNames();
+                invalidateInstance(clazz, id, names);
+            }
+            if (monitor != null) {
+                monitor.notifyOperate(operation, id, object, fields, exception);
+            }
+        }
+
+        @Override
+        public void notifyBatch(int size, long time) {
+            if (monitor != null) {
+                monitor.notifyBatch(size, time);
+            }
+        }
+
+    }
+
+    /** 节点 */
+    private final String node;
+
+    /** 事件通道 */
+    private final EventChannel channel;
+
+    /** 每条事件的最大标识数量 */
+    private final int size;
+
+    /** 每秒的最大事件数量 */
+    private final int rate;
+
+    /** 发布间隔(毫秒) */
+    private final long interval;
+
+    /** 缓存类型->缓存管理器 */
+    private final Map<String, EntityCacheManager> managers = new ConcurrentHashMap<>();
+
+    /** 等待发布的标识(key:缓存类型, value:标识,为null表示整个缓存失效) */
+    private final Map<String, Set<Object>> pendings = new LinkedHashMap<>();
+
+    /** 等待发布的标识可能变更的索引名称(key:缓存类型,与pendings一起访问) */
+    private final Map<String, Set<String>> pendingIndexes = new HashMap<>();
+
+    /** 发布版本(只在发布线程访问) */
+    private final Map<String, Long> publishVersions = new HashMap<>();
+
+    /** 接收窗口(key:节点+缓存类型) */
+    private final Map<String, ReceiveWindow> receiveWindows = new ConcurrentHashMap<>();
+
+    /** 发布的事件数量 */
+    private final AtomicLong publishCount = new AtomicLong();
+
+    /** 接收的事件数量 */
+    private final AtomicLong receiveCount = new AtomicLong();
+
+    /** 合并为整个缓存失效的次数 */
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    /** 发布调度器 */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 
+     * @param node 节点名称(每个节点唯一)
+     * @param channel 主题模式的事件通道
+     * @param size 每条事件的最大标识数量
+     * @param rate 每秒的最大事件数量
+     * @param interval 发布间隔(毫秒)
+     */
+    public CacheInvalidator(String node, EventChannel channel, int size, int rate, long interval) {
+        if (node == null || channel == null || size <= 0 || rate <= 0 || interval <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (channel.getMode() != EventMode.TOPIC) {
+            throw new CacheConfigurationException("缓存失效器的事件通道[" + channel.getName() + "]不是[" + EventMode.TOPIC + "]模式");
+        }
+        this.node = node;
+        this.channel = channel;
+        this.size = size;
+        this.rate = rate;
+        this.interval = interval;
+    }
+
+    /**
+     * 关联缓存管理器
+     * 
+     * <pre>
+     * 通过持久监听器记录本地的变更,必须在缓存管理器被使用之前关联.
+     * </pre>
+     * 
+     * @param manager
+     */
+    void attachManager(EntityCacheManager manager) {
+        String clazz = manager.getCacheInformation().getCacheClass().getName();
+        managers.put(clazz, manager);
+        PersistenceManager persistence = manager.getPersistence();
+        if (persistence != null) {
+            persistence.setMonitor(new InvalidationMonitor(clazz, manager.getCacheInformation(), persistence.getMonitor()));
+        }
+    }
+
+    /**
+     * 启动失效器
+     */
+    synchronized void start() {
+        if (scheduler != null) {
+            throw new CacheConfigurationException();
+        }
+        channel.registerMonitor(Collections.singleton(CacheInvalidation.class), this);
+        NameThreadFactory factory = new NameThreadFactory("缓存失效线程");
+        scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int budget = (int) Math.max(1L, rate * interval / 1000L);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                publish(budget);
+            } catch (Throwable throwable) {
+                LOGGER.error("发布缓存失效事件异常", throwable);
+            }
+            try {
+                checkWindows();
+            } catch (Throwable throwable) {
+                LOGGER.error("检查缓存失效事件乱序窗口异常", throwable);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止失效器(发布所有等待的标识)
+     */
+    synchronized void stop() {
+        if (scheduler == null) {
+            throw new CacheConfigurationException();
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(interval * 10L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        publish(Integer.MAX_VALUE);
+        channel.unregisterMonitor(Collections.singleton(CacheInvalidation.class), this);
+    }
+
+    /**
+     * 记录本地变更的标识
+     * 
+     * @param clazz
+     * @param id
+     * @param names 可能变更的索引名称
+     */
+    private void invalidateInstance(String clazz, Object id, Collection<String> names) {
+        synchronized (pendings) {
+            if (!pendings.containsKey(clazz)) {
+                pendings.put(clazz, new LinkedHashSet<>());
+            }
+            Set<Object> identities = pendings.get(clazz);
+            if (identities == null) {
+                // 已经合并为整个缓存失效
+                return;
+            }
+            identities.add(id);
+            Set<String> indexes = pendingIndexes.get(clazz);
+            if (indexes == null) {
+                indexes = new HashSet<>();
+                pendingIndexes.put(clazz, indexes);
+            }
+            indexes.addAll(names);
+            if (identities.size() > size * rate) {
+                pendings.put(clazz, null);
+                pendingIndexes.remove(clazz);
+                overflowCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 发布等待的标识
+     * 
+     * @param budget 最多发布的事件数量,剩余的标识等待下次发布
+     */
+    private void publish(int budget) {
+        List<CacheInvalidation> invalidations = new ArrayList<>();
+        synchronized (pendings) {
+            Iterator<Entry<String, Set<Object>>> iterator = pendings.entrySet().iterator();
+            while (budget > 0 && iterator.hasNext()) {
+                Entry<String, Set<Object>> keyValue = iterator.next();
+                String clazz = keyValue.getKey();
+                Set<Object> identities = keyValue.getValue();
+                if (identities == null) {
+                    invalidations.add(new CacheInvalidation(node, clazz, nextVersion(clazz), null));
+                    budget--;
+                    iterator.remove();
+                    continue;
+                }
+                // 索引名称是所有等待标识的并集,分批发布时每批都携带
+                Set<String> indexes = pendingIndexes.get(clazz);
+                String[] names = indexes == null ? null : indexes.toArray(new String[indexes.size()]);
+                Iterator<Object> cursor = identities.iterator();
+                while (budget > 0 && cursor.hasNext()) {
+                    Object[] batch = new Object[Math.min(size, identities.size())];
+                    for (int index = 0; index < batch.length; index++) {
+                        batch[index] = cursor.next();
+                        cursor.remove();
+                    }
+                    invalidations.add(new CacheInvalidation(node, clazz, nextVersion(clazz), batch, names));
+                    budget--;
+                }
+                if (identities.isEmpty()) {
+                    iterator.remove();
+                    pendingIndexes.remove(clazz);
+                }
+            }
+        }
+        // 只有发布线程(或者停止时)发布,所以版本是有序的
+        for (CacheInvalidation invalidation : invalidations) {
+            try {
+                channel.triggerEvent(invalidation);
+                publishCount.incrementAndGet();
+            } catch (Exception exception) {
+                String message = StringUtility.format("发布缓存[{}]的失效事件[{}]异常", invalidation.getClazz(), invalidation.getVersion());
+                LOGGER.error(message, exception);
+            }
+        }
+    }
+
+    private long nextVersion(String clazz) {
+        long version = publishVersions.getOrDefault(clazz, 0L) + 1L;
+        publishVersions.put(clazz, version);
+        return version;
+    }
+
+    @Override
+    public void onEvent(CacheInvalidation event) {
+        if (node.equals(event.getNode())) {
+            return;
+        }
+        receiveCount.incrementAndGet();
+        String key = event.getNode() + StringUtility.COLON + event.getClazz();
+        ReceiveWindow window = receiveWindows.computeIfAbsent(key, (name) -> new ReceiveWindow(event.getNode(), event.getClazz()));
+        long lost = window.receive(event.getVersion(), System.currentTimeMillis());
+        if (lost > 0L) {
+            String message = StringUtility.format("节点[{}]的缓存[{}]的失效事件丢失,版本[{}]之后不连续", event.getNode(), event.getClazz(), lost);
+            LOGGER.warn(message);
+        }
+        EntityCacheManager manager = managers.get(event.getClazz());
+        if (manager == null) {
+            // 本节点没有使用此缓存
+            return;
+        }
+        Object[] identities = event.getIdentities();
+        if (identities == null || lost > 0L) {
+            manager.invalidateInstances();
+            return;
+        }
+        Class<?> type = manager.getCacheInformation().getIdentityClass();
+        if (CacheWarmer.getBounds(type) != null) {
+            // 编解码器可能改变数字标识的类型
+            for (int index = 0; index < identities.length; index++) {
+                if (identities[index] instanceof Number) {
+                    identities[index] = CacheWarmer.toIdentity(type, ((Number) identities[index]).longValue());
+                }
+            }
+        }
+        String[] indexes = event.getIndexes();
+        manager.invalidateInstances(Arrays.asList(identities), indexes == null ? null : Arrays.asList(indexes));
+    }
+
+    /**
+     * 检查乱序窗口(在发布线程执行)
+     * 
+     * <pre>
+     * 没有新的事件时,超前的版本等待超时也认为事件丢失.
+     * </pre>
+     */
+    private void checkWindows() {
+        long now = System.currentTimeMillis();
+        for (ReceiveWindow window : receiveWindows.values()) {
+            long lost = window.check(now);
+            if (lost > 0L) {
+                String message = StringUtility.format("节点[{}]的缓存[{}]的失效事件丢失,版本[{}]之后不连续", window.node, window.clazz, lost);
+                LOGGER.warn(message);
+                EntityCacheManager manager = managers.get(window.clazz);
+                if (manager != null) {
+                    manager.invalidateInstances();
+                }
+            }
+        }
+    }
+
+    /**
+     * 接收窗口
+     * 
+     * <pre>
+     * 记录同一节点同一缓存类型连续接收的最大版本与超前的版本.
+     * </pre>
+     */
+    private static class ReceiveWindow {
+
+        private final String node;
+
+        private final String clazz;
+
+        /** 连续接收的最大版本(0表示没有接收) */
+        private long version;
+
+        /** 超前的版本 */
+        private final TreeSet<Long> aheads = new TreeSet<>();
+
+        /** 开始等待超前版本的时刻 */
+        private long aheadTime;
+
+        private ReceiveWindow(String node, String clazz) {
+            this.node = node;
+            this.clazz = clazz;
+        }
+
+        /**
+         * 接收版本
+         * 
+         * @param version
+         * @param now
+         * @return 丢失时返回连续接收的最大版本,否则返回0
+         */
+        private synchronized long receive(long version, long now) {
+            if (this.version == 0L || (version == 1L && this.version > 1L)) {
+                // 第一次收到的事件无法判断是否丢失;版本为1表示发布节点重启
+                this.version = version;
+                aheads.clear();
+                return 0L;
+            }
+            if (version <= this.version || !aheads.add(version)) {
+                // 迟到或者重复的事件
+                return 0L;
+            }
+            if (aheads.size() == 1) {
+                aheadTime = now;
+            }
+            while (!aheads.isEmpty() && aheads.first() == this.version + 1L) {
+                this.version = aheads.pollFirst();
+                aheadTime = now;
+            }
+            return aheads.size() > REORDER_SIZE ? skip() : 0L;
+        }
+
+        /**
+         * 检查超前版本的等待时间
+         * 
+         * @param now
+         * @return 丢失时返回连续接收的最大版本,否则返回0
+         */
+        private synchronized long check(long now) {
+            if (aheads.isEmpty() || now - aheadTime < REORDER_TIME) {
+                return 0L;
+            }
+            return skip();
+        }
+
+        /**
+         * 跳过缺失的版本
+         * 
+         * @return 跳过之前连续接收的最大版本
+         */
+        private long skip() {
+            long last = version;
+            version = aheads.last();
+            aheads.clear();
+            return last;
+        }
+
+    }
+
+    /**
+     * 获取节点名称
+     * 
+     * @return
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * 获取发布的事件数量
+     * 
+     * @return
+     */
+    public long getPublishCount() {
+        return publishCount.get();
+    }
+
+    /**
+     * 获取接收的事件数量(不包括本节点发布的事件)
+     * 
+     * @return
+     */
+    public long getReceiveCount() {
+        return receiveCount.get();
+    }
+
+    /**
+     * 获取合并为整个缓存失效的次数
+     * 
+     * @return
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+}
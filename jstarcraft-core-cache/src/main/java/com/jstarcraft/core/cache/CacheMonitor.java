@@ -23,4 +23,50 @@ public interface CacheMonitor {
      */
     Map<String, Map<String, Integer>> getIndexesCounts();
 
+    /**
+     * 获取标识过滤器避免访问持久层的次数
+     * 
+     * @return
+     */
+    Map<String, Long> getFilterAvoidCounts();
+
+    /**
+     * 获取标识过滤器实测的误判率
+     * 
+     * @return
+     */
+    Map<String, Float> getFilterFalseRates();
+
+    /**
+     * 获取内存的命中率
+     * 
+     * <pre>
+     * 内存策略通过{@link com.jstarcraft.core.cache.transience.TransienceMonitor}报告命中与未命中.
+     * </pre>
+     * 
+     * @return
+     */
+    Map<String, Float> getTransienceHitRates();
+
+    /**
+     * 获取二级内存的命中率(只包含配置了二级内存的缓存)
+     * 
+     * @return
+     */
+    Map<String, Float> getSecondaryHitRates();
+
+    /**
+     * 获取二级内存已分配的堆外字节数(只包含配置了二级内存的缓存)
+     * 
+     * @return
+     */
+    Map<String, Long> getSecondaryOccupiedBytes();
+
+    /**
+     * 获取二级内存丢弃实例的次数(只包含配置了二级内存的缓存)
+     * 
+     * @return
+     */
+    Map<String, Long> getSecondaryDropCounts();
+
 }
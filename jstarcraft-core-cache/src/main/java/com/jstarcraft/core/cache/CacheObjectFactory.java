@@ -1,5 +1,6 @@
 package com.jstarcraft.core.cache;
 
+import com.jstarcraft.core.cache.annotation.CacheConfiguration;
 import com.jstarcraft.core.common.identification.IdentityObject;
 
 /**
@@ -14,4 +15,32 @@ public interface CacheObjectFactory<K extends Comparable, T extends IdentityObje
 
     T instanceOf(K id);
 
+    /**
+     * 获取实例的到期时间(秒)
+     * 
+     * <pre>
+     * 小于等于0表示使用{@link CacheConfiguration#expire()}
+     * </pre>
+     * 
+     * @param instance
+     * @return
+     */
+    default int getExpire(T instance) {
+        return 0;
+    }
+
+    /**
+     * 获取实例的刷新时间(秒)
+     * 
+     * <pre>
+     * 小于等于0表示使用{@link CacheConfiguration#refresh()}
+     * </pre>
+     * 
+     * @param instance
+     * @return
+     */
+    default int getRefresh(T instance) {
+        return 0;
+    }
+
 }
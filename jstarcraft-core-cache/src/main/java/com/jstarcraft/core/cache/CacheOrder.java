@@ -0,0 +1,303 @@
+package com.jstarcraft.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.StampedLock;
+
+import com.jstarcraft.core.cache.exception.CacheException;
+
+/**
+ * 有序索引
+ * 
+ * <pre>
+ * 记录所有实体(不只是被缓存的实体)的索引值,提供范围/排名/计数查询,索引值为null的实体不记录.
+ * 由两部分组成:
+ * 跳表,按照(索引值,标识)排序;
+ * 标识->索引值映射,修改与删除时定位跳表中的旧元素.
+ * 建立(索引扫描)期间变更的标识会被记录,扫描结果不会覆盖这些标识;建立完成之前查询会等待.
+ * 变更使用共享锁(调用方持有标识锁),合并扫描结果使用独占锁,查询不加锁.
+ * 修改不是原子的,查询可能短暂看到同一个标识的新旧两个索引值.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ */
+public class CacheOrder<K extends Comparable> {
+
+    /** 建立时每次合并的标识数量 */
+    private static final int BUILD_SIZE = 1024;
+
+    /** 下界 */
+    private static final int LOWER = -1;
+
+    /** 上界 */
+    private static final int UPPER = 1;
+
+    /**
+     * 有序索引元素
+     * 
+     * <pre>
+     * 先按照索引值再按照标识排序,边界元素没有标识,用于范围查询.
+     * </pre>
+     */
+    private static final class OrderElement implements Comparable<OrderElement> {
+
+        /** 索引值 */
+        private final Comparable value;
+        /** 标识 */
+        private final Comparable id;
+        /** 边界(0表示不是边界) */
+        private final int bound;
+
+        private OrderElement(Comparable value, Comparable id, int bound) {
+            this.value = value;
+            this.id = id;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(OrderElement that) {
+            int compare = value.compareTo(that.value);
+            if (compare != 0) {
+                return compare;
+            }
+            if (bound != 0 || that.bound != 0) {
+                return Integer.compare(bound, that.bound);
+            }
+            return id.compareTo(that.id);
+        }
+
+    }
+
+    /** 名称 */
+    private final String name;
+
+    /** 跳表 */
+    private final ConcurrentSkipListSet<OrderElement> elements = new ConcurrentSkipListSet<>();
+
+    /** 标识->索引值 */
+    private final ConcurrentHashMap<K, Comparable> values = new ConcurrentHashMap<>();
+
+    private final StampedLock lock = new StampedLock();
+
+    /** 建立期间变更的标识(建立完成以后为null) */
+    private volatile Set<K> touches = ConcurrentHashMap.newKeySet();
+
+    /** 建立状态 */
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    CacheOrder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 获取名称
+     * 
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 记录实体的索引值(必须持有标识锁)
+     * 
+     * @param id
+     * @param value 为null表示实体不存在或者索引值为null
+     */
+    public void putValue(K id, Comparable value) {
+        long stamp = lock.readLock();
+        try {
+            Set<K> touches = this.touches;
+            if (touches != null) {
+                touches.add(id);
+            }
+            Comparable old = value == null ? values.remove(id) : values.put(id, value);
+            if (Objects.equals(old, value)) {
+                return;
+            }
+            // 先增加后删除,查询不会错过变更中的标识
+            if (value != null) {
+                elements.add(new OrderElement(value, id, 0));
+            }
+            if (old != null) {
+                elements.remove(new OrderElement(old, id, 0));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 删除实体的索引值(必须持有标识锁)
+     * 
+     * @param id
+     */
+    public void deleteValue(K id) {
+        putValue(id, null);
+    }
+
+    /**
+     * 完成建立有序索引
+     * 
+     * @param snapshot 持久层扫描得到的标识->索引值
+     */
+    public void stopBuild(Map<K, ? extends Comparable> snapshot) {
+        Iterator<? extends Entry<K, ? extends Comparable>> iterator = snapshot.entrySet().iterator();
+        while (true) {
+            long stamp = lock.writeLock();
+            try {
+                Set<K> touches = this.touches;
+                if (touches == null) {
+                    throw new IllegalStateException();
+                }
+                // 分段合并,避免长时间阻塞变更
+                for (int index = 0; index < BUILD_SIZE && iterator.hasNext(); index++) {
+                    Entry<K, ? extends Comparable> keyValue = iterator.next();
+                    K id = keyValue.getKey();
+                    Comparable value = keyValue.getValue();
+                    if (value == null || touches.contains(id)) {
+                        continue;
+                    }
+                    values.put(id, value);
+                    elements.add(new OrderElement(value, id, 0));
+                }
+                if (!iterator.hasNext()) {
+                    this.touches = null;
+                    break;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        ready.complete(null);
+    }
+
+    /**
+     * 放弃建立有序索引(之后的查询都会抛出异常)
+     * 
+     * @param throwable
+     */
+    public void cancelBuild(Throwable throwable) {
+        long stamp = lock.writeLock();
+        try {
+            touches = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        ready.completeExceptionally(throwable);
+    }
+
+    /**
+     * 有序索引是否生效
+     * 
+     * @return
+     */
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    /**
+     * 等待建立完成
+     */
+    private void waitBuild() {
+        if (ready.isDone() && !ready.isCompletedExceptionally()) {
+            return;
+        }
+        try {
+            ready.join();
+        } catch (CompletionException exception) {
+            throw new CacheException("有序索引[" + name + "]建立异常", exception.getCause());
+        }
+    }
+
+    private NavigableSet<OrderElement> getRange(Comparable from, Comparable to) {
+        if (from == null && to == null) {
+            return elements;
+        }
+        if (from == null) {
+            return elements.headSet(new OrderElement(to, null, UPPER), false);
+        }
+        if (to == null) {
+            return elements.tailSet(new OrderElement(from, null, LOWER), false);
+        }
+        if (from.compareTo(to) > 0) {
+            return Collections.emptyNavigableSet();
+        }
+        return elements.subSet(new OrderElement(from, null, LOWER), false, new OrderElement(to, null, UPPER), false);
+    }
+
+    /**
+     * 获取索引值在范围内的标识(按照索引值升序)
+     * 
+     * @param from 下限(包含),null表示不限
+     * @param to 上限(包含),null表示不限
+     * @return
+     */
+    public List<K> getIdentities(Comparable from, Comparable to) {
+        waitBuild();
+        List<K> identities = new ArrayList<>();
+        for (OrderElement element : getRange(from, to)) {
+            identities.add((K) element.id);
+        }
+        return identities;
+    }
+
+    /**
+     * 获取索引值排名靠前的标识
+     * 
+     * @param size 数量
+     * @param descending 是否降序
+     * @return
+     */
+    public List<K> getIdentities(int size, boolean descending) {
+        waitBuild();
+        List<K> identities = new ArrayList<>(Math.min(size, values.size()));
+        Iterator<OrderElement> iterator = descending ? elements.descendingIterator() : elements.iterator();
+        while (identities.size() < size && iterator.hasNext()) {
+            identities.add((K) iterator.next().id);
+        }
+        return identities;
+    }
+
+    /**
+     * 获取索引值在范围内的实体数量
+     * 
+     * <pre>
+     * 跳表没有子树计数,复杂度与范围内的实体数量成正比.
+     * </pre>
+     * 
+     * @param from 下限(包含),null表示不限
+     * @param to 上限(包含),null表示不限
+     * @return
+     */
+    public int getCount(Comparable from, Comparable to) {
+        waitBuild();
+        if (from == null && to == null) {
+            return values.size();
+        }
+        return getRange(from, to).size();
+    }
+
+    /**
+     * 获取记录的实体数量
+     * 
+     * @return
+     */
+    public int getSize() {
+        return values.size();
+    }
+
+}
@@ -1,9 +1,16 @@
 package com.jstarcraft.core.cache;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -11,13 +18,20 @@ import org.slf4j.LoggerFactory;
 
 import com.jstarcraft.core.cache.annotation.CacheConfiguration;
 import com.jstarcraft.core.cache.annotation.CacheConfiguration.Unit;
+import com.jstarcraft.core.cache.annotation.CacheFilter;
+import com.jstarcraft.core.cache.annotation.CacheWarmup;
 import com.jstarcraft.core.cache.exception.CacheConfigurationException;
 import com.jstarcraft.core.cache.exception.CacheException;
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStatistics;
 import com.jstarcraft.core.cache.transience.TransienceStrategy;
 import com.jstarcraft.core.common.identification.IdentityObject;
 import com.jstarcraft.core.common.lifecycle.LifecycleState;
+import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.utility.NameThreadFactory;
+import com.jstarcraft.core.utility.StringUtility;
 
 /**
  * 缓存服务
@@ -29,8 +43,26 @@ public class CacheService implements CacheMonitor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheService.class);
 
+    /** 默认IO队列容量 */
+    private static final int EXECUTOR_CAPACITY = 4096;
+
+    /** 默认IO线程(未配置执行器时由缓存管理器共享,负责异步装载与后台刷新) */
+    static final Executor DEFAULT_EXECUTOR;
+
+    static {
+        int size = Runtime.getRuntime().availableProcessors() * 2;
+        NameThreadFactory factory = new NameThreadFactory("缓存IO线程");
+        DEFAULT_EXECUTOR = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(EXECUTOR_CAPACITY), (runnable) -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     /** 访问器 */
     private final StorageAccessor accessor;
+    /** IO执行器 */
+    private final Executor executor;
 
     /** 缓存类型信息 */
     private final Map<Class<?>, CacheInformation> cacheInformations = new HashMap<>();
@@ -44,14 +76,32 @@ public class CacheService implements CacheMonitor {
     /** 区域缓存管理器 */
     private final Map<Class<? extends IdentityObject>, RegionCacheManager> regionManagers = new HashMap<>();
 
+    /** 快照(为null表示不使用快照) */
+    private CacheSnapshot snapshot;
+    /** 失效器(为null表示不与其它节点同步) */
+    private CacheInvalidator invalidator;
+
     /** 状态 */
     private AtomicReference<LifecycleState> state = new AtomicReference<>(null);
 
     public CacheService(Set<Class<? extends IdentityObject>> cacheClasses, StorageAccessor accessor, Set<TransienceStrategy> transienceStrategies, Set<PersistenceStrategy> persistenceStrategies) {
+        this(cacheClasses, accessor, transienceStrategies, persistenceStrategies, null);
+    }
+
+    /**
+     * 
+     * @param cacheClasses
+     * @param accessor
+     * @param transienceStrategies
+     * @param persistenceStrategies
+     * @param executor 异步装载使用的IO执行器(为null时使用默认执行器)
+     */
+    public CacheService(Set<Class<? extends IdentityObject>> cacheClasses, StorageAccessor accessor, Set<TransienceStrategy> transienceStrategies, Set<PersistenceStrategy> persistenceStrategies, Executor executor) {
         if (cacheClasses == null || accessor == null) {
             throw new IllegalArgumentException();
         }
         this.accessor = accessor;
+        this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
         this.transienceStrategies = new HashMap<>();
         for (TransienceStrategy strategy : transienceStrategies) {
             this.transienceStrategies.put(strategy.getName(), strategy);
@@ -70,6 +120,41 @@ public class CacheService implements CacheMonitor {
         }
     }
 
+    /**
+     * 设置快照
+     * 
+     * <pre>
+     * 必须在启动之前设置.
+     * 启动时装载实体缓存的快照,停止时(持久策略清空以后)保存实体缓存的快照.
+     * 运行期间不保存快照:可能错过未持久化的修改,异常退出以后无法装载.
+     * </pre>
+     * 
+     * @param directory 快照目录
+     */
+    public void setSnapshot(File directory) {
+        if (state.get() != null) {
+            throw new CacheConfigurationException("缓存服务已启动,不能设置快照");
+        }
+        this.snapshot = directory == null ? null : new CacheSnapshot(directory, accessor);
+    }
+
+    /**
+     * 设置失效器
+     * 
+     * <pre>
+     * 必须在启动之前设置.
+     * 本地实体缓存的变更在持久化以后通知其它节点,其它节点的变更使本地实体缓存失效.
+     * </pre>
+     * 
+     * @param invalidator
+     */
+    public void setInvalidator(CacheInvalidator invalidator) {
+        if (state.get() != null) {
+            throw new CacheConfigurationException("缓存服务已启动,不能设置失效器");
+        }
+        this.invalidator = invalidator;
+    }
+
     /**
      * 启动缓存服务
      */
@@ -83,6 +168,46 @@ public class CacheService implements CacheMonitor {
         for (PersistenceStrategy strategy : persistenceStrategies.values()) {
             strategy.start(accessor, cacheInformations);
         }
+        if (invalidator != null) {
+            invalidator.start();
+        }
+        if (snapshot != null) {
+            for (CacheInformation information : cacheInformations.values()) {
+                Class<? extends IdentityObject> cacheClass = information.getCacheClass();
+                if (information.getCacheUnit() != Unit.ENTITY || !snapshot.hasSnapshot(cacheClass)) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                int count = snapshot.load((EntityCacheManager) getEntityManager(cacheClass));
+                if (count >= 0) {
+                    String message = StringUtility.format("缓存[{}]的快照装载完成,装载{}个实例,耗时{}毫秒", cacheClass.getName(), count, System.currentTimeMillis() - now);
+                    LOGGER.info(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * 保存所有实体缓存的快照(持久策略清空以后)
+     * 
+     * <pre>
+     * 只保存已经使用的实体缓存,区域缓存与有序索引不保存(有序索引启动时从持久层重建).
+     * </pre>
+     */
+    private void snapshot() {
+        if (snapshot == null) {
+            throw new CacheConfigurationException("缓存服务未设置快照");
+        }
+        for (Class<?> cacheClass : cacheInformations.keySet()) {
+            EntityCacheManager manager = entityManagers.get(cacheClass);
+            if (manager == null) {
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            int count = snapshot.save(manager, true);
+            String message = StringUtility.format("缓存[{}]的快照保存完成,保存{}个实例,耗时{}毫秒", cacheClass.getName(), count, System.currentTimeMillis() - now);
+            LOGGER.info(message);
+        }
     }
 
     /**
@@ -98,6 +223,14 @@ public class CacheService implements CacheMonitor {
         for (PersistenceStrategy strategy : persistenceStrategies.values()) {
             strategy.stop();
         }
+        // 持久策略清空以后才能通知所有的变更
+        if (invalidator != null) {
+            invalidator.stop();
+        }
+        // 持久策略清空以后快照才与持久层一致
+        if (snapshot != null) {
+            snapshot();
+        }
     }
 
     /**
@@ -131,11 +264,92 @@ public class CacheService implements CacheMonitor {
         CacheConfiguration configuration = information.getCacheConfiguration();
         TransienceStrategy transienceStrategy = transienceStrategies.get(configuration.transienceStrategy());
         PersistenceStrategy persistenceStrategy = persistenceStrategies.get(configuration.persistenceStrategy());
-        manager = new EntityCacheManager(information, transienceStrategy, persistenceStrategy);
+        TransienceStrategy secondaryStrategy = null;
+        if (!configuration.secondaryStrategy().isEmpty()) {
+            secondaryStrategy = transienceStrategies.get(configuration.secondaryStrategy());
+            if (secondaryStrategy == null) {
+                throw new CacheException("[" + cacheClass.getName() + "]的二级内存策略[" + configuration.secondaryStrategy() + "]不存在");
+            }
+        }
+        manager = new EntityCacheManager(information, transienceStrategy, secondaryStrategy, persistenceStrategy, executor);
+        if (invalidator != null) {
+            invalidator.attachManager(manager);
+        }
         entityManagers.put(information.getCacheClass(), manager);
+        if (manager.getFilter() != null) {
+            buildFilter(cacheClass, manager.getFilter());
+        }
+        for (Object order : manager.getOrders()) {
+            buildOrder(cacheClass, (CacheOrder) order);
+        }
         return manager;
     }
 
+    /**
+     * 通过主键扫描建立标识过滤器
+     * 
+     * <pre>
+     * 在IO执行器执行,建立完成之前过滤器不生效.
+     * </pre>
+     * 
+     * @param cacheClass
+     * @param filter
+     */
+    private void buildFilter(Class<? extends IdentityObject> cacheClass, IdentityFilter filter) {
+        CacheFilter annotation = cacheClass.getAnnotation(CacheFilter.class);
+        try {
+            executor.execute(() -> {
+                try {
+                    long now = System.currentTimeMillis();
+                    Map identities = accessor.queryIdentities(cacheClass, annotation.identity(), new StorageCondition<>(ConditionType.All));
+                    filter.stopBuild(identities.keySet());
+                    String message = StringUtility.format("缓存[{}]的标识过滤器建立完成,扫描{}个标识,耗时{}毫秒", cacheClass.getName(), identities.size(), System.currentTimeMillis() - now);
+                    LOGGER.info(message);
+                } catch (Throwable throwable) {
+                    filter.cancelBuild();
+                    String message = StringUtility.format("缓存[{}]的标识过滤器建立异常", cacheClass.getName());
+                    LOGGER.error(message, throwable);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            filter.cancelBuild();
+            String message = StringUtility.format("缓存[{}]的标识过滤器建立异常", cacheClass.getName());
+            LOGGER.error(message, exception);
+        }
+    }
+
+    /**
+     * 通过索引扫描建立有序索引
+     * 
+     * <pre>
+     * 在IO执行器执行,建立完成之前有序索引的查询会等待.
+     * </pre>
+     * 
+     * @param cacheClass
+     * @param order
+     */
+    private void buildOrder(Class<? extends IdentityObject> cacheClass, CacheOrder order) {
+        try {
+            executor.execute(() -> {
+                try {
+                    long now = System.currentTimeMillis();
+                    Map values = accessor.queryIdentities(cacheClass, order.getName(), new StorageCondition<>(ConditionType.All));
+                    order.stopBuild(values);
+                    String message = StringUtility.format("缓存[{}]的有序索引[{}]建立完成,扫描{}个索引值,耗时{}毫秒", cacheClass.getName(), order.getName(), values.size(), System.currentTimeMillis() - now);
+                    LOGGER.info(message);
+                } catch (Throwable throwable) {
+                    order.cancelBuild(throwable);
+                    String message = StringUtility.format("缓存[{}]的有序索引[{}]建立异常", cacheClass.getName(), order.getName());
+                    LOGGER.error(message, throwable);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            order.cancelBuild(exception);
+            String message = StringUtility.format("缓存[{}]的有序索引[{}]建立异常", cacheClass.getName(), order.getName());
+            LOGGER.error(message, exception);
+        }
+    }
+
     /**
      * 获取指定的区域缓存管理器
      * 
@@ -160,11 +374,40 @@ public class CacheService implements CacheMonitor {
         CacheConfiguration configuration = information.getCacheConfiguration();
         TransienceStrategy transienceStrategy = transienceStrategies.get(configuration.transienceStrategy());
         PersistenceStrategy persistenceStrategy = persistenceStrategies.get(configuration.persistenceStrategy());
-        manager = new RegionCacheManager(information, transienceStrategy, persistenceStrategy);
+        manager = new RegionCacheManager(information, transienceStrategy, persistenceStrategy, executor);
         regionManagers.put(information.getCacheClass(), manager);
         return manager;
     }
 
+    /**
+     * 预热缓存
+     * 
+     * <pre>
+     * 按照{@link CacheWarmup}的声明,使用指定数量的工作线程从持久层批量装载实例.
+     * 预热在后台执行,通过返回的{@link CacheWarmer}查询进度或者取消.
+     * </pre>
+     * 
+     * @param threadSize 工作线程数量
+     * @return
+     */
+    public CacheWarmer warmup(int threadSize) {
+        if (state.get() != LifecycleState.STARTED) {
+            throw new CacheException("缓存服务未启动");
+        }
+        Map<CacheInformation, EntityCacheManager> managers = new LinkedHashMap<>();
+        for (CacheInformation information : cacheInformations.values()) {
+            Class<? extends IdentityObject> cacheClass = information.getCacheClass();
+            if (cacheClass.getAnnotation(CacheWarmup.class) == null) {
+                continue;
+            }
+            if (information.getCacheUnit() != Unit.ENTITY) {
+                throw new CacheConfigurationException("[" + cacheClass.getName() + "]的缓存单位不是[" + Unit.ENTITY + "],不支持预热");
+            }
+            managers.put(information, (EntityCacheManager) getEntityManager(cacheClass));
+        }
+        return new CacheWarmer(accessor, managers, threadSize);
+    }
+
     /**
      * 获取访问器
      * 
@@ -205,4 +448,73 @@ public class CacheService implements CacheMonitor {
         }
         return result;
     }
+
+    @Override
+    public Map<String, Long> getFilterAvoidCounts() {
+        Map<String, Long> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            IdentityFilter filter = keyValue.getValue().getFilter();
+            if (filter != null) {
+                result.put(keyValue.getKey().getName(), filter.getAvoidCount());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Float> getFilterFalseRates() {
+        Map<String, Float> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            IdentityFilter filter = keyValue.getValue().getFilter();
+            if (filter != null) {
+                result.put(keyValue.getKey().getName(), filter.getFalseRate());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Float> getTransienceHitRates() {
+        Map<String, Float> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            result.put(keyValue.getKey().getName(), keyValue.getValue().getTransienceStatistics().getHitRate());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Float> getSecondaryHitRates() {
+        Map<String, Float> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            TransienceStatistics statistics = keyValue.getValue().getSecondaryStatistics();
+            if (statistics != null) {
+                result.put(keyValue.getKey().getName(), statistics.getHitRate());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getSecondaryOccupiedBytes() {
+        Map<String, Long> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            TransienceStatistics statistics = keyValue.getValue().getSecondaryStatistics();
+            if (statistics != null) {
+                result.put(keyValue.getKey().getName(), statistics.getOccupiedBytes());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getSecondaryDropCounts() {
+        Map<String, Long> result = new HashMap<>();
+        for (Entry<Class<? extends IdentityObject>, EntityCacheManager> keyValue : entityManagers.entrySet()) {
+            TransienceStatistics statistics = keyValue.getValue().getSecondaryStatistics();
+            if (statistics != null) {
+                result.put(keyValue.getKey().getName(), statistics.getDropCount());
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,306 @@
+package com.jstarcraft.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.codec.ContentCodec;
+import com.jstarcraft.core.codec.specification.CodecDefinition;
+import com.jstarcraft.core.codec.standard.StandardContentCodec;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 缓存快照
+ * 
+ * <pre>
+ * 把实体缓存的实例(内存与二级内存)与已经装载的索引保存到快照文件,重启时批量装载,避免从持久层重新预热.
+ * 每个缓存类型一个快照文件,头部记录编解码定义,干净标记与持久层的高水位(总数与最大主键),所以文件可以独立解码.
+ * 文件格式为[魔数][定义][干净][总数][最大主键][记录]...[结束][实例数量][魔数],
+ * 实例记录为[类型][长度][内容],索引记录为[类型][名称][长度][索引值][数量]([长度][标识])...
+ * 写入先通过缓冲的文件通道顺序写到临时文件,刷盘以后原子替换,所以快照文件总是完整的.
+ * 高水位只能发现创建与删除,无法发现快照以后的修改,所以只有干净的快照可以装载:
+ * 干净标记只在持久策略停止(所有修改已经持久化)以后保存的快照中写入,运行期间(例如定时)的快照在装载时丢弃.
+ * 装载时持久层的高水位还必须与快照一致(停止以后持久层可能被其它进程修改),否则快照被丢弃;
+ * 快照装载(或者丢弃)以后删除,避免重复装载过期的快照.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class CacheSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    /** 快照魔数 */
+    private static final int MAGIC = 0x534E5031;
+
+    /** 快照后缀 */
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    /** 临时文件后缀 */
+    private static final String TEMPORARY_SUFFIX = ".temporary";
+
+    /** 结束记录 */
+    private static final byte END = 0;
+
+    /** 实例记录 */
+    private static final byte INSTANCE = 1;
+
+    /** 索引记录 */
+    private static final byte INDEX = 2;
+
+    /** 缓冲大小(字节) */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** 装载时每次缓存的实例数量 */
+    private static final int BATCH_SIZE = 1000;
+
+    /** 空内容 */
+    private static final byte[] EMPTY = new byte[0];
+
+    /** 快照目录 */
+    private final File directory;
+
+    /** 访问器 */
+    private final StorageAccessor accessor;
+
+    CacheSnapshot(File directory, StorageAccessor accessor) {
+        this.directory = directory;
+        this.accessor = accessor;
+    }
+
+    private File getFile(Class<?> clazz) {
+        return new File(directory, clazz.getName() + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * 获取持久层的最大主键
+     * 
+     * @param clazz
+     * @param type
+     * @return 非整数主键返回null
+     */
+    private Comparable getMaximum(Class<? extends IdentityObject> clazz, Class<?> type) {
+        long[] bounds = CacheWarmer.getBounds(type);
+        if (bounds == null) {
+            return null;
+        }
+        return accessor.maximumIdentity(clazz, CacheWarmer.toIdentity(type, bounds[0]), CacheWarmer.toIdentity(type, bounds[1]));
+    }
+
+    private static void writeBytes(DataOutputStream stream, byte[] bytes) throws IOException {
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream stream) throws IOException {
+        byte[] bytes = new byte[stream.readInt()];
+        stream.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * 是否存在快照
+     * 
+     * @param clazz
+     * @return
+     */
+    boolean hasSnapshot(Class<?> clazz) {
+        return getFile(clazz).isFile();
+    }
+
+    /**
+     * 保存快照
+     * 
+     * @param manager
+     * @param clean 是否干净(持久策略已经停止,所有修改已经持久化)
+     * @return 保存的实例数量
+     */
+    int save(EntityCacheManager manager, boolean clean) {
+        CacheInformation information = manager.getCacheInformation();
+        Class<? extends IdentityObject> clazz = information.getCacheClass();
+        Class<?> identityClass = information.getIdentityClass();
+        byte[] definition = CodecDefinition.toBytes(CodecDefinition.instanceOf(clazz, identityClass));
+        ContentCodec codec = new StandardContentCodec(CodecDefinition.fromBytes(definition));
+        File file = getFile(clazz);
+        File temporary = new File(directory, clazz.getName() + TEMPORARY_SUFFIX);
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException(directory.getAbsolutePath());
+            }
+            // 先记录高水位,保存期间的创建与删除会让快照被丢弃
+            long total = accessor.countInstances(clazz);
+            Comparable maximum = getMaximum(clazz, identityClass);
+            int[] count = new int[1];
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING); DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+                stream.writeInt(MAGIC);
+                writeBytes(stream, definition);
+                stream.writeBoolean(clean);
+                stream.writeLong(total);
+                writeBytes(stream, maximum == null ? EMPTY : codec.encode(identityClass, maximum));
+                manager.iterateInstances((id, object) -> {
+                    try {
+                        stream.writeByte(INSTANCE);
+                        writeBytes(stream, codec.encode(clazz, object));
+                        count[0]++;
+                    } catch (IOException exception) {
+                        throw new CacheException(exception);
+                    }
+                });
+                manager.iterateIdentities((index, identities) -> {
+                    CacheIndex cacheIndex = (CacheIndex) index;
+                    Class<?> indexClass = information.getIndexClass(cacheIndex.getName());
+                    try {
+                        stream.writeByte(INDEX);
+                        stream.writeUTF(cacheIndex.getName());
+                        writeBytes(stream, codec.encode(indexClass, cacheIndex.getValue()));
+                        stream.writeInt(((List) identities).size());
+                        for (Object id : (List) identities) {
+                            writeBytes(stream, codec.encode(identityClass, id));
+                        }
+                    } catch (IOException exception) {
+                        throw new CacheException(exception);
+                    }
+                });
+                stream.writeByte(END);
+                stream.writeInt(count[0]);
+                stream.writeInt(MAGIC);
+                stream.flush();
+                channel.force(true);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count[0];
+        } catch (Exception exception) {
+            temporary.delete();
+            String message = StringUtility.format("保存缓存[{}]的快照[{}]时异常", clazz.getName(), file.getAbsolutePath());
+            LOGGER.error(message, exception);
+            throw new CacheException(message, exception);
+        }
+    }
+
+    /**
+     * 快照是否完整(结尾是魔数)
+     * 
+     * @param file
+     * @return
+     */
+    private boolean checkTail(File file) throws IOException {
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            if (access.length() < Integer.BYTES * 2) {
+                return false;
+            }
+            access.seek(access.length() - Integer.BYTES);
+            return access.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * 装载快照
+     * 
+     * <pre>
+     * 必须在缓存接受访问之前调用,装载成功或者确认快照无效(不完整,不是停止时保存,高水位不一致)时删除快照.
+     * 读取或者校验异常(例如持久层暂时不可用)时保留快照并且抛出异常,使缓存服务启动失败,
+     * 避免运行期间的修改使保留的快照过期(高水位不能发现修改).
+     * </pre>
+     * 
+     * @param manager
+     * @return 装载的实例数量,快照不存在或者被丢弃时返回-1
+     * @throws CacheException 读取或者校验快照异常
+     */
+    int load(EntityCacheManager manager) {
+        CacheInformation information = manager.getCacheInformation();
+        Class<? extends IdentityObject> clazz = information.getCacheClass();
+        Class<?> identityClass = information.getIdentityClass();
+        File file = getFile(clazz);
+        if (!file.isFile()) {
+            return -1;
+        }
+        // 只有装载成功或者确认快照无效时才删除
+        boolean discard = true;
+        try {
+            if (!checkTail(file)) {
+                LOGGER.warn("缓存[{}]的快照[{}]不完整", clazz.getName(), file.getAbsolutePath());
+                return -1;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ); DataInputStream stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE))) {
+                if (stream.readInt() != MAGIC) {
+                    LOGGER.warn("缓存[{}]的快照[{}]不完整", clazz.getName(), file.getAbsolutePath());
+                    return -1;
+                }
+                ContentCodec codec = new StandardContentCodec(CodecDefinition.fromBytes(readBytes(stream)));
+                if (!stream.readBoolean()) {
+                    // 运行期间的快照可能错过未持久化的修改
+                    LOGGER.warn("缓存[{}]的快照[{}]不是停止时保存的", clazz.getName(), file.getAbsolutePath());
+                    return -1;
+                }
+                long total = stream.readLong();
+                byte[] bytes = readBytes(stream);
+                Comparable maximum = bytes.length == 0 ? null : (Comparable) codec.decode(identityClass, bytes);
+                // 校验高水位
+                if (total != accessor.countInstances(clazz) || !Objects.equals(maximum, getMaximum(clazz, identityClass))) {
+                    LOGGER.warn("缓存[{}]的快照[{}]与持久层的高水位不一致", clazz.getName(), file.getAbsolutePath());
+                    return -1;
+                }
+                discard = false;
+                int count = 0;
+                List<IdentityObject> instances = new ArrayList<>(BATCH_SIZE);
+                while (true) {
+                    byte type = stream.readByte();
+                    if (type == END) {
+                        break;
+                    }
+                    if (type == INSTANCE) {
+                        instances.add((IdentityObject) codec.decode(clazz, readBytes(stream)));
+                        if (instances.size() == BATCH_SIZE) {
+                            count += manager.cacheInstances(instances).size();
+                            instances.clear();
+                        }
+                    } else if (type == INDEX) {
+                        String name = stream.readUTF();
+                        Comparable value = (Comparable) codec.decode(information.getIndexClass(name), readBytes(stream));
+                        Object[] identities = new Object[stream.readInt()];
+                        for (int index = 0; index < identities.length; index++) {
+                            identities[index] = codec.decode(identityClass, readBytes(stream));
+                        }
+                        manager.cacheIdentities(new CacheIndex(name, value), Arrays.asList(identities));
+                    } else {
+                        throw new IOException("未知的快照记录:" + type);
+                    }
+                }
+                if (!instances.isEmpty()) {
+                    count += manager.cacheInstances(instances).size();
+                }
+                discard = true;
+                return count;
+            }
+        } catch (Exception exception) {
+            discard = false;
+            String message = StringUtility.format("装载缓存[{}]的快照[{}]时异常", clazz.getName(), file.getAbsolutePath());
+            throw new CacheException(message, exception);
+        } finally {
+            if (discard && !file.delete()) {
+                LOGGER.warn("删除缓存[{}]的快照[{}]失败", clazz.getName(), file.getAbsolutePath());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,438 @@
+package com.jstarcraft.core.cache;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.annotation.CacheWarmup;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.common.conversion.ConversionUtility;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.reflection.ReflectionUtility;
+import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.utility.ClassUtility;
+import com.jstarcraft.core.utility.NameThreadFactory;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 缓存预热器
+ * 
+ * <pre>
+ * 按照{@link CacheWarmup}的声明从{@link StorageAccessor}批量查询实例,转换为代理以后批量保存到实体缓存管理器.
+ * 所有缓存类型共享同一个工作线程池,每个缓存类型拆分为多个任务并行执行:
+ * ALL:整数主键按照minimumIdentity/maximumIdentity拆分为多个主键范围,每个范围通过minimumIdentity跳过空洞并按照batch分段查询;
+ * 其它类型的主键按照countInstances拆分为多个分页,通过iterate遍历.
+ * INDEX:每个索引值一个任务,实例保存以后预热对应的索引.
+ * ORDER:通过queryOrder一次排序并且限制数量的查询获取前size个实例,按照batch分段保存.
+ * 预热只补充缓存中不存在的实例,取消以后正在执行的查询完成即停止.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class CacheWarmer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheWarmer.class);
+
+    /** 每个工作线程对应的主键范围数量 */
+    private static final int RANGE_SIZE = 4;
+
+    private final StorageAccessor accessor;
+
+    private final int threadSize;
+
+    private final ExecutorService executor;
+
+    /** 是否取消 */
+    private final AtomicBoolean cancel = new AtomicBoolean();
+
+    /** 已装载数量 */
+    private final LongAdder loadCount = new LongAdder();
+
+    /** 预计数量 */
+    private final LongAdder totalCount = new LongAdder();
+
+    /** 开始时间 */
+    private final long startTime;
+
+    /** 结束时间 */
+    private final AtomicLong stopTime = new AtomicLong();
+
+    private final CompletableFuture<Void> future;
+
+    CacheWarmer(StorageAccessor accessor, Map<CacheInformation, EntityCacheManager> managers, int threadSize) {
+        if (threadSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.accessor = accessor;
+        this.threadSize = threadSize;
+        NameThreadFactory factory = new NameThreadFactory("缓存预热线程");
+        this.executor = new ThreadPoolExecutor(threadSize, threadSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startTime = System.currentTimeMillis();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(managers.size());
+        for (Entry<CacheInformation, EntityCacheManager> keyValue : managers.entrySet()) {
+            futures.add(warmup(keyValue.getKey(), keyValue.getValue()));
+        }
+        this.future = CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).whenComplete((value, throwable) -> {
+            stopTime.set(System.currentTimeMillis());
+            executor.shutdown();
+            String message = StringUtility.format("缓存预热{},装载{}个实例,耗时{}毫秒,速率{}个/秒", cancel.get() ? "取消" : "完成", getLoadCount(), stopTime.get() - startTime, getRate());
+            LOGGER.info(message);
+        });
+    }
+
+    /**
+     * 预热指定的缓存类型
+     * 
+     * @param information
+     * @param manager
+     * @return
+     */
+    private CompletableFuture<Void> warmup(CacheInformation information, EntityCacheManager manager) {
+        Class<? extends IdentityObject> clazz = information.getCacheClass();
+        CacheWarmup warmup = clazz.getAnnotation(CacheWarmup.class);
+        long now = System.currentTimeMillis();
+        LongAdder count = new LongAdder();
+        // 拆分任务本身也在工作线程执行,避免阻塞调用者
+        return CompletableFuture.supplyAsync(() -> {
+            switch (warmup.mode()) {
+            case ALL:
+                return splitAll(clazz, warmup, manager, count);
+            case INDEX:
+                return splitIndex(clazz, warmup, manager, information.hasIndex(warmup.name()), count);
+            case ORDER:
+                return splitOrder(clazz, warmup, manager, count);
+            default:
+                throw new CacheConfigurationException();
+            }
+        }, executor).thenCompose((tasks) -> {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(CompletableFuture.runAsync(task, executor));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+        }).handle((value, throwable) -> {
+            if (throwable != null) {
+                String message = StringUtility.format("缓存[{}]预热异常", clazz.getName());
+                LOGGER.error(message, throwable);
+            } else {
+                String message = StringUtility.format("缓存[{}]预热{},装载{}个实例,耗时{}毫秒", clazz.getName(), cancel.get() ? "取消" : "完成", count.sum(), System.currentTimeMillis() - now);
+                LOGGER.info(message);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 保存实例到缓存
+     * 
+     * @param clazz
+     * @param manager
+     * @param instances
+     * @param count
+     */
+    private void install(Class<?> clazz, EntityCacheManager manager, Collection<? extends IdentityObject> instances, LongAdder count) {
+        if (instances.isEmpty()) {
+            return;
+        }
+        manager.cacheInstances(instances);
+        count.add(instances.size());
+        loadCount.add(instances.size());
+        if (LOGGER.isDebugEnabled()) {
+            String message = StringUtility.format("缓存[{}]预热进度{}/{},速率{}个/秒", clazz.getName(), getLoadCount(), getTotalCount(), getRate());
+            LOGGER.debug(message);
+        }
+    }
+
+    /**
+     * 拆分全部实例的任务
+     * 
+     * @param clazz
+     * @param warmup
+     * @param manager
+     * @param count
+     * @return
+     */
+    private List<Runnable> splitAll(Class clazz, CacheWarmup warmup, EntityCacheManager manager, LongAdder count) {
+        List<Runnable> tasks = new ArrayList<>();
+        int batch = warmup.batch();
+        long total = accessor.countInstances(clazz);
+        totalCount.add(total);
+        if (total == 0L) {
+            return tasks;
+        }
+        Class<?> type;
+        try {
+            type = ClassUtility.primitiveToWrapper(clazz.getMethod("getId").getReturnType());
+        } catch (Exception exception) {
+            throw new CacheException(exception);
+        }
+        long[] bounds = getBounds(type);
+        if (bounds == null) {
+            // 非整数主键按照分页遍历
+            long pages = (total + batch - 1) / batch;
+            for (long page = 1; page <= pages; page++) {
+                StoragePagination pagination = new StoragePagination((int) page, batch);
+                tasks.add(() -> {
+                    if (cancel.get()) {
+                        return;
+                    }
+                    List<IdentityObject> instances = new ArrayList<>(batch);
+                    accessor.iterate(instances::add, clazz, pagination);
+                    install(clazz, manager, instances, count);
+                });
+            }
+            return tasks;
+        }
+        Comparable minimum = accessor.minimumIdentity(clazz, toIdentity(type, bounds[0]), toIdentity(type, bounds[1]));
+        Comparable maximum = accessor.maximumIdentity(clazz, toIdentity(type, bounds[0]), toIdentity(type, bounds[1]));
+        if (minimum == null || maximum == null) {
+            return tasks;
+        }
+        long from = ((Number) minimum).longValue();
+        long to = ((Number) maximum).longValue();
+        long span = to - from;
+        if (span < 0L) {
+            // 溢出
+            span = Long.MAX_VALUE;
+        }
+        long width = span / (threadSize * RANGE_SIZE) + 1L;
+        for (long left = from; left <= to; left += width) {
+            long right = left > to - width + 1L ? to : left + width - 1L;
+            long start = left;
+            tasks.add(() -> warmupRange(clazz, warmup, manager, type, start, right, count));
+            if (right == to) {
+                break;
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * 按照batch分段预热主键范围[left, right]
+     * 
+     * @param clazz
+     * @param warmup
+     * @param manager
+     * @param type
+     * @param left
+     * @param right
+     * @param count
+     */
+    private void warmupRange(Class clazz, CacheWarmup warmup, EntityCacheManager manager, Class<?> type, long left, long right, LongAdder count) {
+        String identity = warmup.identity();
+        long batch = warmup.batch();
+        long cursor = left;
+        while (!cancel.get()) {
+            // 跳过主键空洞
+            Comparable minimum = accessor.minimumIdentity(clazz, toIdentity(type, cursor), toIdentity(type, right));
+            if (minimum == null) {
+                return;
+            }
+            long from = ((Number) minimum).longValue();
+            long to = from > right - batch + 1L ? right : from + batch - 1L;
+            StorageCondition condition = new StorageCondition<>(ConditionType.Between, toIdentity(type, from), toIdentity(type, to));
+            List<IdentityObject> instances = accessor.queryInstances(clazz, identity, condition);
+            install(clazz, manager, instances, count);
+            if (to == right) {
+                return;
+            }
+            cursor = to + 1L;
+        }
+    }
+
+    /**
+     * 拆分指定索引值的任务
+     * 
+     * @param clazz
+     * @param warmup
+     * @param manager
+     * @param index 是否缓存索引
+     * @param count
+     * @return
+     */
+    private List<Runnable> splitIndex(Class clazz, CacheWarmup warmup, EntityCacheManager manager, boolean index, LongAdder count) {
+        String name = warmup.name();
+        Field field = ReflectionUtility.getField(clazz, name);
+        if (field == null) {
+            String message = StringUtility.format("类型[{}]的缓存预热指定的索引[{}]不存在", clazz.getName(), name);
+            throw new CacheConfigurationException(message);
+        }
+        Class<?> type = ClassUtility.primitiveToWrapper(field.getType());
+        List<Runnable> tasks = new ArrayList<>(warmup.values().length);
+        for (String string : warmup.values()) {
+            Comparable value = ConversionUtility.convert(string, type);
+            tasks.add(() -> {
+                if (cancel.get()) {
+                    return;
+                }
+                List<IdentityObject> instances = accessor.queryInstances(clazz, name, new StorageCondition<>(ConditionType.Equal, value));
+                totalCount.add(instances.size());
+                install(clazz, manager, instances, count);
+                if (index) {
+                    manager.getIdentities(new CacheIndex(name, value));
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * 拆分排序字段前N个实例的任务
+     * 
+     * @param clazz
+     * @param warmup
+     * @param manager
+     * @param count
+     * @return
+     */
+    private List<Runnable> splitOrder(Class clazz, CacheWarmup warmup, EntityCacheManager manager, LongAdder count) {
+        int batch = warmup.batch();
+        List<IdentityObject> orders = accessor.queryOrder(clazz, warmup.name(), warmup.size(), warmup.descending());
+        int size = orders.size();
+        totalCount.add(size);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += batch) {
+            List<IdentityObject> instances = orders.subList(from, Math.min(from + batch, size));
+            tasks.add(() -> {
+                if (cancel.get()) {
+                    return;
+                }
+                install(clazz, manager, instances, count);
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * 获取整数主键的范围
+     * 
+     * @param type
+     * @return 非整数主键返回null
+     */
+    static long[] getBounds(Class<?> type) {
+        if (type == Long.class) {
+            return new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        }
+        if (type == Integer.class) {
+            return new long[] { Integer.MIN_VALUE, Integer.MAX_VALUE };
+        }
+        if (type == Short.class) {
+            return new long[] { Short.MIN_VALUE, Short.MAX_VALUE };
+        }
+        if (type == Byte.class) {
+            return new long[] { Byte.MIN_VALUE, Byte.MAX_VALUE };
+        }
+        return null;
+    }
+
+    static Comparable toIdentity(Class<?> type, long value) {
+        if (type == Integer.class) {
+            return (int) value;
+        }
+        if (type == Short.class) {
+            return (short) value;
+        }
+        if (type == Byte.class) {
+            return (byte) value;
+        }
+        return value;
+    }
+
+    /**
+     * 取消预热
+     */
+    public void cancel() {
+        cancel.set(true);
+    }
+
+    /**
+     * 是否已经取消
+     * 
+     * @return
+     */
+    public boolean isCancelled() {
+        return cancel.get();
+    }
+
+    /**
+     * 是否已经结束(完成或者取消)
+     * 
+     * @return
+     */
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * 等待预热结束
+     * 
+     * @param timeout
+     * @param unit
+     * @return 是否在指定时间内结束
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            future.get(timeout, unit);
+            return true;
+        } catch (TimeoutException exception) {
+            return false;
+        } catch (ExecutionException exception) {
+            throw new CacheException(exception.getCause());
+        }
+    }
+
+    /**
+     * 获取已装载的实例数量
+     * 
+     * @return
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * 获取预计装载的实例数量(INDEX模式在查询以后累加)
+     * 
+     * @return
+     */
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * 获取装载速率(个/秒)
+     * 
+     * @return
+     */
+    public long getRate() {
+        long stop = stopTime.get();
+        long duration = (stop == 0L ? System.currentTimeMillis() : stop) - startTime;
+        return duration == 0L ? 0L : getLoadCount() * 1000L / duration;
+    }
+
+}
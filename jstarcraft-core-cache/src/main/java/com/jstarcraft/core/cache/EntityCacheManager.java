@@ -2,18 +2,25 @@ package com.jstarcraft.core.cache;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jstarcraft.core.cache.annotation.CacheFilter;
 import com.jstarcraft.core.cache.exception.CacheException;
 import com.jstarcraft.core.cache.exception.CacheIdentityException;
 import com.jstarcraft.core.cache.persistence.PersistenceManager;
@@ -21,9 +28,14 @@ import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
 import com.jstarcraft.core.cache.proxy.JavassistEntityProxy;
 import com.jstarcraft.core.cache.proxy.ProxyManager;
 import com.jstarcraft.core.cache.proxy.ProxyTransformer;
+import com.jstarcraft.core.cache.transience.DelayedHashMap;
 import com.jstarcraft.core.cache.transience.TransienceManager;
+import com.jstarcraft.core.cache.transience.TransienceMonitor;
+import com.jstarcraft.core.cache.transience.TransienceStatistics;
 import com.jstarcraft.core.cache.transience.TransienceStrategy;
 import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.lockable.LockTable;
+import com.jstarcraft.core.common.lockable.StripeLockTable;
 
 /**
  * 实体缓存管理器
@@ -37,6 +49,39 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityCacheManager.class);
 
+    /** 默认锁条带数量 */
+    private static final int LOCK_SIZE = 1024;
+
+    /** 删除标记的保留时间(秒) */
+    private static final int DELETION_EXPIRE = 60;
+
+    /**
+     * 实例期限
+     */
+    private static final class CacheTerm<T> {
+
+        /** 实例 */
+        private final T instance;
+        /** 到期时间(毫秒) */
+        private final long expire;
+        /** 刷新时间(毫秒) */
+        private final long refresh;
+        /** 到期时刻 */
+        private final long expireTime;
+        /** 刷新时刻 */
+        private final long refreshTime;
+
+        private CacheTerm(T instance, long expire, long refresh) {
+            long now = System.currentTimeMillis();
+            this.instance = instance;
+            this.expire = expire;
+            this.refresh = refresh;
+            this.expireTime = expire > 0 ? now + expire : Long.MAX_VALUE;
+            this.refreshTime = refresh > 0 ? now + refresh : Long.MAX_VALUE;
+        }
+
+    }
+
     /** 缓存类型 */
     private Class<T> cacheClass;
     /** 缓存配置信息 */
@@ -50,8 +95,25 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
 
     /** 内存 */
     private TransienceManager<K, T> transience;
+    /** 内存统计 */
+    private TransienceStatistics transienceStatistics;
+    /** 二级内存(可选,与内存互斥) */
+    private TransienceManager<K, T> secondary;
+    /** 二级内存统计 */
+    private TransienceStatistics secondaryStatistics;
+    /**
+     * 最近删除的标识
+     * 
+     * <pre>
+     * 淘汰通知可能晚于删除,避免已删除的实例被放回二级内存
+     * </pre>
+     */
+    private Map<K, Boolean> deletions;
     /** 持久 */
     private PersistenceManager<K, T> persistence;
+
+    /** 标识过滤器(可选) */
+    private IdentityFilter<K> filter;
     /**
      * 唯一索引(key:唯一键名称, value:{key:唯一键值, value:缓存对象标识})
      * 
@@ -60,27 +122,420 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
      * </pre>
      */
     private Map<String, TransienceManager<Object, Collection<K>>> indexes;
+    /** 有序索引(key:有序索引名称, value:有序索引) */
+    private Map<String, CacheOrder<K>> orders;
+    /** 有序索引(按序号,与{@link CacheInformation#getOrderName(int)}对应) */
+    private CacheOrder<K>[] orderArray;
 
-    private Object[] hashLocks;
     /** 标识锁 */
-    private Map<K, ReentrantLock> idLocks = new ConcurrentHashMap<K, ReentrantLock>();
+    private LockTable<K> idLocks;
     /** 索引锁 */
-    private Map<CacheIndex, ReentrantLock> indexLocks = new ConcurrentHashMap<>();
+    private LockTable<CacheIndex> indexLocks;
+    /** 读取索引值的缓冲(持有标识锁期间使用,不能跨越方法保存) */
+    private ThreadLocal<Comparable[]> indexValues = new ThreadLocal<Comparable[]>() {
+
+        @Override
+        protected Comparable[] initialValue() {
+            return new Comparable[cacheInformation.getIndexSize()];
+        }
+
+    };
+
+    /** 实例期限(只记录配置了到期或者刷新时间的实例) */
+    private Map<K, CacheTerm<T>> terms = new ConcurrentHashMap<>();
+    /** 正在装载的实例(相同标识的并发装载共享同一个Future) */
+    private Map<K, CompletableFuture<T>> loadings = new ConcurrentHashMap<>();
+    /** 默认到期时间(毫秒) */
+    private long expire;
+    /** 默认刷新时间(毫秒) */
+    private long refresh;
+    /** IO执行器(异步装载与后台刷新) */
+    private Executor executor;
 
     EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy) {
+        this(information, transienceStrategy, persistenceStrategy, CacheService.DEFAULT_EXECUTOR);
+    }
+
+    EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, Executor executor) {
+        this(information, transienceStrategy, null, persistenceStrategy, executor);
+    }
+
+    EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, TransienceStrategy secondaryStrategy, PersistenceStrategy persistenceStrategy, Executor executor) {
+        this(information, transienceStrategy, secondaryStrategy, persistenceStrategy, executor, new StripeLockTable<>(LOCK_SIZE), new StripeLockTable<>(LOCK_SIZE));
+    }
+
+    EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, LockTable<K> idLocks, LockTable<CacheIndex> indexLocks) {
+        this(information, transienceStrategy, persistenceStrategy, CacheService.DEFAULT_EXECUTOR, idLocks, indexLocks);
+    }
+
+    EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, Executor executor, LockTable<K> idLocks, LockTable<CacheIndex> indexLocks) {
+        this(information, transienceStrategy, null, persistenceStrategy, executor, idLocks, indexLocks);
+    }
+
+    EntityCacheManager(final CacheInformation information, TransienceStrategy transienceStrategy, TransienceStrategy secondaryStrategy, PersistenceStrategy persistenceStrategy, Executor executor, LockTable<K> idLocks, LockTable<CacheIndex> indexLocks) {
         this.cacheInformation = information;
         this.cacheClass = (Class<T>) information.getCacheClass();
         this.transienceStrategy = transienceStrategy;
         this.persistenceStrategy = persistenceStrategy;
         this.transformer = new JavassistEntityProxy(this, this.cacheInformation);
-        this.transience = this.transienceStrategy.getTransienceManager(null);
+        this.transienceStatistics = new TransienceStatistics(new TransienceMonitor() {
+
+            @Override
+            public void notifyExchanged(Object key, Object value) {
+                // 实例被内存策略淘汰时清理期限
+                CacheTerm<T> term = terms.get(key);
+                if (term != null) {
+                    if (term.instance == value) {
+                        terms.remove(key, term);
+                    }
+                    // 有期限的实例不进入二级内存
+                    return;
+                }
+                if (secondary != null && value != null && !deletions.containsKey(key)) {
+                    exchangeInstance((K) key, (T) value);
+                }
+            }
+
+        });
+        this.transience = this.transienceStrategy.getTransienceManager(transienceStatistics);
+        if (secondaryStrategy != null) {
+            this.secondaryStatistics = new TransienceStatistics(null);
+            this.secondary = secondaryStrategy.getTransienceManager(secondaryStatistics, cacheClass);
+            this.deletions = DelayedHashMap.instanceOf(DELETION_EXPIRE, DELETION_EXPIRE, null);
+        }
         this.indexes = new ConcurrentHashMap<>();
         Collection<String> indexNames = information.getIndexNames();
         for (String name : indexNames) {
             TransienceManager manager = this.transienceStrategy.getTransienceManager(null);
             indexes.put(name, manager);
         }
+        this.orders = new HashMap<>();
+        this.orderArray = new CacheOrder[information.getOrderSize()];
+        for (int position = 0; position < orderArray.length; position++) {
+            String name = information.getOrderName(position);
+            // 由缓存服务扫描索引值完成建立,建立期间的变更同时写入
+            orderArray[position] = new CacheOrder<>(name);
+            orders.put(name, orderArray[position]);
+        }
         this.persistence = persistenceStrategy.getPersistenceManager(cacheClass);
+        CacheFilter filter = cacheClass.getAnnotation(CacheFilter.class);
+        if (filter != null) {
+            // 由缓存服务扫描主键完成建立,建立期间创建的标识同时写入
+            this.filter = new IdentityFilter<>(filter.elements(), filter.probability(), filter.misses());
+            this.filter.startBuild();
+        }
+        this.idLocks = idLocks;
+        this.indexLocks = indexLocks;
+        this.expire = TimeUnit.SECONDS.toMillis(information.getExpire());
+        this.refresh = TimeUnit.SECONDS.toMillis(information.getRefresh());
+        this.executor = executor;
+    }
+
+    /**
+     * 缓存实例并记录期限
+     * 
+     * @param id
+     * @param object
+     * @param expire
+     * @param refresh
+     */
+    private void cacheInstance(K id, T object, long expire, long refresh) {
+        transience.createInstance(id, object);
+        if (secondary != null) {
+            // 保持与二级内存互斥
+            secondary.removeInstance(id);
+        }
+        if (expire > 0 || refresh > 0) {
+            terms.put(id, new CacheTerm<>(object, expire, refresh));
+        } else if (!terms.isEmpty()) {
+            terms.remove(id);
+        }
+    }
+
+    /**
+     * 使用重新装载的数据更新正在使用的实例(必须持有标识锁)
+     * 
+     * <pre>
+     * 代理对象可能已经被其它线程引用,复制数据而不是替换实例;
+     * 复制在实例的监视器内完成,与持久层的快照互斥.
+     * </pre>
+     * 
+     * @param id
+     * @param current 正在使用的实例
+     * @param object 重新装载的实例
+     * @param expire
+     * @param refresh
+     */
+    private void renewInstance(K id, T current, T object, long expire, long refresh) {
+        if (object != current) {
+            // 旧的索引值与新的索引值同时比较,只有新的索引值使用缓冲
+            Comparable[] olds = cacheInformation.hasIndexes() ? cacheInformation.getIndexValues(current, null) : null;
+            synchronized (current) {
+                cacheInformation.copyInstance(object, current);
+            }
+            if (olds != null) {
+                modifyIndexes(id, olds, cacheInformation.getIndexValues(current, indexValues.get()));
+            }
+            if (!orders.isEmpty()) {
+                modifyOrders(id, current);
+            }
+        }
+        if (expire > 0 || refresh > 0) {
+            terms.put(id, new CacheTerm<>(current, expire, refresh));
+        } else if (!terms.isEmpty()) {
+            terms.remove(id);
+        }
+    }
+
+    /**
+     * 将被淘汰的实例保存到二级内存
+     * 
+     * <pre>
+     * 保存的是非代理的副本,失败只会导致二级内存未命中.
+     * 在标识锁内与修改/删除/装载互斥,复制在实例的监视器内完成;
+     * 淘汰通知可能在持有其它标识锁时触发,只尝试加锁避免死锁.
+     * 被删除,重新装载或者存在未持久修改的实例不保存(以持久层为准).
+     * </pre>
+     * 
+     * @param id
+     * @param object
+     */
+    private void exchangeInstance(K id, T object) {
+        if (!idLocks.tryLock(id)) {
+            return;
+        }
+        try {
+            if (deletions.containsKey(id) || transience.hasInstance(id)) {
+                return;
+            }
+            if (persistence != null && persistence.hasElement(id)) {
+                return;
+            }
+            T instance = (T) cacheInformation.getCacheInstance();
+            synchronized (object) {
+                cacheInformation.copyInstance(object, instance);
+            }
+            secondary.createInstance(id, instance);
+        } catch (Exception exception) {
+            LOGGER.error("保存缓存[" + cacheClass.getName() + "]的实例[" + id + "]到二级内存异常", exception);
+        } finally {
+            idLocks.unlock(id);
+        }
+    }
+
+    /**
+     * 从二级内存取出实例(必须持有标识锁)
+     * 
+     * <pre>
+     * 存在未持久修改时二级内存的副本可能比等待持久的元素旧,丢弃副本由持久层装载.
+     * </pre>
+     * 
+     * @param id
+     * @return
+     */
+    private T takeInstance(K id) {
+        try {
+            if (persistence != null && persistence.hasElement(id)) {
+                secondary.removeInstance(id);
+                return null;
+            }
+            T object = secondary.deleteInstance(id);
+            if (object == null) {
+                return null;
+            }
+            object = transformer.transform(object);
+            cacheInstance(id, object, expire, refresh);
+            return object;
+        } catch (Exception exception) {
+            LOGGER.error("从二级内存装载缓存[" + cacheClass.getName() + "]的实例[" + id + "]异常", exception);
+            return null;
+        }
+    }
+
+    /**
+     * 检索实例
+     * 
+     * <pre>
+     * 到期的实例视为不存在;超过刷新时间的实例继续使用,同时在后台重新装载.
+     * </pre>
+     * 
+     * @param id
+     * @return
+     */
+    private T retrieveInstance(K id) {
+        T object = transience.retrieveInstance(id);
+        if (object == null || terms.isEmpty()) {
+            return object;
+        }
+        CacheTerm<T> term = terms.get(id);
+        if (term == null || term.instance != object) {
+            return object;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= term.expireTime) {
+            if (persistence != null && persistence.hasElement(id)) {
+                // 存在未持久的修改,继续使用当前实例
+                return object;
+            }
+            return null;
+        }
+        if (now >= term.refreshTime) {
+            refreshInstance(id, object);
+        }
+        return object;
+    }
+
+    /**
+     * 后台重新装载实例
+     * 
+     * @param id
+     * @param object
+     */
+    private void refreshInstance(K id, T object) {
+        if (persistence == null) {
+            return;
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (loadings.putIfAbsent(id, future) != null) {
+            // 已经在装载
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(reloadInstance(id));
+                } catch (Throwable throwable) {
+                    LOGGER.error("刷新缓存[" + cacheClass.getName() + "]的实例[" + id + "]异常", throwable);
+                    future.completeExceptionally(throwable);
+                } finally {
+                    loadings.remove(id, future);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // IO线程繁忙,继续使用旧实例,等待下次检索再尝试
+            loadings.remove(id, future);
+            future.complete(object);
+        }
+    }
+
+    /**
+     * 从持久层重新装载实例
+     * 
+     * @param id
+     * @return
+     */
+    private T reloadInstance(K id) {
+        idLocks.lock(id);
+        try {
+            CacheTerm<T> term = terms.get(id);
+            T current = transience.retrieveInstance(id);
+            if (current != null && persistence.hasElement(id)) {
+                // 存在未持久的修改,持久层的记录比当前实例旧
+                return current;
+            }
+            T object = persistence.getInstance(id);
+            if (object == null) {
+                // 实例已经不存在
+                if (term != null && transience.retrieveInstance(id) == term.instance) {
+                    transience.deleteInstance(id);
+                }
+                terms.remove(id);
+                return null;
+            }
+            long expire = term == null ? this.expire : term.expire;
+            long refresh = term == null ? this.refresh : term.refresh;
+            if (current != null) {
+                renewInstance(id, current, object, expire, refresh);
+                return current;
+            }
+            object = transformer.transform(object);
+            cacheInstance(id, object, expire, refresh);
+            return object;
+        } finally {
+            idLocks.unlock(id);
+        }
+    }
+
+    /**
+     * 等待装载
+     * 
+     * <pre>
+     * 相同标识的并发装载(包括后台刷新)共享同一个Future,只有一个线程访问持久层.
+     * </pre>
+     * 
+     * @param id
+     * @param factory 为null时只从持久层装载
+     * @return
+     */
+    private T waitInstance(K id, CacheObjectFactory<K, T> factory) {
+        while (true) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            CompletableFuture<T> current = loadings.putIfAbsent(id, future);
+            if (current == null) {
+                try {
+                    T object = loadInstance(id, factory, true);
+                    future.complete(object);
+                    return object;
+                } catch (RuntimeException exception) {
+                    future.completeExceptionally(exception);
+                    throw exception;
+                } finally {
+                    loadings.remove(id, future);
+                }
+            }
+            T object;
+            try {
+                object = current.join();
+            } catch (CompletionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new CacheException(cause);
+            }
+            if (object != null || factory == null) {
+                return object;
+            }
+            // 共享的装载没有得到实例,由当前线程使用工厂创建
+        }
+    }
+
+    /**
+     * 异步装载
+     * 
+     * <pre>
+     * 与{@link #waitInstance}共享正在装载的Future,调用线程不会等待持久层.
+     * </pre>
+     * 
+     * @param id
+     * @param factory 为null时只从持久层装载
+     * @return
+     */
+    private CompletableFuture<T> loadAsync(K id, CacheObjectFactory<K, T> factory) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> current = loadings.putIfAbsent(id, future);
+        if (current != null) {
+            if (factory == null) {
+                return current;
+            }
+            // 共享的装载没有得到实例时使用工厂创建
+            return current.thenCompose((object) -> object != null ? CompletableFuture.completedFuture(object) : loadAsync(id, factory));
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(loadInstance(id, factory, true));
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                } finally {
+                    loadings.remove(id, future);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            loadings.remove(id, future);
+            future.completeExceptionally(new CacheException(exception));
+        }
+        return future;
     }
 
     private Collection<K> getIndexValueMap(CacheIndex index) {
@@ -90,7 +545,7 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
     private Collection<K> loadIndexValueMap(CacheIndex index) {
         Collection<K> elements = indexes.get(index.getName()).retrieveInstance(index.getValue());
         if (elements == null) {
-            elements = new HashSet<>();
+            elements = cacheInformation.createIdentitySet();
             indexes.get(index.getName()).createInstance(index.getValue(), elements);
             Map<K, Object> identities = persistence.getIdentities(index.getName(), index.getValue());
             elements.addAll(identities.keySet());
@@ -98,6 +553,105 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
         return elements;
     }
 
+    /**
+     * 记录实例的有序索引值(必须持有标识锁)
+     * 
+     * @param id
+     * @param object 为null表示实例被删除
+     */
+    private void modifyOrders(K id, T object) {
+        for (int position = 0; position < orderArray.length; position++) {
+            orderArray[position].putValue(id, object == null ? null : cacheInformation.getOrderValue(object, position));
+        }
+    }
+
+    /**
+     * 维护实例变更的索引值(必须持有标识锁)
+     * 
+     * @param id
+     * @param olds 旧的索引值(按序号)
+     * @param news 新的索引值(按序号)
+     */
+    private void modifyIndexes(K id, Comparable[] olds, Comparable[] news) {
+        TreeSet<CacheIndex> removes = new TreeSet<>();
+        TreeSet<CacheIndex> adds = new TreeSet<>();
+        for (int position = 0; position < olds.length; position++) {
+            if (olds[position] == null ? news[position] == null : olds[position].equals(news[position])) {
+                continue;
+            }
+            String name = cacheInformation.getIndexName(position);
+            removes.add(new CacheIndex(name, olds[position]));
+            adds.add(new CacheIndex(name, news[position]));
+        }
+        if (removes.isEmpty()) {
+            return;
+        }
+        TreeSet<CacheIndex> indexes = new TreeSet<>(removes);
+        indexes.addAll(adds);
+        indexLocks.lock(indexes);
+        try {
+            for (CacheIndex index : removes) {
+                Collection<K> identities = getIndexValueMap(index);
+                if (identities != null) {
+                    identities.remove(id);
+                }
+            }
+            for (CacheIndex index : adds) {
+                Collection<K> identities = getIndexValueMap(index);
+                if (identities != null) {
+                    identities.add(id);
+                }
+            }
+        } finally {
+            indexLocks.unlock(indexes);
+        }
+    }
+
+    /**
+     * 在实例当前索引值的已装载索引中加入或者移除标识(必须持有标识锁)
+     * 
+     * @param id
+     * @param object
+     * @param names 索引名称(null表示所有索引)
+     * @param add 加入或者移除
+     */
+    private void modifyIndexes(K id, T object, Collection<String> names, boolean add) {
+        Comparable[] values = cacheInformation.getIndexValues(object, indexValues.get());
+        TreeSet<CacheIndex> indexes = new TreeSet<>();
+        for (int position = 0; position < values.length; position++) {
+            String name = cacheInformation.getIndexName(position);
+            if (names == null || names.contains(name)) {
+                indexes.add(new CacheIndex(name, values[position]));
+            }
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+        indexLocks.lock(indexes);
+        try {
+            for (CacheIndex index : indexes) {
+                Collection<K> identities = getIndexValueMap(index);
+                if (identities != null) {
+                    if (add) {
+                        identities.add(id);
+                    } else {
+                        identities.remove(id);
+                    }
+                }
+            }
+        } finally {
+            indexLocks.unlock(indexes);
+        }
+    }
+
+    private CacheOrder<K> getOrder(String name) {
+        CacheOrder<K> order = orders.get(name);
+        if (order == null) {
+            throw new CacheException("[" + cacheClass.getName() + "]的有序索引[" + name + "]不存在");
+        }
+        return order;
+    }
+
     @Override
     public int getInstanceCount() {
         return transience.getSize();
@@ -112,87 +666,374 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
         return count;
     }
 
-    private ReentrantLock lockIdLock(K id) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (idLocks) {
-            ReentrantLock lock = idLocks.get(id);
-            if (lock == null) {
-                lock = new ReentrantLock();
-                ReentrantLock value = idLocks.putIfAbsent(id, lock);
-                lock = value != null ? value : lock;
+    /**
+     * 获取标识过滤器
+     * 
+     * @return 未配置{@link CacheFilter}时为null
+     */
+    public IdentityFilter<K> getFilter() {
+        return filter;
+    }
+
+    /**
+     * 获取内存统计
+     * 
+     * @return
+     */
+    public TransienceStatistics getTransienceStatistics() {
+        return transienceStatistics;
+    }
+
+    /**
+     * 获取二级内存统计
+     * 
+     * @return 未配置二级内存时为null
+     */
+    public TransienceStatistics getSecondaryStatistics() {
+        return secondaryStatistics;
+    }
+
+    /**
+     * 获取有序索引
+     * 
+     * @return
+     */
+    public Collection<CacheOrder<K>> getOrders() {
+        return orders.values();
+    }
+
+    /**
+     * 获取缓存信息
+     * 
+     * @return
+     */
+    CacheInformation getCacheInformation() {
+        return cacheInformation;
+    }
+
+    /**
+     * 获取持久管理器
+     * 
+     * @return
+     */
+    PersistenceManager<K, T> getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * 遍历内存与二级内存的实例
+     * 
+     * <pre>
+     * 配置了到期或者刷新时间的实例不会被遍历.
+     * </pre>
+     * 
+     * @param consumer
+     */
+    void iterateInstances(BiConsumer<K, T> consumer) {
+        BiConsumer<K, T> iterator = (id, object) -> {
+            if (terms.isEmpty() || !terms.containsKey(id)) {
+                consumer.accept(id, object);
             }
-            lock.lock();
-            return lock;
+        };
+        transience.iterateInstances(iterator);
+        if (secondary != null) {
+            secondary.iterateInstances(iterator);
         }
     }
 
-    private void unlockIdLock(K id, ReentrantLock lock) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (idLocks) {
-            lock.unlock();
-            if (lock.getHoldCount() == 0) {
-                idLocks.remove(id, lock);
+    /**
+     * 遍历已经装载的索引
+     * 
+     * <pre>
+     * 每个索引在索引锁内复制,遍历时不持有任何锁.
+     * </pre>
+     * 
+     * @param consumer
+     */
+    void iterateIdentities(BiConsumer<CacheIndex, Collection<K>> consumer) {
+        for (Entry<String, TransienceManager<Object, Collection<K>>> keyValue : indexes.entrySet()) {
+            List<Object> values = new ArrayList<>();
+            keyValue.getValue().iterateInstances((value, identities) -> {
+                values.add(value);
+            });
+            for (Object value : values) {
+                CacheIndex index = new CacheIndex(keyValue.getKey(), (Comparable) value);
+                Collection<K> identities;
+                indexLocks.lock(index);
+                try {
+                    identities = getIndexValueMap(index);
+                    if (identities == null) {
+                        continue;
+                    }
+                    identities = new ArrayList<>(identities);
+                } finally {
+                    indexLocks.unlock(index);
+                }
+                consumer.accept(index, identities);
             }
         }
     }
 
-    private ReentrantLock lockIndexLock(CacheIndex index) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (indexLocks) {
-            ReentrantLock lock = indexLocks.get(index);
-            if (lock == null) {
-                lock = new ReentrantLock();
-                ReentrantLock value = indexLocks.putIfAbsent(index, lock);
-                lock = value != null ? value : lock;
+    /**
+     * 缓存指定索引的标识(索引已经装载时忽略)
+     * 
+     * @param index
+     * @param identities
+     */
+    void cacheIdentities(CacheIndex index, Collection<K> identities) {
+        indexLocks.lock(index);
+        try {
+            if (getIndexValueMap(index) == null) {
+                Collection<K> elements = cacheInformation.createIdentitySet();
+                elements.addAll(identities);
+                indexes.get(index.getName()).createInstance(index.getValue(), elements);
+            }
+        } finally {
+            indexLocks.unlock(index);
+        }
+    }
+
+    /**
+     * 使实例失效(由其它节点修改)
+     * 
+     * <pre>
+     * 代理对象可能已经被其它线程引用,不从内存删除(重新装载会产生重复的代理):
+     * 在IO执行器从持久层批量读取失效的实例,在标识锁内复制到正在使用的实例,同时维护索引与有序索引;
+     * IO执行器繁忙时在当前线程读取.
+     * </pre>
+     * 
+     * @param identities
+     * @param names 可能变更的索引名称(null表示所有索引)
+     */
+    void invalidateInstances(Collection<K> identities, Collection<String> names) {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                refreshInstances(identities, names);
+            });
+        } catch (RejectedExecutionException exception) {
+            refreshInstances(identities, names);
+        }
+    }
+
+    /**
+     * 使用持久层的数据刷新失效的实例
+     * 
+     * <pre>
+     * 存在未持久修改的实例比持久层新,保持不变;
+     * 正在使用的实例原地更新,已经被删除的实例从内存移除;
+     * 二级内存的副本使用重新读取的数据替换(从旧索引值的索引中移除,加入新索引值的索引);
+     * 没有缓存的实例无法定位旧索引值,清理可能变更的索引.
+     * </pre>
+     * 
+     * @param identities
+     * @param names 可能变更的索引名称(null表示所有索引)
+     */
+    private void refreshInstances(Collection<K> identities, Collection<String> names) {
+        Map<K, T> instances;
+        try {
+            instances = persistence.getInstances(identities);
+        } catch (Exception exception) {
+            LOGGER.error("刷新缓存[" + cacheClass.getName() + "]的实例" + identities + "异常", exception);
+            return;
+        }
+        boolean indexed = cacheInformation.hasIndexes() && (names == null || !names.isEmpty());
+        boolean miss = false;
+        for (K id : identities) {
+            idLocks.lock(id);
+            try {
+                if (filter != null) {
+                    // 可能是其它节点创建的标识
+                    filter.putIdentity(id);
+                }
+                if (persistence.hasElement(id)) {
+                    continue;
+                }
+                T object = instances.get(id);
+                T current = transience.retrieveInstance(id);
+                if (current != null) {
+                    if (object != null) {
+                        CacheTerm<T> term = terms.get(id);
+                        renewInstance(id, current, object, term == null ? expire : term.expire, term == null ? refresh : term.refresh);
+                        continue;
+                    }
+                    // 已经被其它节点删除
+                    transience.deleteInstance(id);
+                    terms.remove(id);
+                    if (indexed) {
+                        modifyIndexes(id, current, null, false);
+                    }
+                } else {
+                    T copy = secondary == null ? null : secondary.deleteInstance(id);
+                    if (copy != null) {
+                        if (indexed) {
+                            modifyIndexes(id, copy, names, false);
+                        }
+                        if (object != null) {
+                            object = transformer.transform(object);
+                            cacheInstance(id, object, expire, refresh);
+                            if (indexed) {
+                                modifyIndexes(id, object, names, true);
+                            }
+                        }
+                    } else if (indexed) {
+                        miss = true;
+                    }
+                }
+                if (!orders.isEmpty()) {
+                    modifyOrders(id, object);
+                }
+            } catch (Exception exception) {
+                LOGGER.error("刷新缓存[" + cacheClass.getName() + "]的实例[" + id + "]异常", exception);
+            } finally {
+                idLocks.unlock(id);
+            }
+        }
+        if (miss) {
+            invalidateIndexes(names);
+        }
+    }
+
+    /**
+     * 使所有实例失效
+     * 
+     * <pre>
+     * 有序索引无法得知变更的实例,保持不变.
+     * </pre>
+     */
+    void invalidateInstances() {
+        List<K> identities = new ArrayList<>(transience.getSize());
+        transience.iterateInstances((id, object) -> {
+            identities.add(id);
+        });
+        for (K id : identities) {
+            idLocks.lock(id);
+            try {
+                transience.deleteInstance(id);
+            } finally {
+                idLocks.unlock(id);
+            }
+        }
+        if (secondary != null) {
+            identities.clear();
+            secondary.iterateInstances((id, object) -> {
+                identities.add(id);
+            });
+            for (K id : identities) {
+                secondary.removeInstance(id);
             }
-            lock.lock();
-            return lock;
+        }
+        terms.clear();
+        if (cacheInformation.hasIndexes()) {
+            invalidateIndexes(null);
         }
     }
 
-    private void unlockIndexLock(CacheIndex index, ReentrantLock lock) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (indexLocks) {
-            lock.unlock();
-            if (lock.getHoldCount() == 0) {
-                indexLocks.remove(index, lock);
+    /**
+     * 清理已经装载的索引
+     * 
+     * @param names 索引名称(null表示所有索引)
+     */
+    private void invalidateIndexes(Collection<String> names) {
+        for (Entry<String, TransienceManager<Object, Collection<K>>> keyValue : indexes.entrySet()) {
+            if (names != null && !names.contains(keyValue.getKey())) {
+                continue;
+            }
+            List<Object> values = new ArrayList<>();
+            keyValue.getValue().iterateInstances((value, identities) -> {
+                values.add(value);
+            });
+            for (Object value : values) {
+                CacheIndex index = new CacheIndex(keyValue.getKey(), (Comparable) value);
+                indexLocks.lock(index);
+                try {
+                    keyValue.getValue().deleteInstance(value);
+                } finally {
+                    indexLocks.unlock(index);
+                }
             }
         }
     }
 
     @Override
     public T getInstance(K id) {
-        ReentrantLock lock = lockIdLock(id);
-        try {
-            T object = transience.retrieveInstance(id);
+        if (filter != null) {
+            // 一定不存在的标识不必加锁
+            T object = retrieveInstance(id);
             if (object != null) {
                 return object;
             }
-            if (persistence != null) {
-                object = persistence.getInstance(id);
-            }
-            if (object != null) {
-                object = transformer.transform(object);
-                transience.createInstance(id, object);
+            if (!filter.mightContain(id)) {
+                return null;
             }
+        }
+        T object = loadInstance(id, null, false);
+        if (object != null) {
             return object;
-        } finally {
-            unlockIdLock(id, lock);
         }
+        return waitInstance(id, null);
     }
 
     @Override
     public T loadInstance(K id, CacheObjectFactory<K, T> factory) {
-        ReentrantLock lock = lockIdLock(id);
+        T object = loadInstance(id, factory, false);
+        if (object != null) {
+            return object;
+        }
+        return waitInstance(id, factory);
+    }
+
+    @Override
+    public CompletableFuture<T> getInstanceAsync(K id) {
+        T object = retrieveInstance(id);
+        if (object != null) {
+            return CompletableFuture.completedFuture(object);
+        }
+        if (filter != null && !filter.mightContain(id)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return loadAsync(id, null);
+    }
+
+    @Override
+    public CompletableFuture<T> loadInstanceAsync(K id, CacheObjectFactory<K, T> factory) {
+        T object = retrieveInstance(id);
+        if (object != null) {
+            return CompletableFuture.completedFuture(object);
+        }
+        return loadAsync(id, factory);
+    }
+
+    /**
+     * 装载实例
+     * 
+     * @param id
+     * @param factory 为null时只从持久层装载
+     * @param load 是否访问持久层
+     * @return
+     */
+    private T loadInstance(K id, CacheObjectFactory<K, T> factory, boolean load) {
+        idLocks.lock(id);
         try {
-            T object = transience.retrieveInstance(id);
-            if (object != null) {
+            T object = retrieveInstance(id);
+            if (object == null && secondary != null) {
+                object = takeInstance(id);
+            }
+            if (object != null || !load) {
                 return object;
             }
-            if (persistence != null) {
+            if (persistence != null && (filter == null || filter.mightContain(id))) {
                 object = persistence.getInstance(id);
+                if (object == null && filter != null) {
+                    filter.putMiss(id);
+                }
             }
             if (object == null) {
+                if (factory == null) {
+                    return null;
+                }
                 object = factory.instanceOf(id);
                 if (object == null) {
                     throw new CacheException();
@@ -202,16 +1043,13 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
                 }
                 if (cacheInformation.hasIndexes()) {
                     // 使用indexLock与getIndexValuesMap更新缓存
-                    Map<String, Comparable> values = cacheInformation.getIndexValues(object);
+                    Comparable[] values = cacheInformation.getIndexValues(object, indexValues.get());
                     TreeSet<CacheIndex> indexes = new TreeSet<>();
-                    for (Entry<String, Comparable> keyValue : values.entrySet()) {
-                        indexes.add(new CacheIndex(keyValue.getKey(), keyValue.getValue()));
+                    for (int position = 0; position < values.length; position++) {
+                        indexes.add(new CacheIndex(cacheInformation.getIndexName(position), values[position]));
                     }
-                    ArrayList<ReentrantLock> locks = new ArrayList<>(indexes.size());
+                    indexLocks.lock(indexes);
                     try {
-                        for (CacheIndex index : indexes) {
-                            locks.add(lockIndexLock(index));
-                        }
                         for (CacheIndex index : indexes) {
                             Collection<K> identities = getIndexValueMap(index);
                             if (identities != null) {
@@ -219,42 +1057,71 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
                             }
                         }
                     } finally {
-                        int number = 0;
-                        for (CacheIndex index : indexes) {
-                            unlockIndexLock(index, locks.get(number++));
-                        }
+                        indexLocks.unlock(indexes);
                     }
                 }
+                if (filter != null) {
+                    filter.putIdentity(id);
+                }
+                if (!orders.isEmpty()) {
+                    modifyOrders(id, object);
+                }
                 if (persistence != null) {
                     persistence.createInstance(object);
                 }
             }
             object = transformer.transform(object);
-            transience.createInstance(id, object);
+            long expire = this.expire;
+            long refresh = this.refresh;
+            if (factory != null) {
+                int seconds = factory.getExpire(object);
+                if (seconds > 0) {
+                    expire = TimeUnit.SECONDS.toMillis(seconds);
+                }
+                seconds = factory.getRefresh(object);
+                if (seconds > 0) {
+                    refresh = TimeUnit.SECONDS.toMillis(seconds);
+                }
+            }
+            T current = transience.retrieveInstance(id);
+            if (current != null && current != object) {
+                // 到期的实例仍然可能被引用,更新而不是替换
+                renewInstance(id, current, object, expire, refresh);
+                return current;
+            }
+            cacheInstance(id, object, expire, refresh);
             return object;
         } finally {
-            unlockIdLock(id, lock);
+            idLocks.unlock(id);
         }
     }
 
     @Override
     public T deleteInstance(K id) {
-        ReentrantLock lock = lockIdLock(id);
+        idLocks.lock(id);
         try {
             T object = transience.deleteInstance(id);
+            terms.remove(id);
+            if (secondary != null) {
+                deletions.put(id, Boolean.TRUE);
+                secondary.removeInstance(id);
+            }
+            if (filter != null) {
+                filter.deleteIdentity(id);
+            }
+            if (!orders.isEmpty()) {
+                modifyOrders(id, null);
+            }
             if (object != null) {
                 if (cacheInformation.hasIndexes()) {
                     // 使用indexLock与getIndexValuesMap更新缓存
-                    Map<String, Comparable> values = cacheInformation.getIndexValues(object);
+                    Comparable[] values = cacheInformation.getIndexValues(object, indexValues.get());
                     TreeSet<CacheIndex> indexes = new TreeSet<>();
-                    for (Entry<String, Comparable> keyValue : values.entrySet()) {
-                        indexes.add(new CacheIndex(keyValue.getKey(), keyValue.getValue()));
+                    for (int position = 0; position < values.length; position++) {
+                        indexes.add(new CacheIndex(cacheInformation.getIndexName(position), values[position]));
                     }
-                    ArrayList<ReentrantLock> locks = new ArrayList<>(indexes.size());
+                    indexLocks.lock(indexes);
                     try {
-                        for (CacheIndex index : indexes) {
-                            locks.add(lockIndexLock(index));
-                        }
                         for (CacheIndex index : indexes) {
                             Collection<K> identities = getIndexValueMap(index);
                             if (identities != null) {
@@ -262,10 +1129,7 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
                             }
                         }
                     } finally {
-                        int number = 0;
-                        for (CacheIndex index : indexes) {
-                            unlockIndexLock(index, locks.get(number++));
-                        }
+                        indexLocks.unlock(indexes);
                     }
                 }
             }
@@ -274,46 +1138,142 @@ public class EntityCacheManager<K extends Comparable<K> & Serializable, T extend
             }
             return object;
         } finally {
-            unlockIdLock(id, lock);
+            idLocks.unlock(id);
         }
     }
 
     @Override
     public Collection<K> getIdentities(CacheIndex index) {
         // 使用indexLock与loadIndexValuesMap更新缓存
-        ReentrantLock lock = lockIndexLock(index);
+        indexLocks.lock(index);
         try {
             Collection<K> identities = loadIndexValueMap(index);
             return identities;
         } finally {
-            unlockIndexLock(index, lock);
+            indexLocks.unlock(index);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Collection<K>> getIdentitiesAsync(CacheIndex index) {
+        // 与getIdentities使用相同的indexLock,不会读到正在装载的索引
+        indexLocks.lock(index);
+        try {
+            Collection<K> identities = getIndexValueMap(index);
+            if (identities != null) {
+                return CompletableFuture.completedFuture(identities);
+            }
+        } finally {
+            indexLocks.unlock(index);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> getIdentities(index), executor);
+        } catch (RejectedExecutionException exception) {
+            CompletableFuture<Collection<K>> future = new CompletableFuture<>();
+            future.completeExceptionally(new CacheException(exception));
+            return future;
         }
     }
 
+    @Override
+    public List<K> getRangeIdentities(String name, Comparable from, Comparable to) {
+        return getOrder(name).getIdentities(from, to);
+    }
+
+    @Override
+    public List<K> getTopIdentities(String name, int size, boolean descending) {
+        return getOrder(name).getIdentities(size, descending);
+    }
+
+    @Override
+    public int getRangeCount(String name, Comparable from, Comparable to) {
+        return getOrder(name).getCount(from, to);
+    }
+
     @Override
     public Collection<T> cacheInstances(Collection<T> instances) {
-        // 考虑缓存冲突的情况
+        // 考虑缓存冲突的情况:已经缓存,在二级内存或者有未持久修改的实例比传入的实例新
         Collection<T> caches = new ArrayList<>(instances.size());
         for (T instance : instances) {
             K id = instance.getId();
-            ReentrantLock lock = lockIdLock(id);
+            idLocks.lock(id);
             try {
-                T object = transience.retrieveInstance(id);
+                T object = retrieveInstance(id);
+                if (object == null && secondary != null) {
+                    object = takeInstance(id);
+                }
                 if (object == null) {
-                    object = transformer.transform(instance);
-                    transience.createInstance(id, object);
+                    if (persistence != null && persistence.hasElement(id)) {
+                        // 以等待持久的元素为准
+                        object = persistence.getInstance(id);
+                    }
+                    if (object == null) {
+                        object = instance;
+                    }
+                    T current = transience.retrieveInstance(id);
+                    if (current != null) {
+                        // 到期的实例仍然可能被引用,更新而不是替换
+                        renewInstance(id, current, object, expire, refresh);
+                        object = current;
+                    } else {
+                        object = transformer.transform(object);
+                        cacheInstance(id, object, expire, refresh);
+                    }
+                    if (filter != null) {
+                        filter.putIdentity(id);
+                    }
                 }
                 caches.add(object);
             } finally {
-                unlockIdLock(id, lock);
+                idLocks.unlock(id);
             }
         }
         return caches;
     }
 
+    /**
+     * 修改实例
+     * 
+     * <pre>
+     * 在标识锁内登记持久元素,与后台刷新互斥,刷新不会覆盖未持久的修改;
+     * 同时重新读取有序索引值,并发修改时最后记录的一定是最新的索引值.
+     * </pre>
+     */
     @Override
     public void modifyInstance(T object) {
-        persistence.updateInstance(object);
+        K id = object.getId();
+        idLocks.lock(id);
+        try {
+            if (secondary != null) {
+                // 被淘汰以后仍然被修改的实例
+                secondary.removeInstance(id);
+            }
+            if (!orders.isEmpty()) {
+                modifyOrders(id, object);
+            }
+            persistence.updateInstance(object);
+        } finally {
+            idLocks.unlock(id);
+        }
+    }
+
+    @Override
+    public void modifyInstance(T object, BitSet fields) {
+        K id = object.getId();
+        idLocks.lock(id);
+        try {
+            if (secondary != null) {
+                // 被淘汰以后仍然被修改的实例
+                secondary.removeInstance(id);
+            }
+            // 变更的字段不包含有序索引字段时,有序索引值不变
+            if (cacheInformation.hasOrders(fields)) {
+                modifyOrders(id, object);
+            }
+            persistence.updateInstance(object, fields);
+        } finally {
+            idLocks.unlock(id);
+        }
     }
 
 }
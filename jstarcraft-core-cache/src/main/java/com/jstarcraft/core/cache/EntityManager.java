@@ -1,6 +1,8 @@
 package com.jstarcraft.core.cache;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.jstarcraft.core.common.identification.IdentityObject;
 
@@ -12,6 +14,7 @@ import com.jstarcraft.core.common.identification.IdentityObject;
  * 注意:
  * 作为标识/索引的字段必须为Comparable;
  * 索引与标识一样不可变;索引不必保证唯一;
+ * 有序索引可变,通过{@link com.jstarcraft.core.cache.annotation.CacheChange}维护,提供范围/排名/计数查询;
  * </pre>
  * 
  * @author Birdy
@@ -38,6 +41,27 @@ public interface EntityManager<K extends Comparable<K>, T extends IdentityObject
      */
     T loadInstance(K id, CacheObjectFactory<K, T> factory);
 
+    /**
+     * 异步获取指定主键的缓存
+     * 
+     * <pre>
+     * 命中时立即完成,未命中时在IO执行器装载,相同主键的并发装载共享同一个Future.
+     * </pre>
+     * 
+     * @param id
+     * @return
+     */
+    CompletableFuture<T> getInstanceAsync(K id);
+
+    /**
+     * 异步装载指定主键的缓存
+     * 
+     * @param id
+     * @param factory
+     * @return
+     */
+    CompletableFuture<T> loadInstanceAsync(K id, CacheObjectFactory<K, T> factory);
+
     /**
      * 删除指定主键的缓存
      * 
@@ -54,9 +78,51 @@ public interface EntityManager<K extends Comparable<K>, T extends IdentityObject
      */
     Collection<K> getIdentities(CacheIndex index);
 
+    /**
+     * 异步获取指定索引的缓存
+     * 
+     * @param index
+     * @return
+     */
+    CompletableFuture<Collection<K>> getIdentitiesAsync(CacheIndex index);
+
+    /**
+     * 获取指定有序索引在范围内的标识(按照索引值升序)
+     * 
+     * @param name 有序索引名称
+     * @param from 下限(包含),null表示不限
+     * @param to 上限(包含),null表示不限
+     * @return
+     */
+    List<K> getRangeIdentities(String name, Comparable from, Comparable to);
+
+    /**
+     * 获取指定有序索引排名靠前的标识
+     * 
+     * @param name 有序索引名称
+     * @param size 数量
+     * @param descending 是否降序
+     * @return
+     */
+    List<K> getTopIdentities(String name, int size, boolean descending);
+
+    /**
+     * 获取指定有序索引在范围内的实体数量
+     * 
+     * @param name 有序索引名称
+     * @param from 下限(包含),null表示不限
+     * @param to 上限(包含),null表示不限
+     * @return
+     */
+    int getRangeCount(String name, Comparable from, Comparable to);
+
     /**
      * 缓存指定集合的实例
      * 
+     * <pre>
+     * 已经缓存,在二级内存或者存在未持久修改的实例优先,传入的实例只用于缺失的标识.
+     * </pre>
+     * 
      * @param instances
      * @return
      */
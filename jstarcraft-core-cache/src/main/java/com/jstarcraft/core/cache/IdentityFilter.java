@@ -0,0 +1,283 @@
+package com.jstarcraft.core.cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.jstarcraft.core.common.bit.LocalLongArrayMap;
+import com.jstarcraft.core.common.bloomfilter.BitMapBloomFilter;
+import com.jstarcraft.core.common.bloomfilter.BloomFilter;
+import com.jstarcraft.core.common.hash.HashFunction;
+import com.jstarcraft.core.common.hash.HashUtility;
+
+/**
+ * 标识过滤器
+ * 
+ * <pre>
+ * 记录可能存在的标识,{@link #mightContain}返回false的标识一定不存在,不必访问持久层.
+ * 由两部分组成:
+ * 布隆过滤器,在建立(主键扫描)完成以后生效,建立期间创建的标识同时写入;
+ * 未命中缓存(可选,有界),记录持久层确认不存在的标识,创建时失效.
+ * 布隆过滤器无法删除标识,删除的标识只会成为误判,由未命中缓存弥补.
+ * 读取使用乐观锁,写入(创建标识)使用写锁.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ */
+public class IdentityFilter<K> {
+
+    /** 建立时每次写入的标识数量 */
+    private static final int BUILD_SIZE = 1024;
+
+    /** 哈希函数种子 */
+    private static final long SEED = 0L;
+
+    private final int bits;
+
+    private final HashFunction<K>[] functions;
+
+    private final StampedLock lock = new StampedLock();
+
+    /** 生效的过滤器 */
+    private BitMapBloomFilter<K, LocalLongArrayMap> filter;
+
+    /** 建立中的过滤器 */
+    private BitMapBloomFilter<K, LocalLongArrayMap> building;
+
+    /** 未命中缓存 */
+    private final ConcurrentLinkedHashMap<K, Boolean> misses;
+
+    /** 被过滤器拦截的次数 */
+    private final LongAdder filterCount = new LongAdder();
+
+    /** 被未命中缓存拦截的次数 */
+    private final LongAdder missCount = new LongAdder();
+
+    /** 过滤器误判的次数 */
+    private final LongAdder falseCount = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public IdentityFilter(int elements, float probability, int misses) {
+        if (elements < 1 || probability <= 0F || probability >= 1F || misses < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.bits = Math.max(Long.SIZE, BloomFilter.optimalBits(elements, probability));
+        int hashs = BloomFilter.optimalHashs(bits, elements);
+        Random random = new Random(SEED);
+        this.functions = new HashFunction[hashs];
+        for (int index = 0; index < hashs; index++) {
+            int seed = random.nextInt();
+            functions[index] = (data) -> {
+                return HashUtility.murmur3NumberHash32(data.hashCode() ^ seed);
+            };
+        }
+        if (misses > 0) {
+            Builder<K, Boolean> builder = new Builder<>();
+            builder.maximumWeightedCapacity(misses);
+            this.misses = builder.build();
+        } else {
+            this.misses = null;
+        }
+    }
+
+    /**
+     * 标识是否可能存在
+     * 
+     * @param id
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(K id) {
+        long stamp = lock.tryOptimisticRead();
+        BitMapBloomFilter<K, LocalLongArrayMap> filter = this.filter;
+        boolean hit = filter == null || filter.getElements(id) > 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                filter = this.filter;
+                hit = filter == null || filter.getElements(id) > 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (!hit) {
+            filterCount.increment();
+            return false;
+        }
+        if (misses != null && misses.containsKey(id)) {
+            missCount.increment();
+            if (filter != null) {
+                falseCount.increment();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录创建的标识(必须持有标识锁)
+     * 
+     * @param id
+     */
+    public void putIdentity(K id) {
+        if (misses != null) {
+            misses.remove(id);
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (filter != null) {
+                filter.putElements(id);
+            }
+            if (building != null) {
+                building.putElements(id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 记录删除的标识(必须持有标识锁)
+     * 
+     * @param id
+     */
+    public void deleteIdentity(K id) {
+        if (misses != null) {
+            misses.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 记录持久层确认不存在的标识(必须持有标识锁)
+     * 
+     * <pre>
+     * 只有{@link #mightContain}返回true以后访问持久层未命中才调用,生效以后计为误判.
+     * </pre>
+     * 
+     * @param id
+     */
+    public void putMiss(K id) {
+        if (isReady()) {
+            falseCount.increment();
+        }
+        if (misses != null) {
+            misses.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 开始建立过滤器
+     * 
+     * <pre>
+     * 开始以后创建的标识会同时写入建立中的过滤器.
+     * </pre>
+     * 
+     * @return 是否开始建立(已经在建立时返回false)
+     */
+    public boolean startBuild() {
+        long stamp = lock.writeLock();
+        try {
+            if (building != null) {
+                return false;
+            }
+            building = new BitMapBloomFilter<>(new LocalLongArrayMap(bits), functions);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 完成建立过滤器
+     * 
+     * @param identities 持久层扫描得到的所有标识
+     */
+    @SuppressWarnings("unchecked")
+    public void stopBuild(Collection<K> identities) {
+        Iterator<K> iterator = identities.iterator();
+        while (true) {
+            long stamp = lock.writeLock();
+            try {
+                if (building == null) {
+                    throw new IllegalStateException();
+                }
+                // 分段写入,避免长时间阻塞读取
+                for (int index = 0; index < BUILD_SIZE && iterator.hasNext(); index++) {
+                    building.putElements(iterator.next());
+                }
+                if (!iterator.hasNext()) {
+                    filter = building;
+                    building = null;
+                    return;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * 放弃建立过滤器
+     */
+    public void cancelBuild() {
+        long stamp = lock.writeLock();
+        try {
+            building = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 过滤器是否生效
+     * 
+     * @return
+     */
+    public boolean isReady() {
+        long stamp = lock.readLock();
+        try {
+            return filter != null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 获取避免访问持久层的次数
+     * 
+     * @return
+     */
+    public long getAvoidCount() {
+        return filterCount.sum() + missCount.sum();
+    }
+
+    /**
+     * 获取过滤器误判的次数
+     * 
+     * @return
+     */
+    public long getFalseCount() {
+        return falseCount.sum();
+    }
+
+    /**
+     * 获取实测的误判率
+     * 
+     * <pre>
+     * 误判次数/(误判次数+过滤器拦截次数),即不存在的标识通过过滤器的比例.
+     * </pre>
+     * 
+     * @return
+     */
+    public float getFalseRate() {
+        long falseCount = this.falseCount.sum();
+        long count = falseCount + filterCount.sum();
+        return count == 0L ? 0F : (float) falseCount / count;
+    }
+
+}
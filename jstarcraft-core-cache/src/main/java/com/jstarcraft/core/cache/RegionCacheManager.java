@@ -2,6 +2,7 @@ package com.jstarcraft.core.cache;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,8 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -28,6 +31,8 @@ import com.jstarcraft.core.cache.transience.TransienceManager;
 import com.jstarcraft.core.cache.transience.TransienceStrategy;
 import com.jstarcraft.core.cache.transience.WeakElementManager;
 import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.lockable.LockTable;
+import com.jstarcraft.core.common.lockable.StripeLockTable;
 
 /**
  * 区域缓存管理器
@@ -42,6 +47,9 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RegionCacheManager.class);
 
+    /** 默认锁条带数量 */
+    private static final int LOCK_SIZE = 1024;
+
     /** 缓存类型 */
     private Class<T> cacheClass;
     /** 缓存配置信息 */
@@ -61,11 +69,37 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
     private Map<String, TransienceManager<Object, Map<K, TransienceElement>>> indexes;
 
     /** 标识锁 */
-    private Map<K, ReentrantLock> idLocks = new ConcurrentHashMap<>();
+    private LockTable<K> idLocks;
     /** 索引锁 */
-    private Map<CacheIndex, ReentrantLock> indexLocks = new ConcurrentHashMap<>();
+    private LockTable<CacheIndex> indexLocks;
+    /** 读取索引值的缓冲(持有标识锁期间使用,不能跨越方法保存) */
+    private ThreadLocal<Comparable[]> indexValues = new ThreadLocal<Comparable[]>() {
+
+        @Override
+        protected Comparable[] initialValue() {
+            return new Comparable[cacheInformation.getIndexSize()];
+        }
+
+    };
+
+    /** 正在装载的区域(相同区域的并发装载共享同一个Future) */
+    private Map<CacheIndex, CompletableFuture<Void>> loadings = new ConcurrentHashMap<>();
+    /** IO执行器(异步装载) */
+    private Executor executor;
 
     RegionCacheManager(CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy) {
+        this(information, transienceStrategy, persistenceStrategy, CacheService.DEFAULT_EXECUTOR);
+    }
+
+    RegionCacheManager(CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, Executor executor) {
+        this(information, transienceStrategy, persistenceStrategy, executor, new StripeLockTable<>(LOCK_SIZE), new StripeLockTable<>(LOCK_SIZE));
+    }
+
+    RegionCacheManager(CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, LockTable<K> idLocks, LockTable<CacheIndex> indexLocks) {
+        this(information, transienceStrategy, persistenceStrategy, CacheService.DEFAULT_EXECUTOR, idLocks, indexLocks);
+    }
+
+    RegionCacheManager(CacheInformation information, TransienceStrategy transienceStrategy, PersistenceStrategy persistenceStrategy, Executor executor, LockTable<K> idLocks, LockTable<CacheIndex> indexLocks) {
         this.cacheInformation = information;
         this.cacheClass = (Class<T>) information.getCacheClass();
         this.transienceStrategy = transienceStrategy;
@@ -78,6 +112,9 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
             this.indexes.put(name, manager);
         }
         this.persistence = persistenceStrategy.getPersistenceManager(cacheClass);
+        this.idLocks = idLocks;
+        this.indexLocks = indexLocks;
+        this.executor = executor;
     }
 
     private Map<K, TransienceElement> getIndexValueMap(CacheIndex index) {
@@ -87,7 +124,7 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
     private Map<K, TransienceElement> loadIndexValueMap(CacheIndex index) {
         Map<K, TransienceElement> elements = indexes.get(index.getName()).retrieveInstance(index.getValue());
         if (elements == null) {
-            elements = new HashMap<>();
+            elements = cacheInformation.createIdentityMap();
             indexes.get(index.getName()).createInstance(index.getValue(), elements);
             List<T> objects = persistence.getInstances(index.getName(), index.getValue());
             for (T object : objects) {
@@ -98,6 +135,45 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
         return elements;
     }
 
+    /**
+     * 异步装载区域
+     * 
+     * @param index
+     * @return
+     */
+    private CompletableFuture<Void> loadAsync(CacheIndex index) {
+        if (!cacheInformation.hasIndex(index.getName())) {
+            throw new CacheException();
+        }
+        if (getIndexValueMap(index) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> current = loadings.putIfAbsent(index, future);
+        if (current != null) {
+            return current;
+        }
+        try {
+            executor.execute(() -> {
+                // 使用indexLock与loadIndexValuesMap更新缓存
+                indexLocks.lock(index);
+                try {
+                    loadIndexValueMap(index);
+                    future.complete(null);
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                } finally {
+                    indexLocks.unlock(index);
+                    loadings.remove(index, future);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            loadings.remove(index, future);
+            future.completeExceptionally(new CacheException(exception));
+        }
+        return future;
+    }
+
     @Override
     public int getInstanceCount() {
         return transience.getCount();
@@ -114,54 +190,6 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
         return count;
     }
 
-    private ReentrantLock lockIdLock(K id) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (idLocks) {
-            ReentrantLock lock = idLocks.get(id);
-            if (lock == null) {
-                lock = new ReentrantLock();
-                ReentrantLock value = idLocks.putIfAbsent(id, lock);
-                lock = value != null ? value : lock;
-            }
-            lock.lock();
-            return lock;
-        }
-    }
-
-    private void unlockIdLock(K id, ReentrantLock lock) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (idLocks) {
-            lock.unlock();
-            if (lock.getHoldCount() == 0) {
-                idLocks.remove(id, lock);
-            }
-        }
-    }
-
-    private ReentrantLock lockIndexLock(CacheIndex index) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (indexLocks) {
-            ReentrantLock lock = indexLocks.get(index);
-            if (lock == null) {
-                lock = new ReentrantLock();
-                ReentrantLock value = indexLocks.putIfAbsent(index, lock);
-                lock = value != null ? value : lock;
-            }
-            lock.lock();
-            return lock;
-        }
-    }
-
-    private void unlockIndexLock(CacheIndex index, ReentrantLock lock) {
-        // 此处可以考虑使用HashLock代替synchronized降低锁竞争
-        synchronized (indexLocks) {
-            lock.unlock();
-            if (lock.getHoldCount() == 0) {
-                indexLocks.remove(index, lock);
-            }
-        }
-    }
-
     private Collection<T> elementsToObjects(Collection<TransienceElement> elements) {
         return elements.stream().map((element) -> {
             return (T) element.getCacheObject();
@@ -174,22 +202,27 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
             throw new CacheException();
         }
         // 使用indexLock与loadIndexValuesMap更新缓存
-        ReentrantLock lock = lockIndexLock(index);
+        indexLocks.lock(index);
         try {
             Map<K, TransienceElement> elements = loadIndexValueMap(index);
             return Collections.unmodifiableCollection(elementsToObjects(elements.values()));
         } finally {
-            unlockIndexLock(index, lock);
+            indexLocks.unlock(index);
         }
     }
 
+    @Override
+    public CompletableFuture<Collection<T>> getInstancesAsync(CacheIndex index) {
+        return loadAsync(index).thenApply((empty) -> getInstances(index));
+    }
+
     @Override
     public T getInstance(CacheIndex index, K id) {
         if (!cacheInformation.hasIndex(index.getName())) {
             throw new CacheException();
         }
         // 使用indexLock与loadIndexValuesMap更新缓存
-        ReentrantLock lock = lockIndexLock(index);
+        indexLocks.lock(index);
         try {
             Map<K, TransienceElement> elements = loadIndexValueMap(index);
             TransienceElement element = elements.get(id);
@@ -199,17 +232,22 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
                 return null;
             }
         } finally {
-            unlockIndexLock(index, lock);
+            indexLocks.unlock(index);
         }
     }
 
+    @Override
+    public CompletableFuture<T> getInstanceAsync(CacheIndex index, K id) {
+        return loadAsync(index).thenApply((empty) -> getInstance(index, id));
+    }
+
     @Override
     public T loadInstance(CacheIndex index, K id, CacheObjectFactory<K, T> factory) {
         if (!cacheInformation.hasIndex(index.getName())) {
             throw new CacheException();
         }
         // 使用indexLock与loadIndexValuesMap更新缓存
-        ReentrantLock lock = lockIndexLock(index);
+        indexLocks.lock(index);
         try {
             Map<K, TransienceElement> elements = loadIndexValueMap(index);
             TransienceElement element = elements.get(id);
@@ -217,10 +255,10 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
                 return (T) element.getCacheObject();
             }
         } finally {
-            unlockIndexLock(index, lock);
+            indexLocks.unlock(index);
         }
 
-        lock = lockIdLock(id);
+        idLocks.lock(id);
         try {
             T object = factory.instanceOf(id);
             TransienceElement element = transience.getElement(object);
@@ -229,17 +267,23 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
             }
             return createInstance(object);
         } finally {
-            unlockIdLock(id, lock);
+            idLocks.unlock(id);
         }
     }
 
+    @Override
+    public CompletableFuture<T> loadInstanceAsync(CacheIndex index, K id, CacheObjectFactory<K, T> factory) {
+        // 区域装载以后,工厂创建实例需要访问持久层,同样交给IO执行器
+        return loadAsync(index).thenApplyAsync((empty) -> loadInstance(index, id, factory), executor);
+    }
+
     @Override
     public T createInstance(T object) {
         if (object.getId() == null) {
             throw new CacheIdentityException();
         }
         K id = object.getId();
-        ReentrantLock idLock = lockIdLock(id);
+        idLocks.lock(id);
         try {
             if (transience.getElement(object) != null) {
                 throw new CacheIdentityException();
@@ -250,62 +294,50 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
             persistence.createInstance(object);
             TransienceElement element = transience.putElement(object);
             // 使用indexLock与loadIndexValuesMap更新缓存
-            Map<String, Comparable> values = cacheInformation.getIndexValues(object);
+            Comparable[] values = cacheInformation.getIndexValues(object, indexValues.get());
             TreeSet<CacheIndex> indexes = new TreeSet<>();
-            for (Entry<String, Comparable> keyValue : values.entrySet()) {
-                indexes.add(new CacheIndex(keyValue.getKey(), keyValue.getValue()));
+            for (int position = 0; position < values.length; position++) {
+                indexes.add(new CacheIndex(cacheInformation.getIndexName(position), values[position]));
             }
-            ArrayList<ReentrantLock> locks = new ArrayList<>(indexes.size());
+            indexLocks.lock(indexes);
             try {
-                for (CacheIndex index : indexes) {
-                    locks.add(lockIndexLock(index));
-                }
                 for (CacheIndex index : indexes) {
                     Map<K, TransienceElement> elements = loadIndexValueMap(index);
                     elements.put(id, element);
                 }
             } finally {
-                int number = 0;
-                for (CacheIndex index : indexes) {
-                    unlockIndexLock(index, locks.get(number++));
-                }
+                indexLocks.unlock(indexes);
             }
             return (T) element.getCacheObject();
         } finally {
-            unlockIdLock(id, idLock);
+            idLocks.unlock(id);
         }
     }
 
     @Override
     public void deleteInstance(T object) {
         K id = object.getId();
-        ReentrantLock idLock = lockIdLock(id);
+        idLocks.lock(id);
         try {
             persistence.deleteInstance(id);
             // 使用indexLock与loadIndexValuesMap更新缓存
-            Map<String, Comparable> values = cacheInformation.getIndexValues(object);
+            Comparable[] values = cacheInformation.getIndexValues(object, indexValues.get());
             TreeSet<CacheIndex> indexes = new TreeSet<>();
-            for (Entry<String, Comparable> keyValue : values.entrySet()) {
-                indexes.add(new CacheIndex(keyValue.getKey(), keyValue.getValue()));
+            for (int position = 0; position < values.length; position++) {
+                indexes.add(new CacheIndex(cacheInformation.getIndexName(position), values[position]));
             }
-            ArrayList<ReentrantLock> locks = new ArrayList<>(indexes.size());
+            indexLocks.lock(indexes);
             try {
-                for (CacheIndex index : indexes) {
-                    locks.add(lockIndexLock(index));
-                }
                 for (CacheIndex index : indexes) {
                     Map<K, TransienceElement> elements = loadIndexValueMap(index);
                     elements.remove(id);
                 }
             } finally {
-                int number = 0;
-                for (CacheIndex index : indexes) {
-                    unlockIndexLock(index, locks.get(number++));
-                }
+                indexLocks.unlock(indexes);
             }
             transience.takeElement(object);
         } finally {
-            unlockIdLock(id, idLock);
+            idLocks.unlock(id);
         }
     }
 
@@ -315,32 +347,26 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
         Collection<T> caches = new ArrayList<>(instances.size());
         for (T instance : instances) {
             K id = instance.getId();
-            ReentrantLock lock = lockIdLock(id);
+            idLocks.lock(id);
             try {
                 // 使用indexLock与loadIndexValuesMap更新缓存
-                Map<String, Comparable> values = cacheInformation.getIndexValues(instance);
+                Comparable[] values = cacheInformation.getIndexValues(instance, indexValues.get());
                 TreeSet<CacheIndex> indexes = new TreeSet<>();
-                for (Entry<String, Comparable> keyValue : values.entrySet()) {
-                    indexes.add(new CacheIndex(keyValue.getKey(), keyValue.getValue()));
+                for (int position = 0; position < values.length; position++) {
+                    indexes.add(new CacheIndex(cacheInformation.getIndexName(position), values[position]));
                 }
-                ArrayList<ReentrantLock> locks = new ArrayList<>(indexes.size());
+                indexLocks.lock(indexes);
                 try {
-                    for (CacheIndex index : indexes) {
-                        locks.add(lockIndexLock(index));
-                    }
                     for (CacheIndex index : indexes) {
                         Map<K, TransienceElement> elements = loadIndexValueMap(index);
                     }
                 } finally {
-                    int number = 0;
-                    for (CacheIndex index : indexes) {
-                        unlockIndexLock(index, locks.get(number++));
-                    }
+                    indexLocks.unlock(indexes);
                 }
                 TransienceElement element = transience.putElement(instance);
                 caches.add((T) element.getCacheObject());
             } finally {
-                unlockIdLock(id, lock);
+                idLocks.unlock(id);
             }
         }
         return caches;
@@ -351,4 +377,9 @@ public class RegionCacheManager<K extends Comparable<K> & Serializable, T extend
         persistence.updateInstance(object);
     }
 
+    @Override
+    public void modifyInstance(T object, BitSet fields) {
+        persistence.updateInstance(object, fields);
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.jstarcraft.core.cache;
 
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 import com.jstarcraft.core.common.identification.IdentityObject;
 
@@ -29,6 +30,18 @@ public interface RegionManager<K extends Comparable<K>, T extends IdentityObject
      */
     Collection<T> getInstances(CacheIndex index);
 
+    /**
+     * 异步获取指定区域的缓存集合
+     * 
+     * <pre>
+     * 区域已缓存时立即完成,否则在IO执行器装载,相同区域的并发装载共享同一个Future.
+     * </pre>
+     * 
+     * @param index
+     * @return
+     */
+    CompletableFuture<Collection<T>> getInstancesAsync(CacheIndex index);
+
     /**
      * 获取指定区域的缓存集合
      * 
@@ -38,6 +51,15 @@ public interface RegionManager<K extends Comparable<K>, T extends IdentityObject
      */
     T getInstance(CacheIndex index, K id);
 
+    /**
+     * 异步获取指定区域的缓存
+     * 
+     * @param index
+     * @param id
+     * @return
+     */
+    CompletableFuture<T> getInstanceAsync(CacheIndex index, K id);
+
     /**
      * 加载指定主键的缓存(半异步)
      * 
@@ -48,6 +70,16 @@ public interface RegionManager<K extends Comparable<K>, T extends IdentityObject
      */
     T loadInstance(CacheIndex index, K id, CacheObjectFactory<K, T> factory);
 
+    /**
+     * 异步加载指定主键的缓存
+     * 
+     * @param index
+     * @param id
+     * @param factory
+     * @return
+     */
+    CompletableFuture<T> loadInstanceAsync(CacheIndex index, K id, CacheObjectFactory<K, T> factory);
+
     /**
      * 创建指定对象的缓存
      * 
@@ -21,4 +21,13 @@ public @interface CacheChange {
     /** 触发变更的方法返回值 */
     String[] values() default {};
 
+    /**
+     * 变更的字段
+     * 
+     * <pre>
+     * 持久策略只更新变更的字段(例如只更新指定纵列的UPDATE),为空表示全部字段.
+     * </pre>
+     */
+    String[] fields() default {};
+
 }
@@ -8,6 +8,7 @@ import java.lang.annotation.Target;
 import com.jstarcraft.core.cache.EntityManager;
 import com.jstarcraft.core.cache.RegionManager;
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.transience.OffHeapTransienceStrategy;
 import com.jstarcraft.core.cache.transience.TransienceStrategy;
 
 /**
@@ -48,10 +49,49 @@ public @interface CacheConfiguration {
     /** 缓存索引 */
     String[] indexes() default {};
 
+    /**
+     * 有序索引(只支持{@link Unit#ENTITY})
+     * 
+     * <pre>
+     * 在内存中按照索引值排序记录所有实体(不只是被缓存的实体),提供范围/排名/计数查询.
+     * 索引值通过{@link CacheChange}的变更维护,不感知绕过缓存对持久层的修改.
+     * </pre>
+     */
+    String[] orders() default {};
+
     /** 内存策略,配合{@link TransienceStrategy}使用. */
     String transienceStrategy();
 
     /** 持久策略,配合{@link PersistenceStrategy}使用. */
     String persistenceStrategy();
 
+    /**
+     * 二级内存策略(可选,只支持{@link Unit#ENTITY})
+     * 
+     * <pre>
+     * 被内存策略淘汰的实例序列化保存到二级内存,检索未命中时先从二级内存装载再访问持久层.
+     * 通常配合{@link OffHeapTransienceStrategy}使用;配置了到期或者刷新时间的实例不会进入二级内存.
+     * </pre>
+     */
+    String secondaryStrategy() default "";
+
+    /**
+     * 实例到期时间(秒)
+     * 
+     * <pre>
+     * 超过到期时间的实体从持久层重新装载,0表示由内存策略决定.
+     * 重新装载会替换缓存的实例,适用于只读或者由外部修改的实体.
+     * </pre>
+     */
+    int expire() default 0;
+
+    /**
+     * 实例刷新时间(秒)
+     * 
+     * <pre>
+     * 超过刷新时间(尚未到期)的实体继续使用,同时在后台重新装载,0表示不刷新.
+     * </pre>
+     */
+    int refresh() default 0;
+
 }
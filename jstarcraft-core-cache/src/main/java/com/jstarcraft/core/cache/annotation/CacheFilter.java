@@ -0,0 +1,37 @@
+package com.jstarcraft.core.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.jstarcraft.core.cache.IdentityFilter;
+import com.jstarcraft.core.cache.annotation.CacheConfiguration.Unit;
+
+/**
+ * 缓存过滤
+ * 
+ * <pre>
+ * 为缓存类型建立标识过滤器({@link IdentityFilter}),不存在的标识不再访问持久层,只支持{@link Unit#ENTITY}.
+ * 过滤器在缓存管理器创建时通过主键扫描建立,要求缓存是实体的唯一写入者.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheFilter {
+
+    /** 主键字段名称(用于主键扫描) */
+    String identity() default "id";
+
+    /** 预计实例数量 */
+    int elements();
+
+    /** 预计误判率 */
+    float probability() default 0.01F;
+
+    /** 未命中缓存数量(0表示不缓存) */
+    int misses() default 0;
+
+}
@@ -0,0 +1,63 @@
+package com.jstarcraft.core.cache.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.jstarcraft.core.cache.CacheService;
+import com.jstarcraft.core.cache.annotation.CacheConfiguration.Unit;
+
+/**
+ * 缓存预热
+ * 
+ * <pre>
+ * 声明缓存类型在{@link CacheService#warmup(int)}时从持久层批量装载的实例,只支持{@link Unit#ENTITY}.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheWarmup {
+
+    /**
+     * 预热模式
+     * 
+     * @author Birdy
+     */
+    public enum Mode {
+
+        /** 全部实例,按照主键范围分段装载. */
+        ALL,
+
+        /** 指定索引值的实例,同时预热对应的索引. */
+        INDEX,
+
+        /** 按照指定字段排序的前N个实例. */
+        ORDER;
+
+    }
+
+    /** 预热模式 */
+    Mode mode();
+
+    /** 主键字段名称(用于按照主键范围或者主键集合查询) */
+    String identity() default "id";
+
+    /** 索引字段(INDEX)或者排序字段(ORDER)名称 */
+    String name() default "";
+
+    /** 索引值(INDEX,按照字段类型转换) */
+    String[] values() default {};
+
+    /** 预热数量(ORDER) */
+    int size() default 0;
+
+    /** 是否降序(ORDER) */
+    boolean descending() default true;
+
+    /** 每次查询的实例数量 */
+    int batch() default 1000;
+
+}
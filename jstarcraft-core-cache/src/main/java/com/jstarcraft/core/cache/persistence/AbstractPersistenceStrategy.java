@@ -1,9 +1,34 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
+import com.jstarcraft.core.cache.CacheInformation;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.storage.StorageMetadata;
+import com.jstarcraft.core.utility.StringUtility;
+
 public abstract class AbstractPersistenceStrategy implements PersistenceStrategy {
 
+    /** 日志目录参数名称(可选,配置时等待的元素会记录到预写日志,启动时恢复未持久的元素) */
+    public static final String PARAMETER_JOURNAL = "journal";
+    /** 日志段大小参数名称(可选,字节) */
+    public static final String PARAMETER_JOURNAL_SEGMENT = "journalSegment";
+    /** 日志刷盘间隔参数名称(可选,毫秒,0表示每次追加都刷盘) */
+    public static final String PARAMETER_JOURNAL_SYNC = "journalSync";
+
+    /** 默认日志段大小(64MB) */
+    private static final int DEFAULT_JOURNAL_SEGMENT = 64 * 1024 * 1024;
+    /** 默认日志刷盘间隔(毫秒) */
+    private static final long DEFAULT_JOURNAL_SYNC = 100L;
+
     /** 策略名称 */
     protected String name;
 
@@ -20,4 +45,44 @@ public abstract class AbstractPersistenceStrategy implements PersistenceStrategy
         return name;
     }
 
+    /**
+     * 根据配置获取指定类型的持久日志
+     * 
+     * @param information
+     * @return 没有配置日志目录时返回null
+     */
+    PersistenceJournal getJournal(CacheInformation information) {
+        String journal = configuration.get(PARAMETER_JOURNAL);
+        if (journal == null) {
+            return null;
+        }
+        String segment = configuration.get(PARAMETER_JOURNAL_SEGMENT);
+        String sync = configuration.get(PARAMETER_JOURNAL_SYNC);
+        int segmentSize = segment == null ? DEFAULT_JOURNAL_SEGMENT : Integer.parseInt(segment);
+        long syncInterval = sync == null ? DEFAULT_JOURNAL_SYNC : Long.parseLong(sync);
+        if (segmentSize <= 0 || syncInterval < 0L) {
+            throw new CacheConfigurationException();
+        }
+        File directory = new File(new File(journal, name), information.getCacheClass().getName());
+        return new PersistenceJournal(directory, information, segmentSize, syncInterval);
+    }
+
+    /**
+     * 按照主键批量查询访问器
+     * 
+     * @param accessor
+     * @param clazz
+     * @param cacheIds
+     * @return
+     */
+    static <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(StorageAccessor accessor, Class<T> clazz, Collection<K> cacheIds) {
+        for (StorageMetadata metadata : accessor.getAllMetadata()) {
+            if (metadata.getOrmClass() == clazz) {
+                return accessor.queryInstances(clazz, metadata.getPrimaryName(), new StorageCondition<>(ConditionType.In, cacheIds.toArray()));
+            }
+        }
+        String message = StringUtility.format("访问器不存在缓存[{}]的元信息", clazz.getName());
+        throw new CacheException(message);
+    }
+
 }
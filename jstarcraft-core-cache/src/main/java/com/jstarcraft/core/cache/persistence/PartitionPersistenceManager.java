@@ -0,0 +1,200 @@
+package com.jstarcraft.core.cache.persistence;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+
+/**
+ * 分区队列持久管理器
+ * 
+ * <pre>
+ * 元素按照hash(cacheId) % N路由到N个{@link QueuePersistenceManager}分区,每个分区独立的线程与队列.
+ * 相同主键的元素总是进入相同分区,保证同一个主键的持久顺序.
+ * 所有分区共享同一个{@link PersistenceOverlay},索引查询直接使用覆盖层修正访问器的查询结果,不需要遍历分区.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class PartitionPersistenceManager<K extends Comparable, T extends IdentityObject<K>> implements PersistenceManager<K, T> {
+
+	/** 类型 */
+	private Class cacheClass;
+	/** ORM访问器 */
+	private StorageAccessor accessor;
+	/** 等待与正在持久的元素(分区之间共享) */
+	private PersistenceOverlay overlay;
+	/** 分区 */
+	private QueuePersistenceManager<K, T>[] partitions;
+	/** 监听器 */
+	private PersistenceMonitor monitor;
+
+	PartitionPersistenceManager(Class cacheClass, StorageAccessor accessor, PersistenceOverlay overlay, QueuePersistenceManager<K, T>[] partitions) {
+		this.cacheClass = cacheClass;
+		this.accessor = accessor;
+		this.overlay = overlay;
+		this.partitions = partitions;
+	}
+
+	/**
+	 * 获取主键对应的分区
+	 * 
+	 * @param cacheId
+	 * @return
+	 */
+	private QueuePersistenceManager<K, T> getPartition(Object cacheId) {
+		int hash = cacheId.hashCode();
+		hash ^= (hash >>> 16);
+		return partitions[Math.floorMod(hash, partitions.length)];
+	}
+
+	@Override
+	public T getInstance(K cacheId) {
+		return getPartition(cacheId).getInstance(cacheId);
+	}
+
+	@Override
+	public Map<K, T> getInstances(Collection<K> cacheIds) {
+		return overlay.getInstances((misses) -> {
+			return AbstractPersistenceStrategy.queryInstances(accessor, cacheClass, misses);
+		}, cacheIds);
+	}
+
+	@Override
+	public boolean hasElement(K cacheId) {
+		return overlay.getElement(cacheId) != null;
+	}
+
+	@Override
+	public Map<K, Object> getIdentities(String indexName, Comparable indexValue) {
+		return overlay.getIdentities(() -> {
+			return accessor.queryIdentities(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
+	}
+
+	@Override
+	public List<T> getInstances(String indexName, Comparable indexValue) {
+		Map<K, T> instances = overlay.getInstances(() -> {
+			return accessor.queryInstances(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
+		return new ArrayList<>(instances.values());
+	}
+
+	@Override
+	public PersistenceElement createInstance(IdentityObject<?> cacheObject) {
+		return getPartition(cacheObject.getId()).createInstance(cacheObject);
+	}
+
+	@Override
+	public PersistenceElement deleteInstance(Comparable cacheId) {
+		return getPartition(cacheId).deleteInstance(cacheId);
+	}
+
+	@Override
+	public PersistenceElement updateInstance(IdentityObject<?> cacheObject) {
+		return getPartition(cacheObject.getId()).updateInstance(cacheObject);
+	}
+
+	@Override
+	public PersistenceElement updateInstance(IdentityObject<?> cacheObject, BitSet fields) {
+		return getPartition(cacheObject.getId()).updateInstance(cacheObject, fields);
+	}
+
+	/**
+	 * 持久元素
+	 * 
+	 * <pre>
+	 * 恢复日志时直接使用携带序号的元素
+	 * </pre>
+	 * 
+	 * @param element
+	 */
+	void persist(PersistenceElement element) {
+		getPartition(element.getCacheId()).persist(element);
+	}
+
+	@Override
+	public void setMonitor(PersistenceMonitor monitor) {
+		this.monitor = monitor;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			partition.setMonitor(monitor);
+		}
+	}
+
+	@Override
+	public PersistenceMonitor getMonitor() {
+		return monitor;
+	}
+
+	@Override
+	public int getWaitSize() {
+		int size = 0;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			size += partition.getWaitSize();
+		}
+		return size;
+	}
+
+	/**
+	 * 获取分区数量
+	 * 
+	 * @return
+	 */
+	public int getPartitionSize() {
+		return partitions.length;
+	}
+
+	/**
+	 * 获取指定分区的等待数量
+	 * 
+	 * @param partition
+	 * @return
+	 */
+	public int getWaitSize(int partition) {
+		return partitions[partition].getWaitSize();
+	}
+
+	@Override
+	public long getCreatedCount() {
+		long count = 0L;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			count += partition.getCreatedCount();
+		}
+		return count;
+	}
+
+	@Override
+	public long getUpdatedCount() {
+		long count = 0L;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			count += partition.getUpdatedCount();
+		}
+		return count;
+	}
+
+	@Override
+	public long getDeletedCount() {
+		long count = 0L;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			count += partition.getDeletedCount();
+		}
+		return count;
+	}
+
+	@Override
+	public long getExceptionCount() {
+		long count = 0L;
+		for (QueuePersistenceManager<K, T> partition : partitions) {
+			count += partition.getExceptionCount();
+		}
+		return count;
+	}
+
+}
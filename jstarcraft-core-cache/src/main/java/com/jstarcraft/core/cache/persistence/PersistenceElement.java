@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.BitSet;
+
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,11 +31,20 @@ public class PersistenceElement {
     private IdentityObject<?> cacheObject;
     /** 是否忽略 */
     private boolean ignore;
+    /** 日志序号(0表示没有记录日志) */
+    private long sequence;
+    /** 变更字段({@link PersistenceOperation.UPDATE}时有效,null表示全部字段) */
+    private BitSet fields;
 
     PersistenceElement(PersistenceOperation operation, Comparable cacheId, IdentityObject<?> cacheObject) {
+        this(operation, cacheId, cacheObject, null);
+    }
+
+    PersistenceElement(PersistenceOperation operation, Comparable cacheId, IdentityObject<?> cacheObject, BitSet fields) {
         this.operation = operation;
         this.cacheId = cacheId;
         this.cacheObject = cacheObject;
+        this.fields = fields;
     }
 
     /**
@@ -69,6 +80,12 @@ public class PersistenceElement {
             throw new CacheOperationException("元素处于忽略状态,不能再执行修改");
         }
         cacheObject = element.getCacheObject();
+        // 合并变更字段,只有UPDATE->UPDATE保留部分字段
+        if (operation == PersistenceOperation.UPDATE && element.getOperation() == PersistenceOperation.UPDATE) {
+            fields = mergeFields(fields, element.fields);
+        } else {
+            fields = null;
+        }
         switch (operation) {
         case CREATE:
             // 旧的状态为CREATE
@@ -132,6 +149,29 @@ public class PersistenceElement {
         return ignore;
     }
 
+    /**
+     * 合并变更字段
+     * 
+     * <pre>
+     * 方法的字段位图是共享的,所以合并时必须复制.
+     * </pre>
+     * 
+     * @param left
+     * @param right
+     * @return
+     */
+    private static BitSet mergeFields(BitSet left, BitSet right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        if (left.equals(right)) {
+            return left;
+        }
+        BitSet fields = (BitSet) left.clone();
+        fields.or(right);
+        return fields;
+    }
+
     /**
      * 获取操作类型
      * 
@@ -159,6 +199,33 @@ public class PersistenceElement {
         return cacheObject;
     }
 
+    /**
+     * 获取变更字段
+     * 
+     * @return null表示全部字段
+     */
+    public BitSet getFields() {
+        return fields;
+    }
+
+    /**
+     * 获取日志序号
+     * 
+     * @return
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 设置日志序号
+     * 
+     * @param sequence
+     */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public String toString() {
         ToStringBuilder string = new ToStringBuilder(this);
@@ -0,0 +1,553 @@
+package com.jstarcraft.core.cache.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.CacheInformation;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
+import com.jstarcraft.core.codec.ContentCodec;
+import com.jstarcraft.core.codec.specification.CodecDefinition;
+import com.jstarcraft.core.codec.standard.StandardContentCodec;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.reflection.TypeUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 持久日志
+ * 
+ * <pre>
+ * 只追加的预写日志,保证等待持久的元素在进程崩溃之后可以恢复.
+ * 日志由多个内存映射的段组成,每个段的头部记录编解码定义,所以段可以独立解码.
+ * 记录格式为[长度][CRC32][序号][归属][操作][内容],长度为0或者校验失败表示段的有效数据结束.
+ * 
+ * 每个等待元素以第一条记录的序号作为归属,合并到该元素的记录使用相同的归属.
+ * 元素写入访问器或者被忽略之后追加完成记录,恢复时跳过已经完成的归属,所以重放总是完整的合并链.
+ * 检查点为最小的未完成归属减1,所有记录都不大于检查点的段会被截断.
+ * 同步线程按照刷盘间隔执行组提交(刷盘,写检查点,截断),刷盘间隔为0时每次追加都会刷盘.
+ * 断电时最多丢失一个刷盘间隔内的记录.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class PersistenceJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersistenceJournal.class);
+
+    /** 段魔数 */
+    private static final int MAGIC = 0x4A4E4C31;
+
+    /** 段后缀 */
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /** 检查点文件 */
+    private static final String CHECKPOINT = "checkpoint";
+
+    /** 记录头部(长度+CRC32) */
+    private static final int RECORD_HEAD = 8;
+
+    /** 记录主体的固定部分(序号+归属+操作) */
+    private static final int RECORD_BODY = 17;
+
+    /** 完成记录的操作 */
+    private static final byte DONE = -1;
+
+    /** 刷盘间隔为0时,检查点与截断的间隔(毫秒) */
+    private static final long CHECKPOINT_INTERVAL = 1000L;
+
+    /** 空内容 */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 日志段
+     */
+    private static class JournalSegment {
+
+        /** 段文件 */
+        private final File file;
+
+        /** 映射缓冲 */
+        private final MappedByteBuffer buffer;
+
+        /** 段内最大的序号 */
+        private long last;
+
+        private JournalSegment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+    }
+
+    /** 日志目录 */
+    private final File directory;
+
+    /** 缓存类型信息 */
+    private final CacheInformation information;
+
+    /** 主键类型 */
+    private final Type idType;
+
+    /** 编解码定义 */
+    private final byte[] definition;
+
+    /** 编解码器 */
+    private final ContentCodec codec;
+
+    /** 段大小(字节) */
+    private final int segmentSize;
+
+    /** 刷盘间隔(毫秒) */
+    private final long syncInterval;
+
+    /** 等待恢复的段(打开日志时已经存在的段) */
+    private final TreeMap<Long, File> recoveries = new TreeMap<>();
+
+    /** 等待截断的段 */
+    private final ArrayDeque<JournalSegment> segments = new ArrayDeque<>();
+
+    /** 当前段 */
+    private JournalSegment current;
+
+    /** 当前段的索引 */
+    private long index;
+
+    /** 已经分配的最大序号 */
+    private long sequence;
+
+    /** 未完成的归属 */
+    private final ConcurrentSkipListSet<Long> pendings = new ConcurrentSkipListSet<>();
+
+    /** 检查点通道 */
+    private final FileChannel checkpointChannel;
+
+    /** 检查点缓冲 */
+    private final MappedByteBuffer checkpointBuffer;
+
+    /** 打开时的检查点 */
+    private final long checkpoint;
+
+    /** 是否正在恢复(恢复期间检查点不能推进) */
+    private volatile boolean recovering;
+
+    /** 同步线程 */
+    private final Thread synchronizer;
+
+    /** 是否关闭 */
+    private volatile boolean closed;
+
+    PersistenceJournal(File directory, CacheInformation information, int segmentSize, long syncInterval) {
+        if (segmentSize <= 0 || syncInterval < 0L) {
+            throw new CacheConfigurationException();
+        }
+        Class<?> cacheClass = information.getCacheClass();
+        Map<TypeVariable<?>, Type> arguments = TypeUtility.getTypeArguments(cacheClass, IdentityObject.class);
+        Type idType = arguments == null ? null : arguments.get(IdentityObject.class.getTypeParameters()[0]);
+        if (!(idType instanceof Class)) {
+            String message = StringUtility.format("类型[{}]的主键类型无法确定,不能使用持久日志", cacheClass.getName());
+            LOGGER.error(message);
+            throw new CacheConfigurationException(message);
+        }
+        this.directory = directory;
+        this.information = information;
+        this.idType = idType;
+        this.definition = CodecDefinition.toBytes(CodecDefinition.instanceOf(cacheClass, idType));
+        this.codec = new StandardContentCodec(CodecDefinition.fromBytes(definition));
+        this.segmentSize = segmentSize;
+        this.syncInterval = syncInterval;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException(directory.getAbsolutePath());
+            }
+            File[] files = directory.listFiles((file, name) -> name.endsWith(SEGMENT_SUFFIX));
+            for (File file : files) {
+                String name = file.getName();
+                long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                recoveries.put(index, file);
+                this.index = Math.max(this.index, index);
+            }
+            this.checkpointChannel = new RandomAccessFile(new File(directory, CHECKPOINT), "rw").getChannel();
+            this.checkpointBuffer = checkpointChannel.map(MapMode.READ_WRITE, 0, Long.BYTES);
+            this.checkpoint = checkpointBuffer.getLong(0);
+            this.sequence = checkpoint;
+            this.recovering = !recoveries.isEmpty();
+            this.current = createSegment(0);
+        } catch (IOException exception) {
+            String message = StringUtility.format("打开持久日志[{}]时异常", directory.getAbsolutePath());
+            LOGGER.error(message, exception);
+            throw new CacheConfigurationException(message, exception);
+        }
+        this.synchronizer = new Thread(this::synchronize, "journal:" + directory.getName());
+        this.synchronizer.setDaemon(true);
+        this.synchronizer.start();
+    }
+
+    private JournalSegment createSegment(int length) throws IOException {
+        index++;
+        File file = new File(directory, String.format("%020d", index) + SEGMENT_SUFFIX);
+        int size = Math.max(segmentSize, Integer.BYTES * 2 + definition.length + RECORD_HEAD + length + Integer.BYTES);
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw"); FileChannel channel = access.getChannel()) {
+            access.setLength(size);
+            // 映射在通道关闭之后仍然有效
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(definition.length);
+            buffer.put(definition);
+            return new JournalSegment(file, buffer);
+        }
+    }
+
+    /**
+     * 编码元素的内容(不需要持有任何锁)
+     * 
+     * @param element
+     * @return
+     */
+    byte[] encode(PersistenceElement element) {
+        if (PersistenceOperation.DELETE.equals(element.getOperation())) {
+            return codec.encode(idType, element.getCacheId());
+        } else {
+            return codec.encode(information.getCacheClass(), element.getCacheObject());
+        }
+    }
+
+    private long write(byte operation, long owner, byte[] content) {
+        int length = RECORD_BODY + content.length;
+        MappedByteBuffer buffer = current.buffer;
+        // 保留结束标记的位置
+        if (buffer.remaining() < RECORD_HEAD + length + Integer.BYTES) {
+            rotate(length);
+            buffer = current.buffer;
+        }
+        long sequence = ++this.sequence;
+        ByteBuffer head = ByteBuffer.allocate(RECORD_BODY);
+        head.putLong(sequence);
+        head.putLong(owner == 0L ? sequence : owner);
+        head.put(operation);
+        CRC32 crc = new CRC32();
+        crc.update(head.array());
+        crc.update(content);
+        buffer.putInt(length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(head.array());
+        buffer.put(content);
+        current.last = sequence;
+        if (syncInterval == 0L) {
+            buffer.force();
+        }
+        return sequence;
+    }
+
+    private void rotate(int length) {
+        try {
+            current.buffer.force();
+            segments.addLast(current);
+            current = createSegment(length);
+        } catch (IOException exception) {
+            String message = StringUtility.format("持久日志[{}]轮转时异常", directory.getAbsolutePath());
+            LOGGER.error(message, exception);
+            throw new CacheException(message, exception);
+        }
+    }
+
+    /**
+     * 追加记录
+     * 
+     * <pre>
+     * 必须与覆盖层的合并在同一个主键的互斥范围内调用,保证同一个主键的记录顺序.
+     * </pre>
+     * 
+     * @param operation
+     * @param content
+     * @param owner 记录合并到的等待元素的序号,0表示记录产生新的等待元素
+     * @return 记录的序号
+     */
+    synchronized long append(PersistenceOperation operation, byte[] content, long owner) {
+        if (closed) {
+            String message = StringUtility.format("持久日志[{}]已经关闭", directory.getAbsolutePath());
+            throw new CacheException(message);
+        }
+        long sequence = write((byte) operation.ordinal(), owner, content);
+        if (owner == 0L) {
+            pendings.add(sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * 登记恢复的等待元素
+     * 
+     * @param owner
+     */
+    void register(long owner) {
+        pendings.add(owner);
+    }
+
+    /**
+     * 完成等待元素(元素已经写入访问器或者已经被忽略)
+     * 
+     * @param owner
+     */
+    synchronized void release(long owner) {
+        if (pendings.remove(owner) && !closed) {
+            write(DONE, owner, EMPTY);
+        }
+    }
+
+    /**
+     * 获取检查点
+     * 
+     * @return
+     */
+    synchronized long getCheckpoint() {
+        if (recovering) {
+            return checkpoint;
+        }
+        return pendings.isEmpty() ? sequence : pendings.first() - 1L;
+    }
+
+    /**
+     * 获取等待恢复的段数量
+     * 
+     * @return
+     */
+    int getRecoverySize() {
+        return recoveries.size();
+    }
+
+    /**
+     * 获取段数量(包括当前段)
+     * 
+     * @return
+     */
+    synchronized int getSegmentSize() {
+        return segments.size() + 1;
+    }
+
+    /**
+     * 恢复未完成的元素
+     * 
+     * <pre>
+     * 必须在追加任何记录之前调用.
+     * 第一遍扫描收集完成记录,第二遍按照序号重放未完成的合并链.
+     * 恢复的元素携带原始归属,由覆盖层登记而不是重新追加,所以恢复期间崩溃不会产生重复的记录.
+     * 恢复的段在检查点越过之后与普通的段一样被截断.
+     * </pre>
+     * 
+     * @param consumer
+     * @return 恢复的记录数量
+     */
+    int recover(Consumer<PersistenceElement> consumer) {
+        List<JournalSegment> recoveries = new ArrayList<>(this.recoveries.size());
+        for (File file : this.recoveries.values()) {
+            try (RandomAccessFile access = new RandomAccessFile(file, "r"); FileChannel channel = access.getChannel()) {
+                recoveries.add(new JournalSegment(file, channel.map(MapMode.READ_ONLY, 0, channel.size())));
+            } catch (IOException exception) {
+                String message = StringUtility.format("持久日志[{}]恢复段[{}]时异常", directory.getAbsolutePath(), file.getName());
+                LOGGER.error(message, exception);
+                throw new CacheException(message, exception);
+            }
+        }
+        Set<Long> dones = new HashSet<>();
+        long maximum = checkpoint;
+        for (JournalSegment segment : recoveries) {
+            maximum = Math.max(maximum, scan(segment, dones, null));
+        }
+        synchronized (this) {
+            // 恢复时新的记录(例如重放时再次忽略的元素)必须使用更大的序号
+            sequence = Math.max(sequence, maximum);
+        }
+        int count = 0;
+        for (JournalSegment segment : recoveries) {
+            segment.buffer.rewind();
+            count += scan(segment, dones, consumer);
+        }
+        synchronized (this) {
+            // 恢复之前没有追加记录,所以恢复的段按照索引顺序排在其它段之前
+            List<JournalSegment> segments = new ArrayList<>(recoveries);
+            segments.addAll(this.segments);
+            this.segments.clear();
+            this.segments.addAll(segments);
+            this.recoveries.clear();
+            recovering = false;
+        }
+        return count;
+    }
+
+    /**
+     * 扫描段
+     * 
+     * @param segment
+     * @param dones
+     * @param consumer 为null时收集完成记录并且返回最大序号,否则重放未完成的记录并且返回重放数量
+     * @return
+     */
+    private long scan(JournalSegment segment, Set<Long> dones, Consumer<PersistenceElement> consumer) {
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer.remaining() < Integer.BYTES * 2 || buffer.getInt() != MAGIC) {
+            LOGGER.error("持久日志[{}]的段[{}]不完整", directory.getAbsolutePath(), segment.file.getName());
+            return 0L;
+        }
+        byte[] definition = new byte[buffer.getInt()];
+        buffer.get(definition);
+        ContentCodec codec = consumer == null ? null : new StandardContentCodec(CodecDefinition.fromBytes(definition));
+        PersistenceOperation[] operations = PersistenceOperation.values();
+        long count = 0L;
+        while (buffer.remaining() >= RECORD_HEAD) {
+            int length = buffer.getInt();
+            if (length < RECORD_BODY || length > buffer.remaining() - Integer.BYTES) {
+                break;
+            }
+            int checksum = buffer.getInt();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                // 崩溃时未写完的记录
+                LOGGER.warn("持久日志[{}]的段[{}]存在校验失败的记录", directory.getAbsolutePath(), segment.file.getName());
+                break;
+            }
+            ByteBuffer body = ByteBuffer.wrap(bytes);
+            long sequence = body.getLong();
+            long owner = body.getLong();
+            byte operation = body.get();
+            segment.last = sequence;
+            if (consumer == null) {
+                if (operation == DONE) {
+                    dones.add(owner);
+                }
+                count = Math.max(count, sequence);
+                continue;
+            }
+            if (operation == DONE || owner <= checkpoint || dones.contains(owner)) {
+                continue;
+            }
+            byte[] content = Arrays.copyOfRange(bytes, RECORD_BODY, length);
+            PersistenceElement element;
+            if (PersistenceOperation.DELETE.equals(operations[operation])) {
+                Comparable cacheId = (Comparable) codec.decode(idType, content);
+                element = new PersistenceElement(operations[operation], cacheId, null);
+            } else {
+                IdentityObject<?> cacheObject = (IdentityObject<?>) codec.decode(information.getCacheClass(), content);
+                element = new PersistenceElement(operations[operation], cacheObject.getId(), cacheObject);
+            }
+            element.setSequence(owner);
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 组提交
+     * 
+     * <pre>
+     * 刷盘当前段,写检查点,截断已经完成的段.
+     * </pre>
+     */
+    void sync() {
+        JournalSegment segment;
+        long checkpoint;
+        synchronized (this) {
+            segment = current;
+            checkpoint = getCheckpoint();
+        }
+        segment.buffer.force();
+        checkpointBuffer.putLong(0, checkpoint);
+        checkpointBuffer.force();
+        synchronized (this) {
+            if (recovering) {
+                return;
+            }
+            while (!segments.isEmpty()) {
+                JournalSegment oldest = segments.peekFirst();
+                if (oldest.last > checkpoint) {
+                    break;
+                }
+                if (!oldest.file.delete()) {
+                    // 映射尚未释放时部分平台无法删除,下次组提交再次尝试
+                    LOGGER.warn("持久日志[{}]截断段[{}]失败", directory.getAbsolutePath(), oldest.file.getName());
+                    break;
+                }
+                segments.pollFirst();
+            }
+        }
+    }
+
+    private void synchronize() {
+        long interval = syncInterval == 0L ? CHECKPOINT_INTERVAL : syncInterval;
+        while (!closed) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException exception) {
+                // 中断由closed维护
+            }
+            try {
+                sync();
+            } catch (Exception exception) {
+                String message = StringUtility.format("持久日志[{}]组提交时异常", directory.getAbsolutePath());
+                LOGGER.error(message, exception);
+            }
+        }
+    }
+
+    /**
+     * 关闭日志
+     * 
+     * <pre>
+     * 所有元素都已经完成时删除所有段,否则保留段等待下次恢复.
+     * </pre>
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        synchronizer.interrupt();
+        try {
+            synchronizer.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (this) {
+            if (pendings.isEmpty() && segments.isEmpty()) {
+                current.file.delete();
+            } else {
+                LOGGER.warn("持久日志[{}]关闭时仍然存在[{}]个等待元素", directory.getAbsolutePath(), pendings.size());
+            }
+        }
+        try {
+            checkpointChannel.close();
+        } catch (IOException exception) {
+            LOGGER.error(StringUtility.format("关闭持久日志[{}]时异常", directory.getAbsolutePath()), exception);
+        }
+    }
+
+}
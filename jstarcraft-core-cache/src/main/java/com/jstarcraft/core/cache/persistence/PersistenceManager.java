@@ -1,5 +1,8 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +23,42 @@ public interface PersistenceManager<K extends Comparable, T extends IdentityObje
      */
     T getInstance(K cacheId);
 
+    /**
+     * 批量获取实例
+     * 
+     * <pre>
+     * 不存在的主键不包含在结果中.
+     * </pre>
+     * 
+     * @param cacheIds
+     * @return
+     */
+    default Map<K, T> getInstances(Collection<K> cacheIds) {
+        Map<K, T> instances = new HashMap<>();
+        for (K cacheId : cacheIds) {
+            T instance = getInstance(cacheId);
+            if (instance != null) {
+                instances.put(cacheId, instance);
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * 是否存在等待或者正在持久的元素
+     * 
+     * <pre>
+     * 存在时缓存的实例比访问器中的记录新,不能使用访问器的记录覆盖.
+     * 同步持久的管理器总是返回false.
+     * </pre>
+     * 
+     * @param cacheId
+     * @return
+     */
+    default boolean hasElement(K cacheId) {
+        return false;
+    }
+
     /**
      * 获取指定索引的主键映射
      * 
@@ -62,6 +101,15 @@ public interface PersistenceManager<K extends Comparable, T extends IdentityObje
      */
     PersistenceElement updateInstance(IdentityObject<?> cacheObject);
 
+    /**
+     * 修改实例的部分字段
+     * 
+     * @param cacheObject
+     * @param fields 变更的字段位图(null表示全部字段)
+     * @return
+     */
+    PersistenceElement updateInstance(IdentityObject<?> cacheObject, BitSet fields);
+
     /**
      * 设置监控器
      * 
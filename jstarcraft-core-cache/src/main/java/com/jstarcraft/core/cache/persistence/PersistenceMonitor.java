@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.BitSet;
+
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
 import com.jstarcraft.core.common.identification.IdentityObject;
 
@@ -21,4 +23,34 @@ public interface PersistenceMonitor {
      */
     void notifyOperate(PersistenceOperation operation, Object id, IdentityObject<?> object, Exception exception);
 
+    /**
+     * 操作通知(携带变更的字段)
+     * 
+     * <pre>
+     * 持久策略调用此方法,默认转发给{@link #notifyOperate(PersistenceOperation, Object, IdentityObject, Exception)}.
+     * </pre>
+     * 
+     * @param operation
+     * @param id
+     * @param object
+     * @param fields 部分修改的字段位图(null表示全部字段)
+     * @param exception
+     */
+    default void notifyOperate(PersistenceOperation operation, Object id, IdentityObject<?> object, BitSet fields, Exception exception) {
+        notifyOperate(operation, id, object, exception);
+    }
+
+    /**
+     * 批量通知
+     * 
+     * <pre>
+     * 支持批量持久的策略每次批量持久完成后调用
+     * </pre>
+     * 
+     * @param size 批量元素数量
+     * @param time 批量耗时(毫秒)
+     */
+    default void notifyBatch(int size, long time) {
+    }
+
 }
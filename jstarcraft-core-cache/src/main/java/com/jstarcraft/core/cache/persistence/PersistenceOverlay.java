@@ -0,0 +1,440 @@
+package com.jstarcraft.core.cache.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.jstarcraft.core.cache.CacheInformation;
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 持久覆盖层
+ * 
+ * <pre>
+ * 记录尚未写入访问器的元素,用于覆盖访问器的查询结果.
+ * 每个主键最多有两个元素:等待持久(pending)与正在持久(flushing),前者覆盖后者.
+ * 按照(索引名称,索引值)增量维护主键集合,索引查询的代价只与查询结果和命中的元素数量有关,与等待的元素数量无关.
+ * 
+ * 合并与开始持久只依赖{@link ConcurrentHashMap#compute}的桶锁,不会阻塞其它主键.
+ * 元素只有在写入访问器之后才能通过{@link #finish}离开覆盖层,此时需要短暂的写锁;
+ * 索引查询使用乐观读,只有查询期间存在元素离开覆盖层时才退化为读锁重新查询.
+ *
+ * 配置{@link PersistenceJournal}时,记录在合并的桶锁内追加,保证同一个主键的记录顺序与合并顺序一致;
+ * 新的等待元素作为记录的归属,离开覆盖层或者被忽略时完成归属.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class PersistenceOverlay {
+
+    /**
+     * 覆盖条目
+     * 
+     * <pre>
+     * 字段只在{@link ConcurrentHashMap#compute}中修改
+     * </pre>
+     */
+    private static class OverlayEntry {
+
+        /** 等待持久的元素 */
+        private volatile PersistenceElement pending;
+
+        /** 正在持久的元素 */
+        private volatile PersistenceElement flushing;
+
+        /** 有效元素的索引值(按序号,有效元素为DELETE时为null,不会被修改) */
+        private volatile Comparable[] values;
+
+        private PersistenceElement getElement() {
+            PersistenceElement element = pending;
+            return element != null ? element : flushing;
+        }
+
+    }
+
+    /** 缓存类型信息 */
+    private final CacheInformation information;
+
+    /** 覆盖条目 */
+    private final ConcurrentHashMap<Object, OverlayEntry> entries = new ConcurrentHashMap<>();
+
+    /** 索引序号 => 索引值 => 主键集合 */
+    private final ConcurrentHashMap<Comparable, Set<Object>>[] indexes;
+
+    /** 读取索引值的缓冲(索引值没有变化时不分配新数组) */
+    private final ThreadLocal<Comparable[]> buffers = new ThreadLocal<Comparable[]>() {
+
+        @Override
+        protected Comparable[] initialValue() {
+            return new Comparable[indexes.length];
+        }
+
+    };
+
+    /** 等待与正在持久的元素数量 */
+    private final AtomicInteger waitSize = new AtomicInteger();
+
+    /** 版本锁(元素离开覆盖层时修改版本) */
+    private final StampedLock lock = new StampedLock();
+
+    /** 持久日志(可以为null) */
+    private final PersistenceJournal journal;
+
+    PersistenceOverlay(CacheInformation information) {
+        this(information, null);
+    }
+
+    PersistenceOverlay(CacheInformation information, PersistenceJournal journal) {
+        this.information = information;
+        this.journal = journal;
+        this.indexes = new ConcurrentHashMap[information.getIndexSize()];
+        for (int position = 0; position < indexes.length; position++) {
+            indexes[position] = new ConcurrentHashMap<>();
+        }
+    }
+
+    private int getPosition(String indexName) {
+        int position = information.getIndexPosition(indexName);
+        if (position < 0) {
+            String message = StringUtility.format("缓存[{}]不存在索引[{}]", information.getCacheClass().getName(), indexName);
+            throw new CacheException(message);
+        }
+        return position;
+    }
+
+    /**
+     * 根据有效元素更新索引(必须在compute中调用)
+     * 
+     * @param cacheId
+     * @param entry
+     */
+    private void updateIndexes(Object cacheId, OverlayEntry entry) {
+        PersistenceElement element = entry.getElement();
+        Comparable[] oldValues = entry.values;
+        Comparable[] newValues = null;
+        if (element != null && !PersistenceOperation.DELETE.equals(element.getOperation())) {
+            newValues = information.getIndexValues(element.getCacheObject(), buffers.get());
+        }
+        boolean change = false;
+        for (int position = 0; position < indexes.length; position++) {
+            Comparable oldValue = oldValues == null ? null : oldValues[position];
+            Comparable newValue = newValues == null ? null : newValues[position];
+            if (Objects.equals(oldValue, newValue)) {
+                continue;
+            }
+            change = true;
+            ConcurrentHashMap<Comparable, Set<Object>> index = indexes[position];
+            if (oldValue != null) {
+                index.computeIfPresent(oldValue, (key, ids) -> {
+                    ids.remove(cacheId);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+            if (newValue != null) {
+                index.compute(newValue, (key, ids) -> {
+                    if (ids == null) {
+                        ids = ConcurrentHashMap.newKeySet();
+                    }
+                    ids.add(cacheId);
+                    return ids;
+                });
+            }
+        }
+        if (newValues == null) {
+            entry.values = null;
+        } else if (oldValues == null || change) {
+            // 索引查询不加锁读取,缓冲只能复制以后发布
+            entry.values = Arrays.copyOf(newValues, indexes.length);
+        }
+    }
+
+    /**
+     * 合并元素
+     * 
+     * @param element
+     * @return 如果元素成为新的等待元素则返回该元素(调用方需要放到队列),如果合并到已有的等待元素则返回null
+     */
+    PersistenceElement persist(PersistenceElement element) {
+        PersistenceElement[] news = new PersistenceElement[1];
+        // 恢复的元素已经存在记录
+        byte[] content = journal == null || element.getSequence() != 0L ? null : journal.encode(element);
+        entries.compute(element.getCacheId(), (cacheId, entry) -> {
+            if (entry == null) {
+                entry = new OverlayEntry();
+            }
+            PersistenceElement current = entry.pending;
+            if (current == null) {
+                entry.pending = element;
+                news[0] = element;
+                waitSize.incrementAndGet();
+            } else {
+                current.modify(element);
+            }
+            if (journal != null) {
+                if (content != null) {
+                    // 合并的记录归属于已有的等待元素
+                    long sequence = journal.append(element.getOperation(), content, current == null ? 0L : current.getSequence());
+                    if (current == null) {
+                        element.setSequence(sequence);
+                    }
+                } else if (current == null) {
+                    journal.register(element.getSequence());
+                }
+            }
+            if (current != null && current.isIgnore()) {
+                // 忽略只清理覆盖层,不清理队列
+                entry.pending = null;
+                waitSize.decrementAndGet();
+                if (journal != null) {
+                    // 必须在合并的记录之后完成
+                    journal.release(current.getSequence());
+                }
+            }
+            updateIndexes(cacheId, entry);
+            return entry.getElement() == null ? null : entry;
+        });
+        return news[0];
+    }
+
+    /**
+     * 开始持久元素
+     * 
+     * <pre>
+     * 元素从等待转为正在持久,之后相同主键的操作会产生新的等待元素.
+     * 有效元素没有变化,所以不需要更新索引.
+     * </pre>
+     * 
+     * @param element
+     * @return 元素已经被忽略或者不再等待时返回false
+     */
+    boolean flush(PersistenceElement element) {
+        boolean[] flushes = new boolean[1];
+        entries.computeIfPresent(element.getCacheId(), (cacheId, entry) -> {
+            if (entry.pending == element && !element.isIgnore()) {
+                if (entry.flushing != null) {
+                    // 上一个元素没有通过finish离开覆盖层
+                    waitSize.decrementAndGet();
+                    if (journal != null) {
+                        journal.release(entry.flushing.getSequence());
+                    }
+                }
+                entry.flushing = element;
+                entry.pending = null;
+                flushes[0] = true;
+            }
+            return entry;
+        });
+        return flushes[0];
+    }
+
+    /**
+     * 结束持久元素
+     * 
+     * <pre>
+     * 必须在元素写入访问器之后调用
+     * </pre>
+     * 
+     * @param elements
+     */
+    void finish(Collection<PersistenceElement> elements) {
+        long stamp = lock.writeLock();
+        try {
+            for (PersistenceElement element : elements) {
+                entries.computeIfPresent(element.getCacheId(), (cacheId, entry) -> {
+                    if (entry.flushing == element) {
+                        entry.flushing = null;
+                        waitSize.decrementAndGet();
+                        if (journal != null) {
+                            journal.release(element.getSequence());
+                        }
+                        updateIndexes(cacheId, entry);
+                    }
+                    return entry.getElement() == null ? null : entry;
+                });
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 获取主键的有效元素
+     * 
+     * @param cacheId
+     * @return
+     */
+    PersistenceElement getElement(Object cacheId) {
+        OverlayEntry entry = entries.get(cacheId);
+        return entry == null ? null : entry.getElement();
+    }
+
+    /**
+     * 获取等待与正在持久的元素数量(不包括已经被忽略的元素)
+     * 
+     * @return
+     */
+    int getWaitSize() {
+        return waitSize.get();
+    }
+
+    /**
+     * 获取存在有效元素的主键数量
+     * 
+     * @return
+     */
+    int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * 查询访问器并使用覆盖层修正主键映射
+     * 
+     * @param query
+     * @param indexName
+     * @param indexValue
+     * @return
+     */
+    <K> Map<K, Object> getIdentities(Supplier<Map<K, Object>> query, String indexName, Comparable indexValue) {
+        int position = getPosition(indexName);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Map<K, Object> values = query.get();
+            overlayIdentities(values, position, indexValue);
+            if (lock.validate(stamp)) {
+                return values;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Map<K, Object> values = query.get();
+            overlayIdentities(values, position, indexValue);
+            return values;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 查询访问器并使用覆盖层修正实例列表
+     * 
+     * @param query
+     * @param indexName
+     * @param indexValue
+     * @return
+     */
+    <K extends Comparable, T extends IdentityObject<K>> Map<K, T> getInstances(Supplier<List<T>> query, String indexName, Comparable indexValue) {
+        int position = getPosition(indexName);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Map<K, T> instances = overlayInstances(query.get(), position, indexValue);
+            if (lock.validate(stamp)) {
+                return instances;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return overlayInstances(query.get(), position, indexValue);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 查询访问器并使用覆盖层修正主键对应的实例
+     * 
+     * <pre>
+     * 存在有效元素的主键以元素为准(删除的主键不包含在结果中),其它主键一次查询访问器;
+     * 元素写入访问器之后才会离开覆盖层,所以不需要加锁.
+     * </pre>
+     * 
+     * @param query
+     * @param cacheIds
+     * @return
+     */
+    <K extends Comparable, T extends IdentityObject<K>> Map<K, T> getInstances(Function<Collection<K>, List<T>> query, Collection<K> cacheIds) {
+        Map<K, T> instances = new HashMap<>();
+        List<K> misses = new ArrayList<>(cacheIds.size());
+        for (K cacheId : cacheIds) {
+            PersistenceElement element = getElement(cacheId);
+            if (element == null) {
+                misses.add(cacheId);
+            } else if (!PersistenceOperation.DELETE.equals(element.getOperation())) {
+                instances.put(cacheId, (T) element.getCacheObject());
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (T instance : query.apply(misses)) {
+                instances.putIfAbsent(instance.getId(), instance);
+            }
+        }
+        return instances;
+    }
+
+    private <K> void overlayIdentities(Map<K, Object> values, int position, Comparable indexValue) {
+        // 移除已经删除或者索引已经变化的主键
+        Iterator<K> iterator = values.keySet().iterator();
+        while (iterator.hasNext()) {
+            OverlayEntry entry = entries.get(iterator.next());
+            if (entry != null) {
+                Comparable[] current = entry.values;
+                if (current == null || !indexValue.equals(current[position])) {
+                    iterator.remove();
+                }
+            }
+        }
+        // 添加索引匹配的主键
+        Set<Object> ids = indexes[position].get(indexValue);
+        if (ids != null) {
+            for (Object id : ids) {
+                OverlayEntry entry = entries.get(id);
+                if (entry != null) {
+                    Comparable[] current = entry.values;
+                    if (current != null && indexValue.equals(current[position])) {
+                        values.put((K) id, indexValue);
+                    }
+                }
+            }
+        }
+    }
+
+    private <K extends Comparable, T extends IdentityObject<K>> Map<K, T> overlayInstances(List<T> values, int position, Comparable indexValue) {
+        Map<K, T> instances = new HashMap<>();
+        for (T value : values) {
+            K id = value.getId();
+            OverlayEntry entry = entries.get(id);
+            if (entry == null) {
+                instances.put(id, value);
+            }
+        }
+        Set<Object> ids = indexes[position].get(indexValue);
+        if (ids != null) {
+            for (Object id : ids) {
+                OverlayEntry entry = entries.get(id);
+                if (entry != null) {
+                    PersistenceElement element = entry.getElement();
+                    Comparable[] current = entry.values;
+                    if (element != null && current != null && indexValue.equals(current[position])) {
+                        instances.put((K) id, (T) element.getCacheObject());
+                    }
+                }
+            }
+        }
+        return instances;
+    }
+
+}
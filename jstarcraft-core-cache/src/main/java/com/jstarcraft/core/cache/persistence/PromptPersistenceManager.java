@@ -1,5 +1,8 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -14,7 +17,6 @@ import com.jstarcraft.core.cache.CacheInformation;
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
 import com.jstarcraft.core.common.identification.IdentityObject;
 import com.jstarcraft.core.common.lifecycle.LifecycleState;
-import com.jstarcraft.core.common.reflection.ReflectionUtility;
 import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageAccessor;
 import com.jstarcraft.core.storage.StorageCondition;
@@ -84,6 +86,22 @@ public class PromptPersistenceManager<K extends Comparable, T extends IdentityOb
 		}
 	}
 
+	@Override
+	public Map<K, T> getInstances(Collection<K> cacheIds) {
+		Lock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			List<T> values = AbstractPersistenceStrategy.queryInstances(accessor, cacheClass, cacheIds);
+			Map<K, T> instances = new HashMap<>();
+			for (T value : values) {
+				instances.put(value.getId(), value);
+			}
+			return instances;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
 	@Override
 	public Map<K, Object> getIdentities(String indexName, Comparable indexValue) {
 		Lock readLock = lock.readLock();
@@ -118,7 +136,7 @@ public class PromptPersistenceManager<K extends Comparable, T extends IdentityOb
 		Exception exception = null;
 		synchronized (cacheObject) {
 			T copyInstance = copyInstances.get();
-			ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
+			information.copyInstance(element.getCacheObject(), copyInstance);
 			Lock writeLock = lock.writeLock();
 			try {
 				writeLock.lock();
@@ -134,7 +152,7 @@ public class PromptPersistenceManager<K extends Comparable, T extends IdentityOb
 			}
 		}
 		if (monitor != null) {
-			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), exception);
+			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
 		}
 		return element;
 	}
@@ -157,25 +175,41 @@ public class PromptPersistenceManager<K extends Comparable, T extends IdentityOb
 			writeLock.unlock();
 		}
 		if (monitor != null) {
-			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), exception);
+			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
 		}
 		return element;
 	}
 
 	@Override
 	public PersistenceElement updateInstance(IdentityObject<?> cacheObject) {
+		return updateInstance(cacheObject, null);
+	}
+
+	@Override
+	public PersistenceElement updateInstance(IdentityObject<?> cacheObject, BitSet fields) {
 //		if (cacheObject instanceof ProxyObject) {
 //			cacheObject = ((ProxyObject) cacheObject).getInstance();
 //		}
-		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject);
+		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject, fields);
 		Exception exception = null;
 		synchronized (cacheObject) {
-			T copyInstance = copyInstances.get();
-			ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
+			T copyInstance = null;
+			Map<String, Object> values = null;
+			if (fields == null) {
+				copyInstance = copyInstances.get();
+				information.copyInstance(element.getCacheObject(), copyInstance);
+			} else {
+				// 只复制变更的字段
+				values = information.getFieldValues(cacheObject, fields);
+			}
 			Lock writeLock = lock.writeLock();
 			try {
 				writeLock.lock();
-				accessor.updateInstance(cacheClass, copyInstance);
+				if (values == null) {
+					accessor.updateInstance(cacheClass, copyInstance);
+				} else {
+					accessor.updateInstance(cacheClass, element.getCacheId(), values);
+				}
 				updatedCount.incrementAndGet();
 			} catch (Exception throwable) {
 				String message = StringUtility.format("立即策略[{}]处理元素[{}]时异常", new Object[] { name, element });
@@ -187,7 +221,7 @@ public class PromptPersistenceManager<K extends Comparable, T extends IdentityOb
 			}
 		}
 		if (monitor != null) {
-			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), exception);
+			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
 		}
 		return element;
 	}
@@ -1,17 +1,17 @@
 package com.jstarcraft.core.cache.persistence;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +21,10 @@ import com.jstarcraft.core.cache.exception.CacheException;
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
 import com.jstarcraft.core.common.identification.IdentityObject;
 import com.jstarcraft.core.common.lifecycle.LifecycleState;
-import com.jstarcraft.core.common.reflection.ReflectionUtility;
 import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageAccessor;
 import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.storage.exception.StorageBatchException;
 import com.jstarcraft.core.utility.StringUtility;
 
 /**
@@ -42,23 +42,18 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 	/** 类型 */
 	private Class cacheClass;
 
-	protected ThreadLocal<T> copyInstances = new ThreadLocal<T>() {
-
-		@Override
-		protected T initialValue() {
-			T instance = (T) information.getCacheInstance();
-			return instance;
-		}
-
-	};
-
 	/** 更新队列 */
 	private BlockingQueue<PersistenceElement> elementQueue;
 
-	/** 此读写锁用于配合elementMap,保证在查询过程中不存在增删改 */
-	private ReentrantReadWriteLock waitForLock = new ReentrantReadWriteLock();
-	/** 等待的缓存元素实例 */
-	private ConcurrentHashMap<Object, PersistenceElement> elements = new ConcurrentHashMap<>();
+	/** 等待与正在持久的元素(分区之间共享) */
+	private PersistenceOverlay overlay;
+	/** 已经离开队列但是尚未完成持久的元素数量 */
+	private final AtomicInteger flushingSize = new AtomicInteger();
+
+	/** 批量大小 */
+	private int batchSize;
+	/** 批量等待(毫秒) */
+	private long batchWait;
 
 	/** ORM访问器 */
 	private StorageAccessor accessor;
@@ -76,13 +71,27 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 	private final AtomicLong deletedCount = new AtomicLong();
 	/** 异常统计 */
 	private final AtomicLong exceptionCount = new AtomicLong();
+	/** 批量次数统计 */
+	private final AtomicLong batchCount = new AtomicLong();
+	/** 批量元素统计 */
+	private final AtomicLong batchElementCount = new AtomicLong();
+	/** 批量耗时统计(毫秒) */
+	private final AtomicLong batchTime = new AtomicLong();
 
 	QueuePersistenceManager(String name, Class cacheClass, StorageAccessor accessor, CacheInformation information, AtomicReference<LifecycleState> state, int size) {
+		this(name, cacheClass, accessor, information, state, size, 1, 0L, new PersistenceOverlay(information));
+	}
+
+	QueuePersistenceManager(String name, Class cacheClass, StorageAccessor accessor, CacheInformation information, AtomicReference<LifecycleState> state, int size, int batchSize, long batchWait, PersistenceOverlay overlay) {
 		this.name = name;
 		this.cacheClass = cacheClass;
 		this.accessor = accessor;
 		this.information = information;
 		this.state = state;
+		this.overlay = overlay;
+		// 小于等于1表示逐个持久
+		this.batchSize = Math.max(batchSize, 1);
+		this.batchWait = batchWait;
 		if (size > 0) {
 			elementQueue = new ArrayBlockingQueue<PersistenceElement>(size);
 		} else {
@@ -92,86 +101,44 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 
 	@Override
 	public T getInstance(K cacheId) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			PersistenceElement element = elements.get(cacheId);
-			if (element != null) {
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					return null;
-				} else {
-					return (T) element.getCacheObject();
-				}
+		// 元素写入访问器之后才会离开覆盖层,所以不需要加锁
+		PersistenceElement element = overlay.getElement(cacheId);
+		if (element != null) {
+			if (element.getOperation().equals(PersistenceOperation.DELETE)) {
+				return null;
+			} else {
+				return (T) element.getCacheObject();
 			}
-			T value = (T) accessor.getInstance(cacheClass, cacheId);
-			return value;
-		} finally {
-			readLock.unlock();
 		}
+		T value = (T) accessor.getInstance(cacheClass, cacheId);
+		return value;
 	}
 
 	@Override
-	public Map<K, Object> getIdentities(String indexName, Comparable indexValue) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			Map<K, Object> values = accessor.queryIdentities(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
-			for (PersistenceElement element : elements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					values.remove(element.getCacheId());
-				}
-			}
-			return values;
-		} finally {
-			readLock.unlock();
-		}
+	public Map<K, T> getInstances(Collection<K> cacheIds) {
+		return overlay.getInstances((misses) -> {
+			return AbstractPersistenceStrategy.queryInstances(accessor, cacheClass, misses);
+		}, cacheIds);
 	}
 
 	@Override
-	public List<T> getInstances(String indexName, Comparable indexValue) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			List<T> values = accessor.queryInstances(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+	public boolean hasElement(K cacheId) {
+		return overlay.getElement(cacheId) != null;
+	}
 
-			Map<K, T> instances = new HashMap<>();
-			for (T value : values) {
-				instances.put(value.getId(), value);
-			}
+	@Override
+	public Map<K, Object> getIdentities(String indexName, Comparable indexValue) {
+		return overlay.getIdentities(() -> {
+			return accessor.queryIdentities(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
+	}
 
-			for (PersistenceElement element : elements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					instances.remove(element.getCacheId());
-				}
-			}
-			return new ArrayList<>(instances.values());
-		} finally {
-			readLock.unlock();
-		}
+	@Override
+	public List<T> getInstances(String indexName, Comparable indexValue) {
+		Map<K, T> instances = overlay.getInstances(() -> {
+			return accessor.queryInstances(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
+		return new ArrayList<>(instances.values());
 	}
 
 	@Override
@@ -193,10 +160,15 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 
 	@Override
 	public PersistenceElement updateInstance(IdentityObject<?> cacheObject) {
+		return updateInstance(cacheObject, null);
+	}
+
+	@Override
+	public PersistenceElement updateInstance(IdentityObject<?> cacheObject, BitSet fields) {
 //		if (cacheObject instanceof ProxyObject) {
 //			cacheObject = ((ProxyObject) cacheObject).getInstance();
 //		}
-		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject);
+		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject, fields);
 		persist(element);
 		return element;
 	}
@@ -213,7 +185,7 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 
 	@Override
 	public int getWaitSize() {
-		int size = elementQueue.size();
+		int size = elementQueue.size() + flushingSize.get();
 		return size;
 	}
 
@@ -237,7 +209,43 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 		return exceptionCount.get();
 	}
 
-	private void persist(PersistenceElement element) {
+	/**
+	 * 获取批量次数
+	 * 
+	 * @return
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * 获取批量元素数量
+	 * 
+	 * @return
+	 */
+	public long getBatchElementCount() {
+		return batchElementCount.get();
+	}
+
+	/**
+	 * 获取批量耗时(毫秒)
+	 * 
+	 * @return
+	 */
+	public long getBatchTime() {
+		return batchTime.get();
+	}
+
+	/**
+	 * 持久元素
+	 * 
+	 * <pre>
+	 * 恢复日志时直接使用携带序号的元素
+	 * </pre>
+	 * 
+	 * @param element
+	 */
+	void persist(PersistenceElement element) {
 		if (element == null) {
 			return;
 		}
@@ -246,106 +254,270 @@ public class QueuePersistenceManager<K extends Comparable, T extends IdentityObj
 			LOGGER.error(message);
 			throw new CacheException(message);
 		}
-		Object cacheId = element.getCacheId();
-		Lock writeLock = waitForLock.writeLock();
+		PersistenceElement current = overlay.persist(element);
+		if (current == null) {
+			return;
+		}
 		try {
-			writeLock.lock();
-			PersistenceElement current = elements.get(cacheId);
-			if (current == null) {
-				current = element;
-				elements.put(cacheId, current);
-				elementQueue.put(current);
-			} else {
-				current.modify(element);
-				if (current.isIgnore()) {
-					// 忽略只清理elementMap,不清理elementQueue
-					elements.remove(cacheId);
-				}
-			}
+			// 在覆盖层之外入队,队列满时不会阻塞其它主键
+			elementQueue.put(current);
 		} catch (InterruptedException exception) {
 			LOGGER.error("不应该出现的情况,等待将元素[{}]放到队列时被中断", new Object[] { element, exception });
-			// TODO 应该记录日志,防止丢失数据
-			// if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-			// ConcurrentHashSet<Object> waitForUpdate = getWaitForUpdate(cacheClass);
-			// waitForUpdate.remove(cacheId);
-			// }
-			// if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-			// ReentrantReadWriteLock waitForLock = getLock(cacheClass);
-			// Lock writeLock = waitForLock.writeLock();
-			// try {
-			// ConcurrentHashSet<Object> waitForDelete = getWaitForDelete(cacheClass);
-			// waitForDelete.remove(cacheId);
-			// } finally {
-			// writeLock.unlock();
-			// }
-			// }
-		} finally {
-			writeLock.unlock();
 		}
 	}
 
-	@Override
-	public void run() {
-		while (true) {
-			PersistenceElement element = null;
-			Object cacheId = null;
+	/**
+	 * 从队列获取一批元素
+	 * 
+	 * <pre>
+	 * 阻塞等待第一个元素,然后在batchWait毫秒内尽量凑满batchSize个元素.
+	 * 停止状态或者等待期间被中断时,不再等待,立刻返回已经获取的元素.
+	 * </pre>
+	 * 
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private List<PersistenceElement> takeElements() throws InterruptedException {
+		List<PersistenceElement> batch = new ArrayList<>(batchSize);
+		batch.add(elementQueue.take());
+		flushingSize.incrementAndGet();
+		flushingSize.addAndGet(elementQueue.drainTo(batch, batchSize - batch.size()));
+		if (batchWait > 0L) {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWait);
 			try {
-				if (state.get().equals(LifecycleState.STOPPED) && elementQueue.isEmpty()) {
-					break;
-				}
-				element = elementQueue.take();
-				synchronized (accessor) {
-					// TODO 此处保证单元测试
+				while (batch.size() < batchSize && state.get().equals(LifecycleState.STARTED)) {
+					long remain = deadline - System.nanoTime();
+					if (remain <= 0L) {
+						break;
+					}
+					PersistenceElement element = elementQueue.poll(remain, TimeUnit.NANOSECONDS);
+					if (element == null) {
+						break;
+					}
+					batch.add(element);
+					flushingSize.incrementAndGet();
+					flushingSize.addAndGet(elementQueue.drainTo(batch, batchSize - batch.size()));
 				}
-				cacheId = element.getCacheId();
+			} catch (InterruptedException exception) {
+				// 中断由state维护,已经获取的元素仍然需要持久
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * 批量持久元素
+	 * 
+	 * <pre>
+	 * 元素在覆盖层中从等待转为正在持久并且复制实例(部分更新只复制变更的字段),访问器的批量操作不持有任何锁.
+	 * 元素写入访问器之后才离开覆盖层.
+	 * 批量操作失败时退化为逐个操作,保证单个元素的异常不会影响整批元素.
+	 * </pre>
+	 * 
+	 * @param batch
+	 */
+	private void flushElements(List<PersistenceElement> batch) {
+		long begin = System.currentTimeMillis();
+		List<PersistenceElement> createElements = new ArrayList<>(batch.size());
+		List<T> createInstances = new ArrayList<>(batch.size());
+		List<PersistenceElement> updateElements = new ArrayList<>(batch.size());
+		List<T> updateInstances = new ArrayList<>(batch.size());
+		List<PersistenceElement> partialElements = new ArrayList<>(batch.size());
+		List<Map<String, Object>> partialValues = new ArrayList<>(batch.size());
+		List<PersistenceElement> deleteElements = new ArrayList<>(batch.size());
+		List<K> deleteIds = new ArrayList<>(batch.size());
+		try {
+			for (PersistenceElement element : batch) {
+				Object cacheId = element.getCacheId();
 				Object instance = element.getCacheObject();
-				T copyInstance = copyInstances.get();
 				synchronized (instance == null ? Thread.currentThread() : instance) {
-					Lock writeLock = waitForLock.writeLock();
-					try {
-						writeLock.lock();
-						if (element.isIgnore()) {
-							// 忽略不做任何处理
-							continue;
-						}
+					if (!overlay.flush(element)) {
+						// 忽略不做任何处理
+						continue;
+					}
 
-						elements.remove(cacheId);
+					switch (element.getOperation()) {
+					case CREATE:
+						T createInstance = (T) information.getCacheInstance();
+						information.copyInstance(element.getCacheObject(), createInstance);
+						createElements.add(element);
+						createInstances.add(createInstance);
+						break;
+					case DELETE:
+						deleteElements.add(element);
+						deleteIds.add((K) cacheId);
+						break;
+					case UPDATE:
+						if (element.getFields() != null) {
+							partialElements.add(element);
+							partialValues.add(information.getFieldValues(element.getCacheObject(), element.getFields()));
+							break;
+						}
+						T updateInstance = (T) information.getCacheInstance();
+						information.copyInstance(element.getCacheObject(), updateInstance);
+						updateElements.add(element);
+						updateInstances.add(updateInstance);
+						break;
+					default:
+						LOGGER.error("未支持的元素类型[{}]", element);
+						break;
+					}
+				}
+			}
 
-						switch (element.getOperation()) {
-						case CREATE:
-							ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
-							accessor.createInstance(cacheClass, copyInstance);
+			if (!createElements.isEmpty()) {
+				try {
+					accessor.createInstances(cacheClass, createInstances);
+					createdCount.addAndGet(createElements.size());
+					notifyElements(createElements, null);
+				} catch (Exception exception) {
+					BitSet failures = getFailures(exception, createElements.size());
+					LOGGER.error(StringUtility.format("队列策略[{}]批量创建[{}]个元素时[{}]个异常,退化为逐个创建", name, createElements.size(), failures.cardinality()), exception);
+					for (int index = 0, size = createElements.size(); index < size; index++) {
+						PersistenceElement element = createElements.get(index);
+						if (!failures.get(index)) {
 							createdCount.incrementAndGet();
-							break;
-						case DELETE:
-							accessor.deleteInstance(cacheClass, element.getCacheId());
-							deletedCount.incrementAndGet();
-							break;
-						case UPDATE:
-							ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
-							accessor.updateInstance(cacheClass, copyInstance);
+							notifyElement(element, null);
+							continue;
+						}
+						try {
+							accessor.createInstance(cacheClass, createInstances.get(index));
+							createdCount.incrementAndGet();
+							notifyElement(element, null);
+						} catch (Exception throwable) {
+							handleException(element, throwable);
+						}
+					}
+				}
+			}
+			if (!updateElements.isEmpty()) {
+				try {
+					accessor.updateInstances(cacheClass, updateInstances);
+					updatedCount.addAndGet(updateElements.size());
+					notifyElements(updateElements, null);
+				} catch (Exception exception) {
+					BitSet failures = getFailures(exception, updateElements.size());
+					LOGGER.error(StringUtility.format("队列策略[{}]批量更新[{}]个元素时[{}]个异常,退化为逐个更新", name, updateElements.size(), failures.cardinality()), exception);
+					for (int index = 0, size = updateElements.size(); index < size; index++) {
+						PersistenceElement element = updateElements.get(index);
+						if (!failures.get(index)) {
 							updatedCount.incrementAndGet();
-							break;
-						default:
-							LOGGER.error("未支持的元素类型[{}]", element);
-							break;
+							notifyElement(element, null);
+							continue;
+						}
+						try {
+							accessor.updateInstance(cacheClass, updateInstances.get(index));
+							updatedCount.incrementAndGet();
+							notifyElement(element, null);
+						} catch (Exception throwable) {
+							handleException(element, throwable);
+						}
+					}
+				}
+			}
+			for (int index = 0, size = partialElements.size(); index < size; index++) {
+				// 部分更新的字段各不相同,只能逐个更新
+				PersistenceElement element = partialElements.get(index);
+				try {
+					accessor.updateInstance(cacheClass, (K) element.getCacheId(), partialValues.get(index));
+					updatedCount.incrementAndGet();
+					notifyElement(element, null);
+				} catch (Exception exception) {
+					handleException(element, exception);
+				}
+			}
+			if (!deleteElements.isEmpty()) {
+				try {
+					accessor.deleteInstances(cacheClass, deleteIds);
+					deletedCount.addAndGet(deleteElements.size());
+					notifyElements(deleteElements, null);
+				} catch (Exception exception) {
+					LOGGER.error(StringUtility.format("队列策略[{}]批量删除[{}]个元素时异常,退化为逐个删除", name, deleteElements.size()), exception);
+					for (int index = 0, size = deleteElements.size(); index < size; index++) {
+						PersistenceElement element = deleteElements.get(index);
+						try {
+							accessor.deleteInstance(cacheClass, deleteIds.get(index));
+							deletedCount.incrementAndGet();
+							notifyElement(element, null);
+						} catch (Exception throwable) {
+							handleException(element, throwable);
 						}
-					} finally {
-						writeLock.unlock();
 					}
 				}
-				if (monitor != null) {
-					monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), null);
+			}
+		} finally {
+			// 必须在访问器写入之后才能离开覆盖层
+			overlay.finish(batch);
+			flushingSize.addAndGet(-batch.size());
+		}
+
+		long time = System.currentTimeMillis() - begin;
+		batchCount.incrementAndGet();
+		batchElementCount.addAndGet(batch.size());
+		batchTime.addAndGet(time);
+		if (monitor != null) {
+			monitor.notifyBatch(batch.size(), time);
+		}
+	}
+
+	/**
+	 * 获取批量操作失败的元素
+	 * 
+	 * <pre>
+	 * 访问器通过{@link StorageBatchException}指明失败的对象时只重试失败的元素,否则重试所有元素.
+	 * </pre>
+	 * 
+	 * @param exception
+	 * @param size
+	 * @return
+	 */
+	private BitSet getFailures(Exception exception, int size) {
+		BitSet failures = new BitSet(size);
+		if (exception instanceof StorageBatchException) {
+			for (int index : ((StorageBatchException) exception).getFailures()) {
+				failures.set(index);
+			}
+		} else {
+			failures.set(0, size);
+		}
+		return failures;
+	}
+
+	private void notifyElements(List<PersistenceElement> batch, Exception exception) {
+		if (monitor != null) {
+			for (PersistenceElement element : batch) {
+				monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
+			}
+		}
+	}
+
+	private void notifyElement(PersistenceElement element, Exception exception) {
+		if (monitor != null) {
+			monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
+		}
+	}
+
+	private void handleException(PersistenceElement element, Exception exception) {
+		// TODO 考虑是否再次把元素提交到队列?以及影响.
+		notifyElement(element, exception);
+		exceptionCount.incrementAndGet();
+		String message = StringUtility.format("队列策略[{}]处理元素[{}]时异常", new Object[] { name, element });
+		LOGGER.error(message, exception);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				if (state.get().equals(LifecycleState.STOPPED) && elementQueue.isEmpty()) {
+					break;
 				}
+				List<PersistenceElement> batch = takeElements();
+				flushElements(batch);
 			} catch (InterruptedException exception) {
 				// TODO 考虑中断策略不需要处理? 现在是由state维护.
 			} catch (Exception exception) {
-				// TODO 考虑是否再次把元素提交到队列?以及影响.
-				if (monitor != null && element != null) {
-					monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), exception);
-				}
-				exceptionCount.incrementAndGet();
-				String message = StringUtility.format("队列策略[{}]处理元素[{}]时异常", new Object[] { name, element });
+				String message = StringUtility.format("队列策略[{}]批量处理元素时异常", name);
 				LOGGER.error(message, exception);
 			}
 		}
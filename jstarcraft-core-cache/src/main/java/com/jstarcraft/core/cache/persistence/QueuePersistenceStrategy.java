@@ -1,16 +1,20 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jstarcraft.core.cache.CacheInformation;
 import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.cache.exception.CacheOperationException;
 import com.jstarcraft.core.common.lifecycle.LifecycleState;
 import com.jstarcraft.core.storage.StorageAccessor;
 
@@ -26,6 +30,12 @@ public class QueuePersistenceStrategy extends AbstractPersistenceStrategy {
 
     /** 大小参数名称 */
     public static final String PARAMETER_SIZE = "size";
+    /** 批量大小参数名称(可选,小于等于1表示逐个持久) */
+    public static final String PARAMETER_BATCH_SIZE = "batchSize";
+    /** 批量等待参数名称(可选,毫秒) */
+    public static final String PARAMETER_BATCH_WAIT = "batchWait";
+    /** 分区数量参数名称(可选,大于1时每个类型使用多个写线程,队列大小按照分区计算) */
+    public static final String PARAMETER_PARTITION = "partition";
 
     /** ORM访问器 */
     private StorageAccessor accessor;
@@ -34,10 +44,22 @@ public class QueuePersistenceStrategy extends AbstractPersistenceStrategy {
     /** 状态 */
     private AtomicReference<LifecycleState> state = new AtomicReference<>(null);
 
-    private Map<Class, QueuePersistenceManager> managers = new HashMap<>();
+    private Map<Class, PersistenceManager> managers = new HashMap<>();
+
+    /** 写线程 */
+    private List<QueuePersistenceManager> threads = new ArrayList<>();
+
+    /** 持久日志 */
+    private Map<Class, PersistenceJournal> journals = new HashMap<>();
 
     private int size;
 
+    private int batchSize;
+
+    private long batchWait;
+
+    private int partition;
+
     /** 创建统计 */
     private final AtomicLong createdCount = new AtomicLong();
     /** 更新统计 */
@@ -59,13 +81,63 @@ public class QueuePersistenceStrategy extends AbstractPersistenceStrategy {
         this.accessor = accessor;
         this.informations = informations;
         this.size = Integer.parseInt(configuration.get(PARAMETER_SIZE));
+        String batchSize = configuration.get(PARAMETER_BATCH_SIZE);
+        this.batchSize = batchSize == null ? 0 : Integer.parseInt(batchSize);
+        String batchWait = configuration.get(PARAMETER_BATCH_WAIT);
+        this.batchWait = batchWait == null ? 0L : Long.parseLong(batchWait);
+        if (this.batchWait < 0L) {
+            throw new CacheConfigurationException();
+        }
+        String partition = configuration.get(PARAMETER_PARTITION);
+        this.partition = partition == null ? 1 : Integer.parseInt(partition);
+        if (this.partition <= 0) {
+            throw new CacheConfigurationException();
+        }
         for (Entry<Class<?>, CacheInformation> keyValue : informations.entrySet()) {
             Class clazz = keyValue.getKey();
             CacheInformation information = keyValue.getValue();
-            QueuePersistenceManager manager = new QueuePersistenceManager<>(name, clazz, accessor, information, state, size);
-            this.managers.put(clazz, manager);
-            manager.setDaemon(true);
-            manager.start();
+            // 同一个类型的分区共享覆盖层与日志
+            PersistenceJournal journal = getJournal(information);
+            if (journal != null) {
+                this.journals.put(clazz, journal);
+            }
+            PersistenceOverlay overlay = new PersistenceOverlay(information, journal);
+            if (this.partition == 1) {
+                QueuePersistenceManager manager = new QueuePersistenceManager<>(name, clazz, accessor, information, state, size, batchSize, batchWait, overlay);
+                this.managers.put(clazz, manager);
+                this.threads.add(manager);
+            } else {
+                QueuePersistenceManager[] partitions = new QueuePersistenceManager[this.partition];
+                for (int index = 0; index < this.partition; index++) {
+                    partitions[index] = new QueuePersistenceManager<>(name + ":" + index, clazz, accessor, information, state, size, batchSize, batchWait, overlay);
+                    this.threads.add(partitions[index]);
+                }
+                PartitionPersistenceManager manager = new PartitionPersistenceManager<>(clazz, accessor, overlay, partitions);
+                this.managers.put(clazz, manager);
+            }
+        }
+        for (QueuePersistenceManager thread : this.threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        // 写线程启动之后才能恢复,防止队列已满时阻塞
+        for (Entry<Class, PersistenceJournal> keyValue : this.journals.entrySet()) {
+            Class clazz = keyValue.getKey();
+            PersistenceManager manager = this.managers.get(clazz);
+            Consumer<PersistenceElement> consumer;
+            if (manager instanceof PartitionPersistenceManager) {
+                consumer = ((PartitionPersistenceManager) manager)::persist;
+            } else {
+                consumer = ((QueuePersistenceManager) manager)::persist;
+            }
+            int count = keyValue.getValue().recover((element) -> {
+                try {
+                    consumer.accept(element);
+                } catch (CacheOperationException exception) {
+                    LOGGER.error("队列策略[{}]恢复元素[{}]时异常", name, element);
+                }
+            });
+            LOGGER.info("队列策略[{}]从日志恢复类型[{}]的[{}]个元素", new Object[] { name, clazz.getName(), count });
         }
     }
 
@@ -75,21 +147,26 @@ public class QueuePersistenceStrategy extends AbstractPersistenceStrategy {
             throw new CacheConfigurationException();
         }
         LOGGER.info("开始等待写队列[{}]清理", name);
-        for (QueuePersistenceManager manager : this.managers.values()) {
-            manager.interrupt();
+        for (QueuePersistenceManager thread : this.threads) {
+            thread.interrupt();
             while (true) {
-                if (!manager.isAlive()) {
+                if (!thread.isAlive()) {
                     break;
                 }
             }
         }
+        for (PersistenceJournal journal : this.journals.values()) {
+            journal.close();
+        }
+        this.threads.clear();
         this.managers.clear();
+        this.journals.clear();
         LOGGER.info("结束等待写队列[{}]清理", name);
     }
 
     @Override
     public synchronized PersistenceManager getPersistenceManager(Class clazz) {
-        QueuePersistenceManager manager = managers.get(clazz);
+        PersistenceManager manager = managers.get(clazz);
         return manager;
     }
 
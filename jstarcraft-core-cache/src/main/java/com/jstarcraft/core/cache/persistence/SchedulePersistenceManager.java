@@ -4,16 +4,15 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +24,6 @@ import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOper
 import com.jstarcraft.core.common.identification.IdentityObject;
 import com.jstarcraft.core.common.instant.CronExpression;
 import com.jstarcraft.core.common.lifecycle.LifecycleState;
-import com.jstarcraft.core.common.reflection.ReflectionUtility;
 import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageAccessor;
 import com.jstarcraft.core.storage.StorageCondition;
@@ -56,11 +54,10 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 
 	};
 
-	/** 此读写锁用于配合elementMap,保证在查询过程中不存在增删改 */
-	private ReentrantReadWriteLock waitForLock = new ReentrantReadWriteLock();
-	/** 等待的缓存元素实例 */
-	private ConcurrentHashMap<Object, PersistenceElement> oldElements = null;
-	private ConcurrentHashMap<Object, PersistenceElement> newElements = new ConcurrentHashMap<>();
+	/** 等待与正在持久的元素 */
+	private PersistenceOverlay overlay;
+	/** 等待下次执行的元素(可能包含已经被忽略的元素) */
+	private ConcurrentLinkedQueue<PersistenceElement> newElements = new ConcurrentLinkedQueue<>();
 
 	/** ORM访问器 */
 	private StorageAccessor accessor;
@@ -75,8 +72,6 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 	/** 监听器 */
 	private PersistenceMonitor monitor;
 
-	/** 处理大小 */
-	private final AtomicInteger waitSize = new AtomicInteger();
 	/** 创建统计 */
 	private final AtomicLong createdCount = new AtomicLong();
 	/** 更新统计 */
@@ -87,10 +82,15 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 	private final AtomicInteger exceptionCount = new AtomicInteger();
 
 	SchedulePersistenceManager(String name, Class cacheClass, StorageAccessor accessor, CacheInformation information, AtomicReference<LifecycleState> state, String cron) {
+		this(name, cacheClass, accessor, information, state, cron, new PersistenceOverlay(information));
+	}
+
+	SchedulePersistenceManager(String name, Class cacheClass, StorageAccessor accessor, CacheInformation information, AtomicReference<LifecycleState> state, String cron, PersistenceOverlay overlay) {
 		this.name = name;
 		this.cacheClass = cacheClass;
 		this.accessor = accessor;
 		this.information = information;
+		this.overlay = overlay;
 		this.state = state;
 		this.expression = new CronExpression(cron);
 		this.persistTime = expression.getNextDateTime(Instant.now());
@@ -98,119 +98,44 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 
 	@Override
 	public T getInstance(K cacheId) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			PersistenceElement element = newElements.get(cacheId);
-			if (element != null) {
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					return null;
-				} else {
-					return (T) element.getCacheObject();
-				}
+		// 元素写入访问器之后才会离开覆盖层,所以不需要加锁
+		PersistenceElement element = overlay.getElement(cacheId);
+		if (element != null) {
+			if (element.getOperation().equals(PersistenceOperation.DELETE)) {
+				return null;
+			} else {
+				return (T) element.getCacheObject();
 			}
-			T value = (T) accessor.getInstance(cacheClass, cacheId);
-			return value;
-		} finally {
-			readLock.unlock();
 		}
+		T value = (T) accessor.getInstance(cacheClass, cacheId);
+		return value;
+	}
+
+	@Override
+	public Map<K, T> getInstances(Collection<K> cacheIds) {
+		return overlay.getInstances((misses) -> {
+			return AbstractPersistenceStrategy.queryInstances(accessor, cacheClass, misses);
+		}, cacheIds);
+	}
+
+	@Override
+	public boolean hasElement(K cacheId) {
+		return overlay.getElement(cacheId) != null;
 	}
 
 	@Override
 	public Map<K, Object> getIdentities(String indexName, Comparable indexValue) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			Map<K, Object> values = accessor.queryIdentities(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
-			for (PersistenceElement element : oldElements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					values.remove(element.getCacheId());
-				}
-			}
-			for (PersistenceElement element : newElements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						values.put((K) element.getCacheId(), value);
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					values.remove(element.getCacheId());
-				}
-			}
-			return values;
-		} finally {
-			readLock.unlock();
-		}
+		return overlay.getIdentities(() -> {
+			return accessor.queryIdentities(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
 	}
 
 	@Override
 	public List<T> getInstances(String indexName, Comparable indexValue) {
-		Lock readLock = waitForLock.readLock();
-		try {
-			readLock.lock();
-			List<T> values = accessor.queryInstances(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
-
-			Map<K, T> instances = new HashMap<>();
-			for (T value : values) {
-				instances.put(value.getId(), value);
-			}
-			for (PersistenceElement element : oldElements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					instances.remove(element.getCacheId());
-				}
-			}
-			for (PersistenceElement element : newElements.values()) {
-				if (element.getOperation().equals(PersistenceOperation.CREATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.UPDATE)) {
-					Object value = information.getIndexValue(element.getCacheObject(), indexName);
-					if (indexValue.equals(value)) {
-						instances.put((K) element.getCacheId(), (T) element.getCacheObject());
-					}
-				}
-				if (element.getOperation().equals(PersistenceOperation.DELETE)) {
-					instances.remove(element.getCacheId());
-				}
-			}
-			return new ArrayList<>(instances.values());
-		} finally {
-			readLock.unlock();
-		}
+		Map<K, T> instances = overlay.getInstances(() -> {
+			return accessor.queryInstances(cacheClass, indexName, new StorageCondition<>(ConditionType.Equal, indexValue));
+		}, indexName, indexValue);
+		return new ArrayList<>(instances.values());
 	}
 
 	@Override
@@ -232,10 +157,15 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 
 	@Override
 	public PersistenceElement updateInstance(IdentityObject<?> cacheObject) {
+		return updateInstance(cacheObject, null);
+	}
+
+	@Override
+	public PersistenceElement updateInstance(IdentityObject<?> cacheObject, BitSet fields) {
 //		if (cacheObject instanceof ProxyObject) {
 //			cacheObject = ((ProxyObject) cacheObject).getInstance();
 //		}
-		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject);
+		PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheObject.getId(), cacheObject, fields);
 		persist(element);
 		return element;
 	}
@@ -252,10 +182,7 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 
 	@Override
 	public int getWaitSize() {
-		synchronized (waitSize) {
-			int size = waitSize.get() + newElements.size();
-			return size;
-		}
+		return overlay.getWaitSize();
 	}
 
 	@Override
@@ -278,22 +205,25 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 		return exceptionCount.get();
 	}
 
-	private ConcurrentHashMap<Object, PersistenceElement> switchElements() {
-		synchronized (waitSize) {
-			Lock writeLock = waitForLock.writeLock();
-			try {
-				writeLock.lock();
-				oldElements = newElements;
-				newElements = new ConcurrentHashMap<>();
-				waitSize.addAndGet(oldElements.size());
-				return oldElements;
-			} finally {
-				writeLock.unlock();
-			}
+	private List<PersistenceElement> switchElements() {
+		List<PersistenceElement> elements = new ArrayList<>();
+		PersistenceElement element;
+		while ((element = newElements.poll()) != null) {
+			elements.add(element);
 		}
+		return elements;
 	}
 
-	private void persist(PersistenceElement element) {
+	/**
+	 * 持久元素
+	 * 
+	 * <pre>
+	 * 恢复日志时直接使用携带序号的元素
+	 * </pre>
+	 * 
+	 * @param element
+	 */
+	void persist(PersistenceElement element) {
 		if (element == null) {
 			return;
 		}
@@ -303,25 +233,13 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 			throw new CacheException(message);
 		}
 		// 保证异步操作与异步持久不会冲突
-		Object cacheId = element.getCacheId();
-		Lock writeLock = waitForLock.writeLock();
 		try {
-			writeLock.lock();
-			PersistenceElement current = newElements.get(cacheId);
-			if (current == null) {
-				current = element;
-				newElements.put(cacheId, current);
-			} else {
-				current.modify(element);
-				if (current.isIgnore()) {
-					// 忽略只清理elementMap,不清理elementQueue
-					newElements.remove(cacheId);
-				}
+			PersistenceElement current = overlay.persist(element);
+			if (current != null) {
+				newElements.offer(current);
 			}
 		} catch (CacheOperationException exception) {
 			exceptionCount.incrementAndGet();
-		} finally {
-			writeLock.unlock();
 		}
 	}
 
@@ -329,22 +247,18 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 		synchronized (accessor) {
 			for (PersistenceElement element : elements) {
 				// 保证异步持久与异步操作不会冲突
-				Object cacheId = element.getCacheId();
 				try {
 					Object instance = element.getCacheObject();
 					T copyInstance = copyInstances.get();
 					synchronized (instance == null ? Thread.currentThread() : instance) {
-						Lock writeLock = waitForLock.writeLock();
+						if (!overlay.flush(element)) {
+							// 忽略不做任何处理
+							continue;
+						}
 						try {
-							writeLock.lock();
-							if (element.isIgnore()) {
-								LOGGER.error("此处不应该有忽略的元素[{}]", element);
-								continue;
-							}
-
 							switch (element.getOperation()) {
 							case CREATE:
-								ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
+								information.copyInstance(element.getCacheObject(), copyInstance);
 								accessor.createInstance(cacheClass, copyInstance);
 								createdCount.incrementAndGet();
 								break;
@@ -353,8 +267,14 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 								deletedCount.incrementAndGet();
 								break;
 							case UPDATE:
-								ReflectionUtility.copyInstance(element.getCacheObject(), copyInstance);
-								accessor.updateInstance(cacheClass, copyInstance);
+								if (element.getFields() == null) {
+									information.copyInstance(element.getCacheObject(), copyInstance);
+									accessor.updateInstance(cacheClass, copyInstance);
+								} else {
+									// 只更新变更的字段
+									Map<String, Object> values = information.getFieldValues(element.getCacheObject(), element.getFields());
+									accessor.updateInstance(cacheClass, element.getCacheId(), values);
+								}
 								updatedCount.incrementAndGet();
 								break;
 							default:
@@ -362,16 +282,16 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 								break;
 							}
 						} finally {
-							waitSize.decrementAndGet();
-							writeLock.unlock();
+							// 必须在访问器写入之后才能离开覆盖层
+							overlay.finish(Collections.singleton(element));
 						}
 					}
 					if (monitor != null) {
-						monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), null);
+						monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), null);
 					}
 				} catch (Exception exception) {
 					if (monitor != null && element != null) {
-						monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), exception);
+						monitor.notifyOperate(element.getOperation(), element.getCacheId(), element.getCacheObject(), element.getFields(), exception);
 					}
 					exceptionCount.incrementAndGet();
 					String message = StringUtility.format("定时策略[{}]处理元素[{}]时异常", new Object[] { name, element });
@@ -404,11 +324,11 @@ public class SchedulePersistenceManager<K extends Comparable, T extends Identity
 					}
 				}
 			}
-			ConcurrentHashMap<Object, PersistenceElement> elements = switchElements();
+			List<PersistenceElement> elements = switchElements();
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("定时策略[{}]开始执行[{}]", new Object[] { name, LocalDateTime.now() });
 			}
-			persist(elements.values());
+			persist(elements);
 			if (LOGGER.isDebugEnabled()) {
 				LOGGER.debug("定时策略[{}]结束执行[{}],共更新[{}]条数据", new Object[] { name, LocalDateTime.now(), elements.size() });
 			}
@@ -35,6 +35,9 @@ public class SchedulePersistenceStrategy extends AbstractPersistenceStrategy {
     private AtomicReference<LifecycleState> state = new AtomicReference<>(null);
 
     private Map<Class, SchedulePersistenceManager> managers = new HashMap<>();
+
+    /** 持久日志 */
+    private Map<Class, PersistenceJournal> journals = new HashMap<>();
     /** CRON表达式 */
     private String cron;
 
@@ -64,10 +67,16 @@ public class SchedulePersistenceStrategy extends AbstractPersistenceStrategy {
         for (Entry<Class<?>, CacheInformation> keyValue : informations.entrySet()) {
             Class clazz = keyValue.getKey();
             CacheInformation information = keyValue.getValue();
-            SchedulePersistenceManager manager = new SchedulePersistenceManager<>(name, clazz, accessor, information, state, cron);
+            PersistenceJournal journal = getJournal(information);
+            SchedulePersistenceManager manager = new SchedulePersistenceManager<>(name, clazz, accessor, information, state, cron, new PersistenceOverlay(information, journal));
             this.managers.put(clazz, manager);
             manager.setDaemon(true);
             manager.start();
+            if (journal != null) {
+                this.journals.put(clazz, journal);
+                int count = journal.recover(manager::persist);
+                LOGGER.info("定时策略[{}]从日志恢复类型[{}]的[{}]个元素", new Object[] { name, clazz.getName(), count });
+            }
         }
     }
 
@@ -91,7 +100,11 @@ public class SchedulePersistenceStrategy extends AbstractPersistenceStrategy {
                 Thread.yield();
             }
         }
+        for (PersistenceJournal journal : this.journals.values()) {
+            journal.close();
+        }
         this.managers.clear();
+        this.journals.clear();
         LOGGER.info("结束等待写队列[{}]清理", name);
     }
 
@@ -1,15 +1,24 @@
 package com.jstarcraft.core.cache.proxy;
 
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.jstarcraft.core.cache.CacheInformation;
 import com.jstarcraft.core.cache.annotation.CacheChange;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
 import com.jstarcraft.core.cache.exception.CacheException;
 import com.jstarcraft.core.cache.exception.CacheIndexException;
 import com.jstarcraft.core.cache.exception.CacheProxyException;
@@ -22,10 +31,16 @@ import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtConstructor;
 import javassist.CtField;
+import javassist.CtMethod;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
 import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
 import javassist.bytecode.FieldInfo;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
 import javassist.bytecode.annotation.Annotation;
 
 /**
@@ -36,6 +51,8 @@ import javassist.bytecode.annotation.Annotation;
 @SuppressWarnings({ "unchecked", "rawtypes" })
 abstract class JavassistProxy implements ProxyTransformer {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(JavassistProxy.class);
+
     /** 类:代理后缀 */
     protected final static String CLASS_SUFFIX = "_PROXY";
 
@@ -80,6 +97,10 @@ abstract class JavassistProxy implements ProxyTransformer {
 
     @Override
     public <T extends IdentityObject<?>> T transform(T object) {
+        if (object instanceof ProxyObject) {
+            // 已经是代理对象(例如来自等待持久的元素),不能再次代理
+            return object;
+        }
         Class<? extends IdentityObject> clazz = object.getClass();
         if (proxyManager == null) {
             String message = StringUtility.format("指定类[{}]所对应的缓存管理器不存在", clazz.getName());
@@ -88,7 +109,12 @@ abstract class JavassistProxy implements ProxyTransformer {
         try {
             Constructor constructor = getConstructor(clazz);
             T transform = (T) constructor.newInstance(proxyManager, cacheInformation);
-            ReflectionUtility.copyInstance(object, transform);
+            if (clazz == cacheInformation.getCacheClass()) {
+                cacheInformation.copyInstance(object, transform);
+            } else {
+                // 子类可能有缓存类型以外的字段
+                ReflectionUtility.copyInstance(object, transform);
+            }
             return transform;
         } catch (Exception exception) {
             String message = StringUtility.format("指定类[{}]代理异常", clazz.getName());
@@ -264,6 +290,95 @@ abstract class JavassistProxy implements ProxyTransformer {
 //        proxyClass.addMethod(method);
     }
 
+    /**
+     * 检查方法声明的变更字段是否覆盖方法修改的字段
+     * 
+     * <pre>
+     * 分析方法(以及其中调用的缓存类型的方法)的字节码:
+     * 写入(PUTFIELD)没有声明的字段属于配置错误;
+     * 读取没有声明的可变类型字段(例如集合与数组)或者使用Lambda时无法确认是否修改,退化为持久全部字段.
+     * </pre>
+     * 
+     * @param clazz
+     * @param method
+     * @param cacheChange
+     * @return 是否只持久变更的字段(没有声明变更字段时为false)
+     * @throws Exception
+     */
+    protected boolean checkFields(Class<?> clazz, Method method, CacheChange cacheChange) throws Exception {
+        if (cacheChange.fields().length == 0) {
+            return false;
+        }
+        Set<String> names = new HashSet<>(Arrays.asList(cacheChange.fields()));
+        Set<String> hierarchy = new HashSet<>();
+        for (Class<?> type = clazz; type != null && type != Object.class; type = type.getSuperclass()) {
+            hierarchy.add(type.getName());
+        }
+        CtClass declaringClass = classPool.get(method.getDeclaringClass().getName());
+        String descriptor = Descriptor.ofMethod(classPool.get(method.getReturnType().getName()), toProxyClasses(method.getParameterTypes()));
+        Deque<CtMethod> methods = new LinkedList<>();
+        Set<String> visits = new HashSet<>();
+        methods.add(declaringClass.getMethod(method.getName(), descriptor));
+        visits.add(method.getName() + descriptor);
+        boolean partial = true;
+        while (!methods.isEmpty()) {
+            MethodInfo methodInfo = methods.poll().getMethodInfo2();
+            CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            ConstPool constPool = methodInfo.getConstPool();
+            CodeIterator iterator = codeAttribute.iterator();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                int code = iterator.byteAt(position);
+                if (code == Opcode.PUTFIELD || code == Opcode.GETFIELD) {
+                    int index = iterator.u16bitAt(position + 1);
+                    String name = constPool.getFieldrefName(index);
+                    if (!hierarchy.contains(constPool.getFieldrefClassName(index)) || names.contains(name)) {
+                        continue;
+                    }
+                    if (code == Opcode.PUTFIELD) {
+                        String message = StringUtility.format("类型[{}]的方法[{}]修改了没有声明的变更字段[{}]", clazz.getName(), method.getName(), name);
+                        throw new CacheConfigurationException(message);
+                    }
+                    Field field = ReflectionUtility.getField(clazz, name);
+                    if (field != null && !isImmutable(field.getType())) {
+                        partial = false;
+                    }
+                } else if (code == Opcode.INVOKEDYNAMIC) {
+                    // Lambda的方法体无法确认
+                    partial = false;
+                } else if ((code == Opcode.INVOKEVIRTUAL || code == Opcode.INVOKESPECIAL || code == Opcode.INVOKESTATIC) && constPool.getTag(iterator.u16bitAt(position + 1)) == ConstPool.CONST_Methodref) {
+                    int index = iterator.u16bitAt(position + 1);
+                    String name = constPool.getMethodrefName(index);
+                    String type = constPool.getMethodrefType(index);
+                    if (hierarchy.contains(constPool.getMethodrefClassName(index)) && !MethodInfo.nameInit.equals(name) && visits.add(name + type)) {
+                        methods.add(classPool.get(constPool.getMethodrefClassName(index)).getMethod(name, type));
+                    }
+                }
+            }
+        }
+        if (!partial) {
+            String message = StringUtility.format("类型[{}]的方法[{}]无法确认变更字段,持久全部字段", clazz.getName(), method.getName());
+            LOGGER.warn(message);
+        }
+        return partial;
+    }
+
+    /**
+     * 是否为不可变类型(读取该类型的字段不会修改字段)
+     * 
+     * @param type
+     * @return
+     */
+    private static boolean isImmutable(Class<?> type) {
+        if (type.isPrimitive() || type.isEnum() || type == String.class || type == Boolean.class || type == Character.class) {
+            return true;
+        }
+        return Number.class.isAssignableFrom(type) && (type.getName().startsWith("java.lang.") || type.getName().startsWith("java.math."));
+    }
+
     /**
      * 代理方法
      * 
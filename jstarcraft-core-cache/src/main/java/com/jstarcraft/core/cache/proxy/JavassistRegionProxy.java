@@ -113,12 +113,14 @@ public class JavassistRegionProxy extends JavassistProxy {
         }
         // TODO 数据变更部分
         if (cacheChange != null) {
+            // 指定变更字段时只持久变更的字段
+            String modify = checkFields(clazz, method, cacheChange) ? "_manager.modifyInstance(this, _information.getMethodFields(methodId));" : "_manager.modifyInstance(this);";
             if (returnType == void.class) {
                 // if (!indexChanges.isEmpty()) {
                 // methodBuilder.append(StringUtility.format(" _manager.modifyIndexes(_instance,
                 // newIndexValues, oldIndexValues);"));
                 // }
-                methodBuffer.append(StringUtility.format(" _manager.modifyInstance(this);"));
+                methodBuffer.append(StringUtility.format(" {}", modify));
             } else {
                 if (cacheChange.values().length > 0) {
                     methodBuffer.append(StringUtility.format(" if (changeValues.contains({}.primitiveToWrap(value))) {", ConversionUtility.class.getName()));
@@ -127,7 +129,7 @@ public class JavassistRegionProxy extends JavassistProxy {
                 // methodBuilder.append(StringUtility.format(" _manager.modifyIndexes(_instance,
                 // newIndexValues, oldIndexValues);"));
                 // }
-                methodBuffer.append(StringUtility.format("		_manager.modifyInstance(this);"));
+                methodBuffer.append(StringUtility.format("		{}", modify));
                 if (cacheChange.values().length > 0) {
                     methodBuffer.append(StringUtility.format(" }"));
                 }
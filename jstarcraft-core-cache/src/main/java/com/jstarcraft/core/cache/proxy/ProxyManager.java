@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.proxy;
 
+import java.util.BitSet;
+
 import com.jstarcraft.core.common.identification.IdentityObject;
 
 /**
@@ -24,4 +26,14 @@ public interface ProxyManager<K extends Comparable, T extends IdentityObject<K>>
      */
     void modifyInstance(T instance);
 
+    /**
+     * 修改指定缓存对象的部分数据
+     * 
+     * @param instance
+     * @param fields 变更的字段位图(null表示全部字段)
+     */
+    default void modifyInstance(T instance, BitSet fields) {
+        modifyInstance(instance);
+    }
+
 }
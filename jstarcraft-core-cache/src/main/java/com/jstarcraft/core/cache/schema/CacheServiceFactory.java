@@ -1,6 +1,8 @@
 package com.jstarcraft.core.cache.schema;
 
+import java.io.File;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,6 +10,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 
+import com.jstarcraft.core.cache.CacheInvalidator;
 import com.jstarcraft.core.cache.CacheService;
 import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
 import com.jstarcraft.core.cache.transience.TransienceStrategy;
@@ -26,17 +29,29 @@ public class CacheServiceFactory implements FactoryBean<CacheService>, Initializ
     public static final String CACHE_CLASSES_NAME = "cacheClasses";
     public static final String TRANSIENCE_STRATEGIES_NAME = "transienceStrategies";
     public static final String PERSISTENCE_STRATEGIES_NAME = "persistenceStrategies";
+    public static final String SNAPSHOT_DIRECTORY_NAME = "snapshotDirectory";
 
     private StorageAccessor accessor;
+    private Executor executor;
+    private CacheInvalidator invalidator;
     private Set<Class<? extends IdentityObject>> cacheClasses;
     private Set<TransienceStrategy> transienceStrategies;
     private Set<PersistenceStrategy> persistenceStrategies;
+    private String snapshotDirectory;
     private CacheService cacheService;
 
     public void setAccessor(StorageAccessor accessor) {
         this.accessor = accessor;
     }
 
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setInvalidator(CacheInvalidator invalidator) {
+        this.invalidator = invalidator;
+    }
+
     public void setCacheClasses(Set<Class<? extends IdentityObject>> cacheClasses) {
         this.cacheClasses = cacheClasses;
     }
@@ -49,6 +64,10 @@ public class CacheServiceFactory implements FactoryBean<CacheService>, Initializ
         this.persistenceStrategies = persistenceStrategies;
     }
 
+    public void setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
     @Override
     public synchronized CacheService getObject() throws Exception {
         return cacheService;
@@ -67,7 +86,13 @@ public class CacheServiceFactory implements FactoryBean<CacheService>, Initializ
     @Override
     public void afterPropertiesSet() throws Exception {
         if (cacheService == null) {
-            cacheService = new CacheService(cacheClasses, accessor, transienceStrategies, persistenceStrategies);
+            cacheService = new CacheService(cacheClasses, accessor, transienceStrategies, persistenceStrategies, executor);
+            if (invalidator != null) {
+                cacheService.setInvalidator(invalidator);
+            }
+            if (snapshotDirectory != null) {
+                cacheService.setSnapshot(new File(snapshotDirectory));
+            }
         }
         cacheService.start();
     }
@@ -130,6 +130,26 @@ public class CacheXmlParser extends AbstractBeanDefinitionParser {
         String accessorBeanName = accessorElement.getAttribute(AttributeDefinition.REFERENCE.getName());
         factory.addPropertyReference(ElementDefinition.ACCESSOR.getName(), accessorBeanName);
 
+        // 设置执行器(可选)
+        Element executorElement = XmlUtility.getChildElementByTagName(element, ElementDefinition.EXECUTOR.getName());
+        if (executorElement != null) {
+            String executorBeanName = executorElement.getAttribute(AttributeDefinition.REFERENCE.getName());
+            factory.addPropertyReference(ElementDefinition.EXECUTOR.getName(), executorBeanName);
+        }
+
+        // 设置失效器(可选)
+        Element invalidatorElement = XmlUtility.getChildElementByTagName(element, ElementDefinition.INVALIDATOR.getName());
+        if (invalidatorElement != null) {
+            String invalidatorBeanName = invalidatorElement.getAttribute(AttributeDefinition.REFERENCE.getName());
+            factory.addPropertyReference(ElementDefinition.INVALIDATOR.getName(), invalidatorBeanName);
+        }
+
+        // 设置快照(可选)
+        Element snapshotElement = XmlUtility.getChildElementByTagName(element, ElementDefinition.SNAPSHOT.getName());
+        if (snapshotElement != null) {
+            factory.addPropertyValue(CacheServiceFactory.SNAPSHOT_DIRECTORY_NAME, snapshotElement.getAttribute(AttributeDefinition.DIRECTORY.getName()));
+        }
+
         Type mapType = TypeUtility.parameterize(HashMap.class, String.class, String.class);
 
         // 设置内存策略
@@ -206,6 +226,15 @@ public class CacheXmlParser extends AbstractBeanDefinitionParser {
         /** 访问器定义元素(属性accessor) */
         ACCESSOR("accessor"),
 
+        /** 执行器定义元素(属性reference) */
+        EXECUTOR("executor"),
+
+        /** 失效器定义元素(属性reference) */
+        INVALIDATOR("invalidator"),
+
+        /** 快照定义元素(属性directory) */
+        SNAPSHOT("snapshot"),
+
         /** 内存配置定义元素(属性name,type,parameters) */
         TRANSIENCE_STRATEGY("transienceStrategy"),
         /** 持久配置定义元素(属性name,type,parameters) */
@@ -237,7 +266,10 @@ public class CacheXmlParser extends AbstractBeanDefinitionParser {
         REFERENCE("reference"),
 
         /** 名称 */
-        NAME("name");
+        NAME("name"),
+
+        /** 目录 */
+        DIRECTORY("directory");
 
         private String name;
 
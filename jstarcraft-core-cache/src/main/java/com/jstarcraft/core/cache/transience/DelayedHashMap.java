@@ -1,27 +1,39 @@
 package com.jstarcraft.core.cache.transience;
 
-import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiConsumer;
 
-import com.jstarcraft.core.utility.DelayElement;
-import com.jstarcraft.core.utility.SensitivityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.utility.NameThreadFactory;
 
 /**
  * 到期哈希映射
- * 
+ *
  * <pre>
- * 将数据分成多个桶,锁的粒度小,只要O(1)的复杂度就能删掉到期数据.大部分时间都可以进行get和put操作;
+ * 基于分层时间轮:
+ * 所有数据保存在一个ConcurrentHashMap,get/put/touch都是O(1)且只访问一次哈希表.
+ * 每个数据记录到期刻度,新数据通过无锁队列交给时间轮,put/touch只修改到期刻度,时间轮在到达旧刻度时惰性重新放置.
+ * 每个刻度批量处理到期数据,到期通知交给有界线程池,队列已满时由时间轮线程执行(背压).
  * </pre>
- * 
+ *
  * @author Birdy
  *
  * @param <K>
@@ -29,145 +41,264 @@ import com.jstarcraft.core.utility.SensitivityQueue;
  */
 public class DelayedHashMap<K, V> implements Map<K, V> {
 
-    /** 修复时间间隔 */
-    private static final long FIX_TIME = 1000;
-    /** 定时队列 */
-    private static final SensitivityQueue<DelayElement<DelayedHashMap<?, ?>>> QUEUE = new SensitivityQueue<>(FIX_TIME);
-    /** 任务线程 */
-    private static final ExecutorService EXECUTORS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    /** 清理线程 */
-    private static final Thread CLEANER = new Thread(new Runnable() {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DelayedHashMap.class);
 
-        public void run() {
-            try {
-                while (true) {
-                    DelayElement<DelayedHashMap<?, ?>> element = QUEUE.take();
-                    DelayedHashMap<?, ?> content = element.getContent();
-                    content.clean();
-                    Instant now = Instant.now();
-                    Instant expire = now.plusMillis(content.waitTime);
-                    element = new DelayElement<>(content, expire);
-                    QUEUE.put(element);
-                }
-            } catch (InterruptedException exception) {
-            }
-        }
+    /** 已到期(或者已删除)的刻度 */
+    private static final long EXPIRED = -1L;
+
+    /** 每层时间轮的槽位数量(2的幂) */
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    /** 时间轮层数 */
+    private static final int WHEEL_LEVELS = 4;
 
-    });
+    /** 通知队列容量 */
+    private static final int NOTIFICATION_CAPACITY = 1024;
+
+    /** 时间轮线程 */
+    private static final ScheduledExecutorService TICKER = new ScheduledThreadPoolExecutor(1, getThreadFactory("DelayedHashMap时间轮线程"));
+    /** 通知线程 */
+    private static final ThreadPoolExecutor NOTIFIER;
 
     static {
-        CLEANER.setDaemon(true);
-        CLEANER.start();
+        int size = Runtime.getRuntime().availableProcessors();
+        NOTIFIER = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(NOTIFICATION_CAPACITY), getThreadFactory("DelayedHashMap通知线程"), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ThreadFactory getThreadFactory(String name) {
+        NameThreadFactory factory = new NameThreadFactory(name);
+        return (runnable) -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final AtomicLongFieldUpdater<Node> DEADLINE_UPDATER = AtomicLongFieldUpdater.newUpdater(Node.class, "deadline");
+
+    private static final class Node<K, V> {
+
+        private final K key;
+
+        private volatile V value;
+
+        /** 到期刻度(字段更新器要求不能为private) */
+        volatile long deadline;
+
+        private Node(K key, V value, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        private boolean compareAndSetDeadline(long expect, long update) {
+            return DEADLINE_UPDATER.compareAndSet(this, expect, update);
+        }
+
+        private long getAndSetDeadline(long update) {
+            return DEADLINE_UPDATER.getAndSet(this, update);
+        }
+
     }
 
-    // 将数据分成多个桶,用链表是因为在头尾的增减操作时O(1)
-    private ConcurrentLinkedDeque<ConcurrentHashMap<K, V>> segments;
+    private final ConcurrentHashMap<K, Node<K, V>> nodes = new ConcurrentHashMap<>();
 
-    private TransienceMonitor monitor;
+    /** 等待放置到时间轮的新数据 */
+    private final ConcurrentLinkedQueue<Node<K, V>> pendings = new ConcurrentLinkedQueue<>();
 
-    private final int waitTime;
+    /** 时间轮(仅由时间轮线程访问) */
+    private final ArrayDeque<Node<K, V>>[][] wheels;
 
+    private final TransienceMonitor monitor;
+
+    /** 刻度时间(毫秒) */
+    private final long tickTime;
+
+    /** 到期刻度数 */
+    private final long expireTicks;
+
+    /** 当前刻度 */
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
     private DelayedHashMap(int expire, int segment, TransienceMonitor monitor) {
         if (segment < 2) {
             throw new IllegalArgumentException("segment must be >= 2");
         }
-        this.segments = new ConcurrentLinkedDeque<ConcurrentHashMap<K, V>>();
-        for (int index = 0; index < segment; index++) {
-            this.segments.addLast(new ConcurrentHashMap<K, V>());
+        this.wheels = new ArrayDeque[WHEEL_LEVELS][WHEEL_SIZE];
+        for (ArrayDeque<Node<K, V>>[] wheel : wheels) {
+            for (int index = 0; index < WHEEL_SIZE; index++) {
+                wheel[index] = new ArrayDeque<>();
+            }
         }
         this.monitor = monitor;
-        this.waitTime = expire * 1000 / segment;
-    }
-
-    private void clean() {
-        // 从尾部删除一个桶,到头部加一个桶.最后一个桶的数据是最旧的;
-        final Map<K, V> clean = segments.removeLast();
-        segments.addFirst(new ConcurrentHashMap<K, V>());
-
-        if (monitor != null) {
-            EXECUTORS.submit(new Runnable() {
-
-                @Override
-                public void run() {
-                    for (Entry<K, V> keyValue : clean.entrySet()) {
-                        try {
-                            // TODO 考虑此处可能会阻塞清理线程
-                            monitor.notifyExchanged(keyValue.getKey(), keyValue.getValue());
-                        } catch (Throwable throwable) {
-                            // TODO 异常需要记录
-                        }
+        this.tickTime = Math.max(1L, expire * 1000L / segment);
+        this.expireTicks = segment;
+    }
+
+    /**
+     * 推进一个刻度(仅由时间轮线程调用)
+     */
+    private void tick() {
+        long tick = currentTick + 1;
+        currentTick = tick;
+        List<Node<K, V>> expires = new ArrayList<>();
+        for (Node<K, V> node = pendings.poll(); node != null; node = pendings.poll()) {
+            place(node, tick, expires);
+        }
+        // 从高层到低层依次将到达的槽位降级
+        for (int level = WHEEL_LEVELS - 1; level > 0; level--) {
+            int shift = level * WHEEL_BITS;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                cascade(wheels[level][(int) ((tick >>> shift) & WHEEL_MASK)], tick, expires);
+            }
+        }
+        cascade(wheels[0][(int) (tick & WHEEL_MASK)], tick, expires);
+        if (monitor != null && !expires.isEmpty()) {
+            NOTIFIER.execute(() -> {
+                for (Node<K, V> node : expires) {
+                    try {
+                        monitor.notifyExchanged(node.key, node.value);
+                    } catch (Throwable throwable) {
+                        LOGGER.error("到期通知异常", throwable);
                     }
                 }
-
             });
         }
     }
 
-    @Override
-    public boolean containsKey(Object key) {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            if (segment.containsKey(key)) {
+    private void cascade(ArrayDeque<Node<K, V>> slot, long tick, List<Node<K, V>> expires) {
+        int size = slot.size();
+        for (int index = 0; index < size; index++) {
+            place(slot.poll(), tick, expires);
+        }
+    }
+
+    /**
+     * 放置数据(到期的数据直接淘汰)
+     */
+    private void place(Node<K, V> node, long tick, List<Node<K, V>> expires) {
+        while (true) {
+            long deadline = node.deadline;
+            if (deadline == EXPIRED) {
+                // 已删除
+                return;
+            }
+            if (deadline <= tick) {
+                if (node.compareAndSetDeadline(deadline, EXPIRED)) {
+                    nodes.remove(node.key, node);
+                    expires.add(node);
+                    return;
+                }
+                // 并发修改了到期刻度
+                continue;
+            }
+            int level = 0;
+            long offset = deadline;
+            while (level < WHEEL_LEVELS - 1 && (deadline >>> (level * WHEEL_BITS)) - (tick >>> (level * WHEEL_BITS)) >= WHEEL_SIZE) {
+                level++;
+            }
+            int shift = level * WHEEL_BITS;
+            if ((deadline >>> shift) - (tick >>> shift) >= WHEEL_SIZE) {
+                // 超出最高层的范围,放到最远的槽位等待重新放置
+                offset = ((tick >>> shift) + WHEEL_MASK) << shift;
+            }
+            wheels[level][(int) ((offset >>> shift) & WHEEL_MASK)].offer(node);
+            return;
+        }
+    }
+
+    /**
+     * 刷新到期时间
+     *
+     * @param key
+     * @return 是否存在
+     */
+    public boolean touch(K key) {
+        Node<K, V> node = nodes.get(key);
+        if (node == null) {
+            return false;
+        }
+        while (true) {
+            long deadline = node.deadline;
+            if (deadline == EXPIRED) {
+                return false;
+            }
+            if (node.compareAndSetDeadline(deadline, currentTick + expireTicks)) {
                 return true;
             }
         }
-        return false;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
     }
 
     @Override
     public V get(Object key) {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            if (segment.containsKey(key)) {
-                return segment.get(key);
-            }
+        Node<K, V> node = nodes.get(key);
+        if (node == null || node.deadline == EXPIRED) {
+            return null;
         }
-        return null;
+        return node.value;
     }
 
     @Override
     public V put(K key, V value) {
-        Iterator<ConcurrentHashMap<K, V>> iterator = segments.iterator();
-        ConcurrentHashMap<K, V> segment = iterator.next();
-        segment.put(key, value);
-        while (iterator.hasNext()) {
-            segment = iterator.next();
-            segment.remove(key);
+        while (true) {
+            long tick = currentTick + expireTicks;
+            Node<K, V> node = nodes.get(key);
+            if (node == null) {
+                node = new Node<>(key, value, tick);
+                if (nodes.putIfAbsent(key, node) == null) {
+                    pendings.offer(node);
+                    return null;
+                }
+                continue;
+            }
+            long deadline = node.deadline;
+            if (deadline == EXPIRED) {
+                // 正在到期
+                nodes.remove(key, node);
+                continue;
+            }
+            if (node.compareAndSetDeadline(deadline, tick)) {
+                V old = node.value;
+                node.value = value;
+                return old;
+            }
         }
-        return null;
     }
 
     @Override
     public V remove(Object key) {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            if (segment.containsKey(key)) {
-                return segment.remove(key);
-            }
+        Node<K, V> node = nodes.remove(key);
+        if (node == null) {
+            return null;
         }
-        return null;
+        // 与到期竞争,只有一方可以获取值
+        if (node.getAndSetDeadline(EXPIRED) == EXPIRED) {
+            return null;
+        }
+        return node.value;
     }
 
     @Override
     public int size() {
-        int size = 0;
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            size += segment.size();
-        }
-        return size;
+        return nodes.size();
     }
 
     @Override
     public boolean isEmpty() {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            if (!segment.isEmpty()) {
-                return false;
-            }
-        }
-        return true;
+        return nodes.isEmpty();
     }
 
     @Override
     public boolean containsValue(Object value) {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            if (segment.containsValue(value)) {
+        for (Node<K, V> node : nodes.values()) {
+            if (node.deadline != EXPIRED && value.equals(node.value)) {
                 return true;
             }
         }
@@ -183,45 +314,55 @@ public class DelayedHashMap<K, V> implements Map<K, V> {
 
     @Override
     public void clear() {
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            segment.clear();
+        for (K key : nodes.keySet()) {
+            remove(key);
         }
     }
 
     @Override
     public Set<K> keySet() {
-        HashSet<K> keySet = new HashSet<>();
-        for (ConcurrentHashMap<K, V> segment : segments) {
-            keySet.addAll(segment.keySet());
-        }
-        return keySet;
+        return new HashSet<>(nodes.keySet());
     }
 
     @Override
     public Collection<V> values() {
-        Set<K> keySet = keySet();
         HashSet<V> valueSet = new HashSet<>();
-        for (K key : keySet) {
-            valueSet.add(get(key));
+        for (Node<K, V> node : nodes.values()) {
+            valueSet.add(node.value);
         }
         return valueSet;
     }
 
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        // 不复制节点,也不延长到期时间
+        for (Node<K, V> node : nodes.values()) {
+            V value = node.value;
+            if (value != null && node.deadline != EXPIRED) {
+                consumer.accept(node.key, value);
+            }
+        }
+    }
+
     @Override
     public Set<Entry<K, V>> entrySet() {
         HashMap<K, V> map = new HashMap<>();
-        Set<K> keySet = keySet();
-        for (K key : keySet) {
-            map.put(key, get(key));
+        for (Node<K, V> node : nodes.values()) {
+            map.put(node.key, node.value);
         }
         return map.entrySet();
     }
 
     public static DelayedHashMap instanceOf(int expire, int segment, TransienceMonitor listener) {
         DelayedHashMap<?, ?> instance = new DelayedHashMap<>(expire, segment, listener);
-        Instant instant = Instant.now().plusMillis(instance.waitTime);
-        DelayElement<DelayedHashMap<?, ?>> element = new DelayElement(instance, instant);
-        QUEUE.put(element);
+        TICKER.scheduleAtFixedRate(() -> {
+            try {
+                instance.tick();
+            } catch (Throwable throwable) {
+                // 异常会导致后续刻度不再执行
+                LOGGER.error("时间轮刻度异常", throwable);
+            }
+        }, instance.tickTime, instance.tickTime, TimeUnit.MILLISECONDS);
         return instance;
     }
 
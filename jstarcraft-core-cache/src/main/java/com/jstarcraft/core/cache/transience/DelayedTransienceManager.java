@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.transience;
 
+import java.util.function.BiConsumer;
+
 /**
  * 定时瞬时策略
  * 
@@ -10,7 +12,10 @@ public class DelayedTransienceManager<K, T> implements TransienceManager<K, T> {
 
     private DelayedHashMap<K, T> transience;
 
+    private TransienceMonitor monitor;
+
     DelayedTransienceManager(int expire, int segment, TransienceMonitor monitor) {
+        this.monitor = monitor;
         this.transience = DelayedHashMap.instanceOf(expire, segment, monitor);
     }
 
@@ -26,7 +31,20 @@ public class DelayedTransienceManager<K, T> implements TransienceManager<K, T> {
 
     @Override
     public T retrieveInstance(K id) {
-        return transience.get(id);
+        T instance = transience.get(id);
+        if (monitor != null) {
+            if (instance == null) {
+                monitor.notifyMissed(id);
+            } else {
+                monitor.notifyHit(id);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean hasInstance(K id) {
+        return transience.containsKey(id);
     }
 
     @Override
@@ -34,4 +52,10 @@ public class DelayedTransienceManager<K, T> implements TransienceManager<K, T> {
         return transience.size();
     }
 
+    @Override
+    public void iterateInstances(BiConsumer<K, T> consumer) {
+        // 遍历不会延长到期时间
+        transience.forEach(consumer);
+    }
+
 }
@@ -0,0 +1,113 @@
+package com.jstarcraft.core.cache.transience;
+
+/**
+ * 频率草图
+ * 
+ * <pre>
+ * 4位计数器的Count-Min Sketch,每个long容纳16个计数器,每个元素使用4个计数器.
+ * 增加次数达到采样大小时所有计数器减半,使频率随时间衰减.
+ * 非线程安全,由调用方保证串行访问.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /** 计数器的最大值 */
+    static final int MAXIMUM_FREQUENCY = 15;
+
+    private final long[] table;
+
+    private final int mask;
+
+    /** 采样大小 */
+    private final int sampleSize;
+
+    /** 当前采样数量 */
+    private int size;
+
+    FrequencySketch(long capacity) {
+        int maximum = (int) Math.min(Math.max(capacity, 1L), 1 << 20);
+        int length = Integer.highestOneBit(maximum - 1) << 1;
+        this.table = new long[Math.max(length, 8)];
+        this.mask = table.length - 1;
+        this.sampleSize = 10 * maximum;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    private int indexOf(int hash, int seed) {
+        long index = (hash + SEEDS[seed]) * SEEDS[seed];
+        index += index >>> 32;
+        return ((int) index) & mask;
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        int shift = offset << 2;
+        long counter = 0xFL << shift;
+        if ((table[index] & counter) != counter) {
+            table[index] += 1L << shift;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 增加频率
+     * 
+     * @param key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = incrementAt(indexOf(hash, 0), start);
+        added |= incrementAt(indexOf(hash, 1), start + 1);
+        added |= incrementAt(indexOf(hash, 2), start + 2);
+        added |= incrementAt(indexOf(hash, 3), start + 3);
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 估计频率
+     * 
+     * @param key
+     * @return
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAXIMUM_FREQUENCY;
+        for (int seed = 0; seed < SEEDS.length; seed++) {
+            int index = indexOf(hash, seed);
+            int count = (int) ((table[index] >>> ((start + seed) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        int count = 0;
+        for (int index = 0; index < table.length; index++) {
+            count += Long.bitCount(table[index] & ONE_MASK);
+            table[index] = (table[index] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+}
@@ -0,0 +1,498 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 最近最不常用瞬时管理器(W-TinyLFU)
+ * 
+ * <pre>
+ * 新实例先进入窗口区(LRU),被窗口区淘汰的实例成为候选者,与主区的受害者比较频率草图的估计频率决定是否准入.
+ * 主区为分段LRU:试用段的实例再次访问晋升到保护段,保护段超出容量时降级回试用段.
+ * 检索无锁,访问记录写入有损缓冲区,由持有锁的线程批量重放;创建与删除持有锁.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ * @param <T>
+ */
+public class LeastFrequentlyUsedTransienceManager<K, T> implements TransienceManager<K, T> {
+
+    /** 窗口区 */
+    private static final int WINDOW = 0;
+    /** 试用段 */
+    private static final int PROBATION = 1;
+    /** 保护段 */
+    private static final int PROTECTED = 2;
+
+    /** 窗口区占总容量的比例 */
+    private static final double WINDOW_RATIO = 0.01D;
+    /** 保护段占主区容量的比例 */
+    private static final double PROTECTED_RATIO = 0.8D;
+    /** 候选者频率达到该值时随机准入(防止哈希碰撞攻击使受害者永远无法淘汰) */
+    private static final int ADMIT_FREQUENCY = 6;
+
+    /** 缓冲区大小(必须为2的幂) */
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final ConcurrentHashMap<K, Node<K, T>> transience;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ReadBuffer<K, T>[] buffers;
+
+    private final FrequencySketch sketch;
+
+    private final TransienceWeigher weigher;
+
+    private final TransienceMonitor monitor;
+
+    /** 最大权重 */
+    private final long maximumWeight;
+    /** 窗口区最大权重 */
+    private final long windowMaximum;
+    /** 保护段最大权重 */
+    private final long protectedMaximum;
+
+    /** 总权重(由锁保护) */
+    private long weightedSize;
+    /** 窗口区权重(由锁保护) */
+    private long windowWeight;
+    /** 保护段权重(由锁保护) */
+    private long protectedWeight;
+
+    private final AccessOrderDeque<K, T> windowDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, T> probationDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, T> protectedDeque = new AccessOrderDeque<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    LeastFrequentlyUsedTransienceManager(int minimunSize, long maximunWeight, int concurrencyLevel, TransienceWeigher weigher, TransienceMonitor monitor) {
+        this.transience = new ConcurrentHashMap<>(minimunSize, 0.75F, concurrencyLevel);
+        int size = Math.min(Integer.highestOneBit(Math.max(concurrencyLevel, 1) - 1) << 1, Runtime.getRuntime().availableProcessors() * 4);
+        this.buffers = new ReadBuffer[Integer.highestOneBit(Math.max(size, 1))];
+        for (int index = 0; index < buffers.length; index++) {
+            buffers[index] = new ReadBuffer<>();
+        }
+        this.maximumWeight = maximunWeight;
+        this.windowMaximum = Math.max(1L, (long) (maximunWeight * WINDOW_RATIO));
+        this.protectedMaximum = (long) ((maximunWeight - windowMaximum) * PROTECTED_RATIO);
+        this.sketch = new FrequencySketch(weigher == null ? maximunWeight : minimunSize);
+        this.weigher = weigher;
+        this.monitor = monitor;
+    }
+
+    private int weigh(K id, T instance) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(id, instance);
+        if (weight < 0) {
+            throw new IllegalArgumentException();
+        }
+        return weight;
+    }
+
+    @Override
+    public void createInstance(K id, T instance) {
+        int weight = weigh(id, instance);
+        List<Node<K, T>> evictions = new LinkedList<>();
+        lock.lock();
+        try {
+            drainBuffers();
+            Node<K, T> node = transience.get(id);
+            if (node == null) {
+                node = new Node<>(id, instance, weight);
+                transience.put(id, node);
+                sketch.increment(id);
+                windowDeque.addLast(node);
+                windowWeight += weight;
+                weightedSize += weight;
+            } else {
+                int difference = weight - node.weight;
+                node.value = instance;
+                node.weight = weight;
+                weightedSize += difference;
+                if (node.queue == WINDOW) {
+                    windowWeight += difference;
+                } else if (node.queue == PROTECTED) {
+                    protectedWeight += difference;
+                }
+                onAccess(node);
+            }
+            evict(evictions);
+        } finally {
+            lock.unlock();
+        }
+        if (monitor != null) {
+            for (Node<K, T> eviction : evictions) {
+                monitor.notifyExchanged(eviction.key, eviction.value);
+            }
+        }
+    }
+
+    @Override
+    public T deleteInstance(K id) {
+        lock.lock();
+        try {
+            Node<K, T> node = transience.remove(id);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T retrieveInstance(K id) {
+        Node<K, T> node = transience.get(id);
+        if (node == null) {
+            missCount.increment();
+            if (monitor != null) {
+                monitor.notifyMissed(id);
+            }
+            return null;
+        }
+        hitCount.increment();
+        if (monitor != null) {
+            monitor.notifyHit(id);
+        }
+        T value = node.value;
+        ReadBuffer<K, T> buffer = buffers[(int) Thread.currentThread().getId() & (buffers.length - 1)];
+        if (buffer.offer(node) && lock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean hasInstance(K id) {
+        return transience.containsKey(id);
+    }
+
+    @Override
+    public int getSize() {
+        return transience.size();
+    }
+
+    @Override
+    public void iterateInstances(BiConsumer<K, T> consumer) {
+        // 不经过读缓冲,遍历不会增加频率
+        for (Node<K, T> node : transience.values()) {
+            T value = node.value;
+            if (value != null) {
+                consumer.accept(node.key, value);
+            }
+        }
+    }
+
+    /**
+     * 获取总权重
+     * 
+     * @return
+     */
+    public long getWeightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取命中次数
+     * 
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取未命中次数
+     * 
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取淘汰次数
+     * 
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private void drainBuffers() {
+        for (ReadBuffer<K, T> buffer : buffers) {
+            buffer.drain(this);
+        }
+    }
+
+    /**
+     * 重放访问(由锁保护)
+     * 
+     * @param node
+     */
+    private void onAccess(Node<K, T> node) {
+        if (!node.alive) {
+            // 已经删除或者淘汰
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+        case WINDOW:
+            windowDeque.moveToLast(node);
+            break;
+        case PROBATION:
+            probationDeque.unlink(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedWeight += node.weight;
+            // 保护段超出容量时降级最久未访问的实例
+            while (protectedWeight > protectedMaximum) {
+                Node<K, T> demotion = protectedDeque.peekFirst();
+                protectedDeque.unlink(demotion);
+                protectedWeight -= demotion.weight;
+                demotion.queue = PROBATION;
+                probationDeque.addLast(demotion);
+            }
+            break;
+        case PROTECTED:
+            protectedDeque.moveToLast(node);
+            break;
+        }
+    }
+
+    /**
+     * 淘汰(由锁保护)
+     * 
+     * @param evictions
+     */
+    private void evict(List<Node<K, T>> evictions) {
+        // 窗口区超出容量的实例进入试用段末尾成为候选者
+        Node<K, T> candidate = null;
+        while (windowWeight > windowMaximum) {
+            Node<K, T> node = windowDeque.peekFirst();
+            windowDeque.unlink(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probationDeque.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+
+        // 候选者与受害者(试用段头部,其次保护段头部)比较频率
+        while (weightedSize > maximumWeight) {
+            Node<K, T> victim = probationDeque.peekFirst();
+            if (victim == candidate) {
+                victim = protectedDeque.peekFirst();
+            }
+            if (candidate == null) {
+                if (victim == null) {
+                    victim = windowDeque.peekFirst();
+                }
+                remove(victim, evictions);
+                continue;
+            }
+            Node<K, T> next = candidate.next;
+            if (victim == null || candidate.weight > maximumWeight || !admit(candidate.key, victim.key)) {
+                remove(candidate, evictions);
+            } else {
+                remove(victim, evictions);
+            }
+            candidate = next;
+        }
+    }
+
+    private boolean admit(K candidate, K victim) {
+        int candidateFrequency = sketch.frequency(candidate);
+        int victimFrequency = sketch.frequency(victim);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency < ADMIT_FREQUENCY) {
+            return false;
+        }
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void remove(Node<K, T> node, List<Node<K, T>> evictions) {
+        transience.remove(node.key, node);
+        unlink(node);
+        evictionCount.increment();
+        evictions.add(node);
+    }
+
+    private void unlink(Node<K, T> node) {
+        switch (node.queue) {
+        case WINDOW:
+            windowDeque.unlink(node);
+            windowWeight -= node.weight;
+            break;
+        case PROBATION:
+            probationDeque.unlink(node);
+            break;
+        case PROTECTED:
+            protectedDeque.unlink(node);
+            protectedWeight -= node.weight;
+            break;
+        }
+        weightedSize -= node.weight;
+        node.alive = false;
+    }
+
+    private static final class Node<K, T> {
+
+        private final K key;
+
+        private volatile T value;
+
+        /** 以下字段由锁保护 */
+        private int weight;
+
+        private int queue = WINDOW;
+
+        private boolean alive = true;
+
+        private Node<K, T> previous;
+
+        private Node<K, T> next;
+
+        private Node(K key, T value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+    /**
+     * 访问顺序队列(侵入式双向链表,由锁保护)
+     */
+    private static final class AccessOrderDeque<K, T> {
+
+        private Node<K, T> head;
+
+        private Node<K, T> tail;
+
+        private Node<K, T> peekFirst() {
+            return head;
+        }
+
+        private void addLast(Node<K, T> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private void unlink(Node<K, T> node) {
+            Node<K, T> previous = node.previous;
+            Node<K, T> next = node.next;
+            if (previous == null) {
+                head = next;
+            } else {
+                previous.next = next;
+            }
+            if (next == null) {
+                tail = previous;
+            } else {
+                next.previous = previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node<K, T> node) {
+            if (node != tail) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+
+    }
+
+    /**
+     * 有损读缓冲区
+     * 
+     * <pre>
+     * 多个线程写入,持有锁的线程读取.缓冲区已满或者写入竞争失败时直接丢弃访问记录.
+     * </pre>
+     */
+    private static final class ReadBuffer<K, T> {
+
+        private final AtomicReferenceArray<Node<K, T>> elements = new AtomicReferenceArray<>(BUFFER_SIZE);
+
+        private final AtomicLong writeCount = new AtomicLong();
+
+        private volatile long readCount;
+
+        /**
+         * 写入访问记录
+         * 
+         * @param node
+         * @return 是否需要重放
+         */
+        private boolean offer(Node<K, T> node) {
+            long head = readCount;
+            long tail = writeCount.get();
+            long size = tail - head;
+            if (size >= BUFFER_SIZE) {
+                return true;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1)) {
+                elements.lazySet((int) (tail & BUFFER_MASK), node);
+                return size + 1 >= BUFFER_SIZE;
+            }
+            return false;
+        }
+
+        private void drain(LeastFrequentlyUsedTransienceManager<K, T> manager) {
+            long head = readCount;
+            long tail = writeCount.get();
+            while (head < tail) {
+                int index = (int) (head & BUFFER_MASK);
+                Node<K, T> node = elements.get(index);
+                if (node == null) {
+                    // 写入线程尚未发布
+                    break;
+                }
+                elements.lazySet(index, null);
+                manager.onAccess(node);
+                head++;
+            }
+            readCount = head;
+        }
+
+    }
+
+}
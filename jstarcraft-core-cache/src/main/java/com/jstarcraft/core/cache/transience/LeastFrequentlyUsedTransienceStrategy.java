@@ -0,0 +1,82 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.common.lifecycle.LifecycleState;
+
+/**
+ * 最近最不常用瞬时策略(W-TinyLFU)
+ * 
+ * <pre>
+ * 相比{@link LeastRecentlyUsedTransienceStrategy},只访问一次的扫描不会淘汰热点实例.
+ * 配置权重器时最大大小表示最大权重,否则表示最大数量.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class LeastFrequentlyUsedTransienceStrategy extends AbstractTransienceStrategy {
+
+    /** 参数:最小大小 */
+    public static final String PARAMETER_MINIMUN_SIZE = "minimunSize";
+    /** 参数:最大大小 */
+    public static final String PARAMETER_MAXIMUN_SIZE = "maximunSize";
+    /** 参数:并发线程数预计值 */
+    public static final String PARAMETER_CONCURRENCY_LEVEL = "concurrencyLevel";
+    /** 参数:权重器(可选,{@link TransienceWeigher}的实现类) */
+    public static final String PARAMETER_WEIGHER = "weigher";
+
+    /** 最小大小 */
+    private int minimunSize;
+    /** 最大大小 */
+    private long maximunSize;
+    /** 并发线程数预计值 */
+    private int concurrencyLevel;
+    /** 权重器 */
+    private TransienceWeigher weigher;
+
+    /** 状态 */
+    private AtomicReference<LifecycleState> state = new AtomicReference<>(null);
+
+    public LeastFrequentlyUsedTransienceStrategy(String name, Map<String, String> configuration) {
+        super(name, configuration);
+    }
+
+    @Override
+    public void start() {
+        if (!state.compareAndSet(null, LifecycleState.STARTED)) {
+            throw new CacheConfigurationException();
+        }
+        this.minimunSize = Integer.parseInt(configuration.get(PARAMETER_MINIMUN_SIZE));
+        this.maximunSize = Long.parseLong(configuration.get(PARAMETER_MAXIMUN_SIZE));
+        this.concurrencyLevel = Integer.parseInt(configuration.get(PARAMETER_CONCURRENCY_LEVEL));
+
+        if (minimunSize <= 0 || maximunSize <= 0 || concurrencyLevel <= 0) {
+            throw new CacheConfigurationException();
+        }
+
+        String weigher = configuration.get(PARAMETER_WEIGHER);
+        if (weigher != null) {
+            try {
+                this.weigher = (TransienceWeigher) Class.forName(weigher).newInstance();
+            } catch (Exception exception) {
+                throw new CacheConfigurationException(exception);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!state.compareAndSet(LifecycleState.STARTED, LifecycleState.STOPPED)) {
+            throw new CacheConfigurationException();
+        }
+    }
+
+    @Override
+    public TransienceManager getTransienceManager(TransienceMonitor monitor) {
+        return new LeastFrequentlyUsedTransienceManager<>(minimunSize, maximunSize, concurrencyLevel, weigher, monitor);
+    }
+
+}
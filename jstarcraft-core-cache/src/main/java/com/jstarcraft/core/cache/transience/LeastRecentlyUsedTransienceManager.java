@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.transience;
 
+import java.util.function.BiConsumer;
+
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
 import com.googlecode.concurrentlinkedhashmap.EvictionListener;
@@ -14,7 +16,10 @@ public class LeastRecentlyUsedTransienceManager<K, T> implements TransienceManag
 
     private ConcurrentLinkedHashMap<K, T> transience;
 
+    private TransienceMonitor monitor;
+
     LeastRecentlyUsedTransienceManager(int minimunSize, int maximunSize, int concurrencyLevel, TransienceMonitor monitor) {
+        this.monitor = monitor;
         Builder<K, T> builder = new Builder<>();
         builder.initialCapacity(minimunSize);
         builder.maximumWeightedCapacity(maximunSize);
@@ -43,7 +48,20 @@ public class LeastRecentlyUsedTransienceManager<K, T> implements TransienceManag
 
     @Override
     public T retrieveInstance(K id) {
-        return transience.get(id);
+        T instance = transience.get(id);
+        if (monitor != null) {
+            if (instance == null) {
+                monitor.notifyMissed(id);
+            } else {
+                monitor.notifyHit(id);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean hasInstance(K id) {
+        return transience.containsKey(id);
     }
 
     @Override
@@ -51,4 +69,10 @@ public class LeastRecentlyUsedTransienceManager<K, T> implements TransienceManag
         return transience.size();
     }
 
+    @Override
+    public void iterateInstances(BiConsumer<K, T> consumer) {
+        // 遍历不会调整访问顺序
+        transience.forEach(consumer);
+    }
+
 }
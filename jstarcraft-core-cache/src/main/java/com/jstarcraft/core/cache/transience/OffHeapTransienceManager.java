@@ -0,0 +1,566 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+import com.jstarcraft.core.codec.ContentCodec;
+
+/**
+ * 堆外瞬时管理器
+ * 
+ * <pre>
+ * 实例通过{@link ContentCodec}序列化以后保存到直接内存,按照分级大小的块(slab)分配:
+ * 每个分片(slab)在首次使用时划分为同一级别的块,块不会跨分片,超过分片大小的实例不保存.
+ * 分片数量达到上限以后淘汰同一级别最久未使用的实例;
+ * 没有分片的级别从存活实例最少的分片回收(淘汰其中的实例)并重新划分,避免分片固化在早期的级别.
+ * 无法保存的实例通过{@link TransienceMonitor#notifyDropped}通知并计数.
+ * 检索返回反序列化的新实例(不是代理),淘汰通知的值为null(避免反序列化).
+ * 索引与淘汰顺序保存在堆内,每个实例大约占用100字节.
+ * 
+ * 检索不获取全局锁:块内容通过分片的乐观读复制,期间分片被写入时在分片的读锁中重新复制;
+ * 访问记录到有损的环形缓冲(缓冲写满时覆盖),在全局锁空闲或者写入时批量更新淘汰顺序.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ * @param <T>
+ */
+public class OffHeapTransienceManager<K, T> implements TransienceManager<K, T> {
+
+    /** 最小块大小 */
+    static final int MINIMUM_CHUNK = 64;
+
+    /** 访问缓冲大小(2的幂) */
+    private static final int READ_BUFFER_SIZE = 128;
+
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    private static final class Block<K> {
+
+        private final K key;
+
+        /** 分片序号 */
+        private final int slab;
+
+        /** 分片内偏移 */
+        private final int offset;
+
+        /** 数据长度 */
+        private final int length;
+
+        /** 块级别 */
+        private final int level;
+
+        private Block(K key, int slab, int offset, int length, int level) {
+            this.key = key;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.level = level;
+        }
+
+    }
+
+    private final ContentCodec codec;
+
+    private final Type type;
+
+    private final TransienceMonitor monitor;
+
+    /** 分片大小(2的幂) */
+    private final int slabSize;
+
+    /** 分片 */
+    private final ByteBuffer[] slabs;
+
+    /** 已分配分片数量 */
+    private volatile int slabCount;
+
+    /** 每个分片的块级别 */
+    private final int[] slabLevels;
+
+    /** 每个分片的存活块数量 */
+    private final int[] slabBlocks;
+
+    /** 每个分片的读写锁(写入块内容时持有写锁,检索时乐观读) */
+    private final StampedLock[] slabLocks;
+
+    /** 每个级别的空闲块(高32位为分片序号,低32位为偏移) */
+    private final ArrayDeque<Long>[] frees;
+
+    /** 每个级别的淘汰顺序 */
+    private final LinkedHashMap<K, Block<K>>[] orders;
+
+    /** 索引(只在持有锁时修改,无锁读取用于检索与判断是否存在) */
+    private final ConcurrentHashMap<K, Block<K>> blocks = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** 访问缓冲(有损,只在持有锁时清空) */
+    private final AtomicReferenceArray<K> reads = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+    /** 访问记录数量 */
+    private final AtomicLong readCount = new AtomicLong();
+
+    /** 已经清空的访问记录数量(只在持有锁时修改) */
+    private long drainCount;
+
+    /** 已使用字节数 */
+    private long usedBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder dropCount = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    OffHeapTransienceManager(ContentCodec codec, Type type, long capacity, int slabSize, TransienceMonitor monitor) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < MINIMUM_CHUNK) {
+            throw new IllegalArgumentException("slab size must be a power of two >= " + MINIMUM_CHUNK);
+        }
+        this.codec = codec;
+        this.type = type;
+        this.monitor = monitor;
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[(int) Math.max(1L, capacity / slabSize)];
+        this.slabLevels = new int[slabs.length];
+        this.slabBlocks = new int[slabs.length];
+        this.slabLocks = new StampedLock[slabs.length];
+        for (int slab = 0; slab < slabs.length; slab++) {
+            slabLocks[slab] = new StampedLock();
+        }
+        int levels = Integer.numberOfTrailingZeros(slabSize / MINIMUM_CHUNK) + 1;
+        this.frees = new ArrayDeque[levels];
+        this.orders = new LinkedHashMap[levels];
+        for (int level = 0; level < levels; level++) {
+            frees[level] = new ArrayDeque<>();
+            orders[level] = new LinkedHashMap<>(16, 0.75F, true);
+        }
+    }
+
+    /**
+     * 获取长度对应的块级别
+     * 
+     * @param length
+     * @return
+     */
+    private static int getLevel(int length) {
+        int level = 0;
+        for (int size = MINIMUM_CHUNK; size < length; size <<= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 将分片划分为指定级别的块(必须持有锁)
+     * 
+     * @param slab
+     * @param level
+     */
+    private void divide(int slab, int level) {
+        slabLevels[slab] = level;
+        slabBlocks[slab] = 0;
+        int chunk = MINIMUM_CHUNK << level;
+        for (int offset = 0; offset < slabSize; offset += chunk) {
+            frees[level].push(((long) slab << 32) | offset);
+        }
+    }
+
+    /**
+     * 淘汰实例(必须持有锁)
+     * 
+     * @param block
+     */
+    private void evict(Block<K> block) {
+        blocks.remove(block.key);
+        release(block);
+        evictionCount.increment();
+        if (monitor != null) {
+            monitor.notifyExchanged(block.key, null);
+        }
+    }
+
+    /**
+     * 回收分片(必须持有锁)
+     * 
+     * <pre>
+     * 选择其它级别中存活实例最少的分片,淘汰其中的实例并且移除其空闲块.
+     * </pre>
+     * 
+     * @param level 需要分片的级别
+     * @return 分片序号,-1表示没有可以回收的分片
+     */
+    private int reclaim(int level) {
+        int slab = -1;
+        for (int index = 0; index < slabCount; index++) {
+            if (slabLevels[index] != level && (slab < 0 || slabBlocks[index] < slabBlocks[slab])) {
+                slab = index;
+            }
+        }
+        if (slab < 0) {
+            return -1;
+        }
+        int from = slabLevels[slab];
+        if (slabBlocks[slab] > 0) {
+            List<Block<K>> evictions = new ArrayList<>(slabBlocks[slab]);
+            for (Block<K> block : orders[from].values()) {
+                if (block.slab == slab) {
+                    evictions.add(block);
+                }
+            }
+            for (Block<K> block : evictions) {
+                evict(block);
+            }
+        }
+        int reclaim = slab;
+        frees[from].removeIf((address) -> (int) (address >>> 32) == reclaim);
+        return slab;
+    }
+
+    /**
+     * 分配块(必须持有锁)
+     * 
+     * @param level
+     * @return 块地址,-1表示无法分配
+     */
+    private long allocate(int level) {
+        ArrayDeque<Long> free = frees[level];
+        if (free.isEmpty()) {
+            if (slabCount < slabs.length) {
+                int slab = slabCount++;
+                slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+                divide(slab, level);
+                if (monitor != null) {
+                    monitor.notifyOccupied(getOccupiedBytes());
+                }
+            } else {
+                Iterator<Block<K>> iterator = orders[level].values().iterator();
+                if (iterator.hasNext()) {
+                    // 淘汰同一级别最久未使用的实例
+                    evict(iterator.next());
+                } else {
+                    // 级别没有分片,从其它级别回收
+                    int slab = reclaim(level);
+                    if (slab < 0) {
+                        return -1L;
+                    }
+                    divide(slab, level);
+                }
+            }
+        }
+        return free.pop();
+    }
+
+    /**
+     * 丢弃实例(必须持有锁)
+     * 
+     * @param id
+     */
+    private void drop(K id) {
+        dropCount.increment();
+        if (monitor != null) {
+            monitor.notifyDropped(id);
+        }
+    }
+
+    /**
+     * 释放块(必须持有锁)
+     * 
+     * @param block
+     */
+    private void release(Block<K> block) {
+        orders[block.level].remove(block.key);
+        frees[block.level].push(((long) block.slab << 32) | block.offset);
+        slabBlocks[block.slab]--;
+        usedBytes -= block.length;
+    }
+
+    /**
+     * 复制块内容(必须持有锁或者分片的锁)
+     * 
+     * @param block
+     * @return
+     */
+    private byte[] copy(Block<K> block) {
+        byte[] content = new byte[block.length];
+        ByteBuffer buffer = slabs[block.slab].duplicate();
+        // 通过Buffer调用,保持与Java 8的二进制兼容
+        ((Buffer) buffer).position(block.offset);
+        buffer.get(content);
+        return content;
+    }
+
+    /**
+     * 读取块内容(不需要持有锁)
+     * 
+     * <pre>
+     * 块被回收时先从索引移除再写入分片:
+     * 复制期间分片被写入时乐观读失败,复制之前已经被写入时索引中不再是同一个块.
+     * </pre>
+     * 
+     * @param block
+     * @return 块已经被回收时为null
+     */
+    private byte[] read(Block<K> block) {
+        StampedLock slabLock = slabLocks[block.slab];
+        byte[] content = null;
+        long stamp = slabLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            content = copy(block);
+            if (!slabLock.validate(stamp)) {
+                content = null;
+            }
+        }
+        if (content == null) {
+            stamp = slabLock.readLock();
+            try {
+                content = copy(block);
+            } finally {
+                slabLock.unlockRead(stamp);
+            }
+        }
+        return blocks.get(block.key) == block ? content : null;
+    }
+
+    /**
+     * 记录访问(有损)
+     * 
+     * @param id
+     */
+    private void record(K id) {
+        long index = readCount.getAndIncrement();
+        reads.lazySet((int) (index & READ_BUFFER_MASK), id);
+        // 缓冲写满一轮时尝试清空,锁被占用时放弃
+        if ((index & READ_BUFFER_MASK) == READ_BUFFER_MASK && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按照访问记录更新淘汰顺序(必须持有锁)
+     */
+    private void drain() {
+        long count = readCount.get();
+        for (long index = Math.max(drainCount, count - READ_BUFFER_SIZE); index < count; index++) {
+            K id = reads.getAndSet((int) (index & READ_BUFFER_MASK), null);
+            if (id != null) {
+                Block<K> block = blocks.get(id);
+                if (block != null) {
+                    orders[block.level].get(id);
+                }
+            }
+        }
+        drainCount = count;
+    }
+
+    @Override
+    public void createInstance(K id, T instance) {
+        // 序列化不需要持有锁
+        byte[] content = codec.encode(type, instance);
+        lock.lock();
+        try {
+            // 淘汰之前更新淘汰顺序
+            drain();
+            Block<K> block = blocks.remove(id);
+            if (block != null) {
+                release(block);
+            }
+            if (content.length > slabSize) {
+                drop(id);
+                return;
+            }
+            int level = getLevel(content.length);
+            long address = allocate(level);
+            if (address < 0L) {
+                drop(id);
+                return;
+            }
+            block = new Block<>(id, (int) (address >>> 32), (int) address, content.length, level);
+            slabBlocks[block.slab]++;
+            StampedLock slabLock = slabLocks[block.slab];
+            long stamp = slabLock.writeLock();
+            try {
+                ByteBuffer buffer = slabs[block.slab].duplicate();
+                ((Buffer) buffer).position(block.offset);
+                buffer.put(content);
+            } finally {
+                slabLock.unlockWrite(stamp);
+            }
+            blocks.put(id, block);
+            orders[level].put(id, block);
+            usedBytes += content.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T deleteInstance(K id) {
+        if (!blocks.containsKey(id)) {
+            return null;
+        }
+        byte[] content;
+        lock.lock();
+        try {
+            Block<K> block = blocks.remove(id);
+            if (block == null) {
+                return null;
+            }
+            content = copy(block);
+            release(block);
+        } finally {
+            lock.unlock();
+        }
+        return (T) codec.decode(type, content);
+    }
+
+    /**
+     * 移除实例(不反序列化)
+     * 
+     * @param id
+     * @return 是否存在
+     */
+    @Override
+    public boolean removeInstance(K id) {
+        if (!blocks.containsKey(id)) {
+            return false;
+        }
+        lock.lock();
+        try {
+            Block<K> block = blocks.remove(id);
+            if (block == null) {
+                return false;
+            }
+            release(block);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T retrieveInstance(K id) {
+        Block<K> block = blocks.get(id);
+        byte[] content = block == null ? null : read(block);
+        if (content == null) {
+            missCount.increment();
+            if (monitor != null) {
+                monitor.notifyMissed(id);
+            }
+            return null;
+        }
+        record(id);
+        hitCount.increment();
+        if (monitor != null) {
+            monitor.notifyHit(id);
+        }
+        return (T) codec.decode(type, content);
+    }
+
+    @Override
+    public boolean hasInstance(K id) {
+        return blocks.containsKey(id);
+    }
+
+    @Override
+    public int getSize() {
+        return blocks.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void iterateInstances(BiConsumer<K, T> consumer) {
+        // 只读取内容,不更新淘汰顺序
+        for (Block<K> block : blocks.values()) {
+            K id = block.key;
+            byte[] content = read(block);
+            if (content != null) {
+                consumer.accept(id, (T) codec.decode(type, content));
+            }
+        }
+    }
+
+    /**
+     * 获取命中次数
+     * 
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取未命中次数
+     * 
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取淘汰次数
+     * 
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 获取丢弃次数
+     * 
+     * @return
+     */
+    public long getDropCount() {
+        return dropCount.sum();
+    }
+
+    /**
+     * 获取已分配的堆外字节数
+     * 
+     * @return
+     */
+    public long getOccupiedBytes() {
+        return (long) slabCount * slabSize;
+    }
+
+    /**
+     * 获取已使用的堆外字节数
+     * 
+     * @return
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
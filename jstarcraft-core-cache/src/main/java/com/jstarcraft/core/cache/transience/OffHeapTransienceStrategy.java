@@ -0,0 +1,94 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jstarcraft.core.cache.annotation.CacheConfiguration;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
+import com.jstarcraft.core.codec.ContentCodec;
+import com.jstarcraft.core.codec.kryo.KryoContentCodec;
+import com.jstarcraft.core.codec.specification.CodecDefinition;
+import com.jstarcraft.core.codec.standard.StandardContentCodec;
+import com.jstarcraft.core.common.lifecycle.LifecycleState;
+
+/**
+ * 堆外瞬时策略
+ * 
+ * <pre>
+ * 作为二级内存使用(配合{@link CacheConfiguration#secondaryStrategy()}),保存被一级内存淘汰的实例.
+ * 需要通过{@link #getTransienceManager(TransienceMonitor, Class)}指定缓存类型以便构建编解码器.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class OffHeapTransienceStrategy extends AbstractTransienceStrategy {
+
+    /** 参数:容量(字节) */
+    public static final String PARAMETER_CAPACITY = "capacity";
+    /** 参数:分片大小(字节,可选,默认1MB) */
+    public static final String PARAMETER_SLAB_SIZE = "slabSize";
+    /** 参数:编解码器(可选,standard或者kryo,默认standard) */
+    public static final String PARAMETER_CODEC = "codec";
+
+    /** 编解码器:标准 */
+    public static final String CODEC_STANDARD = "standard";
+    /** 编解码器:Kryo */
+    public static final String CODEC_KRYO = "kryo";
+
+    /** 默认分片大小 */
+    private static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /** 容量 */
+    private long capacity;
+    /** 分片大小 */
+    private int slabSize;
+    /** 编解码器 */
+    private String codec;
+
+    /** 状态 */
+    private AtomicReference<LifecycleState> state = new AtomicReference<>(null);
+
+    public OffHeapTransienceStrategy(String name, Map<String, String> configuration) {
+        super(name, configuration);
+    }
+
+    @Override
+    public void start() {
+        if (!state.compareAndSet(null, LifecycleState.STARTED)) {
+            throw new CacheConfigurationException();
+        }
+        this.capacity = Long.parseLong(configuration.get(PARAMETER_CAPACITY));
+        String slabSize = configuration.get(PARAMETER_SLAB_SIZE);
+        this.slabSize = slabSize == null ? DEFAULT_SLAB_SIZE : Integer.parseInt(slabSize);
+        String codec = configuration.get(PARAMETER_CODEC);
+        this.codec = codec == null ? CODEC_STANDARD : codec;
+
+        if (capacity < this.slabSize || Integer.bitCount(this.slabSize) != 1 || this.slabSize < OffHeapTransienceManager.MINIMUM_CHUNK) {
+            throw new CacheConfigurationException();
+        }
+        if (!CODEC_STANDARD.equals(this.codec) && !CODEC_KRYO.equals(this.codec)) {
+            throw new CacheConfigurationException("不支持的编解码器:" + this.codec);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!state.compareAndSet(LifecycleState.STARTED, LifecycleState.STOPPED)) {
+            throw new CacheConfigurationException();
+        }
+    }
+
+    @Override
+    public TransienceManager getTransienceManager(TransienceMonitor monitor) {
+        throw new CacheConfigurationException("堆外瞬时策略[" + name + "]需要指定缓存类型");
+    }
+
+    @Override
+    public TransienceManager getTransienceManager(TransienceMonitor monitor, Class<?> clazz) {
+        CodecDefinition definition = CodecDefinition.instanceOf(clazz);
+        ContentCodec contentCodec = CODEC_KRYO.equals(codec) ? new KryoContentCodec(definition) : new StandardContentCodec(definition);
+        return new OffHeapTransienceManager<>(contentCodec, clazz, capacity, slabSize, monitor);
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.transience;
 
+import java.util.function.BiConsumer;
+
 /**
  * 内存管理器
  * 
@@ -26,6 +28,20 @@ public interface TransienceManager<K, T> {
      */
     T deleteInstance(K id);
 
+    /**
+     * 移除实例
+     * 
+     * <pre>
+     * 不需要返回实例时使用,序列化的策略(例如{@link OffHeapTransienceManager})可以避免反序列化.
+     * </pre>
+     * 
+     * @param id
+     * @return 是否存在
+     */
+    default boolean removeInstance(K id) {
+        return deleteInstance(id) != null;
+    }
+
     /**
      * 检索实例
      * 
@@ -34,6 +50,18 @@ public interface TransienceManager<K, T> {
      */
     T retrieveInstance(K id);
 
+    /**
+     * 是否存在实例
+     * 
+     * <pre>
+     * 不影响淘汰顺序与命中统计.
+     * </pre>
+     * 
+     * @param id
+     * @return
+     */
+    boolean hasInstance(K id);
+
     /**
      * 获取大小
      * 
@@ -41,4 +69,15 @@ public interface TransienceManager<K, T> {
      */
     int getSize();
 
+    /**
+     * 遍历实例
+     * 
+     * <pre>
+     * 弱一致,遍历期间的变更不一定可见;遍历不影响淘汰顺序与命中统计.
+     * </pre>
+     * 
+     * @param consumer
+     */
+    void iterateInstances(BiConsumer<K, T> consumer);
+
 }
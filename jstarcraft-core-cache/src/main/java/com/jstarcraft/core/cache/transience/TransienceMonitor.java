@@ -15,4 +15,52 @@ public interface TransienceMonitor {
      */
     void notifyExchanged(Object key, Object value);
 
+    /**
+     * 命中通知
+     *
+     * <pre>
+     * 支持统计的策略每次检索命中时调用
+     * </pre>
+     *
+     * @param key
+     */
+    default void notifyHit(Object key) {
+    }
+
+    /**
+     * 未命中通知
+     *
+     * <pre>
+     * 支持统计的策略每次检索未命中时调用
+     * </pre>
+     *
+     * @param key
+     */
+    default void notifyMissed(Object key) {
+    }
+
+    /**
+     * 占用通知
+     *
+     * <pre>
+     * 堆外策略每次分配堆外内存时调用
+     * </pre>
+     *
+     * @param bytes 已分配的堆外字节数
+     */
+    default void notifyOccupied(long bytes) {
+    }
+
+    /**
+     * 丢弃通知
+     *
+     * <pre>
+     * 无法保存实例时调用(例如超过分片大小或者无法分配堆外内存)
+     * </pre>
+     *
+     * @param key
+     */
+    default void notifyDropped(Object key) {
+    }
+
 }
@@ -0,0 +1,130 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存统计
+ * 
+ * <pre>
+ * 作为{@link TransienceMonitor}传给内存管理器,累计命中,未命中,交换与丢弃的次数以及已分配的堆外字节数;
+ * 所有通知同时转发给被装饰的监控器(可选).
+ * </pre>
+ * 
+ * @author Birdy
+ */
+public class TransienceStatistics implements TransienceMonitor {
+
+    /** 被装饰的监控器(可选) */
+    private final TransienceMonitor monitor;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder exchangeCount = new LongAdder();
+
+    private final LongAdder dropCount = new LongAdder();
+
+    private volatile long occupiedBytes;
+
+    public TransienceStatistics(TransienceMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void notifyExchanged(Object key, Object value) {
+        exchangeCount.increment();
+        if (monitor != null) {
+            monitor.notifyExchanged(key, value);
+        }
+    }
+
+    @Override
+    public void notifyHit(Object key) {
+        hitCount.increment();
+        if (monitor != null) {
+            monitor.notifyHit(key);
+        }
+    }
+
+    @Override
+    public void notifyMissed(Object key) {
+        missCount.increment();
+        if (monitor != null) {
+            monitor.notifyMissed(key);
+        }
+    }
+
+    @Override
+    public void notifyOccupied(long bytes) {
+        occupiedBytes = bytes;
+        if (monitor != null) {
+            monitor.notifyOccupied(bytes);
+        }
+    }
+
+    @Override
+    public void notifyDropped(Object key) {
+        dropCount.increment();
+        if (monitor != null) {
+            monitor.notifyDropped(key);
+        }
+    }
+
+    /**
+     * 获取命中次数
+     * 
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取未命中次数
+     * 
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取命中率
+     * 
+     * @return 没有检索时为0
+     */
+    public float getHitRate() {
+        long hit = hitCount.sum();
+        long total = hit + missCount.sum();
+        return total == 0L ? 0F : (float) hit / total;
+    }
+
+    /**
+     * 获取交换(淘汰)次数
+     * 
+     * @return
+     */
+    public long getExchangeCount() {
+        return exchangeCount.sum();
+    }
+
+    /**
+     * 获取丢弃次数
+     * 
+     * @return
+     */
+    public long getDropCount() {
+        return dropCount.sum();
+    }
+
+    /**
+     * 获取已分配的堆外字节数
+     * 
+     * @return
+     */
+    public long getOccupiedBytes() {
+        return occupiedBytes;
+    }
+
+}
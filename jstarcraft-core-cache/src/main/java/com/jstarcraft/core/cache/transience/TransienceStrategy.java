@@ -37,4 +37,19 @@ public interface TransienceStrategy {
      */
     TransienceManager getTransienceManager(TransienceMonitor monitor);
 
+    /**
+     * 获取指定缓存类型的内存管理器
+     * 
+     * <pre>
+     * 需要按照类型序列化的策略(例如{@link OffHeapTransienceStrategy})必须重写.
+     * </pre>
+     * 
+     * @param monitor
+     * @param clazz
+     * @return
+     */
+    default TransienceManager getTransienceManager(TransienceMonitor monitor, Class<?> clazz) {
+        return getTransienceManager(monitor);
+    }
+
 }
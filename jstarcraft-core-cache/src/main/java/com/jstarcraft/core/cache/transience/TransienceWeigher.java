@@ -0,0 +1,23 @@
+package com.jstarcraft.core.cache.transience;
+
+/**
+ * 内存权重器
+ * 
+ * <pre>
+ * 实现类必须有无参构造器,用于按权重(例如估算的字节数)限制容量的策略.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+public interface TransienceWeigher {
+
+    /**
+     * 计算权重
+     * 
+     * @param key
+     * @param value
+     * @return 非负权重
+     */
+    int weigh(Object key, Object value);
+
+}
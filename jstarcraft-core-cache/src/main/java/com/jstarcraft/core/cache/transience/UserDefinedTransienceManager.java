@@ -1,6 +1,7 @@
 package com.jstarcraft.core.cache.transience;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * 自定义瞬时策略
@@ -12,7 +13,11 @@ public class UserDefinedTransienceManager<K, T> implements TransienceManager<K,
 
     private ConcurrentHashMap<K, T> transience;
 
-    UserDefinedTransienceManager(int capacity, float factor, int concurrencyLevel) {
+    /** 只用于命中统计(不会淘汰) */
+    private TransienceMonitor monitor;
+
+    UserDefinedTransienceManager(int capacity, float factor, int concurrencyLevel, TransienceMonitor monitor) {
+        this.monitor = monitor;
         this.transience = new ConcurrentHashMap<>(capacity, factor, concurrencyLevel);
     }
 
@@ -28,7 +33,20 @@ public class UserDefinedTransienceManager<K, T> implements TransienceManager<K,
 
     @Override
     public T retrieveInstance(K id) {
-        return transience.get(id);
+        T instance = transience.get(id);
+        if (monitor != null) {
+            if (instance == null) {
+                monitor.notifyMissed(id);
+            } else {
+                monitor.notifyHit(id);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean hasInstance(K id) {
+        return transience.containsKey(id);
     }
 
     @Override
@@ -36,4 +54,9 @@ public class UserDefinedTransienceManager<K, T> implements TransienceManager<K,
         return transience.size();
     }
 
+    @Override
+    public void iterateInstances(BiConsumer<K, T> consumer) {
+        transience.forEach(consumer);
+    }
+
 }
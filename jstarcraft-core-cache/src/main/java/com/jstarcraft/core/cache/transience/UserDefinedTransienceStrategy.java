@@ -58,7 +58,7 @@ public class UserDefinedTransienceStrategy extends AbstractTransienceStrategy {
 
     @Override
     public TransienceManager getTransienceManager(TransienceMonitor monitor) {
-        return new UserDefinedTransienceManager<>(capacity, factor, concurrencyLevel);
+        return new UserDefinedTransienceManager<>(capacity, factor, concurrencyLevel, monitor);
     }
 
 }
@@ -1,16 +1,15 @@
 package com.jstarcraft.core.cache.transience;
 
-import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
 import com.jstarcraft.core.cache.proxy.ProxyTransformer;
 import com.jstarcraft.core.common.identification.IdentityObject;
 
 /**
  * 弱引用元素管理器
  * 
+ * <pre>
+ * 基于{@link WeakInterningMap},按缓存主键查找,读取不加锁.
+ * </pre>
+ * 
  * @author Birdy
  */
 public class WeakElementManager<K extends Comparable, T extends IdentityObject<K>> {
@@ -18,9 +17,7 @@ public class WeakElementManager<K extends Comparable, T extends IdentityObject<K
     /** 转换器 */
     private final ProxyTransformer transformer;
     /** 对象缓存 */
-    private final WeakHashMap<TransienceElement, WeakReference<TransienceElement>> elements = new WeakHashMap<>();
-    /** 读写锁 */
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final WeakInterningMap<K, TransienceElement> elements = new WeakInterningMap<>();
 
     public WeakElementManager(ProxyTransformer transformer) {
         this.transformer = transformer;
@@ -33,18 +30,7 @@ public class WeakElementManager<K extends Comparable, T extends IdentityObject<K
      * @return
      */
     public TransienceElement getElement(T object) {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            TransienceElement element = new TransienceElement(object);
-            WeakReference<TransienceElement> reference = elements.get(element);
-            if (reference != null) {
-                return reference.get();
-            }
-            return null;
-        } finally {
-            lock.unlock();
-        }
+        return elements.get(object.getId());
     }
 
     /**
@@ -54,27 +40,13 @@ public class WeakElementManager<K extends Comparable, T extends IdentityObject<K
      * @return
      */
     public TransienceElement putElement(T object) {
-        Lock lock = readWriteLock.writeLock();
-        try {
-            lock.lock();
-            TransienceElement key = new TransienceElement(object);
-            WeakReference<TransienceElement> value = elements.get(key);
-            TransienceElement element;
-            if (value != null) {
-                element = value.get();
-                if (element != null) {
-                    return element;
-                }
-            }
+        return elements.intern(object.getId(), (id) -> {
+            T instance = object;
             if (transformer != null) {
-                object = transformer.transform(object);
+                instance = transformer.transform(instance);
             }
-            element = new TransienceElement(object);
-            elements.put(element, new WeakReference<TransienceElement>(element));
-            return element;
-        } finally {
-            lock.unlock();
-        }
+            return new TransienceElement(instance);
+        });
     }
 
     /**
@@ -83,14 +55,7 @@ public class WeakElementManager<K extends Comparable, T extends IdentityObject<K
      * @param element
      */
     public void takeElement(T object) {
-        Lock lock = readWriteLock.writeLock();
-        try {
-            lock.lock();
-            TransienceElement element = new TransienceElement(object);
-            elements.remove(element);
-        } finally {
-            lock.unlock();
-        }
+        elements.remove(object.getId());
     }
 
     /**
@@ -99,13 +64,7 @@ public class WeakElementManager<K extends Comparable, T extends IdentityObject<K
      * @return
      */
     public int getCount() {
-        Lock lock = readWriteLock.readLock();
-        try {
-            lock.lock();
-            return elements.size();
-        } finally {
-            lock.unlock();
-        }
+        return elements.size();
     }
 
 }
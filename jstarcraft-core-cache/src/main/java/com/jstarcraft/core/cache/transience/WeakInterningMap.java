@@ -0,0 +1,128 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 弱引用驻留映射
+ * 
+ * <pre>
+ * 键为强引用,值为弱引用,值被回收以后通过引用队列清理对应的键.
+ * 基于ConcurrentHashMap:读取不加锁且不分配探测对象,写入只锁定单个桶.
+ * 相同键只会驻留一个值(由intern保证).
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ * @param <V>
+ */
+public class WeakInterningMap<K, V> {
+
+    private static final class WeakValue<K, V> extends WeakReference<V> {
+
+        private final K key;
+
+        private WeakValue(K key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+    }
+
+    private final ConcurrentHashMap<K, WeakValue<K, V>> values;
+
+    /** 已回收的值 */
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    public WeakInterningMap() {
+        this.values = new ConcurrentHashMap<>();
+    }
+
+    public WeakInterningMap(int capacity) {
+        this.values = new ConcurrentHashMap<>(capacity);
+    }
+
+    /**
+     * 清理已回收的值
+     */
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        for (WeakValue<K, V> reference = (WeakValue<K, V>) queue.poll(); reference != null; reference = (WeakValue<K, V>) queue.poll()) {
+            // 只有映射仍然指向该引用时才删除
+            values.remove(reference.key, reference);
+        }
+    }
+
+    /**
+     * 获取值
+     * 
+     * @param key
+     * @return
+     */
+    public V get(K key) {
+        WeakValue<K, V> reference = values.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * 驻留值
+     * 
+     * <pre>
+     * 如果存在有效的值则返回,否则通过工厂创建并驻留(同一个键并发调用时工厂只执行一次).
+     * </pre>
+     * 
+     * @param key
+     * @param factory
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public V intern(K key, Function<? super K, ? extends V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        expunge();
+        // 通过数组从compute带出值,保证返回的值在方法结束前被强引用
+        Object[] interns = new Object[1];
+        values.compute(key, (current, reference) -> {
+            V intern = reference == null ? null : reference.get();
+            if (intern == null) {
+                intern = factory.apply(current);
+                reference = new WeakValue<>(current, intern, queue);
+            }
+            interns[0] = intern;
+            return reference;
+        });
+        return (V) interns[0];
+    }
+
+    /**
+     * 删除值
+     * 
+     * @param key
+     * @return
+     */
+    public V remove(K key) {
+        expunge();
+        WeakValue<K, V> reference = values.remove(key);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * 获取数量
+     * 
+     * <pre>
+     * 已回收但未清理的值会在调用时清理,所以结果是近似值.
+     * </pre>
+     * 
+     * @return
+     */
+    public int size() {
+        expunge();
+        return values.size();
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.jstarcraft.core.cache;
+
+import java.lang.reflect.Field;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.common.reflection.ReflectionUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class CacheAccessorTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testIndexValues() {
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        MockEntityObject instance = MockEntityObject.instanceOf(0, "birdy", "hong", 10, 100);
+        Assert.assertThat(information.getIndexValue(instance, "firstName"), CoreMatchers.equalTo("birdy"));
+        Assert.assertThat(information.getIndexValue(instance, "token"), CoreMatchers.equalTo(100));
+
+        Comparable[] values = information.getIndexValues(instance, null);
+        Assert.assertEquals(information.getIndexSize(), values.length);
+        for (int position = 0; position < values.length; position++) {
+            Assert.assertThat(values[position], CoreMatchers.equalTo(information.getIndexValue(instance, information.getIndexName(position))));
+        }
+        // 复用数组
+        Assert.assertSame(values, information.getIndexValues(MockEntityObject.instanceOf(1, "xiao", "hong", 0, 0), values));
+        Assert.assertThat(information.getIndexValues(instance), CoreMatchers.equalTo(information.getIndexValues(instance)));
+    }
+
+    @Test
+    public void testOrderValues() throws Exception {
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        MockEntityObject instance = MockEntityObject.instanceOf(0, "birdy", "hong", 10, 100);
+        Assert.assertThat(information.getOrderSize(), CoreMatchers.equalTo(1));
+        Assert.assertThat(information.getOrderName(0), CoreMatchers.equalTo("money"));
+        Assert.assertThat(information.getOrderValue(instance, 0), CoreMatchers.equalTo(10));
+        Assert.assertThat(information.getOrderValue(instance, "money"), CoreMatchers.equalTo(10));
+
+        // 变更字段包含有序索引字段时才需要维护有序索引
+        Assert.assertTrue(information.hasOrders(null));
+        int methodId = information.getMethodId(MockEntityObject.class.getMethod("modifyMoney", int.class));
+        Assert.assertTrue(information.hasOrders(information.getMethodFields(methodId)));
+        Assert.assertFalse(information.hasOrders(new BitSet()));
+    }
+
+    @Test
+    public void testCopyInstance() {
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        MockEntityObject from = MockEntityObject.instanceOf(0, "birdy", "hong", 10, 100);
+        MockEntityObject to = (MockEntityObject) information.getCacheInstance();
+        information.copyInstance(from, to);
+        Assert.assertThat(to.getId(), CoreMatchers.equalTo(0));
+        Assert.assertThat(to.getFirstName(), CoreMatchers.equalTo("birdy"));
+        Assert.assertThat(to.getLastName(), CoreMatchers.equalTo("hong"));
+        Assert.assertThat(to.getMoney(), CoreMatchers.equalTo(10));
+        Assert.assertThat(to.getToken(), CoreMatchers.equalTo(100));
+    }
+
+    /**
+     * 比较反射与访问器的耗时
+     */
+    @Test
+    public void testPerformance() throws Exception {
+        int times = 1000000;
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        MockEntityObject from = MockEntityObject.instanceOf(0, "birdy", "hong", 10, 100);
+        MockEntityObject to = (MockEntityObject) information.getCacheInstance();
+        Map<String, Field> fields = new HashMap<>();
+        for (String name : information.getIndexNames()) {
+            Field field = ReflectionUtility.getField(MockEntityObject.class, name);
+            ReflectionUtility.makeAccessible(field);
+            fields.put(name, field);
+        }
+        Comparable[] values = new Comparable[information.getIndexSize()];
+        // 预热
+        for (int time = 0; time < times; time++) {
+            information.getIndexValues(from, values);
+            information.copyInstance(from, to);
+            ReflectionUtility.copyInstance(from, to);
+        }
+
+        long begin = System.nanoTime();
+        for (int time = 0; time < times; time++) {
+            Map<String, Comparable> indexValues = new HashMap<>();
+            for (Map.Entry<String, Field> keyValue : fields.entrySet()) {
+                indexValues.put(keyValue.getKey(), (Comparable) keyValue.getValue().get(from));
+            }
+        }
+        long reflection = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int time = 0; time < times; time++) {
+            information.getIndexValues(from, values);
+        }
+        long accessor = System.nanoTime() - begin;
+        String message = StringUtility.format("获取索引{}次,反射耗时{}纳秒,访问器耗时{}纳秒", times, reflection, accessor);
+        logger.debug(message);
+
+        begin = System.nanoTime();
+        for (int time = 0; time < times; time++) {
+            ReflectionUtility.copyInstance(from, to);
+        }
+        reflection = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int time = 0; time < times; time++) {
+            information.copyInstance(from, to);
+        }
+        accessor = System.nanoTime() - begin;
+        message = StringUtility.format("复制实例{}次,反射耗时{}纳秒,访问器耗时{}纳秒", times, reflection, accessor);
+        logger.debug(message);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.jstarcraft.core.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.transience.TransienceElement;
+import com.jstarcraft.core.utility.StringUtility;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+public class CacheInformationTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** 实体数量 */
+    private static final int DATA_SIZE = 1000000;
+
+    /** 三个索引的值数量 */
+    private static final int[] INDEX_SIZES = { 10, 1000, 100000 };
+
+    @Test
+    public void testIdentityCollection() {
+        CacheInformation entityInformation = CacheInformation.instanceOf(MockEntityObject.class);
+        Assert.assertThat(entityInformation.getIdentityClass(), CoreMatchers.equalTo(Integer.class));
+        Set<Integer> identities = entityInformation.createIdentitySet();
+        Assert.assertTrue(identities instanceof IntOpenHashSet);
+        Collection<Integer> collection = identities;
+        Assert.assertTrue(collection.add(1));
+        Assert.assertFalse(collection.add(1));
+        Assert.assertTrue(collection.contains(1));
+        Assert.assertTrue(collection.remove(1));
+        Assert.assertTrue(collection.isEmpty());
+
+        CacheInformation regionInformation = CacheInformation.instanceOf(MockRegionObject.class);
+        Map<Integer, TransienceElement> elements = regionInformation.createIdentityMap();
+        Assert.assertTrue(elements instanceof Int2ObjectOpenHashMap);
+        TransienceElement element = new TransienceElement(MockRegionObject.instanceOf(1, 1));
+        elements.put(1, element);
+        Assert.assertSame(element, elements.get(1));
+        Assert.assertSame(element, elements.remove(1));
+    }
+
+    private long getUsedMemory() throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        for (int index = 0; index < 3; index++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 测量1M实体在三个索引中的标识集合占用的内存
+     * 
+     * @param supplier
+     * @param identities 实体持有的标识(装箱对象由实体共享,不计入索引)
+     * @return
+     */
+    private long testFootprint(Supplier<Set<Integer>> supplier, Integer[] identities) throws Exception {
+        long before = getUsedMemory();
+        Set<Integer>[][] indexes = new Set[INDEX_SIZES.length][];
+        for (int position = 0; position < INDEX_SIZES.length; position++) {
+            int size = INDEX_SIZES[position];
+            indexes[position] = new Set[size];
+            for (int index = 0; index < size; index++) {
+                indexes[position][index] = supplier.get();
+            }
+        }
+        for (Integer id : identities) {
+            for (int position = 0; position < INDEX_SIZES.length; position++) {
+                indexes[position][id % INDEX_SIZES[position]].add(id);
+            }
+        }
+        long after = getUsedMemory();
+        for (int position = 0; position < INDEX_SIZES.length; position++) {
+            int count = 0;
+            for (Set<Integer> index : indexes[position]) {
+                count += index.size();
+            }
+            Assert.assertThat(count, CoreMatchers.equalTo(DATA_SIZE));
+        }
+        return after - before;
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        Integer[] identities = new Integer[DATA_SIZE];
+        for (int index = 0; index < DATA_SIZE; index++) {
+            identities[index] = index;
+        }
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        long boxedBytes = testFootprint(HashSet::new, identities);
+        long primitiveBytes = testFootprint(information::createIdentitySet, identities);
+        String message = StringUtility.format("{}个实体{}个索引,HashSet占用{}字节,原始类型集合占用{}字节", DATA_SIZE, INDEX_SIZES.length, boxedBytes, primitiveBytes);
+        logger.debug(message);
+        Assert.assertTrue(primitiveBytes < boxedBytes / 2);
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.jstarcraft.core.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.persistence.QueuePersistenceStrategy;
+import com.jstarcraft.core.cache.transience.LeastRecentlyUsedTransienceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStrategy;
+import com.jstarcraft.core.codec.ContentCodec;
+import com.jstarcraft.core.codec.specification.CodecDefinition;
+import com.jstarcraft.core.codec.standard.StandardContentCodec;
+import com.jstarcraft.core.event.AbstractEventChannel;
+import com.jstarcraft.core.event.EventManager;
+import com.jstarcraft.core.event.EventMode;
+import com.jstarcraft.core.event.EventMonitor;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.utility.StringUtility;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class CacheInvalidatorTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int DATA_SIZE = 1000;
+
+    /**
+     * 模拟的主题通道
+     * 
+     * <pre>
+     * 每个节点一个通道,触发的事件经过编解码以后由每个通道的线程按顺序分发.
+     * </pre>
+     */
+    private static class MockEventChannel extends AbstractEventChannel {
+
+        private final List<MockEventChannel> channels;
+
+        private final ContentCodec codec;
+
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        private MockEventChannel(String name, List<MockEventChannel> channels, ContentCodec codec) {
+            super(EventMode.TOPIC, name);
+            this.channels = channels;
+            this.codec = codec;
+            channels.add(this);
+        }
+
+        @Override
+        public void stop() {
+            executor.shutdownNow();
+        }
+
+        @Override
+        public void triggerEvent(Object event) {
+            Class type = event.getClass();
+            byte[] data = codec.encode(type, event);
+            for (MockEventChannel channel : channels) {
+                channel.executor.execute(() -> {
+                    EventManager manager = channel.managers.get(type);
+                    if (manager == null) {
+                        return;
+                    }
+                    Object instance = codec.decode(type, data);
+                    for (EventMonitor monitor : manager) {
+                        monitor.onEvent(instance);
+                    }
+                });
+            }
+        }
+
+    }
+
+    @Autowired
+    private StorageAccessor accessor;
+
+    private List<MockEventChannel> channels;
+
+    @Before
+    public void before() {
+        List<MockEntityObject> instances = new ArrayList<>(DATA_SIZE);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            instances.add(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+        }
+        accessor.createInstances(MockEntityObject.class, instances);
+        channels = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void after() {
+        for (MockEventChannel channel : channels) {
+            channel.stop();
+        }
+        List<Integer> identities = new ArrayList<>(DATA_SIZE + 1);
+        for (int index = 0; index <= DATA_SIZE; index++) {
+            identities.add(index);
+        }
+        accessor.deleteInstances(MockEntityObject.class, identities);
+    }
+
+    private CacheInvalidator getInvalidator(String node, int size, int rate, long interval) {
+        ContentCodec codec = new StandardContentCodec(CodecDefinition.instanceOf(CacheInvalidation.class, Integer.class));
+        MockEventChannel channel = new MockEventChannel(node, channels, codec);
+        return new CacheInvalidator(node, channel, size, rate, interval);
+    }
+
+    private CacheService getCacheService(CacheInvalidator invalidator) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(DATA_SIZE));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(DATA_SIZE * 2));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "64");
+        TransienceStrategy transienceStrategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        configuration = new HashMap<>();
+        configuration.put(QueuePersistenceStrategy.PARAMETER_SIZE, "0");
+        PersistenceStrategy persistenceStrategy = new QueuePersistenceStrategy("queuePersistenceStrategy", configuration);
+        CacheService cacheService = new CacheService(Collections.singleton(MockEntityObject.class), accessor, Collections.singleton(transienceStrategy), Collections.singleton(persistenceStrategy));
+        cacheService.setInvalidator(invalidator);
+        cacheService.start();
+        return cacheService;
+    }
+
+    /**
+     * 等待条件成立
+     * 
+     * @param condition
+     * @return 等待的时间(纳秒)
+     */
+    private long await(BooleanSupplier condition) throws Exception {
+        long begin = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(10));
+            Thread.sleep(1L);
+        }
+        return System.nanoTime() - begin;
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        CacheInvalidator leftInvalidator = getInvalidator("left", 100, 100, 10L);
+        CacheInvalidator rightInvalidator = getInvalidator("right", 100, 100, 10L);
+        CacheService leftService = getCacheService(leftInvalidator);
+        CacheService rightService = getCacheService(rightInvalidator);
+        EntityManager<Integer, MockEntityObject> left = leftService.getEntityManager(MockEntityObject.class);
+        EntityManager<Integer, MockEntityObject> right = rightService.getEntityManager(MockEntityObject.class);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            left.getInstance(index);
+            right.getInstance(index);
+        }
+        CacheIndex index = new CacheIndex("firstName", "birdy0");
+        Assert.assertThat(right.getIdentities(index).size(), CoreMatchers.equalTo(1));
+        Assert.assertThat(right.getRangeCount("money", 0, 0), CoreMatchers.equalTo(1));
+
+        // 修改(正在使用的实例原地刷新)
+        MockEntityObject instance = right.getInstance(0);
+        left.getInstance(0).modifyMoney(DATA_SIZE);
+        await(() -> instance.getMoney() == DATA_SIZE);
+        Assert.assertSame(instance, right.getInstance(0));
+        await(() -> right.getRangeIdentities("money", DATA_SIZE, DATA_SIZE).contains(0));
+        Assert.assertThat(right.getRangeCount("money", 0, 0), CoreMatchers.equalTo(0));
+        // 只修改金额,已经装载的名称索引保留
+        Assert.assertThat(rightService.getIndexesCounts().get(MockEntityObject.class.getName()).get("firstName"), CoreMatchers.equalTo(1));
+
+        // 创建(已经装载的索引需要重新装载)
+        left.loadInstance(DATA_SIZE, (id) -> {
+            return MockEntityObject.instanceOf(id, "birdy0", "hong", id, id);
+        });
+        await(() -> right.getIdentities(index).size() == 2);
+        Assert.assertNotNull(right.getInstance(DATA_SIZE));
+
+        // 删除
+        left.deleteInstance(1);
+        await(() -> right.getInstance(1) == null);
+
+        // 本节点的事件不会使本节点失效
+        Assert.assertThat(left.getInstanceCount(), CoreMatchers.equalTo(DATA_SIZE));
+        Assert.assertTrue(leftInvalidator.getPublishCount() > 0);
+        Assert.assertThat(leftInvalidator.getReceiveCount(), CoreMatchers.equalTo(rightInvalidator.getPublishCount()));
+        Assert.assertThat(rightInvalidator.getReceiveCount(), CoreMatchers.equalTo(leftInvalidator.getPublishCount()));
+
+        leftService.stop();
+        rightService.stop();
+    }
+
+    @Test
+    public void testStorm() throws Exception {
+        // 每秒最多10条事件,每条最多10个标识
+        CacheInvalidator leftInvalidator = getInvalidator("left", 10, 10, 100L);
+        CacheInvalidator rightInvalidator = getInvalidator("right", 10, 10, 100L);
+        CacheService leftService = getCacheService(leftInvalidator);
+        CacheService rightService = getCacheService(rightInvalidator);
+        EntityManager<Integer, MockEntityObject> left = leftService.getEntityManager(MockEntityObject.class);
+        EntityManager<Integer, MockEntityObject> right = rightService.getEntityManager(MockEntityObject.class);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            left.getInstance(index);
+            right.getInstance(index);
+        }
+        for (int index = 0; index < DATA_SIZE; index++) {
+            left.getInstance(index).modifyMoney(-index);
+        }
+        // 积压超过一秒的发布量,合并为整个缓存失效
+        await(() -> right.getInstanceCount() == 0);
+        Assert.assertTrue(leftInvalidator.getOverflowCount() > 0L);
+        Assert.assertTrue(leftInvalidator.getPublishCount() < DATA_SIZE / 10);
+        // 合并以后的变更继续发布,最终一致
+        for (int index = 0; index < DATA_SIZE; index++) {
+            int id = index;
+            await(() -> right.getInstance(id).getMoney() == -id);
+        }
+
+        leftService.stop();
+        rightService.stop();
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        CacheInvalidator leftInvalidator = getInvalidator("left", 100, 1000, 1L);
+        CacheInvalidator rightInvalidator = getInvalidator("right", 100, 1000, 1L);
+        CacheService leftService = getCacheService(leftInvalidator);
+        CacheService rightService = getCacheService(rightInvalidator);
+        EntityManager<Integer, MockEntityObject> left = leftService.getEntityManager(MockEntityObject.class);
+        EntityManager<Integer, MockEntityObject> right = rightService.getEntityManager(MockEntityObject.class);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            left.getInstance(index);
+            right.getInstance(index);
+        }
+
+        int times = 100;
+        long total = 0L;
+        long maximum = 0L;
+        for (int index = 0; index < times; index++) {
+            int id = index;
+            int money = DATA_SIZE + index;
+            left.getInstance(id).modifyMoney(money);
+            long time = await(() -> right.getInstance(id).getMoney() == money);
+            total += time;
+            maximum = Math.max(maximum, time);
+        }
+        String message = StringUtility.format("{}次修改的平均传播延迟:{}微秒,最大传播延迟:{}微秒", times, TimeUnit.NANOSECONDS.toMicros(total / times), TimeUnit.NANOSECONDS.toMicros(maximum));
+        logger.debug(message);
+
+        long begin = System.nanoTime();
+        for (int index = 0; index < DATA_SIZE; index++) {
+            left.getInstance(index).modifyMoney(-index);
+        }
+        await(() -> right.getInstance(DATA_SIZE - 1).getMoney() == 1 - DATA_SIZE);
+        message = StringUtility.format("{}次批量修改的传播时间:{}毫秒,发布{}条事件", DATA_SIZE, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin), leftInvalidator.getPublishCount());
+        logger.debug(message);
+
+        leftService.stop();
+        rightService.stop();
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.jstarcraft.core.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.jstarcraft.core.cache.exception.CacheException;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.persistence.QueuePersistenceStrategy;
+import com.jstarcraft.core.cache.transience.LeastRecentlyUsedTransienceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStrategy;
+import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.utility.RandomUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+public class CacheOrderTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int DATA_SIZE = 10000;
+
+    /** 金额的取值数量(金额为标识取模) */
+    private static final int MONEY_SIZE = 100;
+
+    @Autowired
+    private StorageAccessor accessor;
+
+    @Before
+    public void before() {
+        List<MockEntityObject> instances = new ArrayList<>(DATA_SIZE);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            instances.add(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index % MONEY_SIZE, index));
+        }
+        accessor.createInstances(MockEntityObject.class, instances);
+    }
+
+    @After
+    public void after() {
+        List<Integer> identities = new ArrayList<>(DATA_SIZE + 1);
+        for (int index = 0; index <= DATA_SIZE; index++) {
+            identities.add(index);
+        }
+        accessor.deleteInstances(MockEntityObject.class, identities);
+    }
+
+    private CacheService getCacheService() {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(DATA_SIZE));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(DATA_SIZE * 2));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "64");
+        TransienceStrategy transienceStrategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        configuration = new HashMap<>();
+        configuration.put(QueuePersistenceStrategy.PARAMETER_SIZE, "0");
+        PersistenceStrategy persistenceStrategy = new QueuePersistenceStrategy("queuePersistenceStrategy", configuration);
+        CacheService cacheService = new CacheService(Collections.singleton(MockEntityObject.class), accessor, Collections.singleton(transienceStrategy), Collections.singleton(persistenceStrategy));
+        cacheService.start();
+        return cacheService;
+    }
+
+    @Test
+    public void testOrder() {
+        CacheOrder<Integer> order = new CacheOrder<>("money");
+        // 建立期间的变更不会被扫描结果覆盖
+        order.putValue(0, 10);
+        order.deleteValue(1);
+        Map<Integer, Integer> values = new HashMap<>();
+        for (int index = 0; index < 4; index++) {
+            values.put(index, index);
+        }
+        values.put(4, null);
+        Assert.assertFalse(order.isReady());
+        order.stopBuild(values);
+        Assert.assertTrue(order.isReady());
+
+        Assert.assertThat(order.getIdentities(null, null), CoreMatchers.equalTo(Arrays.asList(2, 3, 0)));
+        Assert.assertThat(order.getIdentities(2, 3), CoreMatchers.equalTo(Arrays.asList(2, 3)));
+        Assert.assertThat(order.getIdentities(null, 2), CoreMatchers.equalTo(Arrays.asList(2)));
+        Assert.assertThat(order.getIdentities(3, null), CoreMatchers.equalTo(Arrays.asList(3, 0)));
+        Assert.assertTrue(order.getIdentities(3, 2).isEmpty());
+        Assert.assertThat(order.getCount(0, 5), CoreMatchers.equalTo(2));
+        Assert.assertThat(order.getCount(null, null), CoreMatchers.equalTo(3));
+        Assert.assertThat(order.getIdentities(2, true), CoreMatchers.equalTo(Arrays.asList(0, 3)));
+        Assert.assertThat(order.getIdentities(5, false), CoreMatchers.equalTo(Arrays.asList(2, 3, 0)));
+
+        // 相同索引值按照标识排序
+        order.putValue(3, 10);
+        Assert.assertThat(order.getIdentities(10, 10), CoreMatchers.equalTo(Arrays.asList(0, 3)));
+        order.putValue(2, 20);
+        Assert.assertThat(order.getIdentities(1, true), CoreMatchers.equalTo(Arrays.asList(2)));
+        order.deleteValue(2);
+        Assert.assertThat(order.getIdentities(1, true), CoreMatchers.equalTo(Arrays.asList(3)));
+        Assert.assertThat(order.getSize(), CoreMatchers.equalTo(2));
+
+        CacheOrder<Integer> cancel = new CacheOrder<>("money");
+        cancel.cancelBuild(new IllegalStateException());
+        Assert.assertFalse(cancel.isReady());
+        try {
+            cancel.getCount(null, null);
+            Assert.fail();
+        } catch (CacheException exception) {
+        }
+    }
+
+    @Test
+    public void testManager() throws Exception {
+        CacheService cacheService = getCacheService();
+        EntityManager<Integer, MockEntityObject> manager = cacheService.getEntityManager(MockEntityObject.class);
+        // 没有被缓存的实体同样可以查询
+        Assert.assertThat(manager.getRangeCount("money", 50, 59), CoreMatchers.equalTo(DATA_SIZE / 10));
+        Assert.assertThat(manager.getRangeIdentities("money", 0, 0).size(), CoreMatchers.equalTo(DATA_SIZE / MONEY_SIZE));
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(0));
+
+        // 通过CacheChange维护
+        MockEntityObject instance = manager.getInstance(0);
+        instance.modifyMoney(1000);
+        Assert.assertThat(manager.getTopIdentities("money", 1, true), CoreMatchers.equalTo(Arrays.asList(0)));
+        Assert.assertThat(manager.getRangeIdentities("money", MONEY_SIZE, null), CoreMatchers.equalTo(Arrays.asList(0)));
+        instance.modify("hong", MONEY_SIZE * 2, true);
+        Assert.assertThat(manager.getRangeIdentities("money", MONEY_SIZE, null), CoreMatchers.equalTo(Arrays.asList(0)));
+        Assert.assertThat(manager.getRangeCount("money", 0, 0), CoreMatchers.equalTo(DATA_SIZE / MONEY_SIZE - 1));
+
+        // 创建与删除
+        manager.loadInstance(DATA_SIZE, (id) -> {
+            return MockEntityObject.instanceOf(id, "birdy" + id, "hong", MONEY_SIZE * 3, id);
+        });
+        Assert.assertThat(manager.getTopIdentities("money", 2, true), CoreMatchers.equalTo(Arrays.asList(DATA_SIZE, 0)));
+        manager.deleteInstance(DATA_SIZE);
+        Assert.assertThat(manager.getTopIdentities("money", 2, true), CoreMatchers.equalTo(Arrays.asList(0, DATA_SIZE - 1)));
+        Assert.assertThat(manager.getRangeCount("money", null, null), CoreMatchers.equalTo(DATA_SIZE));
+
+        try {
+            manager.getRangeCount("token", null, null);
+            Assert.fail();
+        } catch (CacheException exception) {
+        }
+        cacheService.stop();
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        CacheService cacheService = getCacheService();
+        EntityManager<Integer, MockEntityObject> manager = cacheService.getEntityManager(MockEntityObject.class);
+        int times = 100;
+        int[] lows = new int[times];
+        for (int index = 0; index < times; index++) {
+            lows[index] = RandomUtility.randomInteger(0, MONEY_SIZE - 10);
+        }
+        // 预热有序索引与实例
+        Assert.assertThat(manager.getRangeCount("money", null, null), CoreMatchers.equalTo(DATA_SIZE));
+        for (Integer id : manager.getRangeIdentities("money", null, null)) {
+            manager.getInstance(id);
+        }
+
+        long begin = System.currentTimeMillis();
+        int cacheSize = 0;
+        for (int index = 0; index < times; index++) {
+            for (Integer id : manager.getRangeIdentities("money", lows[index], lows[index] + 9)) {
+                if (manager.getInstance(id) != null) {
+                    cacheSize++;
+                }
+            }
+        }
+        long end = System.currentTimeMillis();
+        String message = StringUtility.format("有序索引{}次范围查询{}个实例的时间:{}毫秒", times, cacheSize, end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        int storageSize = 0;
+        for (int index = 0; index < times; index++) {
+            storageSize += accessor.queryInstances(MockEntityObject.class, "money", new StorageCondition<>(ConditionType.Between, lows[index], lows[index] + 9)).size();
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("访问器{}次范围查询{}个实例的时间:{}毫秒", times, storageSize, end - begin);
+        logger.debug(message);
+        Assert.assertThat(cacheSize, CoreMatchers.equalTo(storageSize));
+
+        begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertThat(manager.getTopIdentities("money", 100, true).size(), CoreMatchers.equalTo(100));
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("有序索引{}次排名查询的时间:{}毫秒", times, end - begin);
+        logger.debug(message);
+        cacheService.stop();
+    }
+
+}
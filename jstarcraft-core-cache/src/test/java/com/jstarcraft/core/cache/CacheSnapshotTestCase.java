@@ -0,0 +1,220 @@
+package com.jstarcraft.core.cache;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.persistence.PersistenceManager;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.proxy.ProxyObject;
+import com.jstarcraft.core.cache.transience.LeastRecentlyUsedTransienceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStrategy;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class CacheSnapshotTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int DATA_SIZE = 1000;
+
+    /**
+     * 获取模拟的访问器(只提供高水位与有序索引的扫描)
+     * 
+     * @param instances
+     * @return
+     */
+    private StorageAccessor getAccessor(TreeMap<Integer, MockEntityObject> instances) {
+        return (StorageAccessor) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { StorageAccessor.class }, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+            case "countInstances":
+                return (long) instances.size();
+            case "maximumIdentity": {
+                NavigableMap<Integer, MockEntityObject> range = instances.subMap((Integer) arguments[1], true, (Integer) arguments[2], true);
+                return range.isEmpty() ? null : range.lastKey();
+            }
+            case "queryIdentities": {
+                Map<Integer, Integer> values = new HashMap<>();
+                for (MockEntityObject instance : instances.values()) {
+                    values.put(instance.getId(), instance.getMoney());
+                }
+                return values;
+            }
+            default:
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 获取模拟的持久策略(记录从持久层装载的次数)
+     * 
+     * @param instances
+     * @param loadCount
+     * @return
+     */
+    private PersistenceStrategy getPersistenceStrategy(TreeMap<Integer, MockEntityObject> instances, AtomicInteger loadCount) {
+        PersistenceManager manager = (PersistenceManager) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { PersistenceManager.class }, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+            case "getInstance":
+                loadCount.incrementAndGet();
+                return instances.get(arguments[0]);
+            case "getIdentities": {
+                loadCount.incrementAndGet();
+                Map<Integer, Object> identities = new HashMap<>();
+                for (MockEntityObject instance : instances.values()) {
+                    if (instance.getFirstName().equals(arguments[1])) {
+                        identities.put(instance.getId(), instance.getFirstName());
+                    }
+                }
+                return identities;
+            }
+            default:
+                if (method.getReturnType() == int.class) {
+                    return 0;
+                }
+                if (method.getReturnType() == long.class) {
+                    return 0L;
+                }
+                return null;
+            }
+        });
+        return new PersistenceStrategy() {
+
+            @Override
+            public void start(StorageAccessor accessor, Map<Class<?>, CacheInformation> informations) {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public String getName() {
+                return "queuePersistenceStrategy";
+            }
+
+            @Override
+            public PersistenceManager getPersistenceManager(Class clazz) {
+                return manager;
+            }
+
+        };
+    }
+
+    private CacheService getCacheService(TreeMap<Integer, MockEntityObject> instances, AtomicInteger loadCount, File directory, int size) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(size));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(size * 2));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "64");
+        TransienceStrategy transienceStrategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        PersistenceStrategy persistenceStrategy = getPersistenceStrategy(instances, loadCount);
+        CacheService cacheService = new CacheService(Collections.singleton(MockEntityObject.class), getAccessor(instances), Collections.singleton(transienceStrategy), Collections.singleton(persistenceStrategy));
+        cacheService.setSnapshot(directory);
+        cacheService.start();
+        return cacheService;
+    }
+
+    private TreeMap<Integer, MockEntityObject> getInstances(int size) {
+        TreeMap<Integer, MockEntityObject> instances = new TreeMap<>();
+        for (int index = 0; index < size; index++) {
+            instances.put(index, MockEntityObject.instanceOf(index, "birdy" + (index % 10), "hong", index, index));
+        }
+        return instances;
+    }
+
+    private void deleteDirectory(File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        File directory = Files.createTempDirectory("snapshot").toFile();
+        File file = new File(directory, MockEntityObject.class.getName() + ".snapshot");
+        TreeMap<Integer, MockEntityObject> instances = getInstances(DATA_SIZE);
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheService cacheService = getCacheService(instances, loadCount, directory, DATA_SIZE);
+        EntityManager<Integer, MockEntityObject> manager = cacheService.getEntityManager(MockEntityObject.class);
+        for (int index = 0; index < DATA_SIZE; index += 2) {
+            manager.getInstance(index);
+        }
+        Assert.assertThat(manager.getIdentities(new CacheIndex("firstName", "birdy0")).size(), CoreMatchers.equalTo(DATA_SIZE / 10));
+        // 停止时保存快照
+        cacheService.stop();
+        Assert.assertTrue(file.isFile());
+
+        // 重启时装载快照,不需要访问持久层
+        loadCount.set(0);
+        cacheService = getCacheService(instances, loadCount, directory, DATA_SIZE);
+        Assert.assertFalse(file.exists());
+        manager = cacheService.getEntityManager(MockEntityObject.class);
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(DATA_SIZE / 2));
+        for (int index = 0; index < DATA_SIZE; index += 2) {
+            MockEntityObject instance = manager.getInstance(index);
+            Assert.assertTrue(instance instanceof ProxyObject);
+            Assert.assertThat(instance, CoreMatchers.equalTo(instances.get(index)));
+            Assert.assertThat(instance.getMoney(), CoreMatchers.equalTo(index));
+        }
+        Assert.assertThat(manager.getIdentities(new CacheIndex("firstName", "birdy0")).size(), CoreMatchers.equalTo(DATA_SIZE / 10));
+        Assert.assertThat(loadCount.get(), CoreMatchers.equalTo(0));
+        // 有序索引从持久层重建
+        Assert.assertThat(manager.getRangeCount("money", null, null), CoreMatchers.equalTo(DATA_SIZE));
+        cacheService.stop();
+        Assert.assertTrue(file.isFile());
+
+        // 高水位不一致时丢弃快照
+        instances.put(DATA_SIZE, MockEntityObject.instanceOf(DATA_SIZE, "birdy0", "hong", DATA_SIZE, DATA_SIZE));
+        cacheService = getCacheService(instances, loadCount, directory, DATA_SIZE);
+        Assert.assertFalse(file.exists());
+        manager = cacheService.getEntityManager(MockEntityObject.class);
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(0));
+        cacheService.stop();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        int size = 5000000;
+        File directory = Files.createTempDirectory("snapshot").toFile();
+        File file = new File(directory, MockEntityObject.class.getName() + ".snapshot");
+        TreeMap<Integer, MockEntityObject> instances = getInstances(size);
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheService cacheService = getCacheService(instances, loadCount, directory, size);
+        EntityManager<Integer, MockEntityObject> manager = cacheService.getEntityManager(MockEntityObject.class);
+        manager.cacheInstances(instances.values());
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(size));
+
+        long begin = System.currentTimeMillis();
+        cacheService.stop();
+        long end = System.currentTimeMillis();
+        String message = StringUtility.format("保存{}个实例的快照({}字节)的时间:{}毫秒", size, file.length(), end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        cacheService = getCacheService(instances, loadCount, directory, size);
+        end = System.currentTimeMillis();
+        message = StringUtility.format("装载{}个实例的快照的时间:{}毫秒", size, end - begin);
+        logger.debug(message);
+        manager = cacheService.getEntityManager(MockEntityObject.class);
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(size));
+        Assert.assertThat(loadCount.get(), CoreMatchers.equalTo(0));
+        cacheService.stop();
+        deleteDirectory(directory);
+    }
+
+}
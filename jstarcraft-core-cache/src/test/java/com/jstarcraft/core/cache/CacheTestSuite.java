@@ -10,7 +10,7 @@ import com.jstarcraft.core.cache.persistence.PersistenceTestSuite;
 import com.jstarcraft.core.cache.transience.TransienceTestSuite;
 
 @RunWith(Suite.class)
-@SuiteClasses({ CacheAnnotationTestCase.class, CrudTestSuite.class, TransienceTestSuite.class, PersistenceTestSuite.class })
+@SuiteClasses({ CacheAccessorTestCase.class, CacheAnnotationTestCase.class, CacheInformationTestCase.class, CacheInvalidatorTestCase.class, CacheOrderTestCase.class, CacheSnapshotTestCase.class, CacheWarmerTestCase.class, IdentityFilterTestCase.class, CrudTestSuite.class, TransienceTestSuite.class, PersistenceTestSuite.class })
 public class CacheTestSuite {
 
 }
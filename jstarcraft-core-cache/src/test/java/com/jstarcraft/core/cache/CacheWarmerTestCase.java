@@ -0,0 +1,145 @@
+package com.jstarcraft.core.cache;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jstarcraft.core.cache.persistence.PersistenceManager;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.proxy.ProxyObject;
+import com.jstarcraft.core.cache.transience.LeastRecentlyUsedTransienceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStrategy;
+import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.storage.StorageCondition;
+
+public class CacheWarmerTestCase {
+
+    private static final int DATA_SIZE = 1000;
+
+    /**
+     * 获取模拟的访问器(主键间隔为3,每次查询耗时sleep毫秒)
+     * 
+     * @param queryCount
+     * @param maximumSize
+     * @param sleep
+     * @return
+     */
+    private StorageAccessor getAccessor(AtomicInteger queryCount, AtomicInteger maximumSize, long sleep) {
+        TreeMap<Integer, MockEntityObject> instances = new TreeMap<>();
+        for (int index = 0; index < DATA_SIZE; index++) {
+            int id = index * 3;
+            instances.put(id, MockEntityObject.instanceOf(id, "birdy" + id, "hong", id, id));
+        }
+        return (StorageAccessor) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { StorageAccessor.class }, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+            case "countInstances":
+                return (long) instances.size();
+            case "minimumIdentity": {
+                NavigableMap<Integer, MockEntityObject> range = instances.subMap((Integer) arguments[1], true, (Integer) arguments[2], true);
+                return range.isEmpty() ? null : range.firstKey();
+            }
+            case "maximumIdentity": {
+                NavigableMap<Integer, MockEntityObject> range = instances.subMap((Integer) arguments[1], true, (Integer) arguments[2], true);
+                return range.isEmpty() ? null : range.lastKey();
+            }
+            case "queryInstances": {
+                queryCount.incrementAndGet();
+                Thread.sleep(sleep);
+                StorageCondition<Integer> condition = (StorageCondition<Integer>) arguments[2];
+                Assert.assertThat(arguments[1], CoreMatchers.equalTo("id"));
+                Assert.assertThat(condition.getType(), CoreMatchers.equalTo(ConditionType.Between));
+                Integer[] values = condition.getValues();
+                ArrayList<MockEntityObject> range = new ArrayList<>(instances.subMap(values[0], true, values[1], true).values());
+                maximumSize.accumulateAndGet(range.size(), Math::max);
+                return range;
+            }
+            default:
+                return null;
+            }
+        });
+    }
+
+    private CacheService getCacheService(StorageAccessor accessor) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(DATA_SIZE));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(DATA_SIZE * 2));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "64");
+        TransienceStrategy transienceStrategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        PersistenceStrategy persistenceStrategy = new PersistenceStrategy() {
+
+            @Override
+            public void start(StorageAccessor accessor, Map<Class<?>, CacheInformation> informations) {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public String getName() {
+                return "queuePersistenceStrategy";
+            }
+
+            @Override
+            public PersistenceManager getPersistenceManager(Class clazz) {
+                return null;
+            }
+
+        };
+        CacheService cacheService = new CacheService(Collections.singleton(MockEntityObject.class), accessor, Collections.singleton(transienceStrategy), Collections.singleton(persistenceStrategy));
+        cacheService.start();
+        return cacheService;
+    }
+
+    @Test(timeout = 20000)
+    public void testWarmup() throws Exception {
+        AtomicInteger queryCount = new AtomicInteger();
+        AtomicInteger maximumSize = new AtomicInteger();
+        CacheService cacheService = getCacheService(getAccessor(queryCount, maximumSize, 0L));
+        CacheWarmer warmer = cacheService.warmup(4);
+        Assert.assertTrue(warmer.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(warmer.isCancelled());
+        Assert.assertThat(warmer.getLoadCount(), CoreMatchers.equalTo((long) DATA_SIZE));
+        Assert.assertThat(warmer.getTotalCount(), CoreMatchers.equalTo((long) DATA_SIZE));
+        // 每次查询不超过batch
+        Assert.assertTrue(maximumSize.get() <= 100);
+        Assert.assertTrue(queryCount.get() >= DATA_SIZE / 100);
+
+        EntityManager<Integer, MockEntityObject> manager = cacheService.getEntityManager(MockEntityObject.class);
+        Assert.assertThat(manager.getInstanceCount(), CoreMatchers.equalTo(DATA_SIZE));
+        for (int index = 0; index < DATA_SIZE; index++) {
+            MockEntityObject instance = manager.getInstance(index * 3);
+            Assert.assertNotNull(instance);
+            Assert.assertTrue(instance instanceof ProxyObject);
+        }
+        cacheService.stop();
+    }
+
+    @Test(timeout = 20000)
+    public void testCancel() throws Exception {
+        AtomicInteger queryCount = new AtomicInteger();
+        AtomicInteger maximumSize = new AtomicInteger();
+        CacheService cacheService = getCacheService(getAccessor(queryCount, maximumSize, 100L));
+        CacheWarmer warmer = cacheService.warmup(2);
+        Thread.sleep(250L);
+        warmer.cancel();
+        Assert.assertTrue(warmer.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(warmer.isCancelled());
+        Assert.assertTrue(warmer.isDone());
+        Assert.assertTrue(warmer.getLoadCount() < DATA_SIZE);
+        Assert.assertThat(cacheService.getEntityManager(MockEntityObject.class).getInstanceCount(), CoreMatchers.equalTo((int) warmer.getLoadCount()));
+        cacheService.stop();
+    }
+
+}
@@ -0,0 +1,333 @@
+package com.jstarcraft.core.cache;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.persistence.PersistenceManager;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy;
+import com.jstarcraft.core.cache.transience.LeastRecentlyUsedTransienceStrategy;
+import com.jstarcraft.core.cache.transience.OffHeapTransienceStrategy;
+import com.jstarcraft.core.cache.transience.TransienceStrategy;
+import com.jstarcraft.core.common.lockable.CountLockTable;
+import com.jstarcraft.core.common.lockable.LockTable;
+import com.jstarcraft.core.common.lockable.StripeLockTable;
+import com.jstarcraft.core.storage.StorageAccessor;
+import com.jstarcraft.core.utility.RandomUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class EntityCacheManagerTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int DATA_SIZE = 1000;
+
+    private static final int EXPIRE_SECONDS = 5;
+
+    /** 不需要持久的策略(只测试命中路径) */
+    private static final PersistenceStrategy NULL_PERSISTENCE = new PersistenceStrategy() {
+
+        @Override
+        public void start(StorageAccessor accessor, Map<Class<?>, CacheInformation> informations) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getName() {
+            return "nullPersistenceStrategy";
+        }
+
+        @Override
+        public PersistenceManager getPersistenceManager(Class clazz) {
+            return null;
+        }
+
+    };
+
+    /**
+     * 获取模拟的持久策略(每次装载耗时100毫秒,金额为装载次数)
+     * 
+     * @param loadCount
+     * @return
+     */
+    private PersistenceStrategy getPersistenceStrategy(AtomicInteger loadCount) {
+        PersistenceManager manager = (PersistenceManager) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { PersistenceManager.class }, (proxy, method, arguments) -> {
+            if (method.getName().equals("getInstance")) {
+                int count = loadCount.incrementAndGet();
+                Thread.sleep(100);
+                Integer id = (Integer) arguments[0];
+                return MockEntityObject.instanceOf(id, "birdy" + id, "hong", count, 0);
+            }
+            return null;
+        });
+        return new PersistenceStrategy() {
+
+            @Override
+            public void start(StorageAccessor accessor, Map<Class<?>, CacheInformation> informations) {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public String getName() {
+                return "mockPersistenceStrategy";
+            }
+
+            @Override
+            public PersistenceManager getPersistenceManager(Class clazz) {
+                return manager;
+            }
+
+        };
+    }
+
+    private TransienceStrategy getTransienceStrategy() {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(DATA_SIZE));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(DATA_SIZE * 2));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "64");
+        TransienceStrategy strategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        strategy.start();
+        return strategy;
+    }
+
+    private long testHit(String name, LockTable<Integer> idLocks, LockTable<CacheIndex> indexLocks, int threadSize) throws Exception {
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        EntityCacheManager<Integer, MockEntityObject> manager = new EntityCacheManager<>(information, getTransienceStrategy(), NULL_PERSISTENCE, idLocks, indexLocks);
+        List<MockEntityObject> instances = new ArrayList<>(DATA_SIZE);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            instances.add(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+        }
+        manager.cacheInstances(instances);
+
+        // 多线程并发命中操作(热点集中在少量标识)
+        AtomicBoolean run = new AtomicBoolean(true);
+        AtomicLong operationCount = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(threadSize);
+        for (int index = 0; index < threadSize; index++) {
+            Thread thread = new Thread(() -> {
+                while (run.get()) {
+                    int id = RandomUtility.randomInteger(0, 64);
+                    if (manager.getInstance(id) == null) {
+                        Assert.fail();
+                    }
+                    operationCount.incrementAndGet();
+                }
+                latch.countDown();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread.sleep(TimeUnit.MILLISECONDS.convert(EXPIRE_SECONDS, TimeUnit.SECONDS));
+        run.set(false);
+        latch.await();
+
+        String message = StringUtility.format("{}锁表{}条线程在{}秒内执行{}次命中操作", name, threadSize, EXPIRE_SECONDS, operationCount.get());
+        logger.debug(message);
+        return operationCount.get();
+    }
+
+    /**
+     * 相同标识的并发装载只访问一次持久层
+     */
+    @Test
+    public void testLoad() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        EntityCacheManager<Integer, MockEntityObject> manager = new EntityCacheManager<>(information, getTransienceStrategy(), getPersistenceStrategy(loadCount));
+        int threadSize = 64;
+        CountDownLatch latch = new CountDownLatch(threadSize);
+        AtomicInteger nullCount = new AtomicInteger();
+        for (int index = 0; index < threadSize; index++) {
+            Thread thread = new Thread(() -> {
+                if (manager.getInstance(0) == null) {
+                    nullCount.incrementAndGet();
+                }
+                latch.countDown();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        latch.await();
+        Assert.assertEquals(0, nullCount.get());
+        Assert.assertEquals(1, loadCount.get());
+    }
+
+    /**
+     * 超过刷新时间的实例继续使用并在后台重新装载,超过到期时间的实例同步重新装载
+     */
+    @Test(timeout = 10000)
+    public void testRefresh() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        EntityCacheManager<Integer, MockEntityObject> manager = new EntityCacheManager<>(information, getTransienceStrategy(), getPersistenceStrategy(loadCount));
+        CacheObjectFactory<Integer, MockEntityObject> factory = new CacheObjectFactory<Integer, MockEntityObject>() {
+
+            @Override
+            public MockEntityObject instanceOf(Integer id) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public int getExpire(MockEntityObject instance) {
+                return 3;
+            }
+
+            @Override
+            public int getRefresh(MockEntityObject instance) {
+                return 1;
+            }
+
+        };
+        MockEntityObject object = manager.loadInstance(0, factory);
+        Assert.assertEquals(1, object.getMoney());
+
+        // 超过刷新时间,检索不会阻塞
+        Thread.sleep(1100);
+        for (int index = 0; index < 100; index++) {
+            long begin = System.currentTimeMillis();
+            object = manager.getInstance(0);
+            Assert.assertTrue(System.currentTimeMillis() - begin < 100);
+        }
+        while (manager.getInstance(0).getMoney() == 1) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, loadCount.get());
+        Assert.assertEquals(2, manager.getInstance(0).getMoney());
+
+        // 超过到期时间,检索同步重新装载
+        Thread.sleep(3100);
+        Assert.assertEquals(3, manager.getInstance(0).getMoney());
+        Assert.assertEquals(3, loadCount.get());
+    }
+
+    /**
+     * 异步装载不会占用调度线程,相同标识的并发装载只访问一次持久层
+     */
+    @Test(timeout = 20000)
+    public void testAsync() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        EntityCacheManager<Integer, MockEntityObject> manager = new EntityCacheManager<>(information, getTransienceStrategy(), getPersistenceStrategy(loadCount), executor);
+        // 少量调度线程发起大量慢速装载(每次装载耗时100毫秒)
+        int threadSize = 4;
+        int idSize = 256;
+        List<CompletableFuture<MockEntityObject>> futures = new ArrayList<>(threadSize * idSize);
+        AtomicLong busyTime = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(threadSize);
+        long begin = System.nanoTime();
+        for (int index = 0; index < threadSize; index++) {
+            Thread thread = new Thread(() -> {
+                long start = System.nanoTime();
+                List<CompletableFuture<MockEntityObject>> dispatches = new ArrayList<>(idSize);
+                for (int id = 0; id < idSize; id++) {
+                    dispatches.add(manager.getInstanceAsync(id));
+                }
+                busyTime.addAndGet(System.nanoTime() - start);
+                synchronized (futures) {
+                    futures.addAll(dispatches);
+                }
+                latch.countDown();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        latch.await();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+        long time = System.nanoTime() - begin;
+        for (CompletableFuture<MockEntityObject> future : futures) {
+            Assert.assertNotNull(future.join());
+        }
+        Assert.assertEquals(idSize, loadCount.get());
+        String message = StringUtility.format("{}条调度线程异步装载{}个实例,总耗时{}毫秒,调度线程占用率{}", threadSize, threadSize * idSize, TimeUnit.NANOSECONDS.toMillis(time), busyTime.get() * 1D / (time * threadSize));
+        logger.debug(message);
+
+        // 命中时立即完成
+        Assert.assertTrue(manager.getInstanceAsync(0).isDone());
+        Assert.assertEquals(idSize, loadCount.get());
+
+        // 同步装载时调度线程阻塞在持久层
+        loadCount.set(0);
+        manager = new EntityCacheManager<>(information, getTransienceStrategy(), getPersistenceStrategy(loadCount), executor);
+        idSize = 16;
+        begin = System.nanoTime();
+        for (int id = 0; id < idSize; id++) {
+            manager.getInstance(id);
+        }
+        time = System.nanoTime() - begin;
+        message = StringUtility.format("1条调度线程同步装载{}个实例,总耗时{}毫秒,调度线程占用率1.0", idSize, TimeUnit.NANOSECONDS.toMillis(time));
+        logger.debug(message);
+        executor.shutdown();
+    }
+
+    /**
+     * 被内存淘汰的实例从二级内存装载,不访问持久层
+     */
+    @Test
+    public void testSecondary() throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, "10");
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, "10");
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, "1");
+        TransienceStrategy transienceStrategy = new LeastRecentlyUsedTransienceStrategy("lruMemoryStrategy", configuration);
+        transienceStrategy.start();
+        configuration = new HashMap<>();
+        configuration.put(OffHeapTransienceStrategy.PARAMETER_CAPACITY, String.valueOf(1 << 20));
+        configuration.put(OffHeapTransienceStrategy.PARAMETER_SLAB_SIZE, String.valueOf(1 << 16));
+        TransienceStrategy secondaryStrategy = new OffHeapTransienceStrategy("offHeapMemoryStrategy", configuration);
+        secondaryStrategy.start();
+        EntityCacheManager<Integer, MockEntityObject> manager = new EntityCacheManager<>(information, transienceStrategy, secondaryStrategy, getPersistenceStrategy(loadCount), CacheService.DEFAULT_EXECUTOR);
+
+        List<MockEntityObject> instances = new ArrayList<>(DATA_SIZE);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            instances.add(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+        }
+        manager.cacheInstances(instances);
+        Assert.assertEquals(10, manager.getInstanceCount());
+
+        for (int index = 0; index < DATA_SIZE; index++) {
+            MockEntityObject instance = manager.getInstance(index);
+            Assert.assertEquals("birdy" + index, instance.getFirstName());
+            Assert.assertEquals(index, instance.getMoney());
+        }
+        Assert.assertEquals(0, loadCount.get());
+
+        // 删除的实例不会从二级内存装载
+        manager.getInstance(0);
+        manager.deleteInstance(0);
+        Assert.assertEquals(1, manager.getInstance(0).getMoney());
+        Assert.assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        for (int threadSize : new int[] { 1, 8, 64 }) {
+            testHit("条带", new StripeLockTable<>(1024), new StripeLockTable<>(1024), threadSize);
+            testHit("计数", new CountLockTable<>(), new CountLockTable<>(), threadSize);
+        }
+    }
+
+}
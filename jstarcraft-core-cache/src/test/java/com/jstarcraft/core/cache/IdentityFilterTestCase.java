@@ -0,0 +1,87 @@
+package com.jstarcraft.core.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.utility.StringUtility;
+
+public class IdentityFilterTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int DATA_SIZE = 10000;
+
+    private static final float PROBABILITY = 0.01F;
+
+    @Test
+    public void testFilter() {
+        IdentityFilter<Integer> filter = new IdentityFilter<>(DATA_SIZE, PROBABILITY, 0);
+        Assert.assertTrue(filter.startBuild());
+        Assert.assertFalse(filter.startBuild());
+        // 建立期间所有标识都可能存在
+        Assert.assertTrue(filter.mightContain(-1));
+        // 建立期间创建的标识
+        filter.putIdentity(DATA_SIZE);
+        List<Integer> identities = new ArrayList<>(DATA_SIZE);
+        for (int index = 0; index < DATA_SIZE; index++) {
+            identities.add(index);
+        }
+        filter.stopBuild(identities);
+        Assert.assertTrue(filter.isReady());
+
+        // 存在的标识不会被过滤
+        for (int index = 0; index <= DATA_SIZE; index++) {
+            Assert.assertTrue(filter.mightContain(index));
+        }
+        Assert.assertEquals(0L, filter.getAvoidCount());
+
+        // 不存在的标识大部分被过滤
+        int falseCount = 0;
+        for (int index = DATA_SIZE + 1; index <= DATA_SIZE * 2; index++) {
+            if (filter.mightContain(index)) {
+                filter.putMiss(index);
+                falseCount++;
+            }
+        }
+        Assert.assertEquals(falseCount, filter.getFalseCount());
+        Assert.assertEquals(DATA_SIZE - falseCount, filter.getAvoidCount());
+        Assert.assertEquals((float) falseCount / DATA_SIZE, filter.getFalseRate(), 0F);
+        Assert.assertTrue(filter.getFalseRate() < PROBABILITY * 2);
+        String message = StringUtility.format("预计误判率{},实测误判率{}", PROBABILITY, filter.getFalseRate());
+        logger.debug(message);
+    }
+
+    @Test
+    public void testMiss() {
+        IdentityFilter<Integer> filter = new IdentityFilter<>(DATA_SIZE, PROBABILITY, 10);
+        filter.startBuild();
+        // 过滤器未生效时未命中缓存仍然有效
+        filter.putMiss(1);
+        Assert.assertFalse(filter.mightContain(1));
+        Assert.assertEquals(1L, filter.getAvoidCount());
+        Assert.assertEquals(0L, filter.getFalseCount());
+
+        // 创建时失效
+        filter.putIdentity(1);
+        Assert.assertTrue(filter.mightContain(1));
+        // 删除以后不存在
+        filter.deleteIdentity(1);
+        Assert.assertFalse(filter.mightContain(1));
+
+        // 未命中缓存有界
+        for (int index = 0; index < 100; index++) {
+            filter.putMiss(DATA_SIZE + index);
+        }
+        Assert.assertTrue(filter.mightContain(DATA_SIZE));
+
+        filter.cancelBuild();
+        Assert.assertFalse(filter.isReady());
+        Assert.assertTrue(filter.startBuild());
+    }
+
+}
@@ -9,10 +9,13 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import com.jstarcraft.core.cache.annotation.CacheChange;
 import com.jstarcraft.core.cache.annotation.CacheConfiguration;
 import com.jstarcraft.core.cache.annotation.CacheConfiguration.Unit;
+import com.jstarcraft.core.cache.annotation.CacheWarmup;
+import com.jstarcraft.core.cache.annotation.CacheWarmup.Mode;
 import com.jstarcraft.core.common.identification.IdentityObject;
 
 @Entity
-@CacheConfiguration(unit = Unit.ENTITY, indexes = { "firstName", "token" }, transienceStrategy = "lruMemoryStrategy", persistenceStrategy = "queuePersistenceStrategy")
+@CacheConfiguration(unit = Unit.ENTITY, indexes = { "firstName", "token" }, orders = { "money" }, transienceStrategy = "lruMemoryStrategy", persistenceStrategy = "queuePersistenceStrategy")
+@CacheWarmup(mode = Mode.ALL, batch = 100)
 public class MockEntityObject implements IdentityObject<Integer> {
 
     @Id
@@ -65,6 +68,11 @@ public class MockEntityObject implements IdentityObject<Integer> {
         return result;
     }
 
+    @CacheChange(fields = { "money" })
+    public void modifyMoney(int money) {
+        this.money = money;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (this == object)
@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.util.BitSet;
+
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -96,6 +98,40 @@ public class PersistenceElementTestCase {
         }
     }
 
+    @Test
+    public void testFields() {
+        Integer cacheId = 0;
+        MockEntityObject cacheObject = MockEntityObject.instanceOf(cacheId, "birdy", "hong", 100, 100);
+        BitSet left = new BitSet();
+        left.set(0);
+        BitSet right = new BitSet();
+        right.set(1);
+        {
+            // 部分修改合并字段
+            PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject, left);
+            element.modify(new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject, right));
+            Assert.assertEquals(2, element.getFields().cardinality());
+            // 不能修改原有字段
+            Assert.assertEquals(1, left.cardinality());
+        }
+
+        {
+            // 全部修改覆盖部分修改
+            PersistenceElement element = new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject, left);
+            element.modify(new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject));
+            Assert.assertNull(element.getFields());
+            element.modify(new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject, right));
+            Assert.assertNull(element.getFields());
+        }
+
+        {
+            // 创建不会变为部分修改
+            PersistenceElement element = new PersistenceElement(PersistenceOperation.CREATE, cacheId, cacheObject);
+            element.modify(new PersistenceElement(PersistenceOperation.UPDATE, cacheId, cacheObject, right));
+            Assert.assertNull(element.getFields());
+        }
+    }
+
     @Test
     public void testDelete() {
         Class<? extends IdentityObject> cacheClass = MockEntityObject.class;
@@ -0,0 +1,130 @@
+package com.jstarcraft.core.cache.persistence;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.CacheInformation;
+import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
+
+public class PersistenceJournalTestCase {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceJournalTestCase.class);
+
+    private File directory = new File("target" + File.separator + "journal");
+
+    private CacheInformation information = CacheInformation.instanceOf(MockEntityObject.class);
+
+    @Before
+    public void beforeTest() throws Exception {
+        FileUtils.deleteQuietly(directory);
+        FileUtils.forceMkdir(directory);
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    private int getSegmentCount() {
+        return directory.list((file, name) -> name.endsWith(".journal")).length;
+    }
+
+    private void flush(PersistenceOverlay overlay, List<PersistenceElement> elements) {
+        for (PersistenceElement element : elements) {
+            overlay.flush(element);
+        }
+        overlay.finish(elements);
+    }
+
+    @Test
+    public void testRecover() {
+        PersistenceJournal journal = new PersistenceJournal(directory, information, 4096, 10L);
+        PersistenceOverlay overlay = new PersistenceOverlay(information, journal);
+        List<PersistenceElement> elements = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            elements.add(overlay.persist(new PersistenceElement(PersistenceOperation.CREATE, index, MockEntityObject.instanceOf(index, "birdy", "hong", index, index))));
+        }
+        // 合并到等待元素的记录
+        overlay.persist(new PersistenceElement(PersistenceOperation.UPDATE, 0, MockEntityObject.instanceOf(0, "wolfy", "xiao", 0, 0)));
+        // 被忽略的元素
+        overlay.persist(new PersistenceElement(PersistenceOperation.DELETE, 1, null));
+        Assert.assertTrue(journal.getSegmentSize() > 1);
+
+        // 持久前半部分元素之后截断
+        flush(overlay, elements.subList(0, 50));
+        journal.sync();
+        Assert.assertEquals(50L, journal.getCheckpoint());
+        int segmentCount = getSegmentCount();
+        Assert.assertEquals(journal.getSegmentSize(), segmentCount);
+        Assert.assertEquals(50, overlay.getWaitSize());
+        // 存在等待元素时关闭等同于崩溃(保留段)
+        journal.close();
+
+        journal = new PersistenceJournal(directory, information, 4096, 10L);
+        PersistenceOverlay recovery = new PersistenceOverlay(information, journal);
+        Assert.assertEquals(segmentCount, journal.getRecoverySize());
+        int count = journal.recover(recovery::persist);
+        Assert.assertEquals(50, count);
+        Assert.assertEquals(50, recovery.getWaitSize());
+        Assert.assertNull(recovery.getElement(0));
+        Assert.assertNull(recovery.getElement(1));
+        PersistenceElement element = recovery.getElement(99);
+        Assert.assertEquals(PersistenceOperation.CREATE, element.getOperation());
+        Assert.assertEquals(MockEntityObject.instanceOf(99, "birdy", "hong", 99, 99), element.getCacheObject());
+
+        // 恢复之后的记录继续使用更大的序号
+        PersistenceElement update = recovery.persist(new PersistenceElement(PersistenceOperation.UPDATE, 0, MockEntityObject.instanceOf(0, "mickey", "hong", 0, 0)));
+        Assert.assertTrue(update.getSequence() > elements.get(99).getSequence());
+
+        elements.clear();
+        for (int index = 50; index < 100; index++) {
+            elements.add(recovery.getElement(index));
+        }
+        elements.add(update);
+        flush(recovery, elements);
+        Assert.assertEquals(0, recovery.getWaitSize());
+        journal.close();
+        Assert.assertEquals(0, getSegmentCount());
+    }
+
+    /**
+     * 日志追加吞吐量与恢复耗时
+     */
+    @Test
+    public void testPerformance() {
+        int size = 1000000;
+        PersistenceJournal journal = new PersistenceJournal(directory, information, 64 * 1024 * 1024, 100L);
+        PersistenceOverlay overlay = new PersistenceOverlay(information, journal);
+        long begin = System.currentTimeMillis();
+        for (int index = 0; index < size; index++) {
+            overlay.persist(new PersistenceElement(PersistenceOperation.CREATE, index, MockEntityObject.instanceOf(index, "birdy", "hong", index, 0)));
+        }
+        long time = System.currentTimeMillis() - begin;
+        logger.debug("追加[{}]条记录耗时[{}]毫秒,吞吐量[{}]条/秒", new Object[] { size, time, size * 1000L / Math.max(time, 1L) });
+        // 存在等待元素时关闭等同于崩溃(保留段)
+        journal.close();
+        overlay = null;
+
+        journal = new PersistenceJournal(directory, information, 64 * 1024 * 1024, 100L);
+        PersistenceOverlay recovery = new PersistenceOverlay(information, journal);
+        begin = System.currentTimeMillis();
+        int count = journal.recover(recovery::persist);
+        time = System.currentTimeMillis() - begin;
+        logger.debug("恢复[{}]个等待元素耗时[{}]毫秒", count, time);
+        Assert.assertEquals(size, count);
+        Assert.assertEquals(size, recovery.getWaitSize());
+        Assert.assertEquals(0L, journal.getCheckpoint());
+        journal.close();
+    }
+
+}
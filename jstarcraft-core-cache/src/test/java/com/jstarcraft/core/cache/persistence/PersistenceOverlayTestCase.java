@@ -0,0 +1,94 @@
+package com.jstarcraft.core.cache.persistence;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.CacheInformation;
+import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.cache.persistence.PersistenceStrategy.PersistenceOperation;
+
+public class PersistenceOverlayTestCase {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceOverlayTestCase.class);
+
+    private PersistenceOverlay getOverlay(int size) {
+        PersistenceOverlay overlay = new PersistenceOverlay(CacheInformation.instanceOf(MockEntityObject.class));
+        for (int index = 0; index < size; index++) {
+            // 只有第一个元素的token为0
+            MockEntityObject object = MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index == 0 ? 0 : 1);
+            overlay.persist(new PersistenceElement(PersistenceOperation.CREATE, index, object));
+        }
+        Assert.assertEquals(size, overlay.getWaitSize());
+        return overlay;
+    }
+
+    @Test
+    public void testOverlay() {
+        PersistenceOverlay overlay = getOverlay(0);
+        MockEntityObject object = MockEntityObject.instanceOf(0, "birdy", "hong", 0, 0);
+        PersistenceElement create = overlay.persist(new PersistenceElement(PersistenceOperation.CREATE, 0, object));
+        Assert.assertNotNull(create);
+        Assert.assertEquals(1, overlay.getIdentities(HashMap::new, "token", 0).size());
+
+        // 合并到已有的等待元素
+        object = MockEntityObject.instanceOf(0, "birdy", "hong", 0, 1);
+        Assert.assertNull(overlay.persist(new PersistenceElement(PersistenceOperation.UPDATE, 0, object)));
+        Assert.assertEquals(0, overlay.getIdentities(HashMap::new, "token", 0).size());
+        Assert.assertEquals(1, overlay.getIdentities(HashMap::new, "token", 1).size());
+
+        // 开始持久之后的操作产生新的等待元素
+        Assert.assertTrue(overlay.flush(create));
+        Assert.assertFalse(overlay.flush(create));
+        PersistenceElement delete = overlay.persist(new PersistenceElement(PersistenceOperation.DELETE, 0, null));
+        Assert.assertNotNull(delete);
+        Assert.assertEquals(2, overlay.getWaitSize());
+        Assert.assertSame(delete, overlay.getElement(0));
+        Map<Integer, Object> identities = new HashMap<>();
+        identities.put(0, 1);
+        Assert.assertEquals(0, overlay.getIdentities(() -> identities, "token", 1).size());
+
+        overlay.finish(Collections.singleton(create));
+        Assert.assertEquals(1, overlay.getWaitSize());
+        Assert.assertTrue(overlay.flush(delete));
+        overlay.finish(Collections.singleton(delete));
+        Assert.assertEquals(0, overlay.getWaitSize());
+        Assert.assertEquals(0, overlay.getSize());
+        Assert.assertNull(overlay.getElement(0));
+
+        // CREATE, DELETE会被忽略
+        PersistenceElement ignore = overlay.persist(new PersistenceElement(PersistenceOperation.CREATE, 0, object));
+        overlay.persist(new PersistenceElement(PersistenceOperation.DELETE, 0, null));
+        Assert.assertTrue(ignore.isIgnore());
+        Assert.assertFalse(overlay.flush(ignore));
+        Assert.assertEquals(0, overlay.getWaitSize());
+        Assert.assertEquals(0, overlay.getInstances(LinkedList::new, "token", 1).size());
+    }
+
+    /**
+     * 索引查询的耗时与等待的元素数量无关
+     */
+    @Test
+    public void testPerformance() {
+        int times = 10000;
+        for (int size : new int[] { 1000, 100000 }) {
+            PersistenceOverlay overlay = getOverlay(size);
+            long begin = System.nanoTime();
+            for (int time = 0; time < times; time++) {
+                Map<Integer, Object> identities = overlay.getIdentities(HashMap::new, "token", 0);
+                Assert.assertEquals(1, identities.size());
+                Map<Integer, MockEntityObject> instances = overlay.getInstances(LinkedList::new, "token", 0);
+                Assert.assertEquals(1, instances.size());
+            }
+            long nanos = System.nanoTime() - begin;
+            logger.debug("等待元素数量[{}],索引查询[{}]次,平均耗时[{}]纳秒", size, times, nanos / times);
+        }
+    }
+
+}
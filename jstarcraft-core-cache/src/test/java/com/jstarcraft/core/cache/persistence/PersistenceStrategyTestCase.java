@@ -1,5 +1,7 @@
 package com.jstarcraft.core.cache.persistence;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +31,27 @@ public abstract class PersistenceStrategyTestCase {
         cacheInformations.put(MockEntityObject.class, CacheInformation.instanceOf(MockEntityObject.class));
     }
 
+    /**
+     * 获取持久策略使用的访问器
+     * 
+     * <pre>
+     * 每次访问都会锁定accessor,测试通过synchronized (accessor)暂停持久线程.
+     * </pre>
+     * 
+     * @return
+     */
+    protected StorageAccessor getAccessor() {
+        return (StorageAccessor) Proxy.newProxyInstance(StorageAccessor.class.getClassLoader(), new Class<?>[] { StorageAccessor.class }, (proxy, method, arguments) -> {
+            synchronized (accessor) {
+                try {
+                    return method.invoke(accessor, arguments);
+                } catch (InvocationTargetException exception) {
+                    throw exception.getTargetException();
+                }
+            }
+        });
+    }
+
     protected abstract Map<String, String> getPersistenceConfiguration();
 
     protected abstract PersistenceStrategy getPersistenceStrategy(String name, Map<String, String> configuration);
@@ -37,7 +60,7 @@ public abstract class PersistenceStrategyTestCase {
     public void testPerformance() throws Exception {
         int size = 10000;
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         // 创建数据
@@ -112,7 +135,7 @@ public abstract class PersistenceStrategyTestCase {
     public void testQuery() throws Exception {
         int size = 10000;
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         synchronized (accessor) {
@@ -178,7 +201,7 @@ public abstract class PersistenceStrategyTestCase {
     @Test
     public void testUpdate() throws Exception {
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         MockEntityObject object = MockEntityObject.instanceOf(0, "birdy", "hong", 1, -1);
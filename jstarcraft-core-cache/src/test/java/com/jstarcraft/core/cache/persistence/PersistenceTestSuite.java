@@ -5,7 +5,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ PersistenceElementTestCase.class, PromptPersistenceStrategyTestCase.class, QueuePersistenceStrategyTestCase.class, SchedulePersistenceStrategyTestCase.class })
+@SuiteClasses({ PersistenceElementTestCase.class, PersistenceOverlayTestCase.class, PersistenceJournalTestCase.class, PromptPersistenceStrategyTestCase.class, QueuePersistenceStrategyTestCase.class, SchedulePersistenceStrategyTestCase.class })
 public class PersistenceTestSuite {
 
 }
@@ -32,7 +32,7 @@ public class PromptPersistenceStrategyTestCase extends PersistenceStrategyTestCa
     public void testQuery() throws Exception {
         int size = 10000;
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         // 创建数据
@@ -3,6 +3,7 @@ package com.jstarcraft.core.cache.persistence;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,7 +35,7 @@ public class QueuePersistenceStrategyTestCase extends PersistenceStrategyTestCas
     public void testInhibit() throws Exception {
         int size = 1000;
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         // 创建数据
@@ -91,4 +92,123 @@ public class QueuePersistenceStrategyTestCase extends PersistenceStrategyTestCas
         strategy.stop();
     }
 
+    @Test
+    public void testBatch() throws Exception {
+        int size = 10000;
+        int batchSize = 100;
+        Map<String, String> configuration = getPersistenceConfiguration();
+        configuration.put(QueuePersistenceStrategy.PARAMETER_BATCH_SIZE, String.valueOf(batchSize));
+        configuration.put(QueuePersistenceStrategy.PARAMETER_BATCH_WAIT, "10");
+        PersistenceStrategy strategy = getPersistenceStrategy("strategy", configuration);
+        strategy.start(getAccessor(), cacheInformations);
+        QueuePersistenceManager<Integer, MockEntityObject> manager = (QueuePersistenceManager) strategy.getPersistenceManager(MockEntityObject.class);
+
+        // 创建数据
+        long begin = System.currentTimeMillis();
+        synchronized (accessor) {
+            for (int index = 0; index < size; index++) {
+                manager.createInstance(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+            }
+        }
+        while (true) {
+            if (manager.getWaitSize() == 0) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        long end = System.currentTimeMillis();
+        String message = StringUtility.format("批量创建{}数据的时间:{}毫秒,批量次数:{},批量耗时:{}毫秒", size, end - begin, manager.getBatchCount(), manager.getBatchTime());
+        logger.debug(message);
+        Assert.assertEquals(size, manager.getCreatedCount());
+        Assert.assertEquals(size, manager.getBatchElementCount());
+        Assert.assertTrue(manager.getBatchCount() >= size / batchSize);
+        Assert.assertTrue(manager.getBatchCount() < size);
+
+        // 批量持久过程中,查询必须能看到正在持久的元素
+        for (int index = 0; index < size; index++) {
+            manager.updateInstance(MockEntityObject.instanceOf(index, "xiao" + index, "xiao", index * index, 100));
+            Assert.assertThat(manager.getInstance(index).getFirstName(), CoreMatchers.equalTo("xiao" + index));
+        }
+        while (true) {
+            if (manager.getWaitSize() == 0) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        Assert.assertEquals(size, manager.getUpdatedCount());
+        Assert.assertEquals(size, manager.getInstances("token", 100).size());
+
+        // 删除数据
+        for (int index = 0; index < size; index++) {
+            manager.deleteInstance(index);
+        }
+        while (true) {
+            if (manager.getWaitSize() == 0) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        Assert.assertEquals(size, manager.getDeletedCount());
+        Assert.assertEquals(0, manager.getInstances("token", 100).size());
+        Assert.assertEquals(0L, manager.getExceptionCount());
+
+        strategy.stop();
+    }
+
+    @Test
+    public void testPartition() throws Exception {
+        int size = 10000;
+        int partition = 4;
+        Map<String, String> configuration = getPersistenceConfiguration();
+        configuration.put(QueuePersistenceStrategy.PARAMETER_PARTITION, String.valueOf(partition));
+        PersistenceStrategy strategy = getPersistenceStrategy("strategy", configuration);
+        strategy.start(getAccessor(), cacheInformations);
+        PartitionPersistenceManager<Integer, MockEntityObject> manager = (PartitionPersistenceManager) strategy.getPersistenceManager(MockEntityObject.class);
+        Assert.assertEquals(partition, manager.getPartitionSize());
+
+        synchronized (accessor) {
+            // 创建数据
+            for (int index = 0; index < size; index++) {
+                manager.createInstance(MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, 0));
+            }
+            // 所有分区都应该分到元素
+            int waitSize = 0;
+            for (int index = 0; index < partition; index++) {
+                Assert.assertTrue(manager.getWaitSize(index) > 0);
+                waitSize += manager.getWaitSize(index);
+            }
+            Assert.assertEquals(manager.getWaitSize(), waitSize);
+            // 查询必须能看到所有分区的等待元素
+            for (int index = 0; index < size; index++) {
+                Assert.assertNotNull(manager.getInstance(index));
+            }
+            Assert.assertEquals(size, manager.getInstances("token", 0).size());
+        }
+        while (true) {
+            if (manager.getWaitSize() == 0) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        Assert.assertEquals(size, manager.getCreatedCount());
+
+        // 同一个主键的修改与删除必须保持顺序
+        for (int index = 0; index < size; index++) {
+            manager.updateInstance(MockEntityObject.instanceOf(index, "xiao" + index, "xiao", index * index, 100));
+            manager.deleteInstance(index);
+        }
+        while (true) {
+            if (manager.getWaitSize() == 0) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        Assert.assertEquals(size, manager.getDeletedCount());
+        Assert.assertEquals(0, manager.getIdentities("token", 100).size());
+        Assert.assertEquals(0, manager.getInstances("token", 0).size());
+        Assert.assertEquals(0L, manager.getExceptionCount());
+
+        strategy.stop();
+    }
+
 }
@@ -33,7 +33,7 @@ public class SchedulePersistenceStrategyTestCase extends PersistenceStrategyTest
     @Test
     public void testMerge() throws Exception {
         PersistenceStrategy strategy = getPersistenceStrategy("strategy", getPersistenceConfiguration());
-        strategy.start(accessor, cacheInformations);
+        strategy.start(getAccessor(), cacheInformations);
         PersistenceManager<Integer, MockEntityObject> manager = strategy.getPersistenceManager(MockEntityObject.class);
 
         int id = -1;
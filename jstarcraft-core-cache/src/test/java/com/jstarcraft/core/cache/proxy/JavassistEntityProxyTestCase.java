@@ -1,5 +1,8 @@
 package com.jstarcraft.core.cache.proxy;
 
+import java.lang.reflect.Method;
+import java.util.BitSet;
+
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -7,6 +10,8 @@ import org.junit.Test;
 
 import com.jstarcraft.core.cache.CacheInformation;
 import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.cache.annotation.CacheChange;
+import com.jstarcraft.core.cache.exception.CacheConfigurationException;
 
 public class JavassistEntityProxyTestCase {
 
@@ -49,4 +54,44 @@ public class JavassistEntityProxyTestCase {
         Assert.assertEquals(0, newModifyDatasTimes - oldModifyDatasTimes);
     }
 
+    @Test
+    public void testFieldChange() {
+        MockEntityObject mockEntity = MockEntityObject.instanceOf(0, "birdy", "hong", 0, 0);
+        MockEntityObject proxyEntity = entityProxy.transform(mockEntity);
+
+        // 未声明字段的修改视为全部字段
+        proxyEntity.modify("xiao", 10, true);
+        Assert.assertNull(mockProxyManager.getModifyFields());
+
+        // 声明字段的修改只标记对应字段
+        int oldModifyDatasTimes = mockProxyManager.getModifyDatas();
+        proxyEntity.modifyMoney(100);
+        int newModifyDatasTimes = mockProxyManager.getModifyDatas();
+        Assert.assertThat(proxyEntity.getMoney(), CoreMatchers.equalTo(100));
+        Assert.assertEquals(1, newModifyDatasTimes - oldModifyDatasTimes);
+        BitSet fields = mockProxyManager.getModifyFields();
+        Assert.assertNotNull(fields);
+        Assert.assertEquals(1, fields.cardinality());
+    }
+
+    @Test
+    public void testCheckFields() throws Exception {
+        Class<?> clazz = MockChangeObject.class;
+        // 通过调用的方法修改声明的字段
+        Method method = clazz.getMethod("modifyMoney", int.class);
+        Assert.assertTrue(entityProxy.checkFields(clazz, method, method.getAnnotation(CacheChange.class)));
+
+        // 修改没有声明的可变字段的内容时退化为全部字段
+        method = clazz.getMethod("modifyName", String.class);
+        Assert.assertFalse(entityProxy.checkFields(clazz, method, method.getAnnotation(CacheChange.class)));
+
+        // 修改没有声明的字段属于配置错误
+        method = clazz.getMethod("modifyToken", int.class);
+        try {
+            entityProxy.checkFields(clazz, method, method.getAnnotation(CacheChange.class));
+            Assert.fail();
+        } catch (CacheConfigurationException exception) {
+        }
+    }
+
 }
@@ -0,0 +1,63 @@
+package com.jstarcraft.core.cache.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jstarcraft.core.cache.annotation.CacheChange;
+import com.jstarcraft.core.cache.annotation.CacheConfiguration;
+import com.jstarcraft.core.cache.annotation.CacheConfiguration.Unit;
+import com.jstarcraft.core.common.identification.IdentityObject;
+
+/**
+ * 用于检查变更字段声明的对象
+ */
+@CacheConfiguration(unit = Unit.ENTITY, transienceStrategy = "lruMemoryStrategy", persistenceStrategy = "queuePersistenceStrategy")
+public class MockChangeObject implements IdentityObject<Integer> {
+
+    private Integer id;
+
+    private int money;
+
+    private int token;
+
+    private List<String> names = new ArrayList<>();
+
+    MockChangeObject() {
+    }
+
+    @Override
+    public Integer getId() {
+        return id;
+    }
+
+    public int getMoney() {
+        return money;
+    }
+
+    public int getToken() {
+        return token;
+    }
+
+    void setMoney(int money) {
+        this.money = money;
+    }
+
+    /** 通过调用的方法修改声明的字段 */
+    @CacheChange(fields = { "money" })
+    public void modifyMoney(int money) {
+        setMoney(money);
+    }
+
+    /** 修改没有声明的字段 */
+    @CacheChange(fields = { "money" })
+    public void modifyToken(int token) {
+        this.token = token;
+    }
+
+    /** 修改没有声明的可变字段的内容 */
+    @CacheChange(fields = { "money" })
+    public void modifyName(String name) {
+        names.add(name);
+    }
+
+}
@@ -1,18 +1,33 @@
 package com.jstarcraft.core.cache.proxy;
 
+import java.util.BitSet;
+
 import com.jstarcraft.core.common.identification.IdentityObject;
 
 public class MockProxyManager implements ProxyManager<Integer, IdentityObject<Integer>> {
 
     private int modifyDatas;
 
+    private BitSet modifyFields;
+
     public int getModifyDatas() {
         return modifyDatas;
     }
 
+    public BitSet getModifyFields() {
+        return modifyFields;
+    }
+
     @Override
     public void modifyInstance(IdentityObject<Integer> object) {
         this.modifyDatas++;
+        this.modifyFields = null;
+    }
+
+    @Override
+    public void modifyInstance(IdentityObject<Integer> object, BitSet fields) {
+        this.modifyDatas++;
+        this.modifyFields = fields;
     }
 
 }
@@ -55,6 +55,33 @@ public class DelayedTransienceStrategyTestCase {
         Assert.assertThat(expireCount.get(), CoreMatchers.equalTo(DATA_SIZE));
     }
 
+    /**
+     * 检索的耗时与分段数量无关
+     */
+    @Test
+    public void testSegment() throws Exception {
+        int times = 1000000;
+        for (int segment : new int[] { 2, 16, 128, 1024 }) {
+            Map<String, String> configuration = new HashMap<>();
+            configuration.put(DelayedTransienceStrategy.PARAMETER_EXPIRE, String.valueOf(EXPIRE_SECONDS));
+            configuration.put(DelayedTransienceStrategy.PARAMETER_SEGMENT, String.valueOf(segment));
+            DelayedTransienceStrategy strategy = new DelayedTransienceStrategy("stratiegy", configuration);
+            strategy.start();
+            TransienceManager manager = strategy.getTransienceManager(null);
+            for (int index = 0; index < DATA_SIZE; index++) {
+                manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+            }
+
+            long begin = System.nanoTime();
+            for (int time = 0; time < times; time++) {
+                Assert.assertNotNull(manager.retrieveInstance(time % DATA_SIZE));
+            }
+            long nanos = System.nanoTime() - begin;
+            String message = StringUtility.format("分段数量{},检索{}次,平均耗时{}纳秒", segment, times, nanos / times);
+            logger.debug(message);
+        }
+    }
+
     @Test
     public void testPerformance() throws Exception {
         Map<String, String> configuration = new HashMap<>();
@@ -0,0 +1,221 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.utility.RandomUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class LeastFrequentlyUsedTransienceStrategyTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    static int MINIMUN_SIZE = 5000;
+    static int MAXIMUN_SIZE = 10000;
+    static int THREAD_SIZE = Runtime.getRuntime().availableProcessors();
+    static int EXPIRE_SECONDS = 15;
+
+    public static class MockWeigher implements TransienceWeigher {
+
+        @Override
+        public int weigh(Object key, Object value) {
+            MockEntityObject mock = (MockEntityObject) value;
+            return mock.getMoney();
+        }
+
+    }
+
+    private LeastFrequentlyUsedTransienceStrategy getStrategy(int maximunSize, String weigher) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastFrequentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(MINIMUN_SIZE));
+        configuration.put(LeastFrequentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(maximunSize));
+        configuration.put(LeastFrequentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, String.valueOf(THREAD_SIZE));
+        if (weigher != null) {
+            configuration.put(LeastFrequentlyUsedTransienceStrategy.PARAMETER_WEIGHER, weigher);
+        }
+        LeastFrequentlyUsedTransienceStrategy strategy = new LeastFrequentlyUsedTransienceStrategy("stratiegy", configuration);
+        strategy.start();
+        return strategy;
+    }
+
+    @Test(timeout = 20000)
+    public void testExpire() {
+        LeastFrequentlyUsedTransienceStrategy strategy = getStrategy(MAXIMUN_SIZE, null);
+        AtomicInteger expireCount = new AtomicInteger();
+        LinkedList<Object> expireObjects = new LinkedList<>();
+        LeastFrequentlyUsedTransienceManager manager = (LeastFrequentlyUsedTransienceManager) strategy.getTransienceManager(new TransienceMonitor() {
+            @Override
+            public void notifyExchanged(Object key, Object value) {
+                expireCount.incrementAndGet();
+                expireObjects.add(value);
+            }
+        });
+
+        for (int index = 0; index < MAXIMUN_SIZE; index++) {
+            manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+        }
+        // 热点实例被多次访问
+        for (int time = 0; time < 3; time++) {
+            for (int index = 0; index < MINIMUN_SIZE; index++) {
+                Assert.assertNotNull(manager.retrieveInstance(index));
+            }
+        }
+        // 只访问一次的扫描
+        for (int index = 0; index < MAXIMUN_SIZE; index++) {
+            int id = MAXIMUN_SIZE + index;
+            manager.createInstance(id, MockEntityObject.instanceOf(id, "birdy" + id, "hong", 0, 0));
+        }
+
+        Assert.assertEquals(MAXIMUN_SIZE, manager.getSize());
+        Assert.assertEquals(MAXIMUN_SIZE, expireCount.get());
+        Assert.assertEquals(MAXIMUN_SIZE, manager.getEvictionCount());
+        for (int index = 0; index < MINIMUN_SIZE; index++) {
+            Assert.assertNotNull(manager.retrieveInstance(index));
+        }
+        Assert.assertEquals(MINIMUN_SIZE * 4, manager.getHitCount());
+        Assert.assertNull(manager.retrieveInstance(-1));
+        Assert.assertEquals(1, manager.getMissCount());
+    }
+
+    @Test
+    public void testWeight() {
+        LeastFrequentlyUsedTransienceStrategy strategy = getStrategy(1000, MockWeigher.class.getName());
+        LeastFrequentlyUsedTransienceManager manager = (LeastFrequentlyUsedTransienceManager) strategy.getTransienceManager(null);
+        for (int index = 0; index < 100; index++) {
+            manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", 10, 0));
+        }
+        Assert.assertEquals(100, manager.getSize());
+        Assert.assertEquals(1000L, manager.getWeightedSize());
+
+        // 更新实例时重新计算权重
+        manager.createInstance(0, MockEntityObject.instanceOf(0, "birdy0", "hong", 100, 0));
+        Assert.assertTrue(manager.getWeightedSize() <= 1000L);
+        Assert.assertTrue(manager.getSize() < 100);
+
+        // 超出最大权重的实例不会保留
+        manager.createInstance(-1, MockEntityObject.instanceOf(-1, "birdy", "hong", 1001, 0));
+        Assert.assertNull(manager.retrieveInstance(-1));
+        Assert.assertTrue(manager.getWeightedSize() <= 1000L);
+
+        manager.deleteInstance(0);
+        Assert.assertNull(manager.retrieveInstance(0));
+    }
+
+    /**
+     * 生成轨迹
+     * 
+     * <pre>
+     * 热点访问(偏斜分布)与只访问一次的扫描(例如重建排行榜)交替.
+     * </pre>
+     */
+    private int[] getTrace(int capacity) {
+        Random random = new Random(0L);
+        int hot = capacity / 2;
+        int rounds = 20;
+        int accesses = capacity * 10;
+        int[] trace = new int[rounds * (accesses + capacity * 2)];
+        int position = 0;
+        int scan = capacity;
+        for (int round = 0; round < rounds; round++) {
+            for (int access = 0; access < accesses; access++) {
+                double value = random.nextDouble();
+                trace[position++] = (int) (hot * value * value);
+            }
+            for (int access = 0; access < capacity * 2; access++) {
+                trace[position++] = scan++;
+            }
+        }
+        return trace;
+    }
+
+    private long replay(TransienceManager manager, int[] trace) {
+        long hit = 0L;
+        for (int id : trace) {
+            if (manager.retrieveInstance(id) == null) {
+                manager.createInstance(id, MockEntityObject.instanceOf(id, "birdy", "hong", id, 0));
+            } else {
+                hit++;
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * 轨迹重放比较命中率与吞吐量
+     */
+    @Test
+    public void testTrace() {
+        int capacity = 1000;
+        int[] trace = getTrace(capacity);
+
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MINIMUN_SIZE, String.valueOf(capacity));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_MAXIMUN_SIZE, String.valueOf(capacity));
+        configuration.put(LeastRecentlyUsedTransienceStrategy.PARAMETER_CONCURRENCY_LEVEL, String.valueOf(THREAD_SIZE));
+        LeastRecentlyUsedTransienceStrategy lruStrategy = new LeastRecentlyUsedTransienceStrategy("lru", configuration);
+        lruStrategy.start();
+        LeastFrequentlyUsedTransienceStrategy lfuStrategy = getStrategy(capacity, null);
+
+        long[] hits = new long[2];
+        int index = 0;
+        for (TransienceStrategy strategy : new TransienceStrategy[] { lruStrategy, lfuStrategy }) {
+            TransienceManager manager = strategy.getTransienceManager(null);
+            long begin = System.currentTimeMillis();
+            hits[index] = replay(manager, trace);
+            long time = System.currentTimeMillis() - begin;
+            String message = StringUtility.format("{}策略重放{}次访问,命中率{},耗时{}毫秒", strategy.getClass().getSimpleName(), trace.length, hits[index] * 1D / trace.length, time);
+            logger.debug(message);
+            index++;
+        }
+        Assert.assertTrue(hits[1] > hits[0]);
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        LeastFrequentlyUsedTransienceStrategy strategy = getStrategy(MAXIMUN_SIZE, null);
+        TransienceManager manager = strategy.getTransienceManager(null);
+
+        // 多线程并发读写操作
+        int threadSize = 100;
+        AtomicBoolean run = new AtomicBoolean(true);
+        AtomicLong operationCount = new AtomicLong();
+        for (int index = 0; index < threadSize; index++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (run.get()) {
+                        int readId = RandomUtility.randomInteger(0, MAXIMUN_SIZE + MINIMUN_SIZE);
+                        int wirteId = RandomUtility.randomInteger(0, MAXIMUN_SIZE + MINIMUN_SIZE);
+                        manager.createInstance(wirteId, MockEntityObject.instanceOf(wirteId, "birdy" + wirteId, "hong", 0, 0));
+                        manager.retrieveInstance(readId);
+                        operationCount.incrementAndGet();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread.sleep(TimeUnit.MILLISECONDS.convert(EXPIRE_SECONDS, TimeUnit.SECONDS));
+        run.set(false);
+        if (manager.getSize() == 0 || manager.getSize() > MAXIMUN_SIZE) {
+            Assert.fail();
+        }
+
+        String message = StringUtility.format("{}策略{}条线程在{}秒内执行{}次读写操作", strategy.getName(), threadSize, EXPIRE_SECONDS, operationCount.get());
+        logger.debug(message);
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class OffHeapTransienceStrategyTestCase {
+
+    static int DATA_SIZE = 10000;
+
+    private OffHeapTransienceStrategy getStrategy(long capacity, int slabSize, String codec) {
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(OffHeapTransienceStrategy.PARAMETER_CAPACITY, String.valueOf(capacity));
+        configuration.put(OffHeapTransienceStrategy.PARAMETER_SLAB_SIZE, String.valueOf(slabSize));
+        configuration.put(OffHeapTransienceStrategy.PARAMETER_CODEC, codec);
+        OffHeapTransienceStrategy strategy = new OffHeapTransienceStrategy("stratiegy", configuration);
+        strategy.start();
+        return strategy;
+    }
+
+    @Test
+    public void testCodec() {
+        for (String codec : new String[] { OffHeapTransienceStrategy.CODEC_STANDARD, OffHeapTransienceStrategy.CODEC_KRYO }) {
+            OffHeapTransienceStrategy strategy = getStrategy(1 << 24, 1 << 20, codec);
+            AtomicInteger hitCount = new AtomicInteger();
+            AtomicInteger missCount = new AtomicInteger();
+            AtomicLong occupiedBytes = new AtomicLong();
+            OffHeapTransienceManager<Integer, MockEntityObject> manager = (OffHeapTransienceManager<Integer, MockEntityObject>) strategy.getTransienceManager(new TransienceMonitor() {
+
+                @Override
+                public void notifyExchanged(Object key, Object value) {
+                }
+
+                @Override
+                public void notifyHit(Object key) {
+                    hitCount.incrementAndGet();
+                }
+
+                @Override
+                public void notifyMissed(Object key) {
+                    missCount.incrementAndGet();
+                }
+
+                @Override
+                public void notifyOccupied(long bytes) {
+                    occupiedBytes.set(bytes);
+                }
+
+            }, MockEntityObject.class);
+
+            for (int index = 0; index < DATA_SIZE; index++) {
+                manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+            }
+            Assert.assertThat(manager.getSize(), CoreMatchers.equalTo(DATA_SIZE));
+            for (int index = 0; index < DATA_SIZE; index++) {
+                MockEntityObject instance = manager.retrieveInstance(index);
+                Assert.assertThat(instance.getId(), CoreMatchers.equalTo(index));
+                Assert.assertThat(instance.getFirstName(), CoreMatchers.equalTo("birdy" + index));
+                Assert.assertThat(instance.getToken(), CoreMatchers.equalTo(index));
+            }
+            Assert.assertNull(manager.retrieveInstance(-1));
+            Assert.assertThat(hitCount.get(), CoreMatchers.equalTo(DATA_SIZE));
+            Assert.assertThat(missCount.get(), CoreMatchers.equalTo(1));
+            Assert.assertThat(occupiedBytes.get(), CoreMatchers.equalTo(manager.getOccupiedBytes()));
+            Assert.assertTrue(manager.getUsedBytes() <= manager.getOccupiedBytes());
+
+            // 删除释放空间
+            long usedBytes = manager.getUsedBytes();
+            Assert.assertNotNull(manager.deleteInstance(0));
+            Assert.assertNull(manager.retrieveInstance(0));
+            Assert.assertTrue(manager.getUsedBytes() < usedBytes);
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        int slabSize = 1 << 12;
+        OffHeapTransienceStrategy strategy = getStrategy(slabSize * 4, slabSize, OffHeapTransienceStrategy.CODEC_STANDARD);
+        AtomicInteger evictionCount = new AtomicInteger();
+        OffHeapTransienceManager<Integer, MockEntityObject> manager = (OffHeapTransienceManager<Integer, MockEntityObject>) strategy.getTransienceManager(new TransienceMonitor() {
+
+            @Override
+            public void notifyExchanged(Object key, Object value) {
+                evictionCount.incrementAndGet();
+            }
+
+        }, MockEntityObject.class);
+
+        for (int index = 0; index < DATA_SIZE; index++) {
+            manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+            // 保持热点实例
+            Assert.assertNotNull(manager.retrieveInstance(0));
+        }
+        // 堆外内存不会超过容量
+        Assert.assertThat(manager.getOccupiedBytes(), CoreMatchers.equalTo((long) slabSize * 4));
+        Assert.assertTrue(manager.getSize() < DATA_SIZE);
+        Assert.assertThat(manager.getEvictionCount(), CoreMatchers.equalTo((long) evictionCount.get()));
+        Assert.assertThat(manager.getSize() + evictionCount.get(), CoreMatchers.equalTo(DATA_SIZE));
+        Assert.assertNotNull(manager.retrieveInstance(0));
+        Assert.assertNotNull(manager.retrieveInstance(DATA_SIZE - 1));
+    }
+
+    /**
+     * 无锁检索与写入并发时,不会读取到被回收以后重新分配的块
+     */
+    @Test
+    public void testConcurrency() throws Exception {
+        int slabSize = 1 << 12;
+        OffHeapTransienceStrategy strategy = getStrategy(slabSize * 4, slabSize, OffHeapTransienceStrategy.CODEC_STANDARD);
+        OffHeapTransienceManager<Integer, MockEntityObject> manager = (OffHeapTransienceManager<Integer, MockEntityObject>) strategy.getTransienceManager(null, MockEntityObject.class);
+        int threadSize = 4;
+        AtomicInteger errorCount = new AtomicInteger();
+        AtomicInteger hitCount = new AtomicInteger();
+        Thread[] threads = new Thread[threadSize];
+        for (int thread = 0; thread < threadSize; thread++) {
+            threads[thread] = new Thread(() -> {
+                for (int index = 0; index < DATA_SIZE * 10; index++) {
+                    int id = index % 100;
+                    MockEntityObject instance = manager.retrieveInstance(id);
+                    if (instance != null) {
+                        hitCount.incrementAndGet();
+                        if (instance.getId() != id || !instance.getFirstName().startsWith("birdy" + id + "-")) {
+                            errorCount.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[thread].start();
+        }
+        for (int index = 0; index < DATA_SIZE * 10; index++) {
+            int id = index % 200;
+            manager.createInstance(id, MockEntityObject.instanceOf(id, "birdy" + id + "-" + index, "hong", index, index));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertThat(errorCount.get(), CoreMatchers.equalTo(0));
+        Assert.assertThat(manager.getHitCount(), CoreMatchers.equalTo((long) hitCount.get()));
+    }
+
+    /**
+     * 所有分片被小实例占用以后,大实例的级别从其它级别回收分片
+     */
+    @Test
+    public void testReclaim() {
+        int slabSize = 1 << 12;
+        OffHeapTransienceStrategy strategy = getStrategy(slabSize * 2, slabSize, OffHeapTransienceStrategy.CODEC_STANDARD);
+        TransienceStatistics statistics = new TransienceStatistics(null);
+        OffHeapTransienceManager<Integer, MockEntityObject> manager = (OffHeapTransienceManager<Integer, MockEntityObject>) strategy.getTransienceManager(statistics, MockEntityObject.class);
+
+        for (int index = 0; index < DATA_SIZE; index++) {
+            manager.createInstance(index, MockEntityObject.instanceOf(index, "birdy" + index, "hong", index, index));
+        }
+        Assert.assertThat(manager.getOccupiedBytes(), CoreMatchers.equalTo((long) slabSize * 2));
+        int size = manager.getSize();
+
+        String name = StringUtility.repeat('x', slabSize / 4);
+        manager.createInstance(-1, MockEntityObject.instanceOf(-1, name, "hong", 0, 0));
+        Assert.assertThat(manager.retrieveInstance(-1).getFirstName(), CoreMatchers.equalTo(name));
+        Assert.assertTrue(manager.getSize() < size);
+        Assert.assertThat(manager.getDropCount(), CoreMatchers.equalTo(0L));
+        Assert.assertThat(statistics.getExchangeCount(), CoreMatchers.equalTo(manager.getEvictionCount()));
+
+        // 超过分片大小的实例被丢弃
+        manager.createInstance(-2, MockEntityObject.instanceOf(-2, StringUtility.repeat('x', slabSize), "hong", 0, 0));
+        Assert.assertNull(manager.retrieveInstance(-2));
+        Assert.assertThat(manager.getDropCount(), CoreMatchers.equalTo(1L));
+        Assert.assertThat(statistics.getDropCount(), CoreMatchers.equalTo(1L));
+
+        // 移除不需要反序列化
+        long usedBytes = manager.getUsedBytes();
+        Assert.assertTrue(manager.removeInstance(-1));
+        Assert.assertFalse(manager.removeInstance(-1));
+        Assert.assertTrue(manager.getUsedBytes() < usedBytes);
+    }
+
+}
@@ -5,7 +5,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ WeakElementManagerTestCase.class, DelayedTransienceStrategyTestCase.class, LeastRecentlyUsedTransienceStrategyTestCase.class })
+@SuiteClasses({ WeakInterningMapTestCase.class, WeakElementManagerTestCase.class, DelayedTransienceStrategyTestCase.class, LeastRecentlyUsedTransienceStrategyTestCase.class, LeastFrequentlyUsedTransienceStrategyTestCase.class, OffHeapTransienceStrategyTestCase.class })
 public class TransienceTestSuite {
 
 }
@@ -0,0 +1,129 @@
+package com.jstarcraft.core.cache.transience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.cache.MockEntityObject;
+import com.jstarcraft.core.utility.RandomUtility;
+import com.jstarcraft.core.utility.StringUtility;
+
+public class WeakInterningMapTestCase {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    static int DATA_SIZE = 1000;
+    static int THREAD_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 多线程并发驻留同一批键,每个键只会创建一次并且得到相同的实例
+     */
+    @Test(timeout = 20000)
+    public void testConcurrency() throws Exception {
+        WeakInterningMap<Integer, MockEntityObject> map = new WeakInterningMap<>();
+        // 实例持有者
+        ConcurrentHashMap<Integer, MockEntityObject> holder = new ConcurrentHashMap<>();
+        AtomicInteger createCount = new AtomicInteger();
+        AtomicBoolean conflict = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(THREAD_SIZE);
+        for (int thread = 0; thread < THREAD_SIZE; thread++) {
+            new Thread(() -> {
+                try {
+                    for (int index = 0; index < DATA_SIZE; index++) {
+                        MockEntityObject instance = map.intern(index, (id) -> {
+                            createCount.incrementAndGet();
+                            return MockEntityObject.instanceOf(id, "birdy" + id, "hong", id, id);
+                        });
+                        MockEntityObject old = holder.putIfAbsent(index, instance);
+                        if (old != null && old != instance) {
+                            conflict.set(true);
+                        }
+                        if (map.get(index) != instance) {
+                            conflict.set(true);
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        Assert.assertFalse(conflict.get());
+        Assert.assertThat(createCount.get(), CoreMatchers.equalTo(DATA_SIZE));
+        Assert.assertThat(map.size(), CoreMatchers.equalTo(DATA_SIZE));
+
+        // 删除以后重新驻留
+        Assert.assertSame(holder.get(0), map.remove(0));
+        Assert.assertNull(map.get(0));
+        Assert.assertNotSame(holder.get(0), map.intern(0, (id) -> MockEntityObject.instanceOf(id, "birdy", "hong", id, id)));
+
+        // 测试垃圾回收(System.gc只是建议,有限次数地重试;size会清理引用队列)
+        holder.clear();
+        for (int times = 0; times < 50 && map.size() != 0; times++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Assert.assertThat(map.size(), CoreMatchers.equalTo(0));
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        WeakInterningMap<Integer, MockEntityObject> map = new WeakInterningMap<>();
+        // 实例持有者
+        MockEntityObject[] holder = new MockEntityObject[DATA_SIZE];
+        for (int index = 0; index < DATA_SIZE; index++) {
+            int id = index;
+            holder[index] = map.intern(id, (key) -> MockEntityObject.instanceOf(key, "birdy" + key, "hong", key, key));
+        }
+
+        // 多线程并发读写操作(读多写少)
+        int seconds = 5;
+        AtomicBoolean run = new AtomicBoolean(true);
+        AtomicLong operationCount = new AtomicLong();
+        // 工作线程中的断言失败不会传播到测试线程,所以记录以后统一断言
+        AtomicLong failureCount = new AtomicLong();
+        List<Thread> threads = new ArrayList<>(THREAD_SIZE);
+        for (int index = 0; index < THREAD_SIZE; index++) {
+            Thread thread = new Thread(() -> {
+                while (run.get()) {
+                    int id = RandomUtility.randomInteger(0, DATA_SIZE);
+                    if (operationCount.incrementAndGet() % 10 == 0) {
+                        if (map.intern(id, (key) -> MockEntityObject.instanceOf(key, "birdy" + key, "hong", key, key)) != holder[id]) {
+                            failureCount.incrementAndGet();
+                        }
+                    } else {
+                        if (map.get(id) != holder[id]) {
+                            failureCount.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread.sleep(TimeUnit.MILLISECONDS.convert(seconds, TimeUnit.SECONDS));
+        run.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertThat(failureCount.get(), CoreMatchers.equalTo(0L));
+        Assert.assertThat(map.size(), CoreMatchers.equalTo(DATA_SIZE));
+
+        String message = StringUtility.format("{}条线程在{}秒内执行{}次读写操作", THREAD_SIZE, seconds, operationCount.get());
+        logger.debug(message);
+    }
+
+}
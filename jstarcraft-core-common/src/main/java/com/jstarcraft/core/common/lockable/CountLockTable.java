@@ -0,0 +1,137 @@
+package com.jstarcraft.core.common.lockable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 计数锁表
+ * 
+ * <pre>
+ * 每个键独占一个{@link ReentrantLock},通过引用计数在无人持有时回收.
+ * 计数的增减依赖{@link ConcurrentHashMap#compute}的桶锁,不需要全局监视器.
+ * 批量加锁时按照键的自然顺序加锁({@link SortedSet}按照其自身顺序).
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ */
+public class CountLockTable<K extends Comparable<? super K>> implements LockTable<K> {
+
+    /**
+     * 计数锁
+     * 
+     * <pre>
+     * count只在{@link ConcurrentHashMap#compute}中修改
+     * </pre>
+     */
+    private static class CountLock extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        /** 引用计数 */
+        private int count;
+
+    }
+
+    /** 锁映射 */
+    private final ConcurrentHashMap<K, CountLock> locks;
+
+    public CountLockTable() {
+        this.locks = new ConcurrentHashMap<>();
+    }
+
+    public CountLockTable(int capacity) {
+        this.locks = new ConcurrentHashMap<>(capacity);
+    }
+
+    private List<K> sortKeys(Collection<K> keys) {
+        List<K> sorts = new ArrayList<>(keys);
+        if (!(keys instanceof SortedSet)) {
+            Collections.sort(sorts);
+        }
+        return sorts;
+    }
+
+    @Override
+    public void lock(K key) {
+        CountLock lock = locks.compute(key, (current, value) -> {
+            if (value == null) {
+                value = new CountLock();
+            }
+            value.count++;
+            return value;
+        });
+        lock.lock();
+    }
+
+    @Override
+    public boolean tryLock(K key) {
+        CountLock lock = locks.compute(key, (current, value) -> {
+            if (value == null) {
+                value = new CountLock();
+            }
+            value.count++;
+            return value;
+        });
+        if (lock.tryLock()) {
+            return true;
+        }
+        // 没有锁定,归还计数
+        locks.computeIfPresent(key, (current, value) -> {
+            return --value.count == 0 ? null : value;
+        });
+        return false;
+    }
+
+    @Override
+    public void unlock(K key) {
+        CountLock lock = locks.get(key);
+        if (lock == null) {
+            throw new IllegalMonitorStateException();
+        }
+        lock.unlock();
+        locks.computeIfPresent(key, (current, value) -> {
+            return --value.count == 0 ? null : value;
+        });
+    }
+
+    @Override
+    public void lock(Collection<K> keys) {
+        List<K> sorts = sortKeys(keys);
+        int position = 0;
+        try {
+            for (; position < sorts.size(); position++) {
+                lock(sorts.get(position));
+            }
+        } catch (RuntimeException exception) {
+            while (position-- > 0) {
+                unlock(sorts.get(position));
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public void unlock(Collection<K> keys) {
+        List<K> sorts = sortKeys(keys);
+        for (int position = sorts.size() - 1; position >= 0; position--) {
+            unlock(sorts.get(position));
+        }
+    }
+
+    /**
+     * 获取当前被引用的锁数量
+     * 
+     * @return
+     */
+    public int getSize() {
+        return locks.size();
+    }
+
+}
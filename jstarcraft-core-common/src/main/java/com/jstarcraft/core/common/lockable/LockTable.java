@@ -0,0 +1,55 @@
+package com.jstarcraft.core.common.lockable;
+
+import java.util.Collection;
+
+/**
+ * 锁表
+ * 
+ * <pre>
+ * 按照键管理互斥锁,用于代替全局synchronized的锁映射.
+ * 批量加锁时由实现负责保证加锁顺序,调用方必须使用相同的集合解锁.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ */
+public interface LockTable<K> {
+
+    /**
+     * 锁定指定键
+     * 
+     * @param key
+     */
+    void lock(K key);
+
+    /**
+     * 尝试锁定指定键(不等待)
+     * 
+     * @param key
+     * @return 是否锁定(成功时必须解锁)
+     */
+    boolean tryLock(K key);
+
+    /**
+     * 解锁指定键
+     * 
+     * @param key
+     */
+    void unlock(K key);
+
+    /**
+     * 按照锁表的顺序锁定指定键集合
+     * 
+     * @param keys
+     */
+    void lock(Collection<K> keys);
+
+    /**
+     * 按照锁表的逆序解锁指定键集合
+     * 
+     * @param keys
+     */
+    void unlock(Collection<K> keys);
+
+}
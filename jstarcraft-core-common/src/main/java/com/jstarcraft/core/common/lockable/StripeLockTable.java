@@ -0,0 +1,124 @@
+package com.jstarcraft.core.common.lockable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 条带锁表
+ * 
+ * <pre>
+ * 使用固定数量(2的幂)的{@link ReentrantLock},键通过扰动哈希映射到条带.
+ * 不同键可能共享条带,批量加锁时按照条带索引排序并去重,保证不会死锁.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ */
+public class StripeLockTable<K> implements LockTable<K> {
+
+    /** 条带掩码 */
+    private final int mask;
+
+    /** 条带 */
+    private final ReentrantLock[] stripes;
+
+    public StripeLockTable(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.mask = capacity - 1;
+        this.stripes = new ReentrantLock[capacity];
+        for (int index = 0; index < capacity; index++) {
+            this.stripes[index] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 扰动哈希(与{@link java.util.HashMap}一致,使高位参与运算)
+     * 
+     * @param key
+     * @return
+     */
+    private int getIndex(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & mask;
+    }
+
+    /**
+     * 获取排序并去重后的条带索引
+     * 
+     * @param keys
+     * @return
+     */
+    private int[] getIndexes(Collection<K> keys) {
+        int[] indexes = new int[keys.size()];
+        int size = 0;
+        for (K key : keys) {
+            indexes[size++] = getIndex(key);
+        }
+        Arrays.sort(indexes);
+        size = 0;
+        for (int index = 0; index < indexes.length; index++) {
+            if (size == 0 || indexes[size - 1] != indexes[index]) {
+                indexes[size++] = indexes[index];
+            }
+        }
+        return size == indexes.length ? indexes : Arrays.copyOf(indexes, size);
+    }
+
+    @Override
+    public void lock(K key) {
+        stripes[getIndex(key)].lock();
+    }
+
+    @Override
+    public boolean tryLock(K key) {
+        return stripes[getIndex(key)].tryLock();
+    }
+
+    @Override
+    public void unlock(K key) {
+        stripes[getIndex(key)].unlock();
+    }
+
+    @Override
+    public void lock(Collection<K> keys) {
+        int[] indexes = getIndexes(keys);
+        int position = 0;
+        try {
+            for (; position < indexes.length; position++) {
+                stripes[indexes[position]].lock();
+            }
+        } catch (RuntimeException exception) {
+            while (position-- > 0) {
+                stripes[indexes[position]].unlock();
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public void unlock(Collection<K> keys) {
+        int[] indexes = getIndexes(keys);
+        for (int position = indexes.length - 1; position >= 0; position--) {
+            stripes[indexes[position]].unlock();
+        }
+    }
+
+    /**
+     * 获取条带数量
+     * 
+     * @return
+     */
+    public int getSize() {
+        return stripes.length;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.jstarcraft.core.common.lockable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jstarcraft.core.utility.RandomUtility;
+
+public class LockTableTestCase {
+
+    private void testMutex(LockTable<Integer> table) throws Exception {
+        int count = 16; // 线程数
+        int times = 10000; // 任务数
+        int[] counts = new int[10];
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int thread = 0; thread < count; thread++) {
+            executor.submit(() -> {
+                for (int time = 0; time < times; time++) {
+                    int key = RandomUtility.randomInteger(0, counts.length);
+                    table.lock(key);
+                    try {
+                        counts[key]++;
+                    } finally {
+                        table.unlock(key);
+                    }
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        executor.shutdown();
+        int sum = 0;
+        for (int value : counts) {
+            sum += value;
+        }
+        Assert.assertThat(sum, CoreMatchers.equalTo(count * times));
+    }
+
+    private void testOrder(LockTable<Integer> table) throws Exception {
+        int count = 16; // 线程数
+        int times = 10000; // 任务数
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int thread = 0; thread < count; thread++) {
+            executor.submit(() -> {
+                for (int time = 0; time < times; time++) {
+                    // 乱序且可能重复的键集合
+                    List<Integer> keys = Arrays.asList(RandomUtility.randomInteger(0, 100), RandomUtility.randomInteger(0, 100), RandomUtility.randomInteger(0, 100));
+                    table.lock(keys);
+                    try {
+                        Thread.yield();
+                    } finally {
+                        table.unlock(keys);
+                    }
+                }
+                latch.countDown();
+            });
+        }
+        // 死锁时无法在限定时间内完成
+        Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private void testTry(LockTable<Integer> table) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch unlocked = new CountDownLatch(1);
+        executor.submit(() -> {
+            table.lock(0);
+            try {
+                locked.countDown();
+                unlocked.await();
+            } finally {
+                table.unlock(0);
+            }
+            return null;
+        });
+        locked.await();
+        // 其它线程持有时不等待
+        Assert.assertFalse(table.tryLock(0));
+        unlocked.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(table.tryLock(0));
+        try {
+            // 可重入
+            Assert.assertTrue(table.tryLock(0));
+            table.unlock(0);
+        } finally {
+            table.unlock(0);
+        }
+    }
+
+    @Test
+    public void testStripeLockTable() throws Exception {
+        StripeLockTable<Integer> table = new StripeLockTable<>(5);
+        Assert.assertThat(table.getSize(), CoreMatchers.equalTo(8));
+        testMutex(table);
+        testTry(table);
+        // 条带数量远小于键数量,保证不同键共享条带的情况
+        testOrder(table);
+    }
+
+    @Test
+    public void testCountLockTable() throws Exception {
+        CountLockTable<Integer> table = new CountLockTable<>();
+        testMutex(table);
+        testTry(table);
+        testOrder(table);
+        // 无人持有时锁应该被回收
+        Assert.assertThat(table.getSize(), CoreMatchers.equalTo(0));
+    }
+
+}
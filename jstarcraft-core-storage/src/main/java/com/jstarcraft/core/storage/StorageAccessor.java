@@ -1,10 +1,17 @@
 package com.jstarcraft.core.storage;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
 
 import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.common.reflection.ReflectionUtility;
 
 /**
  * ORM访问器
@@ -66,6 +73,99 @@ public interface StorageAccessor {
      */
     <K extends Comparable, T extends IdentityObject<K>> boolean updateInstance(Class<T> clazz, T object);
 
+    /**
+     * 根据主键,更新指定对象的部分字段
+     * 
+     * <pre>
+     * 默认获取对象并且修改字段之后调用{@link #updateInstance},访问器应该尽量提供原生实现(只更新指定的纵列).
+     * 原生实现不维护版本号.
+     * </pre>
+     * 
+     * @param clazz
+     * @param id
+     * @param values 字段名称=值
+     * @return
+     */
+    default <K extends Comparable, T extends IdentityObject<K>> boolean updateInstance(Class<T> clazz, K id, Map<String, Object> values) {
+        T object = getInstance(clazz, id);
+        if (object == null) {
+            return false;
+        }
+        for (Entry<String, Object> keyValue : values.entrySet()) {
+            Field field = ReflectionUtility.getField(clazz, keyValue.getKey());
+            ReflectionUtility.makeAccessible(field);
+            ReflectionUtility.setField(field, object, keyValue.getValue());
+        }
+        return updateInstance(clazz, object);
+    }
+
+    // 批量增删改接口部分
+
+    /**
+     * 批量保存指定的对象集合,并返回成功的数量
+     * 
+     * <pre>
+     * 默认逐个调用{@link #createInstance},访问器应该尽量提供原生的批量实现.
+     * 原生批量部分失败时抛出{@link com.jstarcraft.core.storage.exception.StorageBatchException}指明失败的对象.
+     * </pre>
+     * 
+     * @param clazz
+     * @param objects
+     * @return
+     */
+    default <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+        int count = 0;
+        for (T object : objects) {
+            if (createInstance(clazz, object)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 根据主键集合,批量删除指定的对象,并返回成功的数量
+     * 
+     * <pre>
+     * 默认逐个调用{@link #deleteInstance},访问器应该尽量提供原生的批量实现.
+     * </pre>
+     * 
+     * @param clazz
+     * @param ids
+     * @return
+     */
+    default <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+        int count = 0;
+        for (K id : ids) {
+            if (deleteInstance(clazz, id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 批量更新指定的对象集合,并返回成功的数量
+     * 
+     * <pre>
+     * 默认逐个调用{@link #updateInstance},访问器应该尽量提供原生的批量实现.
+     * 原生批量部分失败时抛出{@link com.jstarcraft.core.storage.exception.StorageBatchException}指明失败的对象.
+     * </pre>
+     * 
+     * @param clazz
+     * @param objects
+     * @return
+     */
+    default <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+        int count = 0;
+        for (T object : objects) {
+            if (updateInstance(clazz, object)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * 查询指定范围的最大主键标识
      * 
@@ -137,6 +237,57 @@ public interface StorageAccessor {
      */
     <K extends Comparable, T extends IdentityObject<K>> List<T> queryUnion(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination);
 
+    /**
+     * 查询按照指定属性排序的前size个对象
+     * 
+     * <pre>
+     * 属性值为null的对象不包含在结果中.
+     * 默认通过{@link #queryIdentities}查询属性值,在内存中只保留前size个主键(堆),再按照主键查询对象;
+     * 访问器应该尽量提供原生的排序与限制数量的查询.
+     * </pre>
+     * 
+     * @param clazz
+     * @param name 排序属性
+     * @param size 数量
+     * @param descending 是否降序
+     * @return 按照属性排序的对象列表
+     */
+    default <K extends Comparable, T extends IdentityObject<K>> List<T> queryOrder(Class<T> clazz, String name, int size, boolean descending) {
+        if (size < 1) {
+            return new ArrayList<>(0);
+        }
+        Comparator<Comparable> comparator = descending ? Comparator.<Comparable>naturalOrder().reversed() : Comparator.<Comparable>naturalOrder();
+        // 堆顶是保留的主键中排在最后的
+        PriorityQueue<Entry<K, Comparable>> heap = new PriorityQueue<>(size, (left, right) -> comparator.compare(right.getValue(), left.getValue()));
+        Map<K, Comparable> values = queryIdentities(clazz, name, new StorageCondition<Comparable>(ConditionType.All));
+        for (Entry<K, Comparable> keyValue : values.entrySet()) {
+            if (keyValue.getValue() == null) {
+                continue;
+            }
+            heap.offer(keyValue);
+            if (heap.size() > size) {
+                heap.poll();
+            }
+        }
+        if (heap.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        String primaryName = null;
+        for (StorageMetadata metadata : getAllMetadata()) {
+            if (metadata.getOrmClass() == clazz) {
+                primaryName = metadata.getPrimaryName();
+                break;
+            }
+        }
+        Map<K, Comparable> orders = new HashMap<>();
+        for (Entry<K, Comparable> keyValue : heap) {
+            orders.put(keyValue.getKey(), keyValue.getValue());
+        }
+        List<T> instances = queryInstances(clazz, primaryName, new StorageCondition<>(ConditionType.In, orders.keySet().toArray()));
+        instances.sort((left, right) -> comparator.compare(orders.get(left.getId()), orders.get(right.getId())));
+        return instances;
+    }
+
     /**
      * 查询对象总数
      * 
@@ -3,6 +3,15 @@ package com.jstarcraft.core.storage;
 /**
  * ORM分页
  * 
+ * <pre>
+ * 支持三种分页方式:
+ * 基于页码的分页,按照偏移量跳过之前的记录,页码越大代价越高;
+ * 基于游标的分页,从上一页最后一条记录之后继续查询,代价与页码无关.
+ * 游标是不透明的字符串,由访问器在查询以后通过{@link #getNext()}提供,调用方不需要理解其内容(目前只有Lucene支持);
+ * 基于键集的分页,按照主键或者索引属性升序,查询大于上一页最后一个值的记录,代价与页码无关.
+ * 属性的值必须唯一(通常是主键),否则值相同的记录在页之间会被跳过.
+ * </pre>
+ * 
  * @author Birdy
  *
  */
@@ -12,13 +21,28 @@ public class StoragePagination {
     private final int page;
     /** 大小(至少为1) */
     private final int size;
+    /** 游标(基于页码的分页为null,第一页为空字符串) */
+    private final String cursor;
+    /** 下一页的游标(由访问器在查询以后设置,没有更多记录时为null) */
+    private volatile String next;
+    /** 键集的属性(基于键集的分页为主键或者索引属性,否则为null) */
+    private final String key;
+    /** 键集的值(上一页最后一条记录的属性值,第一页为null) */
+    private final Comparable value;
 
     public StoragePagination(int page, int size) {
+        this(page, size, null, null, null);
+    }
+
+    private StoragePagination(int page, int size, String cursor, String key, Comparable value) {
         if (page < 1 || size < 1) {
             throw new IllegalArgumentException("分页的页码与大小至少为1");
         }
         this.page = page;
         this.size = size;
+        this.cursor = cursor;
+        this.key = key;
+        this.value = value;
     }
 
     /**
@@ -57,4 +81,93 @@ public class StoragePagination {
         return size;
     }
 
+    /**
+     * 是否基于游标分页
+     * 
+     * @return
+     */
+    public boolean isCursor() {
+        return cursor != null;
+    }
+
+    /**
+     * 获取分页游标
+     * 
+     * @return 基于页码的分页为null,第一页为空字符串
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * 获取下一页的游标
+     * 
+     * @return 没有更多记录时为null
+     */
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * 设置下一页的游标(由访问器调用)
+     * 
+     * @param next
+     */
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    /**
+     * 是否基于键集分页
+     * 
+     * @return
+     */
+    public boolean isKeyset() {
+        return key != null;
+    }
+
+    /**
+     * 获取键集的属性
+     * 
+     * @return 不是基于键集的分页时为null
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 获取键集的值
+     * 
+     * @return 第一页为null
+     */
+    public Comparable getValue() {
+        return value;
+    }
+
+    /**
+     * 基于游标分页
+     * 
+     * @param size
+     * @param cursor 上一页的{@link #getNext()},第一页为null
+     * @return
+     */
+    public static StoragePagination instanceOf(int size, String cursor) {
+        return new StoragePagination(1, size, cursor == null ? "" : cursor, null, null);
+    }
+
+    /**
+     * 基于键集分页
+     * 
+     * @param size
+     * @param key 主键或者索引属性
+     * @param value 上一页最后一条记录的属性值,第一页为null
+     * @return
+     */
+    public static StoragePagination instanceOf(int size, String key, Comparable value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键集的属性不能为null");
+        }
+        return new StoragePagination(1, size, null, key, value);
+    }
+
 }
@@ -14,6 +14,7 @@ import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -291,6 +292,61 @@ public class BerkeleyAccessor implements StorageAccessor {
         return manager.updateInstance(transactor, object);
     }
 
+    /**
+     * 在一个事务中执行批量操作
+     * 
+     * <pre>
+     * 如果当前线程已经打开事务,则直接使用该事务;
+     * 否则为整批操作打开一个事务,避免每个对象一个事务.
+     * </pre>
+     * 
+     * @param elements
+     * @param operation
+     * @return
+     */
+    private <E> int executeBatch(Collection<E> elements, Predicate<E> operation) {
+        boolean open = !temporary && transactors.get() == null;
+        if (open) {
+            openTransactor(BerkeleyIsolation.READ_COMMITTED);
+        }
+        boolean interrupt = true;
+        try {
+            int count = 0;
+            for (E element : elements) {
+                if (operation.test(element)) {
+                    count++;
+                }
+            }
+            interrupt = false;
+            return count;
+        } finally {
+            if (open) {
+                closeTransactor(interrupt);
+            }
+        }
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+        return executeBatch(objects, (object) -> {
+            return createInstance(clazz, object);
+        });
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+        return executeBatch(ids, (id) -> {
+            return deleteInstance(clazz, id);
+        });
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+        return executeBatch(objects, (object) -> {
+            return updateInstance(clazz, object);
+        });
+    }
+
     @Override
     public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
         BerkeleyManager<K, T> manager = managers.get(clazz);
@@ -4,9 +4,11 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +18,7 @@ import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StorageIterator;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.berkeley.exception.BerkeleyOperationException;
 import com.jstarcraft.core.utility.ClassUtility;
 import com.jstarcraft.core.utility.StringUtility;
 import com.sleepycat.collections.StoredSortedMap;
@@ -23,6 +26,7 @@ import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.persist.EntityCursor;
+import com.sleepycat.persist.EntityIndex;
 import com.sleepycat.persist.EntityJoin;
 import com.sleepycat.persist.EntityStore;
 import com.sleepycat.persist.ForwardCursor;
@@ -325,7 +329,89 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 		return count;
 	}
 
+	/**
+	 * 按照键集检索
+	 * 
+	 * <pre>
+	 * Berkeley的索引按照主键有序,所以键集只支持主键:
+	 * 游标直接定位到上一页最后一个主键之后,只读取一页大小的实例,不需要跳过之前的实例.
+	 * 交集以第一个条件的次键子索引驱动,其它条件通过次键子索引判断是否包含;
+	 * 并集按照主键归并各个条件的次键子索引(同时去除重复的实例).
+	 * </pre>
+	 * 
+	 * @param transactor
+	 * @param condition 条件(null表示所有实例)
+	 * @param intersection 是否交集
+	 * @param pagination
+	 * @return
+	 */
+	private List<T> retrieveKeyset(BerkeleyTransactor transactor, Map<String, Object> condition, boolean intersection, StoragePagination pagination) {
+		if (!metadata.getPrimaryName().equals(pagination.getKey())) {
+			throw new BerkeleyOperationException(StringUtility.format("键集只支持主键[{}]", metadata.getPrimaryName()));
+		}
+		Transaction transaction = transactor == null ? null : transactor.getTransaction();
+		CursorConfig cursorModel = transactor == null ? null : transactor.getIsolation().getCursorModel();
+		K from = (K) pagination.getValue();
+		int size = pagination.getSize();
+		ArrayList<T> instances = new ArrayList<>(size);
+		if (condition == null) {
+			try (ForwardCursor<T> cursor = primaryIndex.entities(transaction, from, false, null, false, cursorModel)) {
+				collect(instances, cursor, size);
+			}
+			return instances;
+		}
+		if (intersection) {
+			Iterator<Entry<String, Object>> iterator = condition.entrySet().iterator();
+			Entry<String, Object> keyValue = iterator.next();
+			EntityIndex<K, T> index = secondaryIndexes.get(keyValue.getKey()).subIndex(keyValue.getValue());
+			ArrayList<EntityIndex<K, T>> indexes = new ArrayList<>(condition.size() - 1);
+			while (iterator.hasNext()) {
+				keyValue = iterator.next();
+				indexes.add(secondaryIndexes.get(keyValue.getKey()).subIndex(keyValue.getValue()));
+			}
+			LockMode lockMode = transactor == null ? null : transactor.getIsolation().getLockMode();
+			try (ForwardCursor<T> cursor = index.entities(transaction, from, false, null, false, cursorModel)) {
+				T element;
+				while (instances.size() < size && (element = cursor.next()) != null) {
+					boolean contain = true;
+					for (EntityIndex<K, T> term : indexes) {
+						if (!term.contains(transaction, element.getId(), lockMode)) {
+							contain = false;
+							break;
+						}
+					}
+					if (contain) {
+						instances.add(element);
+					}
+				}
+			}
+			return instances;
+		}
+		TreeMap<K, T> union = new TreeMap<>();
+		for (Entry<String, Object> keyValue : condition.entrySet()) {
+			EntityIndex<K, T> index = secondaryIndexes.get(keyValue.getKey()).subIndex(keyValue.getValue());
+			try (ForwardCursor<T> cursor = index.entities(transaction, from, false, null, false, cursorModel)) {
+				T element;
+				int count = 0;
+				while (count < size && (element = cursor.next()) != null) {
+					union.put(element.getId(), element);
+					count++;
+				}
+			}
+		}
+		for (T instance : union.values()) {
+			if (instances.size() == size) {
+				break;
+			}
+			instances.add(instance);
+		}
+		return instances;
+	}
+
 	public List<T> queryInstances(BerkeleyTransactor transactor, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			return retrieveKeyset(transactor, null, true, pagination);
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		ArrayList<T> instances = new ArrayList<>();
 		long ignore = pagination.getFirst();
@@ -340,6 +426,9 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 	}
 
 	public List<T> queryIntersection(BerkeleyTransactor transactor, Map<String, Object> condition, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			return retrieveKeyset(transactor, condition, true, pagination);
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		EntityJoin<K, T> join = new EntityJoin<K, T>(primaryIndex);
 		for (Entry<String, Object> keyValue : condition.entrySet()) {
@@ -358,6 +447,9 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 	}
 
 	public List<T> queryUnion(BerkeleyTransactor transactor, Map<String, Object> condition, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			return retrieveKeyset(transactor, condition, false, pagination);
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		long ignore = pagination.getFirst();
 		long size = pagination.getSize();
@@ -412,6 +504,12 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 	}
 
 	public void iterateInstances(StorageIterator<T> iterator, BerkeleyTransactor transactor, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			for (T element : retrieveKeyset(transactor, null, true, pagination)) {
+				iterator.iterate(element);
+			}
+			return;
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		long first = pagination.getFirst();
 		long last = pagination.getLast();
@@ -431,6 +529,12 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 	}
 
 	public void iterateIntersection(StorageIterator<T> iterator, BerkeleyTransactor transactor, Map<String, Object> condition, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			for (T element : retrieveKeyset(transactor, condition, true, pagination)) {
+				iterator.iterate(element);
+			}
+			return;
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		EntityJoin<K, T> join = new EntityJoin<K, T>(primaryIndex);
 		for (Entry<String, Object> keyValue : condition.entrySet()) {
@@ -455,6 +559,12 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 	}
 
 	public void iterateUnion(StorageIterator<T> iterator, BerkeleyTransactor transactor, Map<String, Object> condition, StoragePagination pagination) {
+		if (pagination.isKeyset()) {
+			for (T element : retrieveKeyset(transactor, condition, false, pagination)) {
+				iterator.iterate(element);
+			}
+			return;
+		}
 		Transaction transaction = transactor == null ? null : transactor.getTransaction();
 		long first = pagination.getFirst();
 		long last = pagination.getLast();
@@ -480,4 +590,4 @@ public class BerkeleyManager<K extends Comparable, T extends IdentityObject<K>>
 		}
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
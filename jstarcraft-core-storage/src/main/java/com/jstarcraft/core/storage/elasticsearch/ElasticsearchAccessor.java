@@ -1,6 +1,8 @@
 package com.jstarcraft.core.storage.elasticsearch;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -8,13 +10,23 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
 import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.support.ElasticsearchEntityInformation;
@@ -29,7 +41,10 @@ import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StorageIterator;
 import com.jstarcraft.core.storage.StorageMetadata;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.exception.StorageAccessException;
+import com.jstarcraft.core.storage.exception.StorageBatchException;
 import com.jstarcraft.core.storage.exception.StorageException;
+import com.jstarcraft.core.utility.StringUtility;
 
 /**
  * Elasticsearch访问器
@@ -46,8 +61,14 @@ public class ElasticsearchAccessor implements StorageAccessor {
 
     private ElasticsearchOperations template;
 
+    /** 原生客户端(批量删除需要每个对象的结果) */
+    private RestHighLevelClient client;
+
     public ElasticsearchAccessor(Collection<Class<?>> classes, ElasticsearchOperations template) {
         this.template = template;
+        if (template instanceof ElasticsearchRestTemplate) {
+            this.client = ((ElasticsearchRestTemplate) template).getClient();
+        }
         ElasticsearchRepositoryFactory factory = new ElasticsearchRepositoryFactory(template);
         for (Class<?> ormClass : classes) {
             ElasticsearchMetadata metadata = new ElasticsearchMetadata(ormClass);
@@ -114,6 +135,69 @@ public class ElasticsearchAccessor implements StorageAccessor {
         }
     }
 
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+        if (objects.isEmpty()) {
+            return 0;
+        }
+        SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
+        // saveAll使用单个bulk请求并且只刷新一次
+        repository.saveAll(objects);
+        return objects.size();
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        if (client == null) {
+            throw new StorageAccessException(StringUtility.format("批量删除[{}]需要基于RestHighLevelClient的模板", clazz));
+        }
+        String index = template.getIndexCoordinatesFor(clazz).getIndexName();
+        // 单个bulk请求并且只刷新一次
+        BulkRequest request = new BulkRequest();
+        request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        for (K id : ids) {
+            request.add(new DeleteRequest(index, id.toString()));
+        }
+        BulkResponse response;
+        try {
+            response = client.bulk(request, RequestOptions.DEFAULT);
+        } catch (IOException exception) {
+            throw new StorageAccessException(exception);
+        }
+        BulkItemResponse[] items = response.getItems();
+        int count = 0;
+        int[] failures = new int[items.length];
+        int size = 0;
+        for (BulkItemResponse item : items) {
+            if (item.isFailed()) {
+                failures[size++] = item.getItemId();
+            } else if (item.getResponse().getResult() == DocWriteResponse.Result.DELETED) {
+                count++;
+            }
+        }
+        if (size > 0) {
+            // 失败的对象不影响其它对象
+            failures = Arrays.copyOf(failures, size);
+            Arrays.sort(failures);
+            throw new StorageBatchException(StringUtility.format("批量操作[{}]个对象失败", size), new StorageAccessException(response.buildFailureMessage()), failures);
+        }
+        return count;
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+        if (objects.isEmpty()) {
+            return 0;
+        }
+        SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
+        // saveAll使用单个bulk请求并且只刷新一次
+        repository.saveAll(objects);
+        return objects.size();
+    }
+
     @Override
     public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
         SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
@@ -225,14 +309,39 @@ public class ElasticsearchAccessor implements StorageAccessor {
         return page.getContent();
     }
 
+    /**
+     * 按照分页构建查询
+     * 
+     * <pre>
+     * 基于键集的分页转换为key的范围过滤并且按照key升序,总是检索第一页,不会受到from + size的深度分页限制;
+     * 基于页码的分页转换为from + size.
+     * </pre>
+     * 
+     * @param builder
+     * @param query
+     * @param pagination
+     */
+    private void paginate(NativeSearchQueryBuilder builder, QueryBuilder query, StoragePagination pagination) {
+        if (pagination != null && pagination.isKeyset()) {
+            String key = pagination.getKey();
+            Comparable value = pagination.getValue();
+            if (value != null) {
+                // 原有的条件作为must,保证should条件仍然至少满足一个
+                query = QueryBuilders.boolQuery().must(query).filter(QueryBuilders.rangeQuery(key).gt(value));
+            }
+            builder.withSort(SortBuilders.fieldSort(key).order(SortOrder.ASC));
+            builder.withPageable(PageRequest.of(0, pagination.getSize()));
+        } else if (pagination != null) {
+            builder.withPageable(PageRequest.of(pagination.getPage() - 1, pagination.getSize()));
+        }
+        builder.withQuery(query);
+    }
+
     @Override
     public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
         SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
         NativeSearchQueryBuilder builder = new NativeSearchQueryBuilder();
-        if (pagination != null) {
-            builder.withPageable(PageRequest.of(pagination.getPage() - 1, pagination.getSize()));
-        }
-        builder.withQuery(QueryBuilders.matchAllQuery());
+        paginate(builder, QueryBuilders.matchAllQuery(), pagination);
         Page<T> page = repository.search(builder.build());
         return page.getContent();
     }
@@ -241,14 +350,11 @@ public class ElasticsearchAccessor implements StorageAccessor {
     public <K extends Comparable, T extends IdentityObject<K>> List<T> queryIntersection(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
         SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
         NativeSearchQueryBuilder builder = new NativeSearchQueryBuilder();
-        if (pagination != null) {
-            builder.withPageable(PageRequest.of(pagination.getPage() - 1, pagination.getSize()));
-        }
         BoolQueryBuilder query = QueryBuilders.boolQuery();
         for (Entry<String, Object> term : condition.entrySet()) {
             query.must(QueryBuilders.termQuery(term.getKey(), term.getValue()));
         }
-        builder.withQuery(query);
+        paginate(builder, query, pagination);
         Page<T> page = repository.search(builder.build());
         return page.getContent();
     }
@@ -257,14 +363,11 @@ public class ElasticsearchAccessor implements StorageAccessor {
     public <K extends Comparable, T extends IdentityObject<K>> List<T> queryUnion(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
         SimpleElasticsearchRepository<T, K> repository = repositories.get(clazz);
         NativeSearchQueryBuilder builder = new NativeSearchQueryBuilder();
-        if (pagination != null) {
-            builder.withPageable(PageRequest.of(pagination.getPage() - 1, pagination.getSize()));
-        }
         BoolQueryBuilder query = QueryBuilders.boolQuery();
         for (Entry<String, Object> term : condition.entrySet()) {
             query.should(QueryBuilders.termQuery(term.getKey(), term.getValue()));
         }
-        builder.withQuery(query);
+        paginate(builder, query, pagination);
         Page<T> page = repository.search(builder.build());
         return page.getContent();
     }
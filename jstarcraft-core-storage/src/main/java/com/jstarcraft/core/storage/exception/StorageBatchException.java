@@ -0,0 +1,34 @@
+package com.jstarcraft.core.storage.exception;
+
+/**
+ * 仓储批量异常
+ * 
+ * <pre>
+ * 批量操作部分失败时抛出,携带失败对象在批量集合中的索引,
+ * 调用方可以只对失败的对象逐个重试或者记录异常,其它对象已经写入.
+ * </pre>
+ * 
+ * @author Birdy
+ */
+public class StorageBatchException extends StorageAccessException {
+
+    private static final long serialVersionUID = 4619213364935713752L;
+
+    /** 失败对象的索引(升序) */
+    private final int[] failures;
+
+    public StorageBatchException(String message, Throwable cause, int[] failures) {
+        super(message, cause);
+        this.failures = failures;
+    }
+
+    /**
+     * 获取失败对象的索引
+     * 
+     * @return
+     */
+    public int[] getFailures() {
+        return failures;
+    }
+
+}
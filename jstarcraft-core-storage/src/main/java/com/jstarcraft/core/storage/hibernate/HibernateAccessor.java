@@ -1,6 +1,7 @@
 package com.jstarcraft.core.storage.hibernate;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -9,12 +10,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.LockModeType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
@@ -58,6 +61,14 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 	/** DELETE Class clazz WHERE clazz.field = ? */
 	private final static String DELETE_HQL = "DELETE {} clazz WHERE clazz.{} = ?0";
 
+	/** DELETE Class clazz WHERE clazz.field IN (?) */
+	private final static String DELETES_HQL = "DELETE {} clazz WHERE clazz.{} IN (?0)";
+
+	/** UPDATE Class clazz SET clazz.field = ?1 WHERE clazz.id = ?0 */
+	private final static String UPDATE_HQL = "UPDATE {} clazz SET {} WHERE clazz.{} = ?0";
+
+	private final static String SET_CLAUSE = "clazz.{} = ?{}";
+
 	/** 查询指定范围的最大主键标识 */
 	private final static String MAXIMUM_ID = "SELECT MAX(clazz.{}) FROM {} clazz WHERE clazz.{} BETWEEN ?0 AND ?1";
 
@@ -85,6 +96,9 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 	/** HQL删除语句 */
 	private Map<Class, String> deleteHqls = new ConcurrentHashMap<>();
 
+	/** HQL批量删除语句 */
+	private Map<Class, String> deletesHqls = new ConcurrentHashMap<>();
+
 	/** HQL查询语句(查询指定范围的最大主键标识),用于IdentityManager */
 	private Map<Class, String> maximumIdHqls = new ConcurrentHashMap<>();
 
@@ -105,6 +119,8 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 					metadatas.put(ormName, metadata);
 					String deleteHql = StringUtility.format(DELETE_HQL, ormClass.getSimpleName(), metadata.getPrimaryName());
 					deleteHqls.put(ormClass, deleteHql);
+					String deletesHql = StringUtility.format(DELETES_HQL, ormClass.getSimpleName(), metadata.getPrimaryName());
+					deletesHqls.put(ormClass, deletesHql);
 
 					String maximumIdHql = StringUtility.format(MAXIMUM_ID, metadata.getPrimaryName(), ormClass.getSimpleName(), metadata.getPrimaryName());
 					maximumIdHqls.put(ormClass, maximumIdHql);
@@ -205,6 +221,125 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 		});
 	}
 
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> boolean updateInstance(Class<T> clazz, K id, Map<String, Object> values) {
+		if (values.isEmpty()) {
+			return false;
+		}
+		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<Boolean>() {
+
+			@Override
+			public Boolean doInHibernate(Session session) throws HibernateException {
+				// 只更新指定的字段
+				HibernateMetadata metadata = metadatas.get(clazz.getName());
+				List<Object> parameters = new ArrayList<>(values.size());
+				StringBuilder buffer = new StringBuilder();
+				for (Entry<String, Object> keyValue : values.entrySet()) {
+					if (buffer.length() > 0) {
+						buffer.append(", ");
+					}
+					parameters.add(keyValue.getValue());
+					buffer.append(StringUtility.format(SET_CLAUSE, keyValue.getKey(), parameters.size()));
+				}
+				String hql = StringUtility.format(UPDATE_HQL, clazz.getSimpleName(), buffer.toString(), metadata.getPrimaryName());
+				Query<?> query = session.createQuery(hql);
+				query.setParameter(0, id);
+				for (int index = 0, size = parameters.size(); index < size; index++) {
+					query.setParameter(index + 1, parameters.get(index));
+				}
+				return query.executeUpdate() > 0;
+			}
+
+		});
+	}
+
+	/**
+	 * 使用JDBC批量执行指定的操作,每BATCH_SIZE个对象刷新一次会话
+	 * 
+	 * <pre>
+	 * 刷新以后只分离本次批量关联到会话的对象,调用方或者外围事务持有的其它实体保持不变.
+	 * </pre>
+	 * 
+	 * @param session
+	 * @param objects
+	 * @param operation
+	 * @return
+	 */
+	private <T> int executeBatch(Session session, Collection<T> objects, Consumer<T> operation) {
+		Integer size = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(BATCH_SIZE);
+		List<T> attaches = new ArrayList<>(Math.min(objects.size(), BATCH_SIZE));
+		try {
+			int count = 0;
+			for (T object : objects) {
+				if (!session.contains(object)) {
+					attaches.add(object);
+				}
+				operation.accept(object);
+				if (++count % BATCH_SIZE == 0) {
+					session.flush();
+					detach(session, attaches);
+				}
+			}
+			session.flush();
+			detach(session, attaches);
+			return count;
+		} finally {
+			session.setJdbcBatchSize(size);
+		}
+	}
+
+	private <T> void detach(Session session, List<T> objects) {
+		for (T object : objects) {
+			session.detach(object);
+		}
+		objects.clear();
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<Integer>() {
+
+			@Override
+			public Integer doInHibernate(Session session) throws HibernateException {
+				return executeBatch(session, objects, session::save);
+			}
+
+		});
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<Integer>() {
+
+			@Override
+			public Integer doInHibernate(Session session) throws HibernateException {
+				String hql = deletesHqls.get(clazz);
+				List<K> keys = new ArrayList<>(ids);
+				int count = 0;
+				for (int from = 0, size = keys.size(); from < size; from += BATCH_SIZE) {
+					Query<?> query = session.createQuery(hql);
+					query.setParameterList(0, keys.subList(from, Math.min(from + BATCH_SIZE, size)));
+					count += query.executeUpdate();
+				}
+				return count;
+			}
+
+		});
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<Integer>() {
+
+			@Override
+			public Integer doInHibernate(Session session) throws HibernateException {
+				return executeBatch(session, objects, session::update);
+			}
+
+		});
+	}
+
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
 		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<K>() {
@@ -340,6 +475,45 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 		});
 	}
 
+	/**
+	 * 按照分页构建查询
+	 * 
+	 * <pre>
+	 * 基于键集的分页转换为WHERE key > ? ORDER BY key,不需要跳过之前的记录;
+	 * 基于页码的分页转换为OFFSET.
+	 * </pre>
+	 * 
+	 * @param session
+	 * @param criteriaBuilder
+	 * @param criteriaQuery
+	 * @param root
+	 * @param predicate
+	 * @param pagination
+	 * @return
+	 */
+	private <T> TypedQuery<T> paginate(Session session, CriteriaBuilder criteriaBuilder, CriteriaQuery<T> criteriaQuery, Root<T> root, Predicate predicate, StoragePagination pagination) {
+		if (pagination != null && pagination.isKeyset()) {
+			Path<Comparable> key = root.get(pagination.getKey());
+			Comparable value = pagination.getValue();
+			if (value != null) {
+				Predicate keyset = criteriaBuilder.greaterThan(key, value);
+				predicate = predicate == null ? keyset : criteriaBuilder.and(predicate, keyset);
+			}
+			criteriaQuery.orderBy(criteriaBuilder.asc(key));
+		}
+		if (predicate != null) {
+			criteriaQuery.where(predicate);
+		}
+		TypedQuery<T> typedQuery = session.createQuery(criteriaQuery);
+		if (pagination != null) {
+			if (!pagination.isKeyset()) {
+				typedQuery.setFirstResult(pagination.getFirst());
+			}
+			typedQuery.setMaxResults(pagination.getSize());
+		}
+		return typedQuery;
+	}
+
 	private <K extends Comparable, T extends IdentityObject<K>> List<T> query(Class<T> clazz, Operation operation, Map<String, Object> condition, StoragePagination pagination) {
 		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<List<T>>() {
 
@@ -348,8 +522,8 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 				CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
 				CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(clazz);
 				Root<T> root = criteriaQuery.from(clazz);
+				Predicate left = null, right = null;
 				if (condition != null) {
-					Predicate left = null, right = null;
 					final Iterator<Entry<String, Object>> iterator = condition.entrySet().iterator();
 					if (iterator.hasNext()) {
 						Entry<String, Object> entry = iterator.next();
@@ -369,15 +543,8 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 							throw new UnsupportedOperationException();
 						}
 					}
-					if (left != null) {
-						criteriaQuery.where(left);
-					}
-				}
-				TypedQuery<T> typedQuery = session.createQuery(criteriaQuery);
-				if (pagination != null) {
-					typedQuery.setFirstResult(pagination.getFirst());
-					typedQuery.setMaxResults(pagination.getSize());
 				}
+				TypedQuery<T> typedQuery = paginate(session, criteriaBuilder, criteriaQuery, root, left, pagination);
 				List<T> value = typedQuery.getResultList();
 				return value;
 			}
@@ -400,6 +567,29 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 		return query(clazz, Operation.OR, condition, pagination);
 	}
 
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryOrder(Class<T> clazz, String name, int size, boolean descending) {
+		if (size < 1) {
+			return new ArrayList<>(0);
+		}
+		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<List<T>>() {
+
+			@Override
+			public List<T> doInHibernate(Session session) throws HibernateException {
+				CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+				CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(clazz);
+				Root<T> root = criteriaQuery.from(clazz);
+				Path<Comparable> order = root.get(name);
+				criteriaQuery.where(criteriaBuilder.isNotNull(order));
+				criteriaQuery.orderBy(descending ? criteriaBuilder.desc(order) : criteriaBuilder.asc(order));
+				TypedQuery<T> typedQuery = session.createQuery(criteriaQuery);
+				typedQuery.setMaxResults(size);
+				return typedQuery.getResultList();
+			}
+
+		});
+	}
+
 	private <K extends Comparable, T extends IdentityObject<K>> long count(Class<T> clazz, Operation operation, Map<String, Object> condition) {
 		return getHibernateTemplate().executeWithNativeSession(new HibernateCallback<Long>() {
 
@@ -465,8 +655,8 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 				CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
 				CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(clazz);
 				Root<T> root = criteriaQuery.from(clazz);
+				Predicate left = null, right = null;
 				if (condition != null) {
-					Predicate left = null, right = null;
 					final Iterator<Entry<String, Object>> cursor = condition.entrySet().iterator();
 					if (cursor.hasNext()) {
 						Entry<String, Object> entry = cursor.next();
@@ -486,15 +676,8 @@ public class HibernateAccessor extends HibernateDaoSupport implements StorageAcc
 							throw new UnsupportedOperationException();
 						}
 					}
-					if (left != null) {
-						criteriaQuery.where(left);
-					}
-				}
-				TypedQuery<T> typedQuery = session.createQuery(criteriaQuery);
-				if (pagination != null) {
-					typedQuery.setFirstResult(pagination.getFirst());
-					typedQuery.setMaxResults(pagination.getSize());
 				}
+				TypedQuery<T> typedQuery = paginate(session, criteriaBuilder, criteriaQuery, root, left, pagination);
 				// 设置遍历过程的参数
 				Query<T> query = (Query<T>) typedQuery;
 				query.setFetchSize(BATCH_SIZE);
@@ -4,6 +4,7 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,6 +30,7 @@ import com.jstarcraft.core.storage.StorageIterator;
 import com.jstarcraft.core.storage.StorageMetadata;
 import com.jstarcraft.core.storage.StoragePagination;
 import com.jstarcraft.core.storage.berkeley.schema.BerkeleyAccessorFactory;
+import com.jstarcraft.core.storage.exception.StorageQueryException;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneIndex;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneStore;
@@ -36,8 +38,10 @@ import com.jstarcraft.core.storage.lucene.converter.IdConverter;
 import com.jstarcraft.core.storage.lucene.converter.IndexConverter;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
 import com.jstarcraft.core.storage.lucene.converter.StoreConverter;
 import com.jstarcraft.core.utility.KeyValue;
+import com.jstarcraft.core.utility.StringUtility;
 
 import it.unimi.dsi.fastutil.floats.FloatList;
 
@@ -137,6 +141,45 @@ public class LuceneAccessor implements StorageAccessor {
         }
     }
 
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+        LuceneMetadata metadata = metadatas.get(clazz);
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (T object : objects) {
+            K id = object.getId();
+            String key = converter.convert(id.getClass(), id);
+            Document value = metadata.encodeDocument(object);
+            documents.put(key, value);
+        }
+        engine.createDocuments(documents);
+        return documents.size();
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (K id : ids) {
+            String key = converter.convert(id.getClass(), id);
+            keys.add(key);
+        }
+        engine.deleteDocuments(keys);
+        return keys.size();
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+        LuceneMetadata metadata = metadatas.get(clazz);
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (T object : objects) {
+            K id = object.getId();
+            String key = converter.convert(id.getClass(), id);
+            Document value = metadata.encodeDocument(object);
+            documents.put(key, value);
+        }
+        engine.updateDocuments(documents);
+        return documents.size();
+    }
+
     @Override
     public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
         LuceneMetadata metadata = metadatas.get(clazz);
@@ -201,7 +244,21 @@ public class LuceneAccessor implements StorageAccessor {
             KeyValue<Field, IndexConverter> keyValue = metadata.getIndexKeyValue(name);
             Field key = keyValue.getKey();
             IndexConverter value = keyValue.getValue();
-            query = value.query(context, metadata.getPrimaryName(), key, key.getAnnotation(LuceneIndex.class), key.getGenericType(), condition.getType(), condition.getValues());
+            query = value.query(context, name, key, key.getAnnotation(LuceneIndex.class), key.getGenericType(), condition.getType(), condition.getValues());
+        }
+        // 标识与索引都有排序时,通过DocValues投影,不加载存储的文档
+        KeyValue<Field, SortConverter> idSortKeyValue = metadata.getSortKeyValue(metadata.getPrimaryName());
+        KeyValue<Field, SortConverter> indexSortKeyValue = metadata.getSortKeyValue(name);
+        if (idSortKeyValue != null && indexSortKeyValue != null) {
+            Field idField = idSortKeyValue.getKey();
+            SortDecoder idDecoder = idSortKeyValue.getValue().decode(context, metadata.getPrimaryName(), idField, idField.getAnnotation(LuceneSort.class), idField.getGenericType());
+            Field indexField = indexSortKeyValue.getKey();
+            SortDecoder indexDecoder = indexSortKeyValue.getValue().decode(context, name, indexField, indexField.getAnnotation(LuceneSort.class), indexField.getGenericType());
+            if (idDecoder != null && indexDecoder != null) {
+                LuceneProjector<K, I> projector = new LuceneProjector<>(idDecoder, indexDecoder);
+                engine.collectDocuments(query, projector);
+                return projector.getProjections();
+            }
         }
         KeyValue<Field, StoreConverter> idKeyValue = metadata.getStoreKeyValue(metadata.getPrimaryName());
         Field idField = idKeyValue.getKey();
@@ -239,7 +296,7 @@ public class LuceneAccessor implements StorageAccessor {
             KeyValue<Field, IndexConverter> keyValue = metadata.getIndexKeyValue(name);
             Field key = keyValue.getKey();
             IndexConverter value = keyValue.getValue();
-            query = value.query(context, metadata.getPrimaryName(), key, key.getAnnotation(LuceneIndex.class), key.getGenericType(), condition.getType(), condition.getValues());
+            query = value.query(context, name, key, key.getAnnotation(LuceneIndex.class), key.getGenericType(), condition.getType(), condition.getValues());
         }
         List<KeyValue<Document, Float>> retrieve = engine.retrieveDocuments(query, null, 0, Integer.MAX_VALUE);
         List<T> list = new ArrayList<>(BATCH_SIZE);
@@ -249,20 +306,108 @@ public class LuceneAccessor implements StorageAccessor {
         return list;
     }
 
-    @Override
-    public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
-        LuceneMetadata metadata = metadatas.get(clazz);
-        Query query = new MatchAllDocsQuery();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        List<KeyValue<Document, Float>> retrieve = engine.retrieveDocuments(query, null, offset, size);
-        List<T> list = new ArrayList<>(BATCH_SIZE);
+    /**
+     * 按照键集限定查询与排序
+     * 
+     * <pre>
+     * 在原有的查询之上过滤大于上一页最后一个键的文档,并且按照键升序,
+     * 只需要一页大小的优先队列,不需要跳过之前的文档.
+     * 键集的属性必须同时有索引与排序.
+     * </pre>
+     * 
+     * @param metadata
+     * @param query
+     * @param pagination
+     * @return
+     */
+    private KeyValue<Query, Sort> keyset(LuceneMetadata metadata, Query query, StoragePagination pagination) {
+        String name = pagination.getKey();
+        KeyValue<Field, IndexConverter> indexKeyValue = metadata.getIndexKeyValue(name);
+        KeyValue<Field, SortConverter> sortKeyValue = metadata.getSortKeyValue(name);
+        if (indexKeyValue == null || sortKeyValue == null) {
+            throw new StorageQueryException(StringUtility.format("键集的属性[{}]必须同时有索引与排序", name));
+        }
+        Comparable value = pagination.getValue();
+        if (value != null) {
+            Field key = indexKeyValue.getKey();
+            IndexConverter converter = indexKeyValue.getValue();
+            BooleanQuery.Builder buffer = new BooleanQuery.Builder();
+            buffer.add(query, Occur.MUST);
+            buffer.add(converter.query(context, name, key, key.getAnnotation(LuceneIndex.class), key.getGenericType(), ConditionType.Higher, value), Occur.FILTER);
+            query = buffer.build();
+        }
+        Field key = sortKeyValue.getKey();
+        SortConverter converter = sortKeyValue.getValue();
+        Sort sort = converter.sort(context, name, key, key.getAnnotation(LuceneSort.class), key.getGenericType(), true);
+        return new KeyValue<>(query, sort);
+    }
+
+    /**
+     * 按照分页检索实例
+     * 
+     * <pre>
+     * 基于游标的分页通过search-after检索,并且把下一页的游标设置到分页;
+     * 基于键集的分页通过{@link #keyset(LuceneMetadata, Query, StoragePagination)}限定查询与排序.
+     * </pre>
+     * 
+     * @param metadata
+     * @param query
+     * @param pagination
+     * @return
+     */
+    private <T> List<T> retrieveInstances(LuceneMetadata metadata, Query query, StoragePagination pagination) {
+        List<KeyValue<Document, Float>> retrieve;
+        if (pagination != null && pagination.isCursor()) {
+            KeyValue<List<KeyValue<Document, Float>>, String> keyValue = engine.retrieveDocuments(query, null, pagination.getCursor(), pagination.getSize());
+            retrieve = keyValue.getKey();
+            pagination.setNext(keyValue.getValue());
+        } else if (pagination != null && pagination.isKeyset()) {
+            KeyValue<Query, Sort> keyValue = keyset(metadata, query, pagination);
+            retrieve = engine.retrieveDocuments(keyValue.getKey(), keyValue.getValue(), 0, pagination.getSize());
+        } else {
+            int offset = pagination == null ? 0 : pagination.getFirst();
+            int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
+            retrieve = engine.retrieveDocuments(query, null, offset, size);
+        }
+        List<T> list = new ArrayList<>(retrieve.size());
         for (KeyValue<Document, Float> keyValue : retrieve) {
             list.add((T) metadata.decodeDocument(keyValue.getKey()));
         }
         return list;
     }
 
+    /**
+     * 按照分页遍历实例
+     * 
+     * @param iterator
+     * @param metadata
+     * @param query
+     * @param pagination
+     */
+    private <T> void iterateInstances(StorageIterator<T> iterator, LuceneMetadata metadata, Query query, StoragePagination pagination) {
+        StorageIterator<Document> documents = (document) -> {
+            iterator.iterate((T) metadata.decodeDocument(document));
+        };
+        if (pagination != null && pagination.isCursor()) {
+            String next = engine.iterateDocuments(documents, query, null, pagination.getCursor(), pagination.getSize());
+            pagination.setNext(next);
+        } else if (pagination != null && pagination.isKeyset()) {
+            KeyValue<Query, Sort> keyValue = keyset(metadata, query, pagination);
+            engine.iterateDocuments(documents, keyValue.getKey(), keyValue.getValue(), 0, pagination.getSize());
+        } else {
+            int offset = pagination == null ? 0 : pagination.getFirst();
+            int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
+            engine.iterateDocuments(documents, query, null, offset, size);
+        }
+    }
+
+    @Override
+    public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
+        LuceneMetadata metadata = metadatas.get(clazz);
+        Query query = new MatchAllDocsQuery();
+        return retrieveInstances(metadata, query, pagination);
+    }
+
     @Override
     public <K extends Comparable, T extends IdentityObject<K>> List<T> queryIntersection(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
         LuceneMetadata metadata = metadatas.get(clazz);
@@ -276,14 +421,7 @@ public class LuceneAccessor implements StorageAccessor {
             buffer.add(query, Occur.MUST);
         }
         query = buffer.build();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        List<KeyValue<Document, Float>> retrieve = engine.retrieveDocuments(query, null, offset, size);
-        List<T> list = new ArrayList<>(BATCH_SIZE);
-        for (KeyValue<Document, Float> keyValue : retrieve) {
-            list.add((T) metadata.decodeDocument(keyValue.getKey()));
-        }
-        return list;
+        return retrieveInstances(metadata, query, pagination);
     }
 
     @Override
@@ -299,14 +437,7 @@ public class LuceneAccessor implements StorageAccessor {
             buffer.add(query, Occur.SHOULD);
         }
         query = buffer.build();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        List<KeyValue<Document, Float>> retrieve = engine.retrieveDocuments(query, null, offset, size);
-        List<T> list = new ArrayList<>(BATCH_SIZE);
-        for (KeyValue<Document, Float> keyValue : retrieve) {
-            list.add((T) metadata.decodeDocument(keyValue.getKey()));
-        }
-        return list;
+        return retrieveInstances(metadata, query, pagination);
     }
 
     @Override
@@ -351,11 +482,7 @@ public class LuceneAccessor implements StorageAccessor {
     public <K extends Comparable, T extends IdentityObject<K>> void iterate(StorageIterator<T> iterator, Class<T> clazz, StoragePagination pagination) {
         LuceneMetadata metadata = metadatas.get(clazz);
         Query query = new MatchAllDocsQuery();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        engine.iterateDocuments((document) -> {
-            iterator.iterate((T) metadata.decodeDocument(document));
-        }, query, null, offset, size);
+        iterateInstances(iterator, metadata, query, pagination);
     }
 
     @Override
@@ -371,11 +498,7 @@ public class LuceneAccessor implements StorageAccessor {
             buffer.add(query, Occur.MUST);
         }
         query = buffer.build();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        engine.iterateDocuments((document) -> {
-            iterator.iterate((T) metadata.decodeDocument(document));
-        }, query, null, offset, size);
+        iterateInstances(iterator, metadata, query, pagination);
     }
 
     @Override
@@ -391,11 +514,7 @@ public class LuceneAccessor implements StorageAccessor {
             buffer.add(query, Occur.SHOULD);
         }
         query = buffer.build();
-        int offset = pagination == null ? 0 : pagination.getFirst();
-        int size = pagination == null ? Integer.MAX_VALUE : pagination.getSize();
-        engine.iterateDocuments((document) -> {
-            iterator.iterate((T) metadata.decodeDocument(document));
-        }, query, null, offset, size);
+        iterateInstances(iterator, metadata, query, pagination);
     }
 
 }
@@ -0,0 +1,160 @@
+package com.jstarcraft.core.storage.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+
+import com.jstarcraft.core.storage.exception.StorageException;
+
+/**
+ * Lucene游标
+ * 
+ * <pre>
+ * 在查询的排序之后追加{@link LuceneMetadata#LUCENE_CURSOR},保证排序唯一并且不依赖文档编号;
+ * 游标编码上一页最后一个文档的排序值,下一页通过search-after从排序值之后继续检索,
+ * 只需要保留一页大小的优先队列,不需要跳过之前的文档.
+ * 文档编号随着代次变化,只有在排序值完全相同时(缺少游标排序的旧文档)才会用到.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+final class LuceneCursor {
+
+    private static final SortField CURSOR_FIELD = new SortField(LuceneMetadata.LUCENE_CURSOR, SortField.Type.STRING);
+
+    private static final byte NULL = 0;
+
+    private static final byte INTEGER = 1;
+
+    private static final byte LONG = 2;
+
+    private static final byte FLOAT = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte BYTES = 5;
+
+    private LuceneCursor() {
+    }
+
+    /**
+     * 获取游标排序
+     * 
+     * @param sort 查询的排序(null表示按照相关度)
+     * @return
+     */
+    static Sort getSort(Sort sort) {
+        if (sort == null) {
+            return new Sort(SortField.FIELD_SCORE, CURSOR_FIELD);
+        }
+        SortField[] fields = sort.getSort();
+        fields = Arrays.copyOf(fields, fields.length + 1);
+        fields[fields.length - 1] = CURSOR_FIELD;
+        return new Sort(fields);
+    }
+
+    /**
+     * 编码游标
+     * 
+     * @param document 上一页最后一个文档
+     * @return
+     */
+    static String encode(FieldDoc document) {
+        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream(); DataOutputStream output = new DataOutputStream(buffer)) {
+            output.writeInt(document.doc);
+            output.writeInt(document.fields.length);
+            for (Object field : document.fields) {
+                if (field == null) {
+                    output.writeByte(NULL);
+                } else if (field instanceof Integer) {
+                    output.writeByte(INTEGER);
+                    output.writeInt((Integer) field);
+                } else if (field instanceof Long) {
+                    output.writeByte(LONG);
+                    output.writeLong((Long) field);
+                } else if (field instanceof Float) {
+                    output.writeByte(FLOAT);
+                    output.writeFloat((Float) field);
+                } else if (field instanceof Double) {
+                    output.writeByte(DOUBLE);
+                    output.writeDouble((Double) field);
+                } else if (field instanceof BytesRef) {
+                    BytesRef bytes = (BytesRef) field;
+                    output.writeByte(BYTES);
+                    output.writeInt(bytes.length);
+                    output.write(bytes.bytes, bytes.offset, bytes.length);
+                } else {
+                    throw new StorageException("不支持的游标类型:" + field.getClass());
+                }
+            }
+            output.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.toByteArray());
+        } catch (StorageException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
+    }
+
+    /**
+     * 解码游标
+     * 
+     * @param cursor 游标(null或者空字符串表示第一页)
+     * @param sort 游标排序
+     * @return 第一页为null
+     */
+    static FieldDoc decode(String cursor, Sort sort) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            int document = input.readInt();
+            int length = input.readInt();
+            if (length != sort.getSort().length) {
+                throw new StorageException("游标与排序不匹配");
+            }
+            Object[] fields = new Object[length];
+            for (int index = 0; index < length; index++) {
+                byte type = input.readByte();
+                switch (type) {
+                case NULL:
+                    break;
+                case INTEGER:
+                    fields[index] = input.readInt();
+                    break;
+                case LONG:
+                    fields[index] = input.readLong();
+                    break;
+                case FLOAT:
+                    fields[index] = input.readFloat();
+                    break;
+                case DOUBLE:
+                    fields[index] = input.readDouble();
+                    break;
+                case BYTES:
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    fields[index] = new BytesRef(bytes);
+                    break;
+                default:
+                    throw new StorageException("非法的游标:" + cursor);
+                }
+            }
+            return new FieldDoc(document, Float.NaN, fields);
+        } catch (StorageException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new StorageException("非法的游标:" + cursor, exception);
+        }
+    }
+
+}
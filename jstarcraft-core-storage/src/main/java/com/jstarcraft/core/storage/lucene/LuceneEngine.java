@@ -2,34 +2,62 @@ package com.jstarcraft.core.storage.lucene;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.jstarcraft.core.storage.StorageIterator;
 import com.jstarcraft.core.storage.exception.StorageException;
 import com.jstarcraft.core.utility.KeyValue;
+import com.jstarcraft.core.utility.NameThreadFactory;
 
 /**
  * Lucene引擎
  * 
+ * <pre>
+ * 近实时搜索:
+ * 查询通过{@link LuceneSearcherManager}获取当前代次的搜索器并且在结束时释放,读操作没有自旋与全局锁;
+ * 变更共享读写锁的读锁,刷新代次与切换管理器独占写锁,所以每个代次的读取器是一致的;
+ * 刷新间隔为0时查询之前同步刷新(变更立即可见),大于0时由后台线程定时刷新(变更最多延迟interval毫秒可见).
+ * 可见性:
+ * 更新与删除同时按照标识删除瞬时化与持久化的旧文档,由Lucene在刷新读取器时应用到每个段的存活文档.
+ * 分页:
+ * 基于偏移量的检索需要保留offset+size个文档的优先队列;基于游标的检索通过search-after只保留size个,代价与页码无关.
+ * 遍历按照批次search-after,内存只与批次大小有关.
+ * </pre>
+ * 
  * @author Birdy
  *
  */
 public class LuceneEngine implements AutoCloseable {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneEngine.class);
+
+    /** 遍历的批次大小 */
+    private static final int BATCH_SIZE = 1000;
+
     /** 配置 */
     private final Supplier<IndexWriterConfig> config;
 
@@ -39,130 +67,199 @@ public class LuceneEngine implements AutoCloseable {
     /** 持久化管理器 */
     private volatile PersistenceManager persistenceManager;
 
-    /** Lucene搜索器 */
-    private volatile LuceneSearcher searcher;
+    /** Lucene搜索器管理器 */
+    private final LuceneSearcherManager searcherManager;
 
-    /** 信号量(读写隔离) */
-    private final AtomicInteger semaphore;
+    /** 刷新间隔(毫秒) */
+    private final long interval;
 
-    /** 读写锁(合并隔离) */
+    /** 刷新调度器 */
+    private final ScheduledExecutorService refresher;
+
+    /** 读写锁(变更共享,刷新与切换独占) */
     private final Lock readLock;
 
     private final Lock writeLock;
 
+    /** 合并锁 */
+    private final Lock mergeLock;
+
     public LuceneEngine(Supplier<IndexWriterConfig> config, Path path) {
+        this(config, path, 0L);
+    }
+
+    /**
+     * 
+     * @param config
+     * @param path
+     * @param interval 刷新间隔(毫秒),0表示查询之前同步刷新
+     */
+    public LuceneEngine(Supplier<IndexWriterConfig> config, Path path, long interval) {
+        if (interval < 0L) {
+            throw new IllegalArgumentException();
+        }
         try {
             this.config = config;
             Directory transienceDirectory = new ByteBuffersDirectory();
-            this.transienceManager = new TransienceManager(config.get(), transienceDirectory);
+            this.transienceManager = new TransienceManager(config.get(), transienceDirectory, false);
             Directory persistenceDirectory = FSDirectory.open(path);
             this.persistenceManager = new PersistenceManager(config.get(), persistenceDirectory);
-            this.searcher = new LuceneSearcher(this.transienceManager, this.persistenceManager);
+            this.searcherManager = new LuceneSearcherManager(new LuceneSearcher(this.transienceManager, this.persistenceManager), this::refreshSearcher);
 
-            this.semaphore = new AtomicInteger();
             ReadWriteLock lock = new ReentrantReadWriteLock();
             this.readLock = lock.readLock();
             this.writeLock = lock.writeLock();
+            this.mergeLock = new ReentrantLock();
+
+            this.interval = interval;
+            if (interval > 0L) {
+                NameThreadFactory factory = new NameThreadFactory("Lucene刷新线程");
+                this.refresher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                    Thread thread = factory.newThread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                this.refresher.scheduleWithFixedDelay(() -> {
+                    try {
+                        if (isChanged()) {
+                            this.searcherManager.maybeRefresh();
+                        }
+                    } catch (Throwable throwable) {
+                        LOGGER.error("刷新Lucene搜索器异常", throwable);
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            } else {
+                this.refresher = null;
+            }
         } catch (Exception exception) {
             throw new StorageException(exception);
         }
     }
 
     /**
-     * 加锁读操作
+     * 是否变更
+     * 
+     * @return
      */
-    private void lockRead() {
-        while (true) {
-            int semaphore = this.semaphore.get();
-            if (semaphore >= 0) {
-                if (this.semaphore.compareAndSet(semaphore, semaphore + 1)) {
-                    break;
-                }
-            }
-        }
+    private boolean isChanged() {
+        return this.transienceManager.isChanged() || this.persistenceManager.isChanged();
     }
 
     /**
-     * 解锁读操作
+     * 刷新搜索器
+     * 
+     * <pre>
+     * 由{@link LuceneSearcherManager}在刷新时调用,独占写锁保证瞬时化读取器与持久化读取器一致.
+     * </pre>
+     * 
+     * @return 新的代次,没有变更时返回null
      */
-    private void unlockRead() {
-        this.semaphore.decrementAndGet();
+    private LuceneSearcher refreshSearcher() {
+        try {
+            writeLock.lock();
+            if (!isChanged()) {
+                return null;
+            }
+            return new LuceneSearcher(this.transienceManager, this.persistenceManager);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
-     * 加锁写操作
+     * 获取搜索器
+     * 
+     * <pre>
+     * 使用完毕以后必须通过{@link #releaseSearcher(LuceneSearcher)}释放.
+     * </pre>
+     * 
+     * @return
+     * @throws Exception
      */
-    private void lockWrite() {
-        while (true) {
-            int semaphore = this.semaphore.get();
-            if (semaphore <= 0) {
-                if (this.semaphore.compareAndSet(semaphore, semaphore - 1)) {
-                    break;
-                }
-            }
+    private LuceneSearcher acquireSearcher() throws Exception {
+        if (this.interval == 0L && isChanged()) {
+            this.searcherManager.maybeRefreshBlocking();
         }
+        return this.searcherManager.acquire();
     }
 
     /**
-     * 解锁写操作
+     * 释放搜索器
+     * 
+     * @param searcher
      */
-    private void unlockWrite() {
-        this.semaphore.incrementAndGet();
+    private void releaseSearcher(LuceneSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            this.searcherManager.release(searcher);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
     }
 
     /**
      * 合并管理器
      * 
+     * <pre>
+     * 合并期间变更写入新的瞬时化管理器,查询不会被阻塞.
+     * </pre>
+     * 
      * @throws Exception
      */
     public void mergeManager() throws Exception {
-        writeLock.lock();
-        TransienceManager newTransienceManager = new TransienceManager(config.get(), new ByteBuffersDirectory());
-        TransienceManager oldTransienceManager = this.transienceManager;
         try {
-            lockWrite();
-            this.transienceManager = newTransienceManager;
-            // 触发变更
-            this.persistenceManager.setManager(oldTransienceManager);
-        } finally {
-            unlockWrite();
-        }
+            mergeLock.lock();
+            TransienceManager newTransienceManager = new TransienceManager(config.get(), new ByteBuffersDirectory(), true);
+            TransienceManager oldTransienceManager = this.transienceManager;
+            try {
+                writeLock.lock();
+                this.transienceManager = newTransienceManager;
+                // 触发变更
+                this.persistenceManager.setManager(oldTransienceManager);
+            } finally {
+                writeLock.unlock();
+            }
 
-        // 此处需要防止有线程在使用时关闭.
-        try {
-            lockRead();
             // 只关闭writer,不关闭reader.
             oldTransienceManager.close();
-        } finally {
-            unlockRead();
-        }
 
-        this.persistenceManager.mergeManager();
+            this.persistenceManager.mergeManager();
+            // 合并之前发出的删除不会作用于合并进来的文档,需要重新删除合并期间更新与删除的标识.
+            this.persistenceManager.deleteDocuments(newTransienceManager.getMergingIds());
 
-        try {
-            lockWrite();
-            // 触发变更
-            this.persistenceManager.setManager(null);
+            try {
+                writeLock.lock();
+                // 触发变更
+                this.persistenceManager.setManager(null);
+                newTransienceManager.finishMerge();
+            } finally {
+                writeLock.unlock();
+            }
+            // 此处不会关闭仍然在使用的reader.
+            oldTransienceManager.release();
         } finally {
-            unlockWrite();
+            mergeLock.unlock();
         }
-        writeLock.unlock();
     }
 
     /**
-     * 创建文档
+     * 创建文档(标识必须不存在)
      * 
      * @param documents
      * @throws Exception
      */
     public void createDocument(String id, Document document) {
         try {
-            lockWrite();
+            readLock.lock();
             this.transienceManager.createDocument(id, document);
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockWrite();
+            readLock.unlock();
         }
     }
 
@@ -174,12 +271,13 @@ public class LuceneEngine implements AutoCloseable {
      */
     public void updateDocument(String id, Document document) {
         try {
-            lockWrite();
+            readLock.lock();
             this.transienceManager.updateDocument(id, document);
+            this.persistenceManager.deleteDocument(id);
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockWrite();
+            readLock.unlock();
         }
     }
 
@@ -191,12 +289,79 @@ public class LuceneEngine implements AutoCloseable {
      */
     public void deleteDocument(String id) {
         try {
-            lockWrite();
+            readLock.lock();
             this.transienceManager.deleteDocument(id);
+            this.persistenceManager.deleteDocument(id);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 批量创建文档
+     * 
+     * <pre>
+     * 整批文档只获取一次读锁
+     * </pre>
+     * 
+     * @param documents
+     */
+    public void createDocuments(Map<String, Document> documents) {
+        try {
+            readLock.lock();
+            for (Entry<String, Document> keyValue : documents.entrySet()) {
+                this.transienceManager.createDocument(keyValue.getKey(), keyValue.getValue());
+            }
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 批量变更文档
+     * 
+     * <pre>
+     * 整批文档只获取一次读锁
+     * </pre>
+     * 
+     * @param documents
+     */
+    public void updateDocuments(Map<String, Document> documents) {
+        try {
+            readLock.lock();
+            for (Entry<String, Document> keyValue : documents.entrySet()) {
+                this.transienceManager.updateDocument(keyValue.getKey(), keyValue.getValue());
+            }
+            this.persistenceManager.deleteDocuments(documents.keySet());
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 批量删除文档
+     * 
+     * <pre>
+     * 整批文档只获取一次读锁,并且每个IndexWriter只调用一次删除
+     * </pre>
+     * 
+     * @param ids
+     */
+    public void deleteDocuments(Collection<String> ids) {
+        try {
+            readLock.lock();
+            this.transienceManager.deleteDocuments(ids);
+            this.persistenceManager.deleteDocuments(ids);
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockWrite();
+            readLock.unlock();
         }
     }
 
@@ -210,21 +375,16 @@ public class LuceneEngine implements AutoCloseable {
      * @return
      */
     public List<KeyValue<Document, Float>> retrieveDocuments(Query query, Sort sort, int offset, int size) {
+        LuceneSearcher searcher = null;
         try {
-            readLock.lock();
-            lockRead();
-            synchronized (this.semaphore) {
-                if (this.transienceManager.isChanged() || this.persistenceManager.isChanged()) {
-                    this.searcher = new LuceneSearcher(this.transienceManager, this.persistenceManager);
-                }
-            }
+            searcher = acquireSearcher();
             ScoreDoc[] search = null;
             int begin = offset;
             int end = offset + size;
             if (sort == null) {
-                search = this.searcher.search(query, end).scoreDocs;
+                search = searcher.search(query, end).scoreDocs;
             } else {
-                search = this.searcher.search(query, end, sort).scoreDocs;
+                search = searcher.search(query, end, sort).scoreDocs;
             }
             end = search.length;
             size = end - begin;
@@ -232,55 +392,170 @@ public class LuceneEngine implements AutoCloseable {
             ArrayList<KeyValue<Document, Float>> documents = new ArrayList<>(size);
             for (int index = begin; index < end; index++) {
                 ScoreDoc score = search[index];
-                Document document = this.searcher.doc(score.doc);
+                Document document = searcher.doc(score.doc);
                 documents.add(new KeyValue<>(document, score.score));
             }
             return documents;
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockRead();
-            readLock.unlock();
+            releaseSearcher(searcher);
         }
     }
 
     /**
-     * 遍历文档
+     * 检索文档(基于游标)
+     * 
+     * <pre>
+     * 排序之后追加唯一的游标排序,通过search-after从游标之后检索;
+     * 游标编码的是排序值,跨越搜索器的代次仍然有效.
+     * </pre>
      * 
-     * @param iterator
      * @param query
      * @param sort
-     * @param offset
+     * @param cursor 上一页的游标(第一页为null)
      * @param size
+     * @return 文档与下一页的游标(不足size时为null)
      */
-    public void iterateDocuments(StorageIterator<Document> iterator, Query query, Sort sort, int offset, int size) {
+    public KeyValue<List<KeyValue<Document, Float>>, String> retrieveDocuments(Query query, Sort sort, String cursor, int size) {
+        LuceneSearcher searcher = null;
         try {
-            readLock.lock();
-            lockRead();
-            synchronized (this.semaphore) {
-                if (this.transienceManager.isChanged() || this.persistenceManager.isChanged()) {
-                    this.searcher = new LuceneSearcher(this.transienceManager, this.persistenceManager);
-                }
+            searcher = acquireSearcher();
+            Sort order = LuceneCursor.getSort(sort);
+            FieldDoc after = LuceneCursor.decode(cursor, order);
+            ScoreDoc[] search = searcher.searchAfter(after, query, size, order, sort == null).scoreDocs;
+            ArrayList<KeyValue<Document, Float>> documents = new ArrayList<>(search.length);
+            for (ScoreDoc score : search) {
+                Document document = searcher.doc(score.doc);
+                documents.add(new KeyValue<>(document, score.score));
             }
+            String next = search.length < size ? null : LuceneCursor.encode((FieldDoc) search[search.length - 1]);
+            return new KeyValue<>(documents, next);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * 分批遍历文档
+     * 
+     * <pre>
+     * 同一个代次内文档编号是稳定的,每个批次从上一个批次的最后一个文档之后检索.
+     * </pre>
+     * 
+     * @param searcher
+     * @param iterator
+     * @param query
+     * @param sort
+     * @param after
+     * @param size
+     * @return 最后一个文档(不足size时为null)
+     * @throws Exception
+     */
+    private ScoreDoc iterateDocuments(LuceneSearcher searcher, StorageIterator<Document> iterator, Query query, Sort sort, ScoreDoc after, int size) throws Exception {
+        int count = 0;
+        while (count < size) {
+            int batch = Math.min(BATCH_SIZE, size - count);
             ScoreDoc[] search = null;
-            int begin = offset;
-            int end = offset + size;
             if (sort == null) {
-                search = this.searcher.search(query, end).scoreDocs;
+                search = searcher.searchAfter(after, query, batch).scoreDocs;
             } else {
-                search = this.searcher.search(query, end, sort).scoreDocs;
+                search = searcher.searchAfter(after, query, batch, sort).scoreDocs;
             }
-            end = search.length;
-            for (int index = begin; index < end; index++) {
-                ScoreDoc score = search[index];
-                Document document = this.searcher.doc(score.doc);
+            for (ScoreDoc score : search) {
+                Document document = searcher.doc(score.doc);
                 iterator.iterate(document);
             }
+            count += search.length;
+            if (search.length < batch) {
+                return null;
+            }
+            after = search[search.length - 1];
+        }
+        return after;
+    }
+
+    /**
+     * 遍历文档
+     * 
+     * @param iterator
+     * @param query
+     * @param sort
+     * @param offset
+     * @param size
+     */
+    public void iterateDocuments(StorageIterator<Document> iterator, Query query, Sort sort, int offset, int size) {
+        LuceneSearcher searcher = null;
+        try {
+            searcher = acquireSearcher();
+            ScoreDoc after = null;
+            if (offset > 0) {
+                // 只保留跳过的文档编号,不加载文档
+                ScoreDoc[] search = null;
+                if (sort == null) {
+                    search = searcher.search(query, offset).scoreDocs;
+                } else {
+                    search = searcher.search(query, offset, sort).scoreDocs;
+                }
+                if (search.length < offset) {
+                    return;
+                }
+                after = search[offset - 1];
+            }
+            iterateDocuments(searcher, iterator, query, sort, after, size);
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockRead();
-            readLock.unlock();
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * 遍历文档(基于游标)
+     * 
+     * @param iterator
+     * @param query
+     * @param sort
+     * @param cursor 上一页的游标(第一页为null)
+     * @param size
+     * @return 下一页的游标(不足size时为null)
+     */
+    public String iterateDocuments(StorageIterator<Document> iterator, Query query, Sort sort, String cursor, int size) {
+        LuceneSearcher searcher = null;
+        try {
+            searcher = acquireSearcher();
+            Sort order = LuceneCursor.getSort(sort);
+            FieldDoc after = LuceneCursor.decode(cursor, order);
+            ScoreDoc last = iterateDocuments(searcher, iterator, query, order, after, size);
+            return last == null ? null : LuceneCursor.encode((FieldDoc) last);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * 采集文档
+     * 
+     * <pre>
+     * 由采集器直接读取DocValues,不加载存储的文档.
+     * </pre>
+     * 
+     * @param query
+     * @param collector
+     */
+    public void collectDocuments(Query query, Collector collector) {
+        LuceneSearcher searcher = null;
+        try {
+            searcher = acquireSearcher();
+            searcher.search(query, collector);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        } finally {
+            releaseSearcher(searcher);
         }
     }
 
@@ -292,29 +567,28 @@ public class LuceneEngine implements AutoCloseable {
      * @throws Exception
      */
     public int countDocuments(Query query) {
+        LuceneSearcher searcher = null;
         try {
-            readLock.lock();
-            lockRead();
-            synchronized (this.semaphore) {
-                if (this.transienceManager.isChanged() || this.persistenceManager.isChanged()) {
-                    this.searcher = new LuceneSearcher(this.transienceManager, this.persistenceManager);
-                }
-            }
-            int count = this.searcher.count(query);
+            searcher = acquireSearcher();
+            int count = searcher.count(query);
             return count;
         } catch (Exception exception) {
             throw new StorageException(exception);
         } finally {
-            unlockRead();
-            readLock.unlock();
+            releaseSearcher(searcher);
         }
     }
 
     @Override
     public void close() {
         try {
+            if (this.refresher != null) {
+                this.refresher.shutdownNow();
+            }
             mergeManager();
+            this.searcherManager.close();
             this.transienceManager.close();
+            this.transienceManager.release();
             this.persistenceManager.close();
         } catch (Exception exception) {
             throw new StorageException(exception);
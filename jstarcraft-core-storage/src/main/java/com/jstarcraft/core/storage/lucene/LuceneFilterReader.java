@@ -0,0 +1,127 @@
+package com.jstarcraft.core.storage.lucene;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Lucene过滤读取器
+ * 
+ * <pre>
+ * 合并期间冻结的读取器无法应用新的删除,创建代次时按照标识为每个段计算一次存活文档位图,
+ * 查询时由Lucene按照存活文档跳过,采集器不需要逐个文档过滤.
+ * 持有所属读取器的一个引用,关闭时释放.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class LuceneFilterReader extends FilterLeafReader {
+
+    /** 所属读取器 */
+    private final IndexReader parent;
+
+    /** 存活文档 */
+    private final Bits liveDocs;
+
+    /** 存活文档数量 */
+    private final int numDocs;
+
+    private LuceneFilterReader(IndexReader parent, LeafReader reader, Collection<String> ids) throws IOException {
+        super(reader);
+        int maximum = reader.maxDoc();
+        FixedBitSet bits = new FixedBitSet(maximum);
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs == null) {
+            bits.set(0, maximum);
+        } else {
+            for (int index = 0; index < maximum; index++) {
+                if (liveDocs.get(index)) {
+                    bits.set(index);
+                }
+            }
+        }
+        Terms terms = reader.terms(LuceneMetadata.LUCENE_ID);
+        if (terms != null) {
+            TermsEnum iterator = terms.iterator();
+            PostingsEnum postings = null;
+            for (String id : ids) {
+                if (iterator.seekExact(new BytesRef(id))) {
+                    postings = iterator.postings(postings, PostingsEnum.NONE);
+                    for (int index = postings.nextDoc(); index != DocIdSetIterator.NO_MORE_DOCS; index = postings.nextDoc()) {
+                        bits.clear(index);
+                    }
+                }
+            }
+        }
+        this.liveDocs = bits;
+        this.numDocs = bits.cardinality();
+        parent.incRef();
+        this.parent = parent;
+    }
+
+    @Override
+    public Bits getLiveDocs() {
+        return liveDocs;
+    }
+
+    @Override
+    public int numDocs() {
+        return numDocs;
+    }
+
+    @Override
+    public CacheHelper getCoreCacheHelper() {
+        return in.getCoreCacheHelper();
+    }
+
+    @Override
+    public CacheHelper getReaderCacheHelper() {
+        // 存活文档与原读取器不同,不能共享读取器级别的缓存
+        return null;
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        parent.decRef();
+    }
+
+    /**
+     * 过滤读取器
+     * 
+     * @param reader
+     * @param ids 需要过滤的标识
+     * @return 调用方持有一个引用,使用完毕以后需要释放
+     * @throws IOException
+     */
+    static IndexReader filterReader(IndexReader reader, Collection<String> ids) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        IndexReader[] readers = new IndexReader[leaves.size()];
+        try {
+            for (int index = 0; index < readers.length; index++) {
+                readers[index] = new LuceneFilterReader(reader, leaves.get(index).reader(), ids);
+            }
+            return new MultiReader(readers, false);
+        } finally {
+            for (IndexReader filter : readers) {
+                if (filter != null) {
+                    filter.decRef();
+                }
+            }
+        }
+    }
+
+}
@@ -1,18 +1,14 @@
 package com.jstarcraft.core.storage.lucene;
 
-import java.io.IOException;
-
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.store.Directory;
 
 /**
  * Lucene管理器
  * 
  * <pre>
- * 用于管理{@link LeafCollector},{@link IndexReader},{@link IndexWriter}的变更与获取
+ * 用于管理{@link IndexReader},{@link IndexWriter}的变更与获取
  * </pre>
  * 
  * @author Birdy
@@ -27,16 +23,6 @@ public interface LuceneManager {
      */
     boolean isChanged();
 
-    /**
-     * 获取采集器
-     * 
-     * @param context
-     * @param collector
-     * @return
-     * @throws IOException
-     */
-    LeafCollector getCollector(LeafReaderContext context, LeafCollector collector) throws IOException;
-
     /**
      * 获取目录
      * 
@@ -47,6 +33,10 @@ public interface LuceneManager {
     /**
      * 获取读取器
      * 
+     * <pre>
+     * 调用方持有读取器的一个引用,使用完毕以后需要通过{@link IndexReader#decRef()}释放.
+     * </pre>
+     * 
      * @return
      */
     IndexReader getReader();
@@ -35,6 +35,9 @@ public class LuceneMetadata implements StorageMetadata {
 
     public static final String LUCENE_VERSION = "_version";
 
+    /** 游标排序(标识的SortedDocValues,作为游标分页的唯一排序) */
+    public static final String LUCENE_CURSOR = "_cursor";
+
     /** 实体名称 */
     private String ormName;
     /** 实体类型 */
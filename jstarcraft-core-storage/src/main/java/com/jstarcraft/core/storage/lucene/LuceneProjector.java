@@ -0,0 +1,63 @@
+package com.jstarcraft.core.storage.lucene;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
+
+/**
+ * Lucene投影器
+ * 
+ * <pre>
+ * 按照排序的DocValues采集标识与索引值,不加载存储的文档,也不需要为每个文档构建TreeMap.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ * @param <K>
+ * @param <I>
+ */
+class LuceneProjector<K, I> extends SimpleCollector {
+
+    /** 标识解码器 */
+    private final SortDecoder idDecoder;
+
+    /** 索引解码器 */
+    private final SortDecoder indexDecoder;
+
+    /** 投影(标识-索引) */
+    private final Map<K, I> projections = new HashMap<>();
+
+    LuceneProjector(SortDecoder idDecoder, SortDecoder indexDecoder) {
+        this.idDecoder = idDecoder;
+        this.indexDecoder = indexDecoder;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        idDecoder.setReader(context.reader());
+        indexDecoder.setReader(context.reader());
+    }
+
+    @Override
+    public void collect(int document) throws IOException {
+        K id = (K) idDecoder.decode(document);
+        I index = (I) indexDecoder.decode(document);
+        projections.put(id, index);
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    Map<K, I> getProjections() {
+        return projections;
+    }
+
+}
@@ -1,93 +1,61 @@
 package com.jstarcraft.core.storage.lucene;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.List;
 
-import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiReader;
-import org.apache.lucene.search.BulkScorer;
-import org.apache.lucene.search.CollectionTerminatedException;
-import org.apache.lucene.search.Collector;
-import org.apache.lucene.search.CollectorManager;
-import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.LeafCollector;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TotalHitCountCollector;
-import org.apache.lucene.search.Weight;
 
 /**
  * Lucene搜索器
- * 
+ *
  * <pre>
- * 支持按照createdIds,updatedIds与deletedIds过滤文档
+ * 文档的可见性完全由Lucene的存活文档决定,搜索与统计不需要按照标识过滤.
+ * 搜索器是一个代次:读取器在创建时一起获取,之后的变更只对下一个代次可见.
+ * 引用计数由MultiReader维护,关闭时释放持有的瞬时化读取器与持久化读取器.
  * </pre>
- * 
+ *
  * @author Birdy
  *
  */
 public class LuceneSearcher extends IndexSearcher {
 
-    private LuceneManager[] luceneManagers;
-
-    public LuceneSearcher(TransienceManager transienceManager, PersistenceManager persistenceManager) throws Exception {
-        super(new MultiReader(transienceManager.getReader(), persistenceManager.getReader()));
-        this.luceneManagers = new LuceneManager[] { persistenceManager, transienceManager };
+    LuceneSearcher(TransienceManager transienceManager, PersistenceManager persistenceManager) throws IOException {
+        super(getReader(transienceManager, persistenceManager));
     }
 
-    @Override
-    protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
-        for (LeafReaderContext context : leaves) {
-            LeafCollector instance;
-            try {
-                // 此处刻意通过LuceneManager重载LeafCollector.
-                instance = collector.getLeafCollector(context);
-                for (LuceneManager luceneManager : luceneManagers) {
-                    instance = luceneManager.getCollector(context, instance);
-                }
-            } catch (CollectionTerminatedException exception) {
-                continue;
+    /**
+     * 组合读取器
+     *
+     * <pre>
+     * MultiReader持有子读取器的引用,管理器返回的引用随即释放.
+     * 合并期间的持久化读取器与合并中的瞬时化读取器是冻结的,按照合并期间更新与删除的标识过滤.
+     * </pre>
+     *
+     * @param transienceManager
+     * @param persistenceManager
+     * @return
+     * @throws IOException
+     */
+    private static IndexReader getReader(TransienceManager transienceManager, PersistenceManager persistenceManager) throws IOException {
+        TransienceManager mergingManager = persistenceManager.getManager();
+        IndexReader[] readers = new IndexReader[2];
+        try {
+            readers[0] = transienceManager.getReader();
+            readers[1] = persistenceManager.getReader(mergingManager);
+            if (mergingManager != null) {
+                IndexReader reader = LuceneFilterReader.filterReader(readers[1], transienceManager.getMergingIds());
+                readers[1].decRef();
+                readers[1] = reader;
             }
-            BulkScorer scorer = weight.bulkScorer(context);
-            if (scorer != null) {
-                try {
-                    scorer.score(instance, context.reader().getLiveDocs());
-                } catch (CollectionTerminatedException exception) {
+            return new MultiReader(readers, false);
+        } finally {
+            for (IndexReader reader : readers) {
+                if (reader != null) {
+                    reader.decRef();
                 }
             }
         }
     }
 
-    @Override
-    public int count(Query query) throws IOException {
-        query = rewrite(query);
-        while (true) {
-            if (query instanceof ConstantScoreQuery) {
-                query = ((ConstantScoreQuery) query).getQuery();
-            } else {
-                break;
-            }
-        }
-
-        final CollectorManager<TotalHitCountCollector, Integer> collectorManager = new CollectorManager<TotalHitCountCollector, Integer>() {
-
-            @Override
-            public TotalHitCountCollector newCollector() throws IOException {
-                return new TotalHitCountCollector();
-            }
-
-            @Override
-            public Integer reduce(Collection<TotalHitCountCollector> collectors) throws IOException {
-                int count = 0;
-                for (TotalHitCountCollector collector : collectors) {
-                    count += collector.getTotalHits();
-                }
-                return count;
-            }
-
-        };
-        return search(query, collectorManager);
-    }
-
 }
@@ -0,0 +1,50 @@
+package com.jstarcraft.core.storage.lucene;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import org.apache.lucene.search.ReferenceManager;
+
+/**
+ * Lucene搜索器管理器
+ * 
+ * <pre>
+ * 按照代次管理{@link LuceneSearcher}:
+ * 每次查询通过acquire/release持有当前代次的引用(只有引用计数的CAS,没有锁);
+ * 刷新时切换到新的代次,旧的代次在所有查询释放以后关闭.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+class LuceneSearcherManager extends ReferenceManager<LuceneSearcher> {
+
+    /** 搜索器工厂(没有变更时返回null) */
+    private final Supplier<LuceneSearcher> factory;
+
+    LuceneSearcherManager(LuceneSearcher searcher, Supplier<LuceneSearcher> factory) {
+        this.current = searcher;
+        this.factory = factory;
+    }
+
+    @Override
+    protected void decRef(LuceneSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected LuceneSearcher refreshIfNeeded(LuceneSearcher reference) throws IOException {
+        return factory.get();
+    }
+
+    @Override
+    protected boolean tryIncRef(LuceneSearcher reference) throws IOException {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(LuceneSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+
+}
@@ -1,31 +1,27 @@
 package com.jstarcraft.core.storage.lucene;
 
-import java.io.IOException;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiReader;
-import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.LeafCollector;
-import org.apache.lucene.search.Scorable;
 import org.apache.lucene.store.Directory;
 
 import com.jstarcraft.core.storage.exception.StorageException;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-
 /**
  * 持久化管理器
  * 
+ * <pre>
+ * 更新与删除在写入瞬时化管理器的同时按照标识删除持久化的旧文档(不提交),由Lucene在刷新读取器时应用到存活文档.
+ * </pre>
+ * 
  * @author Birdy
  *
  */
@@ -46,8 +42,8 @@ class PersistenceManager implements LuceneManager, AutoCloseable {
     /** 是否变更 */
     private AtomicBoolean changed = new AtomicBoolean(false);
 
-    /** 瞬时化管理器 */
-    private TransienceManager transienceManager;
+    /** 瞬时化管理器(合并期间) */
+    private volatile TransienceManager transienceManager;
 
     public PersistenceManager(IndexWriterConfig config, Directory directory) {
         try {
@@ -63,89 +59,98 @@ class PersistenceManager implements LuceneManager, AutoCloseable {
     /**
      * 设置管理器
      * 
+     * <pre>
+     * 开始合并时先刷新持久化读取器,合并期间保持不变.
+     * </pre>
+     * 
      * @param transienceManager
      */
-    void setManager(TransienceManager transienceManager) {
+    synchronized void setManager(TransienceManager transienceManager) {
+        if (transienceManager != null) {
+            openReader();
+        }
         this.transienceManager = transienceManager;
         this.changed.set(true);
     }
 
+    /**
+     * 刷新持久化读取器
+     */
+    private void openReader() {
+        try {
+            DirectoryReader reader = DirectoryReader.openIfChanged(this.reader);
+            if (reader != null) {
+                this.reader.decRef();
+                this.reader = reader;
+            }
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
+    }
+
+    /**
+     * 获取管理器
+     * 
+     * @return 合并中的瞬时化管理器,没有合并时为null
+     */
+    TransienceManager getManager() {
+        return this.transienceManager;
+    }
+
     /**
      * 合并管理器
      * 
+     * <pre>
+     * 旧文档已经在变更时删除,此处只需要添加瞬时化管理器的文档.
+     * </pre>
+     * 
      * @param transienceManager
      * @throws Exception
      */
     void mergeManager() {
         try {
-            Term[] terms = new Term[this.transienceManager.getUpdatedIds().size() + this.transienceManager.getDeletedIds().size()];
-            int index = 0;
-            for (String id : this.transienceManager.getUpdatedIds().keySet()) {
-                terms[index++] = new Term(LuceneMetadata.LUCENE_ID, id);
-            }
-            for (String id : this.transienceManager.getDeletedIds()) {
-                terms[index++] = new Term(LuceneMetadata.LUCENE_ID, id);
-            }
-            this.writer.deleteDocuments(terms);
             this.writer.addIndexes(this.transienceManager.getDirectory());
         } catch (Exception exception) {
             throw new StorageException(exception);
         }
     }
 
-    @Override
-    public boolean isChanged() {
-        return this.changed.get();
-    }
-
-    @Override
-    public LeafCollector getCollector(LeafReaderContext context, LeafCollector collector) throws IOException {
-        if (this.transienceManager == null) {
-            return collector;
+    /**
+     * 删除文档
+     * 
+     * @param id
+     */
+    void deleteDocument(String id) {
+        try {
+            Term term = new Term(LuceneMetadata.LUCENE_ID, id);
+            this.writer.deleteDocuments(term);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
         }
+    }
 
-        LeafReader reader = context.reader();
-        BinaryDocValues ids = DocValues.getBinary(reader, LuceneMetadata.LUCENE_ID);
-        NumericDocValues versions = DocValues.getNumeric(reader, LuceneMetadata.LUCENE_VERSION);
-
-        Object2LongMap<String> createdIds = this.transienceManager.getCreatedIds();
-        Object2LongMap<String> updatedIds = this.transienceManager.getUpdatedIds();
-        Set<String> deletedIds = this.transienceManager.getDeletedIds();
-
-        return new LeafCollector() {
-
-            @Override
-            public void setScorer(Scorable scorer) throws IOException {
-                collector.setScorer(scorer);
+    /**
+     * 批量删除文档
+     * 
+     * @param ids
+     */
+    void deleteDocuments(Collection<String> ids) {
+        try {
+            List<Term> terms = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                terms.add(new Term(LuceneMetadata.LUCENE_ID, id));
             }
-
-            @Override
-            public void collect(int index) throws IOException {
-                ids.advanceExact(index);
-                String id = ids.binaryValue().utf8ToString();
-                if (deletedIds.contains(id)) {
-                    return;
-                }
-                long updated = updatedIds.getLong(id);
-                if (updated != 0) {
-                    versions.advanceExact(index);
-                    long version = versions.longValue();
-                    if (updated > version) {
-                        return;
-                    }
-                }
-                long created = createdIds.getLong(id);
-                if (created != 0) {
-                    versions.advanceExact(index);
-                    long version = versions.longValue();
-                    if (created > version) {
-                        return;
-                    }
-                }
-                collector.collect(index);
+            if (!terms.isEmpty()) {
+                this.writer.deleteDocuments(terms.toArray(new Term[terms.size()]));
             }
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
+    }
 
-        };
+    @Override
+    public boolean isChanged() {
+        return this.changed.get();
     }
 
     @Override
@@ -155,20 +160,34 @@ class PersistenceManager implements LuceneManager, AutoCloseable {
 
     @Override
     public IndexReader getReader() {
+        return getReader(this.transienceManager);
+    }
+
+    /**
+     * 获取读取器
+     * 
+     * <pre>
+     * 合并期间持久化读取器保持合并之前的状态,瞬时化管理器的文档通过其读取器可见;
+     * 合并完成以后才重新打开持久化读取器,所以同一个文档不会同时出现在两边.
+     * 两者在合并期间不会应用新的删除,由{@link LuceneSearcher}按照合并期间更新与删除的标识过滤.
+     * </pre>
+     * 
+     * @param transienceManager 合并中的瞬时化管理器
+     * @return
+     */
+    synchronized IndexReader getReader(TransienceManager transienceManager) {
         try {
-            if (this.changed.compareAndSet(true, false)) {
-                if (this.transienceManager != null) {
-                    Directory directory = this.transienceManager.getDirectory();
-                    IndexReader reader = DirectoryReader.open(directory);
-                    reader = new MultiReader(reader, this.reader);
-                    return reader;
+            this.changed.set(false);
+            if (transienceManager != null) {
+                IndexReader reader = transienceManager.getReader();
+                try {
+                    return new MultiReader(new IndexReader[] { reader, this.reader }, false);
+                } finally {
+                    reader.decRef();
                 }
             }
-            DirectoryReader reader = DirectoryReader.openIfChanged(this.reader);
-            if (reader != null) {
-                this.reader.close();
-                this.reader = reader;
-            }
+            openReader();
+            this.reader.incRef();
             return this.reader;
         } catch (Exception exception) {
             throw new StorageException(exception);
@@ -183,7 +202,7 @@ class PersistenceManager implements LuceneManager, AutoCloseable {
     @Override
     public void close() {
         try {
-            this.reader.close();
+            this.reader.decRef();
             this.writer.close();
         } catch (Exception exception) {
             throw new StorageException(exception);
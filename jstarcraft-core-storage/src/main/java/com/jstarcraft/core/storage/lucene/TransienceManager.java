@@ -1,40 +1,37 @@
 package com.jstarcraft.core.storage.lucene;
 
-import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.LeafCollector;
-import org.apache.lucene.search.Scorable;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 
-import com.jstarcraft.core.common.lockable.HashLockable;
 import com.jstarcraft.core.storage.exception.StorageException;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
-
 /**
  * 瞬时化管理器
- * 
+ *
+ * <pre>
+ * 更新与删除通过IndexWriter按照标识删除旧的文档,由Lucene在刷新读取器时应用到存活文档,查询时不需要按照标识过滤.
+ * 持久化管理器中的旧文档由{@link LuceneEngine}同时删除.
+ * </pre>
+ *
  * @author Birdy
  *
  */
@@ -55,33 +52,23 @@ class TransienceManager implements LuceneManager, AutoCloseable {
     /** 是否变更 */
     private AtomicBoolean changed = new AtomicBoolean(false);
 
-    /** 创建标识 */
-    private Object2LongMap<String> createdIds;
-
-    /** 更新标识 */
-    private Object2LongMap<String> updatedIds;
-
-    /** 删除标识 */
-    private Set<String> deletedIds;
-
-    private static final int size = 1000;
+    /** 合并期间更新与删除的标识(没有合并时为null) */
+    private volatile Set<String> mergingIds;
 
-    private HashLockable[] lockables;
-
-    public TransienceManager(IndexWriterConfig config, Directory directory) {
+    /**
+     *
+     * @param config
+     * @param directory
+     * @param merging 是否在合并期间创建(需要记录更新与删除的标识)
+     */
+    public TransienceManager(IndexWriterConfig config, Directory directory, boolean merging) {
         try {
-            this.createdIds = new Object2LongOpenHashMap<>();
-            this.updatedIds = new Object2LongOpenHashMap<>();
-            this.deletedIds = new HashSet<>();
-
             this.config = config;
             this.directory = directory;
             this.writer = new IndexWriter(this.directory, this.config);
             this.reader = DirectoryReader.open(this.writer);
-
-            this.lockables = new HashLockable[size];
-            for (int index = 0; index < size; index++) {
-                this.lockables[index] = new HashLockable();
+            if (merging) {
+                this.mergingIds = ConcurrentHashMap.newKeySet();
             }
             this.writer.commit();
         } catch (Exception exception) {
@@ -89,37 +76,57 @@ class TransienceManager implements LuceneManager, AutoCloseable {
         }
     }
 
-    Object2LongMap<String> getCreatedIds() {
-        return createdIds;
+    /**
+     * 获取合并期间更新与删除的标识
+     *
+     * @return 没有合并时为null
+     */
+    Set<String> getMergingIds() {
+        return mergingIds;
     }
 
-    Object2LongMap<String> getUpdatedIds() {
-        return updatedIds;
+    /**
+     * 完成合并(不再记录更新与删除的标识)
+     */
+    void finishMerge() {
+        this.mergingIds = null;
     }
 
-    Set<String> getDeletedIds() {
-        return deletedIds;
+    /**
+     * 记录合并期间更新与删除的标识
+     *
+     * @param id
+     */
+    private void markDocument(String id) {
+        Set<String> mergingIds = this.mergingIds;
+        if (mergingIds != null) {
+            mergingIds.add(id);
+        }
     }
 
+    private void indexDocument(String id, Document document) {
+        IndexableField field = null;
+        field = new StringField(LuceneMetadata.LUCENE_ID, id, Store.NO);
+        document.add(field);
+        field = new BinaryDocValuesField(LuceneMetadata.LUCENE_ID, new BytesRef(id));
+        document.add(field);
+        field = new SortedDocValuesField(LuceneMetadata.LUCENE_CURSOR, new BytesRef(id));
+        document.add(field);
+        long version = System.currentTimeMillis();
+        field = new NumericDocValuesField(LuceneMetadata.LUCENE_VERSION, version);
+        document.add(field);
+    }
+
+    /**
+     * 创建文档(标识必须不存在)
+     *
+     * @param id
+     * @param document
+     */
     void createDocument(String id, Document document) {
         try {
-            IndexableField field = null;
-            field = new StringField(LuceneMetadata.LUCENE_ID, id, Store.NO);
-            document.add(field);
-            field = new BinaryDocValuesField(LuceneMetadata.LUCENE_ID, new BytesRef(id));
-            document.add(field);
-            long version = System.currentTimeMillis();
-            field = new NumericDocValuesField(LuceneMetadata.LUCENE_VERSION, version);
-            document.add(field);
-            HashLockable lockable = lockables[Math.abs(id.hashCode() % size)];
-            lockable.open();
-            if (this.deletedIds.remove(id)) {
-                this.updatedIds.put(id, version);
-            } else {
-                this.createdIds.put(id, version);
-            }
+            indexDocument(id, document);
             this.writer.addDocument(document);
-            lockable.close();
             changed.set(true);
         } catch (Exception exception) {
             throw new StorageException(exception);
@@ -128,22 +135,10 @@ class TransienceManager implements LuceneManager, AutoCloseable {
 
     void updateDocument(String id, Document document) {
         try {
-            IndexableField field = null;
-            field = new StringField(LuceneMetadata.LUCENE_ID, id, Store.NO);
-            document.add(field);
-            field = new BinaryDocValuesField(LuceneMetadata.LUCENE_ID, new BytesRef(id));
-            document.add(field);
-            long version = System.currentTimeMillis();
-            field = new NumericDocValuesField(LuceneMetadata.LUCENE_VERSION, version);
-            document.add(field);
-            HashLockable lockable = lockables[Math.abs(id.hashCode() % size)];
-            lockable.open();
-            if (!this.createdIds.containsKey(id)) {
-                this.updatedIds.put(id, version);
-            }
+            indexDocument(id, document);
+            markDocument(id);
             Term term = new Term(LuceneMetadata.LUCENE_ID, id);
             this.writer.updateDocument(term, document);
-            lockable.close();
             changed.set(true);
         } catch (Exception exception) {
             throw new StorageException(exception);
@@ -152,15 +147,25 @@ class TransienceManager implements LuceneManager, AutoCloseable {
 
     void deleteDocument(String id) {
         try {
-            HashLockable lockable = lockables[Math.abs(id.hashCode() % size)];
-            lockable.open();
-            if (this.createdIds.removeLong(id) != 0) {
-                Term term = new Term(LuceneMetadata.LUCENE_ID, id);
-                this.writer.deleteDocuments(term);
-            } else {
-                this.deletedIds.add(id);
+            markDocument(id);
+            Term term = new Term(LuceneMetadata.LUCENE_ID, id);
+            this.writer.deleteDocuments(term);
+            changed.set(true);
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
+    }
+
+    void deleteDocuments(Collection<String> ids) {
+        try {
+            List<Term> terms = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                markDocument(id);
+                terms.add(new Term(LuceneMetadata.LUCENE_ID, id));
+            }
+            if (!terms.isEmpty()) {
+                this.writer.deleteDocuments(terms.toArray(new Term[terms.size()]));
             }
-            lockable.close();
             changed.set(true);
         } catch (Exception exception) {
             throw new StorageException(exception);
@@ -172,64 +177,24 @@ class TransienceManager implements LuceneManager, AutoCloseable {
         return changed.get();
     }
 
-    @Override
-    public LeafCollector getCollector(LeafReaderContext context, LeafCollector collector) throws IOException {
-        LeafReader reader = context.reader();
-        BinaryDocValues ids = DocValues.getBinary(reader, LuceneMetadata.LUCENE_ID);
-        NumericDocValues versions = DocValues.getNumeric(reader, LuceneMetadata.LUCENE_VERSION);
-
-        return new LeafCollector() {
-
-            @Override
-            public void setScorer(Scorable scorer) throws IOException {
-                collector.setScorer(scorer);
-            }
-
-            @Override
-            public void collect(int index) throws IOException {
-                ids.advanceExact(index);
-                String id = ids.binaryValue().utf8ToString();
-                if (TransienceManager.this.deletedIds.contains(id)) {
-                    return;
-                }
-                long updated = TransienceManager.this.updatedIds.getLong(id);
-                if (updated != 0) {
-                    versions.advanceExact(index);
-                    long version = versions.longValue();
-                    if (updated > version) {
-                        return;
-                    }
-                }
-                long created = TransienceManager.this.createdIds.getLong(id);
-                if (created != 0) {
-                    versions.advanceExact(index);
-                    long version = versions.longValue();
-                    if (created > version) {
-                        return;
-                    }
-                }
-                collector.collect(index);
-            }
-
-        };
-    }
-
     @Override
     public Directory getDirectory() {
         return directory;
     }
 
     @Override
-    public IndexReader getReader() {
+    public synchronized IndexReader getReader() {
         try {
             if (changed.compareAndSet(true, false)) {
                 this.writer.flush();
                 DirectoryReader reader = DirectoryReader.openIfChanged(this.reader);
                 if (reader != null) {
-                    this.reader.close();
+                    // 释放管理器持有的引用,仍然在使用的搜索器释放以后关闭.
+                    this.reader.decRef();
                     this.reader = reader;
                 }
             }
+            this.reader.incRef();
             return this.reader;
         } catch (Exception exception) {
             throw new StorageException(exception);
@@ -242,13 +207,29 @@ class TransienceManager implements LuceneManager, AutoCloseable {
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         try {
-            // 只关闭writer,不关闭reader.
+            // 关闭之前刷新读取器,之后只关闭writer,不关闭reader(合并期间仍然需要读取).
+            getReader().decRef();
             this.writer.close();
         } catch (Exception exception) {
             throw new StorageException(exception);
         }
     }
 
+    /**
+     * 释放读取器
+     *
+     * <pre>
+     * 合并完成以后调用,仍然在使用的搜索器释放以后关闭.
+     * </pre>
+     */
+    void release() {
+        try {
+            this.reader.decRef();
+        } catch (Exception exception) {
+            throw new StorageException(exception);
+        }
+    }
+
 }
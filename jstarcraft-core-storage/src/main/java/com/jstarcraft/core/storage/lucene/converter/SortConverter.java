@@ -32,4 +32,18 @@ public interface SortConverter {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * 获取解码器
+     * 
+     * @param context
+     * @param path
+     * @param field
+     * @param annotation
+     * @param type
+     * @return 不支持从DocValues还原数据时为null
+     */
+    default SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        return null;
+    }
+
 }
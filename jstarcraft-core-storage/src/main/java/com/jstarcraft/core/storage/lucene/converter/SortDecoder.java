@@ -0,0 +1,37 @@
+package com.jstarcraft.core.storage.lucene.converter;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReader;
+
+/**
+ * 排序解码器
+ * 
+ * <pre>
+ * 从排序的DocValues还原数据,不需要加载存储的文档.
+ * 每次查询创建一个实例,按照段设置读取器以后,同一个段内文档编号必须递增.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public interface SortDecoder {
+
+    /**
+     * 设置段的读取器
+     * 
+     * @param reader
+     * @throws IOException
+     */
+    void setReader(LeafReader reader) throws IOException;
+
+    /**
+     * 解码指定文档
+     * 
+     * @param document 段内的文档编号
+     * @return 文档没有排序值时为null
+     * @throws IOException
+     */
+    Object decode(int document) throws IOException;
+
+}
@@ -1,19 +1,25 @@
 package com.jstarcraft.core.storage.lucene.converter.sort;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
 
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
 
 import com.jstarcraft.core.common.reflection.TypeUtility;
 import com.jstarcraft.core.storage.exception.StorageException;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
 import com.jstarcraft.core.utility.ClassUtility;
 
 /**
@@ -43,4 +49,37 @@ public class BooleanSortConverter implements SortConverter {
         throw new StorageException();
     }
 
+    @Override
+    public SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        Class<?> clazz = TypeUtility.getRawType(type, null);
+        clazz = ClassUtility.primitiveToWrapper(clazz);
+        LongFunction<Object> converter;
+        if (AtomicBoolean.class.isAssignableFrom(clazz)) {
+            converter = (value) -> new AtomicBoolean(value == 1L);
+        } else if (Boolean.class.isAssignableFrom(clazz)) {
+            converter = (value) -> value == 1L;
+        } else {
+            return null;
+        }
+        return new SortDecoder() {
+
+            private NumericDocValues values;
+
+            @Override
+            public void setReader(LeafReader reader) throws IOException {
+                values = DocValues.getNumeric(reader, path);
+            }
+
+            @Override
+            public Object decode(int document) throws IOException {
+                if (values.advanceExact(document)) {
+                    return converter.apply(values.longValue());
+                } else {
+                    return null;
+                }
+            }
+
+        };
+    }
+
 }
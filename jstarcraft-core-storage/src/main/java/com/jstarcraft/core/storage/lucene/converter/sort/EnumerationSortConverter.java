@@ -1,19 +1,27 @@
 package com.jstarcraft.core.storage.lucene.converter.sort;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.BytesRef;
 
+import com.jstarcraft.core.common.reflection.TypeUtility;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
 
 /**
  * 枚举排序转换器
@@ -39,4 +47,33 @@ public class EnumerationSortConverter implements SortConverter {
         return sort;
     }
 
+    @Override
+    public SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        Class<?> clazz = TypeUtility.getRawType(type, null);
+        // 排序按照toString编码,所以按照toString解码
+        Map<String, Object> enumerations = new HashMap<>();
+        for (Object enumeration : clazz.getEnumConstants()) {
+            enumerations.put(enumeration.toString(), enumeration);
+        }
+        return new SortDecoder() {
+
+            private SortedDocValues values;
+
+            @Override
+            public void setReader(LeafReader reader) throws IOException {
+                values = DocValues.getSorted(reader, path);
+            }
+
+            @Override
+            public Object decode(int document) throws IOException {
+                if (values.advanceExact(document)) {
+                    return enumerations.get(values.binaryValue().utf8ToString());
+                } else {
+                    return null;
+                }
+            }
+
+        };
+    }
+
 }
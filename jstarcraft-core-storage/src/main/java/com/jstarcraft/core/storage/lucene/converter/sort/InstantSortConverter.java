@@ -1,5 +1,6 @@
 package com.jstarcraft.core.storage.lucene.converter.sort;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.time.Instant;
@@ -12,15 +13,20 @@ import java.time.temporal.ChronoField;
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.function.LongFunction;
 
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
 
 import com.jstarcraft.core.common.reflection.TypeUtility;
 import com.jstarcraft.core.storage.exception.StorageException;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
 
 /**
  * 时间排序转换器
@@ -67,4 +73,38 @@ public class InstantSortConverter implements SortConverter {
         throw new StorageException();
     }
 
+    @Override
+    public SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        Class<?> clazz = TypeUtility.getRawType(type, null);
+        LongFunction<Object> converter;
+        if (Instant.class.isAssignableFrom(clazz)) {
+            converter = Instant::ofEpochMilli;
+        } else if (Date.class.isAssignableFrom(clazz)) {
+            converter = Date::new;
+        } else if (LocalDate.class.isAssignableFrom(clazz)) {
+            converter = LocalDate::ofEpochDay;
+        } else {
+            return null;
+        }
+        return new SortDecoder() {
+
+            private NumericDocValues values;
+
+            @Override
+            public void setReader(LeafReader reader) throws IOException {
+                values = DocValues.getNumeric(reader, path);
+            }
+
+            @Override
+            public Object decode(int document) throws IOException {
+                if (values.advanceExact(document)) {
+                    return converter.apply(values.longValue());
+                } else {
+                    return null;
+                }
+            }
+
+        };
+    }
+
 }
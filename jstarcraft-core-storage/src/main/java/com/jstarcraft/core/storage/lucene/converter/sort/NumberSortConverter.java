@@ -1,14 +1,19 @@
 package com.jstarcraft.core.storage.lucene.converter.sort;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.function.LongFunction;
 
 import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 
@@ -17,6 +22,7 @@ import com.jstarcraft.core.storage.exception.StorageException;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
 import com.jstarcraft.core.utility.ClassUtility;
 
 /**
@@ -79,4 +85,45 @@ public class NumberSortConverter implements SortConverter {
         return sort;
     }
 
+    @Override
+    public SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        Class<?> clazz = TypeUtility.getRawType(type, null);
+        clazz = ClassUtility.primitiveToWrapper(clazz);
+        LongFunction<Object> converter;
+        if (Byte.class.isAssignableFrom(clazz)) {
+            converter = (value) -> (byte) value;
+        } else if (Short.class.isAssignableFrom(clazz)) {
+            converter = (value) -> (short) value;
+        } else if (Integer.class.isAssignableFrom(clazz)) {
+            converter = (value) -> (int) value;
+        } else if (Long.class.isAssignableFrom(clazz)) {
+            converter = (value) -> value;
+        } else if (Float.class.isAssignableFrom(clazz)) {
+            converter = (value) -> Float.intBitsToFloat((int) value);
+        } else if (Double.class.isAssignableFrom(clazz)) {
+            converter = (value) -> Double.longBitsToDouble(value);
+        } else {
+            return null;
+        }
+        return new SortDecoder() {
+
+            private NumericDocValues values;
+
+            @Override
+            public void setReader(LeafReader reader) throws IOException {
+                values = DocValues.getNumeric(reader, path);
+            }
+
+            @Override
+            public Object decode(int document) throws IOException {
+                if (values.advanceExact(document)) {
+                    return converter.apply(values.longValue());
+                } else {
+                    return null;
+                }
+            }
+
+        };
+    }
+
 }
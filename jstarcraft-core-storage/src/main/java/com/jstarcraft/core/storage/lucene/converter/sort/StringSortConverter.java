@@ -1,19 +1,26 @@
 package com.jstarcraft.core.storage.lucene.converter.sort;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.LinkedList;
 
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.BytesRef;
 
+import com.jstarcraft.core.common.reflection.TypeUtility;
 import com.jstarcraft.core.storage.lucene.annotation.LuceneSort;
 import com.jstarcraft.core.storage.lucene.converter.LuceneContext;
 import com.jstarcraft.core.storage.lucene.converter.SortConverter;
+import com.jstarcraft.core.storage.lucene.converter.SortDecoder;
+import com.jstarcraft.core.utility.ClassUtility;
 
 /**
  * 字符排序串转换器
@@ -39,4 +46,31 @@ public class StringSortConverter implements SortConverter {
         return sort;
     }
 
+    @Override
+    public SortDecoder decode(LuceneContext context, String path, Field field, LuceneSort annotation, Type type) {
+        Class<?> clazz = TypeUtility.getRawType(type, null);
+        clazz = ClassUtility.primitiveToWrapper(clazz);
+        boolean character = Character.class.isAssignableFrom(clazz);
+        return new SortDecoder() {
+
+            private SortedDocValues values;
+
+            @Override
+            public void setReader(LeafReader reader) throws IOException {
+                values = DocValues.getSorted(reader, path);
+            }
+
+            @Override
+            public Object decode(int document) throws IOException {
+                if (values.advanceExact(document)) {
+                    String data = values.binaryValue().utf8ToString();
+                    return character ? data.charAt(0) : data;
+                } else {
+                    return null;
+                }
+            }
+
+        };
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.jstarcraft.core.storage.mongo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -10,6 +12,10 @@ import java.util.Map.Entry;
 import org.bson.Document;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -23,7 +29,11 @@ import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageIterator;
 import com.jstarcraft.core.storage.StorageMetadata;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.exception.StorageBatchException;
 import com.jstarcraft.core.storage.exception.StorageQueryException;
+import com.jstarcraft.core.utility.StringUtility;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -97,6 +107,89 @@ public class MongoAccessor implements StorageAccessor {
 		}
 	}
 
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> boolean updateInstance(Class<T> clazz, K id, Map<String, Object> values) {
+		if (values.isEmpty()) {
+			return false;
+		}
+		MongoMetadata metadata = metadatas.get(clazz);
+		// 只更新指定的字段($set)
+		Update update = new Update();
+		for (Entry<String, Object> keyValue : values.entrySet()) {
+			update.set(keyValue.getKey(), keyValue.getValue());
+		}
+		UpdateResult state = template.updateFirst(Query.query(Criteria.where(MongoMetadata.mongoId).is(id)), update, clazz, metadata.getOrmName());
+		return state.getMatchedCount() > 0;
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int createInstances(Class<T> clazz, Collection<T> objects) {
+		if (objects.isEmpty()) {
+			return 0;
+		}
+		MongoMetadata metadata = metadatas.get(clazz);
+		BulkOperations operations = template.bulkOps(BulkMode.UNORDERED, clazz, metadata.getOrmName());
+		operations.insert(new ArrayList<>(objects));
+		try {
+			BulkWriteResult state = operations.execute();
+			return state.getInsertedCount();
+		} catch (BulkOperationException exception) {
+			// 无序模式下,失败的对象不影响其它对象
+			throw getBatchException(exception);
+		}
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int deleteInstances(Class<T> clazz, Collection<K> ids) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		MongoMetadata metadata = metadatas.get(clazz);
+		DeleteResult state = template.remove(Query.query(Criteria.where(MongoMetadata.mongoId).in(ids)), metadata.getOrmName());
+		return (int) state.getDeletedCount();
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> int updateInstances(Class<T> clazz, Collection<T> objects) {
+		if (objects.isEmpty()) {
+			return 0;
+		}
+		MongoMetadata metadata = metadatas.get(clazz);
+		BulkOperations operations = template.bulkOps(BulkMode.UNORDERED, clazz, metadata.getOrmName());
+		// 与save保持一致,不存在时插入
+		FindAndReplaceOptions options = FindAndReplaceOptions.options().upsert();
+		for (T object : objects) {
+			operations.replaceOne(Query.query(Criteria.where(MongoMetadata.mongoId).is(object.getId())), object, options);
+		}
+		try {
+			BulkWriteResult state = operations.execute();
+			return state.getMatchedCount() + state.getUpserts().size();
+		} catch (BulkOperationException exception) {
+			// 无序模式下,失败的对象不影响其它对象
+			throw getBatchException(exception);
+		}
+	}
+
+	/**
+	 * 转换批量异常
+	 * 
+	 * <pre>
+	 * 无序模式下只有失败的对象没有写入,携带失败对象的索引,调用方只需要处理失败的对象.
+	 * </pre>
+	 * 
+	 * @param exception
+	 * @return
+	 */
+	private StorageBatchException getBatchException(BulkOperationException exception) {
+		List<BulkWriteError> errors = exception.getErrors();
+		int[] failures = new int[errors.size()];
+		for (int index = 0; index < failures.length; index++) {
+			failures[index] = errors.get(index).getIndex();
+		}
+		Arrays.sort(failures);
+		return new StorageBatchException(StringUtility.format("批量操作[{}]个对象失败", failures.length), exception, failures);
+	}
+
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
 		MongoMetadata metadata = metadatas.get(clazz);
@@ -197,14 +290,47 @@ public class MongoAccessor implements StorageAccessor {
 		return template.find(query, clazz, metadata.getOrmName());
 	}
 
-	@Override
-	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
-		MongoMetadata metadata = metadatas.get(clazz);
-		Query query = new Query(Criteria.where(MongoMetadata.mongoId).exists(true));
+	/**
+	 * 按照分页构建查询
+	 * 
+	 * <pre>
+	 * 基于键集的分页转换为{key: {$gt: value}}并且按照key升序,游标直接从索引定位,不需要跳过之前的文档;
+	 * 基于页码的分页转换为skip/limit.
+	 * </pre>
+	 * 
+	 * @param metadata
+	 * @param criteria
+	 * @param pagination
+	 * @return
+	 */
+	private Query paginate(MongoMetadata metadata, Criteria criteria, StoragePagination pagination) {
+		if (pagination != null && pagination.isKeyset()) {
+			String key = pagination.getKey();
+			if (metadata.getPrimaryName().equals(key)) {
+				key = MongoMetadata.mongoId;
+			}
+			Comparable value = pagination.getValue();
+			if (value != null) {
+				// 通过$and组合,避免与原有条件的字段冲突
+				criteria = new Criteria().andOperator(criteria, Criteria.where(key).gt(value));
+			}
+			Query query = Query.query(criteria);
+			query.with(Sort.by(Direction.ASC, key));
+			query.limit(pagination.getSize());
+			return query;
+		}
+		Query query = Query.query(criteria);
 		if (pagination != null) {
 			query.skip(pagination.getFirst());
 			query.limit(pagination.getSize());
 		}
+		return query;
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
+		MongoMetadata metadata = metadatas.get(clazz);
+		Query query = paginate(metadata, Criteria.where(MongoMetadata.mongoId).exists(true), pagination);
 		return template.find(query, clazz, metadata.getOrmName());
 	}
 
@@ -224,11 +350,22 @@ public class MongoAccessor implements StorageAccessor {
 			}
 			andCriterias[index++] = Criteria.where(key).is(value);
 		}
-		Query query = Query.query(criteria.andOperator(andCriterias));
-		if (pagination != null) {
-			query.skip(pagination.getFirst());
-			query.limit(pagination.getSize());
+		Query query = paginate(metadata, criteria.andOperator(andCriterias), pagination);
+		return template.find(query, clazz, metadata.getOrmName());
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryOrder(Class<T> clazz, String name, int size, boolean descending) {
+		if (size < 1) {
+			return new ArrayList<>(0);
 		}
+		MongoMetadata metadata = metadatas.get(clazz);
+		if (metadata.getPrimaryName().equals(name)) {
+			name = MongoMetadata.mongoId;
+		}
+		Query query = Query.query(Criteria.where(name).ne(null));
+		query.with(Sort.by(descending ? Direction.DESC : Direction.ASC, name));
+		query.limit(size);
 		return template.find(query, clazz, metadata.getOrmName());
 	}
 
@@ -248,11 +385,7 @@ public class MongoAccessor implements StorageAccessor {
 			}
 			orCriterias[index++] = Criteria.where(key).is(value);
 		}
-		Query query = Query.query(criteria.orOperator(orCriterias));
-		if (pagination != null) {
-			query.skip(pagination.getFirst());
-			query.limit(pagination.getSize());
-		}
+		Query query = paginate(metadata, criteria.orOperator(orCriterias), pagination);
 		return template.find(query, clazz, metadata.getOrmName());
 	}
 
@@ -306,11 +439,7 @@ public class MongoAccessor implements StorageAccessor {
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> void iterate(StorageIterator<T> iterator, Class<T> clazz, StoragePagination pagination) {
 		MongoMetadata metadata = metadatas.get(clazz);
-		Query query = new Query(Criteria.where(MongoMetadata.mongoId).exists(true));
-		if (pagination != null) {
-			query.skip(pagination.getFirst());
-			query.limit(pagination.getSize());
-		}
+		Query query = paginate(metadata, Criteria.where(MongoMetadata.mongoId).exists(true), pagination);
 		try (CloseableIterator<T> stream = template.stream(query, clazz, metadata.getOrmName())) {
 			while (stream.hasNext()) {
 				try {
@@ -340,11 +469,7 @@ public class MongoAccessor implements StorageAccessor {
 			}
 			andCriterias[index++] = Criteria.where(key).is(value);
 		}
-		Query query = Query.query(criteria.andOperator(andCriterias));
-		if (pagination != null) {
-			query.skip(pagination.getFirst());
-			query.limit(pagination.getSize());
-		}
+		Query query = paginate(metadata, criteria.andOperator(andCriterias), pagination);
 		try (CloseableIterator<T> stream = template.stream(query, clazz, metadata.getOrmName())) {
 			while (stream.hasNext()) {
 				try {
@@ -374,11 +499,7 @@ public class MongoAccessor implements StorageAccessor {
 			}
 			orCriterias[index++] = Criteria.where(key).is(value);
 		}
-		Query query = Query.query(criteria.orOperator(orCriterias));
-		if (pagination != null) {
-			query.skip(pagination.getFirst());
-			query.limit(pagination.getSize());
-		}
+		Query query = paginate(metadata, criteria.orOperator(orCriterias), pagination);
 		try (CloseableIterator<T> stream = template.stream(query, clazz, metadata.getOrmName())) {
 			while (stream.hasNext()) {
 				try {
@@ -2,11 +2,14 @@ package com.jstarcraft.core.storage.mybatis;
 
 import java.io.Serializable;
 import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Function;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ibatis.session.Configuration;
@@ -14,6 +17,7 @@ import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -134,6 +138,36 @@ public class MyBatisAccessor implements StorageAccessor {
 		return mapper.updateById(object) > 0;
 	}
 
+	/**
+	 * 是否不需要TypeHandler的简单值
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private boolean isSimple(Object value) {
+		return value == null || value instanceof Number || value instanceof CharSequence || value instanceof Boolean || value instanceof Character || value instanceof Enum || value instanceof Date;
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> boolean updateInstance(Class<T> clazz, K id, Map<String, Object> values) {
+		if (values.isEmpty()) {
+			return false;
+		}
+		MyBatisMetadata metadata = metadatas.get(clazz);
+		UpdateWrapper<T> update = new UpdateWrapper<>();
+		for (Entry<String, Object> keyValue : values.entrySet()) {
+			Object value = keyValue.getValue();
+			if (!isSimple(value)) {
+				// 复杂字段依赖TypeHandler,退化为更新整个对象
+				return StorageAccessor.super.updateInstance(clazz, id, values);
+			}
+			update.set(metadata.getColumnName(keyValue.getKey()), value);
+		}
+		update.eq(metadata.getColumnName(metadata.getPrimaryName()), id);
+		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
+		return mapper.update(null, update) > 0;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> K maximumIdentity(Class<T> clazz, K from, K to) {
@@ -241,53 +275,121 @@ public class MyBatisAccessor implements StorageAccessor {
 		return list;
 	}
 
-	@Override
-	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
-		MyBatisMetadata metadata = metadatas.get(clazz);
-		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
+	/**
+	 * 获取条件的谓词
+	 * 
+	 * <pre>
+	 * 空的条件不产生谓词,交集以AND连接每个字段,并集以OR连接每个字段.
+	 * </pre>
+	 * 
+	 * @param metadata
+	 * @param condition
+	 * @param union
+	 * @return
+	 */
+	private List<Function<QueryWrapper, QueryWrapper>> getPredicates(MyBatisMetadata metadata, Map<String, Object> condition, boolean union) {
+		List<Function<QueryWrapper, QueryWrapper>> predicates = new ArrayList<>(2);
+		if (condition.isEmpty()) {
+			return predicates;
+		}
+		predicates.add((branch) -> {
+			for (Entry<String, Object> term : condition.entrySet()) {
+				String column = metadata.getColumnName(term.getKey());
+				if (union) {
+					branch.or((wrapper) -> {
+						return wrapper.eq(column, term.getValue());
+					});
+				} else {
+					branch.eq(column, term.getValue());
+				}
+			}
+			return branch;
+		});
+		return predicates;
+	}
+
+	/**
+	 * 按照分页查询
+	 * 
+	 * <pre>
+	 * 基于键集的分页转换为WHERE key > ? ORDER BY key,只查询一页大小的记录,不需要跳过之前的记录,也不需要统计总数;
+	 * 基于页码的分页转换为OFFSET.
+	 * 条件谓词与键集谓词各自嵌套在括号中再以AND连接,任意谓词为空时不会产生悬空的AND.
+	 * </pre>
+	 * 
+	 * @param metadata
+	 * @param mapper
+	 * @param predicates
+	 * @param pagination
+	 * @return
+	 */
+	private <T> List<T> paginate(MyBatisMetadata metadata, BaseMapper mapper, List<Function<QueryWrapper, QueryWrapper>> predicates, StoragePagination pagination) {
+		String column = null;
+		if (pagination != null && pagination.isKeyset()) {
+			column = metadata.getColumnName(pagination.getKey());
+			Comparable value = pagination.getValue();
+			if (value != null) {
+				String key = column;
+				predicates.add((keyset) -> {
+					return keyset.gt(key, value);
+				});
+			}
+		}
+		QueryWrapper query = new QueryWrapper<>();
+		for (Function<QueryWrapper, QueryWrapper> predicate : predicates) {
+			query.and(predicate);
+		}
 		if (pagination == null) {
 			return mapper.selectList(query);
+		}
+		IPage<T> page;
+		if (pagination.isKeyset()) {
+			query.orderByAsc(column);
+			page = mapper.selectPage(new Page(1, pagination.getSize(), false), query);
 		} else {
-			IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-			return page.getRecords();
+			page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
 		}
+		return page.getRecords();
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryInstances(Class<T> clazz, StoragePagination pagination) {
+		MyBatisMetadata metadata = metadatas.get(clazz);
+		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
+		return paginate(metadata, mapper, new ArrayList<>(1), pagination);
 	}
 
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryIntersection(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
 		MyBatisMetadata metadata = metadatas.get(clazz);
 		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
-		for (Entry<String, Object> term : condition.entrySet()) {
-			query.and((wrapper) -> {
-				return wrapper.eq(metadata.getColumnName(term.getKey()), term.getValue());
-			});
-		}
-		if (pagination == null) {
-			return mapper.selectList(query);
-		} else {
-			IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-			return page.getRecords();
-		}
+		return paginate(metadata, mapper, getPredicates(metadata, condition, false), pagination);
 	}
 
 	@Override
 	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryUnion(Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
 		MyBatisMetadata metadata = metadatas.get(clazz);
 		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
-		for (Entry<String, Object> term : condition.entrySet()) {
-			query.or((wrapper) -> {
-				return wrapper.eq(metadata.getColumnName(term.getKey()), term.getValue());
-			});
+		return paginate(metadata, mapper, getPredicates(metadata, condition, true), pagination);
+	}
+
+	@Override
+	public <K extends Comparable, T extends IdentityObject<K>> List<T> queryOrder(Class<T> clazz, String name, int size, boolean descending) {
+		if (size < 1) {
+			return new ArrayList<>(0);
 		}
-		if (pagination == null) {
-			return mapper.selectList(query);
+		MyBatisMetadata metadata = metadatas.get(clazz);
+		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
+		QueryWrapper<?> query = new QueryWrapper<>();
+		String column = metadata.getColumnName(name);
+		query.isNotNull(column);
+		if (descending) {
+			query.orderByDesc(column);
 		} else {
-			IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-			return page.getRecords();
+			query.orderByAsc(column);
 		}
+		IPage<T> page = mapper.selectPage(new Page(1, size, false), query);
+		return page.getRecords();
 	}
 
 	@Override
@@ -328,9 +430,7 @@ public class MyBatisAccessor implements StorageAccessor {
 	public <K extends Comparable, T extends IdentityObject<K>> void iterate(StorageIterator<T> iterator, Class<T> clazz, StoragePagination pagination) {
 		MyBatisMetadata metadata = metadatas.get(clazz);
 		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
-		IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-		for (T object : page.getRecords()) {
+		for (T object : paginate(metadata, mapper, new ArrayList<>(1), pagination)) {
 			iterator.iterate(object);
 		}
 	}
@@ -339,14 +439,7 @@ public class MyBatisAccessor implements StorageAccessor {
 	public <K extends Comparable, T extends IdentityObject<K>> void iterateIntersection(StorageIterator<T> iterator, Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
 		MyBatisMetadata metadata = metadatas.get(clazz);
 		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
-		for (Entry<String, Object> term : condition.entrySet()) {
-			query.and((wrapper) -> {
-				return wrapper.eq(metadata.getColumnName(term.getKey()), term.getValue());
-			});
-		}
-		IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-		for (T object : page.getRecords()) {
+		for (T object : paginate(metadata, mapper, getPredicates(metadata, condition, false), pagination)) {
 			iterator.iterate(object);
 		}
 	}
@@ -355,14 +448,7 @@ public class MyBatisAccessor implements StorageAccessor {
 	public <K extends Comparable, T extends IdentityObject<K>> void iterateUnion(StorageIterator<T> iterator, Class<T> clazz, Map<String, Object> condition, StoragePagination pagination) {
 		MyBatisMetadata metadata = metadatas.get(clazz);
 		BaseMapper mapper = template.getMapper(metadata.getMapperClass());
-		QueryWrapper<?> query = new QueryWrapper<>();
-		for (Entry<String, Object> term : condition.entrySet()) {
-			query.or((wrapper) -> {
-				return wrapper.eq(metadata.getColumnName(term.getKey()), term.getValue());
-			});
-		}
-		IPage<T> page = mapper.selectPage(new Page(pagination.getPage(), pagination.getSize()), query);
-		for (T object : page.getRecords()) {
+		for (T object : paginate(metadata, mapper, getPredicates(metadata, condition, true), pagination)) {
 			iterator.iterate(object);
 		}
 	}
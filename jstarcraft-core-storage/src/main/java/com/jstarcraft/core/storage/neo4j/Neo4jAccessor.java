@@ -80,6 +80,11 @@ public class Neo4jAccessor implements StorageAccessor {
 
 	private final static String PAGINATION_CONDITION = " SKIP {} LIMIT {}";
 
+	/** 键集条件(通过WITH在原有条件之后过滤,避免与OR条件的优先级冲突) */
+	private final static String KEYSET_CONDITION = " WITH clazz WHERE clazz.{} > {keyset}";
+
+	private final static String KEYSET_PAGINATION = " ORDER BY clazz.{} LIMIT {}";
+
 	private final static String ITERATE_BEGIN = "MATCH (clazz:{})";
 
 	private final static String ITERATE_END = " RETURN clazz";
@@ -363,9 +368,17 @@ public class Neo4jAccessor implements StorageAccessor {
 					index++;
 				}
 			}
+			if (pagination != null && pagination.isKeyset() && pagination.getValue() != null) {
+				buffer.append(StringUtility.format(KEYSET_CONDITION, pagination.getKey()));
+				parameters.put("keyset", pagination.getValue());
+			}
 			buffer.append(ITERATE_END);
 			if (pagination != null) {
-				buffer.append(StringUtility.format(PAGINATION_CONDITION, pagination.getFirst(), pagination.getSize()));
+				if (pagination.isKeyset()) {
+					buffer.append(StringUtility.format(KEYSET_PAGINATION, pagination.getKey(), pagination.getSize()));
+				} else {
+					buffer.append(StringUtility.format(PAGINATION_CONDITION, pagination.getFirst(), pagination.getSize()));
+				}
 			}
 			String cql = buffer.toString();
 			Iterable<T> iterable = template.query(clazz, cql, parameters);
@@ -0,0 +1,87 @@
+package com.jstarcraft.core.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 批量增删改基准
+ * 
+ * <pre>
+ * 分别按照1/100/1000的批量大小增删改相同数量的对象,记录每秒处理的对象数量.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class StorageBatchBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageBatchBenchmark.class);
+
+    private static final int[] BATCH_SIZES = { 1, 100, 1000 };
+
+    private static <T> List<List<T>> split(List<T> elements, int batchSize) {
+        List<List<T>> batches = new ArrayList<>(elements.size() / batchSize + 1);
+        for (int from = 0, size = elements.size(); from < size; from += batchSize) {
+            batches.add(elements.subList(from, Math.min(from + batchSize, size)));
+        }
+        return batches;
+    }
+
+    private static long getSpeed(int size, long nanoseconds) {
+        return nanoseconds == 0L ? 0L : size * 1000000000L / nanoseconds;
+    }
+
+    /**
+     * 执行基准
+     * 
+     * @param accessor
+     * @param clazz
+     * @param factory  根据序号构建对象(每个批量大小使用不同的序号范围)
+     * @param size     每个批量大小处理的对象数量
+     */
+    public static <K extends Comparable, T extends IdentityObject<K>> void benchmark(StorageAccessor accessor, Class<T> clazz, IntFunction<T> factory, int size) {
+        long count = accessor.countInstances(clazz);
+        for (int batchSize : BATCH_SIZES) {
+            int offset = batchSize * size;
+            List<T> objects = new ArrayList<>(size);
+            List<K> ids = new ArrayList<>(size);
+            for (int index = 0; index < size; index++) {
+                T object = factory.apply(offset + index);
+                objects.add(object);
+                ids.add(object.getId());
+            }
+
+            long begin = System.nanoTime();
+            for (List<T> batch : split(objects, batchSize)) {
+                Assert.assertEquals(batch.size(), accessor.createInstances(clazz, batch));
+            }
+            long create = System.nanoTime() - begin;
+            Assert.assertEquals(count + size, accessor.countInstances(clazz));
+
+            begin = System.nanoTime();
+            for (List<T> batch : split(objects, batchSize)) {
+                Assert.assertEquals(batch.size(), accessor.updateInstances(clazz, batch));
+            }
+            long update = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (List<K> batch : split(ids, batchSize)) {
+                Assert.assertEquals(batch.size(), accessor.deleteInstances(clazz, batch));
+            }
+            long delete = System.nanoTime() - begin;
+            Assert.assertEquals(count, accessor.countInstances(clazz));
+
+            String message = StringUtility.format("{}批量大小{}:创建{}个/秒,更新{}个/秒,删除{}个/秒", accessor.getClass().getSimpleName(), batchSize, getSpeed(size, create), getSpeed(size, update), getSpeed(size, delete));
+            logger.info(message);
+        }
+    }
+
+}
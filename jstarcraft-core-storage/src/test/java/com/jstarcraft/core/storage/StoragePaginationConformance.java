@@ -0,0 +1,176 @@
+package com.jstarcraft.core.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.common.identification.IdentityObject;
+import com.jstarcraft.core.utility.StringUtility;
+
+/**
+ * 键集分页一致性
+ * 
+ * <pre>
+ * 按照主键的键集逐页遍历所有对象,检查每个访问器的语义一致:
+ * 主键严格升序(没有重复与遗漏),总数与countInstances一致,query与iterate返回相同的对象.
+ * 指定条件时同样逐页遍历交集与并集,结果与不分页的查询一致.
+ * </pre>
+ * 
+ * @author Birdy
+ * 
+ */
+public class StoragePaginationConformance {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoragePaginationConformance.class);
+
+    /** 起始序号(避免与其它测试的对象冲突) */
+    public static final int OFFSET = 2000000;
+
+    private static final int PAGE_SIZE = 100;
+
+    private static String getPrimaryName(StorageAccessor accessor, Class<?> clazz) {
+        for (StorageMetadata metadata : accessor.getAllMetadata()) {
+            if (metadata.getOrmClass() == clazz) {
+                return metadata.getPrimaryName();
+            }
+        }
+        throw new IllegalArgumentException(StringUtility.format("类型[{}]不存在", clazz));
+    }
+
+    /**
+     * 获取不分页查询的主键(升序)
+     * 
+     * @param objects
+     * @return
+     */
+    private static <K extends Comparable, T extends IdentityObject<K>> List<K> getIdentities(List<T> objects) {
+        List<K> ids = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            ids.add(object.getId());
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    /**
+     * 按照键集逐页遍历
+     * 
+     * @param key     主键名称
+     * @param query   分页查询
+     * @param iterate 分页遍历
+     * @return 遍历的主键
+     */
+    private static <K extends Comparable, T extends IdentityObject<K>> List<K> walk(String key, Function<StoragePagination, List<T>> query, BiConsumer<StorageIterator<T>, StoragePagination> iterate) {
+        List<K> keyset = new ArrayList<>();
+        K last = null;
+        while (true) {
+            StoragePagination pagination = StoragePagination.instanceOf(PAGE_SIZE, key, last);
+            List<T> page = query.apply(pagination);
+            List<K> elements = new ArrayList<>(page.size());
+            iterate.accept((object) -> {
+                elements.add(object.getId());
+            }, pagination);
+            Assert.assertTrue(page.size() <= PAGE_SIZE);
+            Assert.assertEquals(page.size(), elements.size());
+            for (int index = 0; index < page.size(); index++) {
+                K id = page.get(index).getId();
+                Assert.assertEquals(id, elements.get(index));
+                if (last != null) {
+                    Assert.assertTrue(last.compareTo(id) < 0);
+                }
+                last = id;
+                keyset.add(id);
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        return keyset;
+    }
+
+    /**
+     * 检查键集分页
+     * 
+     * @param accessor
+     * @param clazz
+     * @param factory  根据序号构建对象(主键需要与序号同序)
+     * @param size     构建的对象数量
+     */
+    public static <K extends Comparable, T extends IdentityObject<K>> void check(StorageAccessor accessor, Class<T> clazz, IntFunction<T> factory, int size) {
+        check(accessor, clazz, factory, size, null, null);
+    }
+
+    /**
+     * 检查键集分页
+     * 
+     * @param accessor
+     * @param clazz
+     * @param factory      根据序号构建对象(主键需要与序号同序)
+     * @param size         构建的对象数量
+     * @param intersection 交集条件(null表示不检查)
+     * @param union        并集条件(null表示不检查)
+     */
+    public static <K extends Comparable, T extends IdentityObject<K>> void check(StorageAccessor accessor, Class<T> clazz, IntFunction<T> factory, int size, Map<String, Object> intersection, Map<String, Object> union) {
+        String key = getPrimaryName(accessor, clazz);
+        List<T> objects = new ArrayList<>(size);
+        List<K> ids = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            T object = factory.apply(OFFSET + index);
+            objects.add(object);
+            ids.add(object.getId());
+        }
+        Assert.assertEquals(size, accessor.createInstances(clazz, objects));
+        try {
+            long count = accessor.countInstances(clazz);
+            long begin = System.nanoTime();
+            List<K> keyset = StoragePaginationConformance.<K, T>walk(key, (pagination) -> {
+                return accessor.queryInstances(clazz, pagination);
+            }, (iterator, pagination) -> {
+                accessor.iterate(iterator, clazz, pagination);
+            });
+            long time = System.nanoTime() - begin;
+            Assert.assertEquals(count, keyset.size());
+            Assert.assertTrue(keyset.containsAll(ids));
+            String message = StringUtility.format("{}键集分页:{}个对象,耗时{}毫秒", accessor.getClass().getSimpleName(), keyset.size(), time / 1000000L);
+            logger.info(message);
+
+            if (intersection != null) {
+                begin = System.nanoTime();
+                keyset = StoragePaginationConformance.<K, T>walk(key, (pagination) -> {
+                    return accessor.queryIntersection(clazz, intersection, pagination);
+                }, (iterator, pagination) -> {
+                    accessor.iterateIntersection(iterator, clazz, intersection, pagination);
+                });
+                time = System.nanoTime() - begin;
+                Assert.assertEquals(getIdentities(accessor.queryIntersection(clazz, intersection, null)), keyset);
+                Assert.assertEquals(accessor.countIntersection(clazz, intersection), keyset.size());
+                message = StringUtility.format("{}交集键集分页:{}个对象,耗时{}毫秒", accessor.getClass().getSimpleName(), keyset.size(), time / 1000000L);
+                logger.info(message);
+            }
+
+            if (union != null) {
+                begin = System.nanoTime();
+                keyset = StoragePaginationConformance.<K, T>walk(key, (pagination) -> {
+                    return accessor.queryUnion(clazz, union, pagination);
+                }, (iterator, pagination) -> {
+                    accessor.iterateUnion(iterator, clazz, union, pagination);
+                });
+                time = System.nanoTime() - begin;
+                Assert.assertEquals(getIdentities(accessor.queryUnion(clazz, union, null)), keyset);
+                Assert.assertEquals(accessor.countUnion(clazz, union), keyset.size());
+                message = StringUtility.format("{}并集键集分页:{}个对象,耗时{}毫秒", accessor.getClass().getSimpleName(), keyset.size(), time / 1000000L);
+                logger.info(message);
+            }
+        } finally {
+            Assert.assertEquals(size, accessor.deleteInstances(clazz, ids));
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.jstarcraft.core.storage.berkeley;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
@@ -11,7 +13,9 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageBatchBenchmark;
 import com.jstarcraft.core.storage.StorageCondition;
+import com.jstarcraft.core.storage.StoragePaginationConformance;
 import com.jstarcraft.core.storage.berkeley.entity.Pack;
 import com.jstarcraft.core.storage.berkeley.entity.Person;
 import com.jstarcraft.core.storage.berkeley.exception.BerkeleyVersionException;
@@ -128,4 +132,37 @@ public class BerkeleyAccessorTestCase {
 		testCommitTransactor(pack, BerkeleyIsolation.READ_COMMITTED);
 	}
 
+	/**
+	 * 测试批量增删改的性能(批量大小1/100/1000)
+	 */
+	@Test
+	public void testBatch() {
+		StorageBatchBenchmark.benchmark(accessor, Person.class, (index) -> {
+			return new Person(index, "batch" + index);
+		}, 1000);
+	}
+
+	/**
+	 * 测试键集分页的一致性
+	 */
+	@Test
+	public void testKeyset() {
+		StoragePaginationConformance.check(accessor, Person.class, (index) -> {
+			return new Person(index, "keyset" + index);
+		}, 1000);
+
+		// 个人的名称是唯一索引,通过包裹的个人标识检查次键子索引的交集与并集
+		Person person = new Person(StoragePaginationConformance.OFFSET - 1, "keyset");
+		Assert.assertTrue(accessor.createInstance(Person.class, person));
+		try {
+			Map<String, Object> condition = new HashMap<>();
+			condition.put("personId", person.getId());
+			StoragePaginationConformance.check(accessor, Pack.class, (index) -> {
+				return new Pack(index, 1, index % 2 == 0 ? person.getId() : null);
+			}, 1000, condition, condition);
+		} finally {
+			accessor.deleteInstance(Person.class, person.getId());
+		}
+	}
+
 }
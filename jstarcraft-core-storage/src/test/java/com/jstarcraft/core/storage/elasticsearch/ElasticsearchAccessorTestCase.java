@@ -15,8 +15,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageBatchBenchmark;
 import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.StoragePaginationConformance;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration
@@ -135,4 +137,31 @@ public class ElasticsearchAccessorTestCase {
         }
     }
 
+    /**
+     * 测试批量增删改的性能(批量大小1/100/1000)
+     */
+    @Test
+    public void testBatch() {
+        StorageBatchBenchmark.benchmark(accessor, MockObject.class, (index) -> {
+            return MockObject.instanceOf(index, "batch", "mickey" + index, index, Instant.ofEpochMilli(0L), MockEnumeration.RANDOM);
+        }, 1000);
+    }
+
+    /**
+     * 测试键集分页的一致性
+     */
+    @Test
+    public void testKeyset() {
+        // 交集与并集都跨越多页,并集需要归并不同条件的对象
+        Map<String, Object> intersection = new HashMap<>();
+        intersection.put("name", "keyset");
+        intersection.put("race", MockEnumeration.RANDOM);
+        Map<String, Object> union = new HashMap<>();
+        union.put("name", "keyset");
+        union.put("id", StoragePaginationConformance.OFFSET + 1);
+        StoragePaginationConformance.check(accessor, MockObject.class, (index) -> {
+            return MockObject.instanceOf(index, index % 2 == 0 ? "keyset" : "pagination", "mickey" + index, index, Instant.ofEpochMilli(0L), MockEnumeration.RANDOM);
+        }, 1000, intersection, union);
+    }
+
 }
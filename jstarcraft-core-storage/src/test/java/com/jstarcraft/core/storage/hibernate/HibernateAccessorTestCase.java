@@ -15,8 +15,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageBatchBenchmark;
 import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.StoragePaginationConformance;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration
@@ -45,6 +47,14 @@ public class HibernateAccessorTestCase {
 			accessor.updateInstance(MockObject.class, object);
 			instance = accessor.getInstance(MockObject.class, id);
 			Assert.assertThat(instance, CoreMatchers.equalTo(object));
+
+			// 修改部分字段并保存
+			object.setName("birdy");
+			Map<String, Object> values = new HashMap<>();
+			values.put("name", "birdy");
+			Assert.assertTrue(accessor.updateInstance(MockObject.class, id, values));
+			instance = accessor.getInstance(MockObject.class, id);
+			Assert.assertThat(instance, CoreMatchers.equalTo(object));
 		}
 
 		// 查询对象的最大标识
@@ -165,4 +175,31 @@ public class HibernateAccessorTestCase {
 		Assert.assertThat(accessor.countInstances(MockObject.class), CoreMatchers.equalTo(0L));
 	}
 
+	/**
+	 * 测试批量增删改的性能(批量大小1/100/1000)
+	 */
+	@Test
+	public void testBatch() {
+		StorageBatchBenchmark.benchmark(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, "batch", "mickey" + index, index, LocalDateTime.of(2010, 1, 1, 0, 0, 0), MockEnumeration.RANDOM);
+		}, 1000);
+	}
+
+	/**
+	 * 测试键集分页的一致性
+	 */
+	@Test
+	public void testKeyset() {
+		// 交集与并集都跨越多页,并集需要归并不同条件的对象
+		Map<String, Object> intersection = new HashMap<>();
+		intersection.put("name", "keyset");
+		intersection.put("race", MockEnumeration.RANDOM);
+		Map<String, Object> union = new HashMap<>();
+		union.put("name", "keyset");
+		union.put("id", StoragePaginationConformance.OFFSET + 1);
+		StoragePaginationConformance.check(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, index % 2 == 0 ? "keyset" : "pagination", "mickey" + index, index, LocalDateTime.of(2010, 1, 1, 0, 0, 0), MockEnumeration.RANDOM);
+		}, 1000, intersection, union);
+	}
+
 }
@@ -1,6 +1,7 @@
 package com.jstarcraft.core.storage.lucene;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,18 +11,25 @@ import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.jstarcraft.core.storage.ConditionType;
+import com.jstarcraft.core.storage.StorageBatchBenchmark;
 import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.StoragePaginationConformance;
+import com.jstarcraft.core.utility.StringUtility;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration
 public class LuceneAccessorTestCase {
 
+	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
 	@Autowired
 	private LuceneAccessor accessor;
 
@@ -106,6 +114,27 @@ public class LuceneAccessorTestCase {
 		}, MockObject.class, pagination);
 		Assert.assertTrue(times.get() == 10);
 
+		// 查询游标分页
+		pagination = StoragePagination.instanceOf(15, null);
+		Map<Integer, MockObject> cursors = new HashMap<>();
+		do {
+			objects = accessor.queryInstances(MockObject.class, pagination);
+			for (MockObject object : objects) {
+				Assert.assertNull(cursors.put(object.getId(), object));
+			}
+			pagination = StoragePagination.instanceOf(15, pagination.getNext());
+		} while (pagination.getCursor().length() > 0);
+		Assert.assertTrue(cursors.size() == size);
+		cursors.clear();
+		pagination = StoragePagination.instanceOf(15, null);
+		do {
+			accessor.iterate((object) -> {
+				Assert.assertNull(cursors.put(object.getId(), object));
+			}, MockObject.class, pagination);
+			pagination = StoragePagination.instanceOf(15, pagination.getNext());
+		} while (pagination.getCursor().length() > 0);
+		Assert.assertTrue(cursors.size() == size);
+
 		// 测试总数
 		long count = accessor.countInstances(MockObject.class);
 		Assert.assertTrue(count == size);
@@ -135,4 +164,70 @@ public class LuceneAccessorTestCase {
 		}
 	}
 
+	/**
+	 * 测试查询100000个标识的性能(DocValues投影与加载存储的文档)
+	 */
+	@Test
+	public void testIdentityPerformance() {
+		int size = 100000;
+		int offset = 1000000;
+		Instant now = Instant.ofEpochMilli(System.currentTimeMillis());
+		List<MockObject> objects = new ArrayList<>(size);
+		List<Integer> ids = new ArrayList<>(size);
+		for (int index = 0; index < size; index++) {
+			objects.add(MockObject.instanceOf(offset + index, "identity", "mickey", index % 10, now, MockEnumeration.RANDOM));
+			ids.add(offset + index);
+		}
+		accessor.createInstances(MockObject.class, objects);
+		StorageCondition<String> condition = new StorageCondition<>(ConditionType.Equal, "identity");
+
+		int times = 10;
+		long begin = System.currentTimeMillis();
+		for (int index = 0; index < times; index++) {
+			Map<Integer, String> id2Names = accessor.queryIdentities(MockObject.class, "name", condition);
+			Assert.assertThat(id2Names.size(), CoreMatchers.equalTo(size));
+		}
+		long end = System.currentTimeMillis();
+		String message = StringUtility.format("通过DocValues查询{}个标识{}次的时间:{}毫秒", size, times, end - begin);
+		logger.debug(message);
+
+		begin = System.currentTimeMillis();
+		for (int index = 0; index < times; index++) {
+			List<MockObject> instances = accessor.queryInstances(MockObject.class, "name", condition);
+			Assert.assertThat(instances.size(), CoreMatchers.equalTo(size));
+		}
+		end = System.currentTimeMillis();
+		message = StringUtility.format("通过存储的文档查询{}个实例{}次的时间:{}毫秒", size, times, end - begin);
+		logger.debug(message);
+
+		accessor.deleteInstances(MockObject.class, ids);
+	}
+
+	/**
+	 * 测试批量增删改的性能(批量大小1/100/1000)
+	 */
+	@Test
+	public void testBatch() {
+		StorageBatchBenchmark.benchmark(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, "batch", "mickey" + index, index, Instant.ofEpochMilli(0L), MockEnumeration.RANDOM);
+		}, 1000);
+	}
+
+	/**
+	 * 测试键集分页的一致性
+	 */
+	@Test
+	public void testKeyset() {
+		// 交集与并集都跨越多页,并集需要归并不同条件的对象
+		Map<String, Object> intersection = new HashMap<>();
+		intersection.put("name", "keyset");
+		intersection.put("race", MockEnumeration.RANDOM);
+		Map<String, Object> union = new HashMap<>();
+		union.put("name", "keyset");
+		union.put("id", StoragePaginationConformance.OFFSET + 1);
+		StoragePaginationConformance.check(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, index % 2 == 0 ? "keyset" : "pagination", "mickey" + index, index, Instant.ofEpochMilli(0L), MockEnumeration.RANDOM);
+		}, 1000, intersection, union);
+	}
+
 }
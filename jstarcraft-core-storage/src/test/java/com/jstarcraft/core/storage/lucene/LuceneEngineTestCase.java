@@ -3,23 +3,46 @@ package com.jstarcraft.core.storage.lucene;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Assert;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jstarcraft.core.utility.KeyValue;
+import com.jstarcraft.core.utility.StringUtility;
 
 public class LuceneEngineTestCase {
 
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     @Test
     public void testCRUD() throws Exception {
         Path path = Paths.get("./lucene");
@@ -164,4 +187,337 @@ public class LuceneEngineTestCase {
         FileUtils.deleteDirectory(file);
     }
 
+    @Test
+    public void testRefresh() throws Exception {
+        Path path = Paths.get("./lucene");
+        File file = path.toFile();
+        FileUtils.deleteDirectory(file);
+        // 后台每100毫秒刷新一次
+        LuceneEngine engine = new LuceneEngine(() -> {
+            IndexWriterConfig config = new IndexWriterConfig();
+            return config;
+        }, path, 100L);
+
+        for (int index = 0; index < 1000; index++) {
+            String data = String.valueOf(index);
+            Document document = new Document();
+            Field field = new StringField("title", data, Store.YES);
+            document.add(field);
+            engine.createDocument(data, document);
+        }
+        long begin = System.currentTimeMillis();
+        while (engine.countDocuments(new MatchAllDocsQuery()) != 1000) {
+            Assert.assertTrue(System.currentTimeMillis() - begin < 10000L);
+            Thread.sleep(10L);
+        }
+
+        // 合并以后仍然按照代次可见
+        engine.mergeManager();
+        for (int index = 0; index < 500; index++) {
+            engine.deleteDocument(String.valueOf(index));
+        }
+        begin = System.currentTimeMillis();
+        while (engine.countDocuments(new MatchAllDocsQuery()) != 500) {
+            Assert.assertTrue(System.currentTimeMillis() - begin < 10000L);
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(0, engine.countDocuments(new TermQuery(new Term("title", "0"))));
+        Assert.assertEquals(1, engine.countDocuments(new TermQuery(new Term("title", "500"))));
+
+        engine.close();
+        FileUtils.deleteDirectory(file);
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        Path path = Paths.get("./lucene");
+        File file = path.toFile();
+        FileUtils.deleteDirectory(file);
+        LuceneEngine engine = new LuceneEngine(() -> {
+            IndexWriterConfig config = new IndexWriterConfig();
+            return config;
+        }, path);
+
+        for (int index = 0; index < 1000; index++) {
+            String data = String.valueOf(index);
+            Document document = new Document();
+            Field field = new StringField("title", data, Store.YES);
+            document.add(field);
+            engine.createDocument(data, document);
+            if (index == 499) {
+                engine.mergeManager();
+            }
+        }
+
+        // 翻页期间的更新与合并改变了文档编号,游标仍然有效
+        Set<String> titles = new HashSet<>();
+        String cursor = null;
+        do {
+            KeyValue<List<KeyValue<Document, Float>>, String> retrieve = engine.retrieveDocuments(new MatchAllDocsQuery(), null, cursor, 100);
+            for (KeyValue<Document, Float> keyValue : retrieve.getKey()) {
+                String title = keyValue.getKey().get("title");
+                Assert.assertTrue(titles.add(title));
+                Document document = new Document();
+                Field field = new StringField("title", title, Store.YES);
+                document.add(field);
+                engine.updateDocument(title, document);
+            }
+            engine.mergeManager();
+            cursor = retrieve.getValue();
+        } while (cursor != null);
+        Assert.assertEquals(1000, titles.size());
+
+        titles.clear();
+        cursor = null;
+        do {
+            cursor = engine.iterateDocuments((document) -> {
+                Assert.assertTrue(titles.add(document.get("title")));
+            }, new MatchAllDocsQuery(), null, cursor, 300);
+        } while (cursor != null);
+        Assert.assertEquals(1000, titles.size());
+
+        engine.close();
+        FileUtils.deleteDirectory(file);
+    }
+
+    @Test
+    public void testPaginationPerformance() throws Exception {
+        Path path = Paths.get("./lucene");
+        File file = path.toFile();
+        FileUtils.deleteDirectory(file);
+        LuceneEngine engine = new LuceneEngine(() -> {
+            IndexWriterConfig config = new IndexWriterConfig();
+            config.setRAMBufferSizeMB(256D);
+            return config;
+        }, path);
+
+        int size = 1000000;
+        int batch = 10000;
+        Map<String, Document> documents = new HashMap<>();
+        for (int index = 0; index < size; index++) {
+            Document document = new Document();
+            Field field = new StringField("title", String.valueOf(index), Store.YES);
+            document.add(field);
+            documents.put(String.valueOf(index), document);
+            if (documents.size() == batch) {
+                engine.createDocuments(documents);
+                documents.clear();
+            }
+        }
+        engine.mergeManager();
+
+        int page = 1000;
+        int limit = 100;
+        int times = 10;
+        // 预先翻到第1000页的游标
+        String cursor = null;
+        for (int index = 1; index < page; index++) {
+            cursor = engine.retrieveDocuments(new MatchAllDocsQuery(), null, cursor, limit).getValue();
+        }
+
+        long begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(limit, engine.retrieveDocuments(new MatchAllDocsQuery(), null, 0, limit).size());
+        }
+        long end = System.currentTimeMillis();
+        String message = StringUtility.format("{}个文档基于偏移量检索第1页{}次的时间:{}毫秒", size, times, end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(limit, engine.retrieveDocuments(new MatchAllDocsQuery(), null, (page - 1) * limit, limit).size());
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("{}个文档基于偏移量检索第{}页{}次的时间:{}毫秒", size, page, times, end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(limit, engine.retrieveDocuments(new MatchAllDocsQuery(), null, (String) null, limit).getKey().size());
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("{}个文档基于游标检索第1页{}次的时间:{}毫秒", size, times, end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(limit, engine.retrieveDocuments(new MatchAllDocsQuery(), null, cursor, limit).getKey().size());
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("{}个文档基于游标检索第{}页{}次的时间:{}毫秒", size, page, times, end - begin);
+        logger.debug(message);
+
+        engine.close();
+        FileUtils.deleteDirectory(file);
+    }
+
+    /**
+     * 混合读写
+     * 
+     * @param interval 刷新间隔
+     * @param threadSize 线程数量(每10次操作1次修改,9次查询)
+     * @param times 每个线程的操作次数
+     */
+    private void performance(long interval, int threadSize, int times) throws Exception {
+        Path path = Paths.get("./lucene");
+        File file = path.toFile();
+        FileUtils.deleteDirectory(file);
+        LuceneEngine engine = new LuceneEngine(() -> {
+            IndexWriterConfig config = new IndexWriterConfig();
+            return config;
+        }, path, interval);
+
+        int size = 10000;
+        for (int index = 0; index < size; index++) {
+            String data = String.valueOf(index);
+            Document document = new Document();
+            Field field = new StringField("title", String.valueOf(index % 100), Store.YES);
+            document.add(field);
+            engine.createDocument(data, document);
+        }
+        engine.mergeManager();
+        Assert.assertEquals(size, engine.countDocuments(new MatchAllDocsQuery()));
+
+        AtomicInteger exceptions = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threadSize);
+        long begin = System.nanoTime();
+        for (int thread = 0; thread < threadSize; thread++) {
+            Thread performanceThread = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int index = 0; index < times; index++) {
+                        int id = random.nextInt(size);
+                        if (index % 10 == 0) {
+                            Document document = new Document();
+                            Field field = new StringField("title", String.valueOf(id % 100), Store.YES);
+                            document.add(field);
+                            engine.updateDocument(String.valueOf(id), document);
+                        } else if (index % 2 == 0) {
+                            engine.countDocuments(new TermQuery(new Term("title", String.valueOf(id % 100))));
+                        } else {
+                            engine.retrieveDocuments(new TermQuery(new Term("title", String.valueOf(id % 100))), null, 0, 10);
+                        }
+                    }
+                } catch (Exception exception) {
+                    exceptions.incrementAndGet();
+                } finally {
+                    latch.countDown();
+                }
+            });
+            performanceThread.setDaemon(true);
+            performanceThread.start();
+        }
+        latch.await();
+        long time = System.nanoTime() - begin;
+        String message = StringUtility.format("刷新间隔{}毫秒,{}个线程混合读写{}次的时间:{}毫秒,吞吐量:{}次/秒", interval, threadSize, threadSize * times, TimeUnit.NANOSECONDS.toMillis(time), threadSize * times * 1000000000L / time);
+        logger.debug(message);
+
+        Assert.assertEquals(0, exceptions.get());
+        engine.mergeManager();
+        Assert.assertEquals(size, engine.countDocuments(new MatchAllDocsQuery()));
+        engine.close();
+        FileUtils.deleteDirectory(file);
+    }
+
+    @Test
+    public void testPerformance() throws Exception {
+        for (long interval : new long[] { 0L, 100L }) {
+            for (int threadSize : new int[] { 8, 32 }) {
+                performance(interval, threadSize, 1000);
+            }
+        }
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        ByteBuffersDirectory directory = new ByteBuffersDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig());
+        for (int index = 0; index < 100; index++) {
+            String id = String.valueOf(index);
+            Document document = new Document();
+            document.add(new StringField(LuceneMetadata.LUCENE_ID, id, Store.NO));
+            document.add(new BinaryDocValuesField(LuceneMetadata.LUCENE_ID, new BytesRef(id)));
+            document.add(new StringField("title", String.valueOf(index % 2), Store.YES));
+            writer.addDocument(document);
+            if (index % 10 == 9) {
+                // 多个段
+                writer.commit();
+            }
+        }
+        writer.deleteDocuments(new Term(LuceneMetadata.LUCENE_ID, "0"));
+        IndexReader reader = DirectoryReader.open(writer);
+        IndexReader filter = LuceneFilterReader.filterReader(reader, Arrays.asList("1", "2", "1000"));
+        reader.decRef();
+        IndexSearcher searcher = new IndexSearcher(filter);
+        Assert.assertEquals(97, filter.numDocs());
+        Assert.assertEquals(97, searcher.count(new MatchAllDocsQuery()));
+        Assert.assertEquals(48, searcher.count(new TermQuery(new Term("title", "0"))));
+        Assert.assertEquals(49, searcher.search(new TermQuery(new Term("title", "1")), 100).scoreDocs.length);
+        Assert.assertEquals(0, searcher.count(new TermQuery(new Term(LuceneMetadata.LUCENE_ID, "2"))));
+
+        // 过滤读取器释放以后关闭原读取器
+        filter.decRef();
+        Assert.assertEquals(0, reader.getRefCount());
+        writer.close();
+    }
+
+    @Test
+    public void testCountPerformance() throws Exception {
+        Path path = Paths.get("./lucene");
+        File file = path.toFile();
+        FileUtils.deleteDirectory(file);
+        LuceneEngine engine = new LuceneEngine(() -> {
+            IndexWriterConfig config = new IndexWriterConfig();
+            config.setRAMBufferSizeMB(256D);
+            return config;
+        }, path);
+
+        int size = 5000000;
+        int batch = 10000;
+        Map<String, Document> documents = new HashMap<>();
+        for (int index = 0; index < size; index++) {
+            Document document = new Document();
+            Field field = new StringField("title", String.valueOf(index % 100), Store.NO);
+            document.add(field);
+            documents.put(String.valueOf(index), document);
+            if (documents.size() == batch) {
+                engine.createDocuments(documents);
+                documents.clear();
+            }
+        }
+        engine.mergeManager();
+        // 10%的文档更新以后等待合并
+        for (int index = 0; index < size; index += 10) {
+            Document document = new Document();
+            Field field = new StringField("title", String.valueOf(index % 100), Store.NO);
+            document.add(field);
+            documents.put(String.valueOf(index), document);
+            if (documents.size() == batch) {
+                engine.updateDocuments(documents);
+                documents.clear();
+            }
+        }
+        Assert.assertEquals(size, engine.countDocuments(new MatchAllDocsQuery()));
+
+        int times = 10;
+        long begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(size, engine.countDocuments(new MatchAllDocsQuery()));
+        }
+        long end = System.currentTimeMillis();
+        String message = StringUtility.format("{}个文档(10%等待合并)统计{}次全部文档的时间:{}毫秒", size, times, end - begin);
+        logger.debug(message);
+
+        begin = System.currentTimeMillis();
+        for (int index = 0; index < times; index++) {
+            Assert.assertEquals(10, engine.retrieveDocuments(new MatchAllDocsQuery(), null, 0, 10).size());
+        }
+        end = System.currentTimeMillis();
+        message = StringUtility.format("{}个文档(10%等待合并)检索{}次全部文档的时间:{}毫秒", size, times, end - begin);
+        logger.debug(message);
+
+        engine.close();
+        FileUtils.deleteDirectory(file);
+    }
+
 }
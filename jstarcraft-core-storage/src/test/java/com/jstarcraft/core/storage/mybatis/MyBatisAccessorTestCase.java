@@ -16,6 +16,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import com.jstarcraft.core.storage.ConditionType;
 import com.jstarcraft.core.storage.StorageCondition;
 import com.jstarcraft.core.storage.StoragePagination;
+import com.jstarcraft.core.storage.StoragePaginationConformance;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration
@@ -44,6 +45,14 @@ public class MyBatisAccessorTestCase {
 			accessor.updateInstance(MockObject.class, object);
 			instance = accessor.getInstance(MockObject.class, id);
 			Assert.assertThat(instance, CoreMatchers.equalTo(object));
+
+			// 修改部分字段并保存
+			object.setName("birdy");
+			Map<String, Object> values = new HashMap<>();
+			values.put("name", "birdy");
+			Assert.assertTrue(accessor.updateInstance(MockObject.class, id, values));
+			instance = accessor.getInstance(MockObject.class, id);
+			Assert.assertThat(instance, CoreMatchers.equalTo(object));
 		}
 
 		// 查询对象的最大标识
@@ -134,4 +143,32 @@ public class MyBatisAccessorTestCase {
 		}
 	}
 
+	/**
+	 * 测试键集分页的一致性
+	 */
+	@Test
+	public void testKeyset() {
+		// 交集与并集都跨越多页,并集需要归并不同条件的对象
+		Map<String, Object> intersection = new HashMap<>();
+		intersection.put("name", "keyset");
+		intersection.put("race", MockEnumeration.RANDOM);
+		Map<String, Object> union = new HashMap<>();
+		union.put("name", "keyset");
+		union.put("id", StoragePaginationConformance.OFFSET + 1);
+		StoragePaginationConformance.check(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, index % 2 == 0 ? "keyset" : "pagination", "mickey" + index, index, MockEnumeration.RANDOM);
+		}, 1000, intersection, union);
+	}
+
+	/**
+	 * 测试空条件的键集分页
+	 */
+	@Test
+	public void testKeysetWithoutCondition() {
+		// 空的条件不能产生悬空的AND,结果与不分页的查询一致
+		StoragePaginationConformance.check(accessor, MockObject.class, (index) -> {
+			return MockObject.instanceOf(index, "keyset", "mickey" + index, index, MockEnumeration.RANDOM);
+		}, 300, new HashMap<>(), new HashMap<>());
+	}
+
 }